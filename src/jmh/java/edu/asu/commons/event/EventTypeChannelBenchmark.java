@@ -0,0 +1,72 @@
+package edu.asu.commons.event;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Dispatches an Event through an EventTypeChannel with many registered EventProcessors: some
+ * registered for the exact type of the Event, some accepting subtypes of a type the Event doesn't
+ * have, which the channel still has to check on every dispatch.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EventTypeChannelBenchmark {
+
+    @Param({ "1", "10", "100" })
+    private int matchingProcessors;
+
+    @Param({ "0", "100" })
+    private int subtypeProcessors;
+
+    private EventTypeChannel channel;
+    private ChatRequest request;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        channel = new EventTypeChannel();
+        for (int i = 0; i < matchingProcessors; i++) {
+            channel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+                public void handle(ChatRequest event) {
+                    blackhole.consume(event);
+                }
+            });
+        }
+        for (int i = 0; i < subtypeProcessors; i++) {
+            channel.add(this, new EventTypeProcessor<FacilitatorRequest>(FacilitatorRequest.class, true) {
+                public void handle(FacilitatorRequest event) {
+                    blackhole.consume(event);
+                }
+            });
+        }
+        request = new ChatRequest(Identifier.ALL, "benchmark");
+    }
+
+    @Benchmark
+    public void dispatch() {
+        channel.handle(request);
+    }
+
+}
@@ -0,0 +1,87 @@
+package edu.asu.commons.experiment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.asu.commons.conf.ConfigurationTest;
+import edu.asu.commons.event.ChatEvent;
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Stores PersistableEvents into a Persister from one thread and from several threads at once, as
+ * the dispatcher and experiment threads of a busy server do. The stored events are cleared
+ * after every iteration so the sorted action set doesn't grow across iterations.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PersisterBenchmark {
+
+    private PersisterTest.MockPersister persister;
+    private Identifier id;
+
+    @Setup
+    public void setUp() throws IOException {
+        ConfigurationTest.MockServerConfiguration configuration = new ConfigurationTest.MockServerConfiguration();
+        configuration.setProperty("save-dir", Files.createTempDirectory("persister-benchmark").toString());
+        configuration.setProperty("persistence-type", "BINARY");
+        persister = new PersisterTest.MockPersister(configuration);
+        id = new Identifier.Mock();
+    }
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        persister.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        persister.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void store() {
+        persister.store(new ChatEvent(id, "a typical chat message", id));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void storeContended() {
+        persister.store(new ChatEvent(id, "a typical chat message", id));
+    }
+
+    /**
+     * ChatRequests are also written to the chat log.
+     */
+    @Benchmark
+    @Threads(4)
+    public void storeChatRequestContended() {
+        persister.store(new ChatRequest(id, "a typical chat message"));
+    }
+
+}
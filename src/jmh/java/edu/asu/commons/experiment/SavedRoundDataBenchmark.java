@@ -0,0 +1,85 @@
+package edu.asu.commons.experiment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.asu.commons.conf.ConfigurationTest;
+import edu.asu.commons.event.ChatEvent;
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Loads a binary round save file written by a Persister with SavedRoundData.create(), as the data
+ * export tools do for every round of every session.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SavedRoundDataBenchmark {
+
+    @Param({ "10000", "100000" })
+    private int events;
+
+    private PersisterTest.MockPersister persister;
+    private String roundSaveFilePath;
+
+    @Setup
+    public void setUp() throws IOException {
+        ConfigurationTest.MockServerConfiguration configuration = new ConfigurationTest.MockServerConfiguration();
+        configuration.setProperty("save-dir", Files.createTempDirectory("saved-round-data-benchmark").toString());
+        configuration.setProperty("persistence-type", "BINARY");
+        persister = new PersisterTest.MockPersister(configuration);
+        Identifier[] ids = new Identifier[20];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = new Identifier.Mock();
+        }
+        for (int i = 0; i < events; i++) {
+            Identifier id = ids[i % ids.length];
+            if (i % 10 == 0) {
+                persister.store(new ChatEvent(id, "chat message #" + i, ids[0]));
+            }
+            else {
+                persister.store(new ChatRequest(id, "chat message #" + i));
+            }
+        }
+        persister.persist(new PersisterTest.MockDataModel(configuration));
+        roundSaveFilePath = persister.getDefaultRoundSaveFilePath(configuration.getCurrentParameters().getRoundIndexLabel());
+        if (!new File(roundSaveFilePath).isFile()) {
+            throw new IOException("no round save file at " + roundSaveFilePath);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        persister.stop();
+    }
+
+    @Benchmark
+    public SavedRoundData load() {
+        return SavedRoundData.create(roundSaveFilePath);
+    }
+
+}
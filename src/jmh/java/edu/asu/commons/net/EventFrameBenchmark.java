@@ -0,0 +1,84 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.ClientMessageEvent;
+import edu.asu.commons.event.ClientReadyEvent;
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+
+/**
+ * $Id$
+ *
+ * Marshals typical Events into EventFrames and back with each wire codec. ClientMessageEvent has no
+ * registered binary TypeCodec, so with the binary codec it measures the serialization fallback.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EventFrameBenchmark {
+
+    @Param({ "java", "binary" })
+    private String codecName;
+
+    @Param({ "ChatRequest", "ClientReadyEvent", "ClientMessageEvent" })
+    private String eventType;
+
+    private EventCodec codec;
+    private Identifier connectionId;
+    private Event event;
+    private EventFrame frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        codec = EventCodecRegistry.getCodec(codecName);
+        connectionId = new Identifier.Mock();
+        if ("ChatRequest".equals(eventType)) {
+            event = new ChatRequest(connectionId, "a typical chat message of about forty chars", Identifier.ALL);
+        }
+        else if ("ClientReadyEvent".equals(eventType)) {
+            event = new ClientReadyEvent(connectionId);
+        }
+        else {
+            event = new ClientMessageEvent(connectionId, "a typical client message");
+        }
+        frame = EventFrame.encode(codec, event, connectionId);
+    }
+
+    @Benchmark
+    public EventFrame marshal() throws IOException {
+        return EventFrame.encode(codec, event, connectionId);
+    }
+
+    @Benchmark
+    public EventFrame marshalMulticast() throws IOException {
+        return EventFrame.encodeMulticast(codec, event);
+    }
+
+    @Benchmark
+    public Event unmarshal() throws IOException, ClassNotFoundException {
+        return frame.decode(codec, connectionId);
+    }
+
+}
@@ -0,0 +1,99 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * $Id$
+ *
+ * Decodes a stream of NIO frames the way the NioDispatcher does, with reads of readSize bytes: small
+ * reads split the length headers and payloads of frames across reads, large reads merge many frames
+ * into a single read. Each operation decodes the entire stream of FRAMES frames.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FrameDecoderBenchmark {
+
+    private final static int FRAMES = 256;
+
+    @Param({ "64", "1024", "65536" })
+    private int frameSize;
+
+    @Param({ "7", "1500", "65536" })
+    private int readSize;
+
+    private ByteBuffer stream;
+    private FrameDecoder decoder;
+    private ReadableByteChannel channel;
+
+    @Setup
+    public void setUp() {
+        stream = ByteBuffer.allocate(FRAMES * (frameSize + 4));
+        byte[] payload = new byte[frameSize];
+        for (int i = 0; i < FRAMES; i++) {
+            stream.putInt(frameSize).put(payload);
+        }
+        stream.flip();
+        decoder = new FrameDecoder(DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE);
+        channel = new ReadableByteChannel() {
+            public int read(ByteBuffer destination) {
+                if (!stream.hasRemaining()) {
+                    return 0;
+                }
+                int length = Math.min(readSize, Math.min(destination.remaining(), stream.remaining()));
+                ByteBuffer source = stream.duplicate();
+                source.limit(source.position() + length);
+                destination.put(source);
+                stream.position(stream.position() + length);
+                return length;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        };
+    }
+
+    @Benchmark
+    public int decode(Blackhole blackhole) throws IOException {
+        stream.rewind();
+        int frames = 0;
+        while (stream.hasRemaining() || decoder.isPending()) {
+            decoder.read(channel);
+            while (decoder.decode()) {
+                blackhole.consume(decoder.getFrameLength());
+                frames++;
+            }
+            if (!stream.hasRemaining() && frames == FRAMES) {
+                break;
+            }
+        }
+        return frames;
+    }
+
+}
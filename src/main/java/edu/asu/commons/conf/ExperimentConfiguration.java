@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 
+import edu.asu.commons.net.DispatcherFactory;
 import edu.asu.commons.net.ServerDispatcher;
 
 /**
@@ -441,7 +442,7 @@ public interface ExperimentConfiguration<C extends ExperimentConfiguration<C, R>
         }
 
         public int getWorkerPoolSize() {
-            return getIntProperty("worker-pool-size", 5);
+            return getIntProperty("worker-pool-size", DispatcherFactory.DEFAULT_WORKER_POOL_SIZE);
         }
 
         public int getDefaultRoundDuration() {
@@ -6,6 +6,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import edu.asu.commons.util.Threads;
+
 /**
  * $Id$
  * Provides a generic event channel dispatching events to interested
@@ -28,6 +30,9 @@ public final class EventConstraintChannel implements EventGenerator, EventChanne
     private final Map<Object, List<EventProcessor>> owners =
             new HashMap<Object, List<EventProcessor>>();
 
+    // true if asynchronous event handlers should run on virtual threads.
+    private volatile boolean virtualThreads;
+
     /**
      * Provides access to a singleton version of the EventChannel.
      * 
@@ -37,6 +42,18 @@ public final class EventConstraintChannel implements EventGenerator, EventChanne
         return INSTANCE;
     }
 
+    /**
+     * Runs the event handlers of this channel on virtual threads if virtualThreads is true and the
+     * JVM supports them.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
     /**
      * Adds an event to the EventChannel which then propagates the event to
      * all interested subscribers. EventHandler.handle(Event) is invoked in a
@@ -47,7 +64,7 @@ public final class EventConstraintChannel implements EventGenerator, EventChanne
      */
     public void handle(final Event event) {
         synchronized (eventListeners) {
-            new Thread() {
+            Threads.startHandlerThread(new Runnable() {
                 public void run() {
                     for (final Map.Entry<EventHandler<Event>, EventConstraint> entry : eventListeners.entrySet()) {
                         if (entry.getValue().accepts(event)) {
@@ -55,7 +72,7 @@ public final class EventConstraintChannel implements EventGenerator, EventChanne
                         }
                     }
                 }
-            }.start();
+            }, virtualThreads);
         }
     }
 
@@ -63,11 +80,11 @@ public final class EventConstraintChannel implements EventGenerator, EventChanne
         synchronized (eventListeners) {
             for (final Map.Entry<EventHandler<Event>, EventConstraint> entry : eventListeners.entrySet()) {
                 if (entry.getValue().accepts(event)) {
-                    new Thread() {
+                    Threads.startHandlerThread(new Runnable() {
                         public void run() {
                             entry.getKey().handle(event);
                         }
-                    }.start();
+                    }, virtualThreads);
                 }
             }
         }
@@ -8,6 +8,8 @@ import java.util.Map;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import edu.asu.commons.util.Threads;
+
 /**
  * Provides an event channel that only handles subscription via event type.
  * 
@@ -33,6 +35,9 @@ public class EventTypeChannel implements EventChannel {
     private final ThreadedDispatcher threadedDispatcher = new ThreadedDispatcher();
     private final SequentialDispatcher sequentialDispatcher = new SequentialDispatcher();
 
+    // true if asynchronous event handlers should run on virtual threads.
+    private volatile boolean virtualThreads;
+
     public final static EventTypeChannel INSTANCE = new EventTypeChannel();
 
     public EventTypeChannel() {
@@ -51,6 +56,18 @@ public class EventTypeChannel implements EventChannel {
         }
     }
 
+    /**
+     * Runs the asynchronous event handlers of this channel on virtual threads if virtualThreads is
+     * true and the JVM supports them, e.g., for channels used by a SOCKET_VIRTUAL dispatcher.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
     public <E extends Event> void add(EventProcessor<E> eventProcessor) {
         Lock lock;
 
@@ -217,11 +234,11 @@ public class EventTypeChannel implements EventChannel {
                 List<EventProcessor> handlers = equalTypesEventProcessorMap.get(eventClass);
                 if (handlers != null) {
                     for (final EventProcessor<Event> handler : handlers) {
-                        new Thread() {
+                        Threads.startHandlerThread(new Runnable() {
                             public void run() {
                                 handler.handle(event);
                             }
-                        }.start();
+                        }, virtualThreads);
                     }
                 }
             } finally {
@@ -234,11 +251,11 @@ public class EventTypeChannel implements EventChannel {
             try {
                 for (final EventProcessor<Event> handler : acceptsSubtypesEventProcessors) {
                     if (handler.getEventClass().isInstance(event)) {
-                        new Thread() {
+                        Threads.startHandlerThread(new Runnable() {
                             public void run() {
                                 handler.handle(event);
                             }
-                        }.start();
+                        }, virtualThreads);
                     }
                 }
             } finally {
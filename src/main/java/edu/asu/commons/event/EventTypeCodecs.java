@@ -0,0 +1,116 @@
+package edu.asu.commons.event;
+
+import java.io.IOException;
+
+import edu.asu.commons.net.Identifier;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+import edu.asu.commons.net.codec.EventInput;
+import edu.asu.commons.net.codec.EventOutput;
+import edu.asu.commons.net.codec.TypeCodec;
+
+/**
+ * $Id$
+ *
+ * Binary TypeCodecs for the high volume Events sent by every experiment, registered with the
+ * EventCodecRegistry when it is first loaded. Lives in the event package so the codecs can restore
+ * each Event's original creation time.
+ * <p>
+ * Type ids are part of the wire format: never renumber an existing registration, only append new ones.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public final class EventTypeCodecs {
+
+    public final static int CHAT_REQUEST = 32;
+    public final static int CLIENT_READY_EVENT = 33;
+    public final static int ROUND_STARTED_MARKER_EVENT = 34;
+    public final static int ROUND_ENDED_MARKER_EVENT = 35;
+    public final static int BEGIN_ROUND_REQUEST = 36;
+    public final static int END_ROUND_REQUEST = 37;
+
+    private EventTypeCodecs() {
+    }
+
+    public static void registerAll() {
+        EventCodecRegistry.register(CHAT_REQUEST, ChatRequest.class, new TypeCodec<ChatRequest>() {
+            public void write(ChatRequest request, EventOutput out) throws IOException {
+                writeHeader(request, out);
+                out.writeString(request.getMessage());
+                out.writeIdentifier(request.getTarget());
+            }
+
+            public ChatRequest read(EventInput in) throws IOException, ClassNotFoundException {
+                Identifier id = in.readIdentifier();
+                long creationTime = in.readLong();
+                ChatRequest request = new ChatRequest(id, in.readString(), in.readIdentifier());
+                request.creationTime = creationTime;
+                return request;
+            }
+        });
+        EventCodecRegistry.register(CLIENT_READY_EVENT, ClientReadyEvent.class, new TypeCodec<ClientReadyEvent>() {
+            public void write(ClientReadyEvent event, EventOutput out) throws IOException {
+                writeHeader(event, out);
+                out.writeString(event.getMessage());
+            }
+
+            public ClientReadyEvent read(EventInput in) throws IOException, ClassNotFoundException {
+                Identifier id = in.readIdentifier();
+                long creationTime = in.readLong();
+                ClientReadyEvent event = new ClientReadyEvent(id, in.readString());
+                event.creationTime = creationTime;
+                return event;
+            }
+        });
+        EventCodecRegistry.register(ROUND_STARTED_MARKER_EVENT, RoundStartedMarkerEvent.class, new TypeCodec<RoundStartedMarkerEvent>() {
+            public void write(RoundStartedMarkerEvent event, EventOutput out) throws IOException {
+                out.writeLong(event.getCreationTime());
+            }
+
+            public RoundStartedMarkerEvent read(EventInput in) throws IOException {
+                RoundStartedMarkerEvent event = new RoundStartedMarkerEvent();
+                event.creationTime = in.readLong();
+                return event;
+            }
+        });
+        EventCodecRegistry.register(ROUND_ENDED_MARKER_EVENT, RoundEndedMarkerEvent.class, new TypeCodec<RoundEndedMarkerEvent>() {
+            public void write(RoundEndedMarkerEvent event, EventOutput out) throws IOException {
+                out.writeLong(event.getCreationTime());
+            }
+
+            public RoundEndedMarkerEvent read(EventInput in) throws IOException {
+                RoundEndedMarkerEvent event = new RoundEndedMarkerEvent();
+                event.creationTime = in.readLong();
+                return event;
+            }
+        });
+        EventCodecRegistry.register(BEGIN_ROUND_REQUEST, BeginRoundRequest.class, new TypeCodec<BeginRoundRequest>() {
+            public void write(BeginRoundRequest request, EventOutput out) throws IOException {
+                writeHeader(request, out);
+            }
+
+            public BeginRoundRequest read(EventInput in) throws IOException, ClassNotFoundException {
+                BeginRoundRequest request = new BeginRoundRequest(in.readIdentifier());
+                request.creationTime = in.readLong();
+                return request;
+            }
+        });
+        EventCodecRegistry.register(END_ROUND_REQUEST, EndRoundRequest.class, new TypeCodec<EndRoundRequest>() {
+            public void write(EndRoundRequest request, EventOutput out) throws IOException {
+                writeHeader(request, out);
+            }
+
+            public EndRoundRequest read(EventInput in) throws IOException, ClassNotFoundException {
+                EndRoundRequest request = new EndRoundRequest(in.readIdentifier());
+                request.creationTime = in.readLong();
+                return request;
+            }
+        });
+    }
+
+    private static void writeHeader(Event event, EventOutput out) throws IOException {
+        out.writeIdentifier(event.getId());
+        out.writeLong(event.getCreationTime());
+    }
+
+}
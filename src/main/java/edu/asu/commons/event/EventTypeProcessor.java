@@ -4,6 +4,7 @@ import edu.asu.commons.command.Command;
 import edu.asu.commons.conf.ExperimentConfiguration;
 import edu.asu.commons.conf.ExperimentRoundParameters;
 import edu.asu.commons.experiment.Experiment;
+import edu.asu.commons.util.Threads;
 
 /**
  * $Id$
@@ -58,11 +59,11 @@ public abstract class EventTypeProcessor<E extends Event> implements EventProces
     }
 
     public void handleWithNewThread(final E event) {
-        new Thread() {
+        Threads.startHandlerThread(new Runnable() {
             public void run() {
                 handle(event);
             }
-        }.start();
+        });
     }
 
     /**
@@ -215,7 +215,14 @@ public abstract class AbstractExperiment<C extends ExperimentConfiguration<C, R>
                                 iterator.remove();
                             }
                         }
-                        getStateMachine().execute(dispatcher);
+                        // hold outbound frames until the tick completes so each client
+                        // receives everything sent during it in a single write.
+                        dispatcher.beginBatch();
+                        try {
+                            getStateMachine().execute(dispatcher);
+                        } finally {
+                            dispatcher.endBatch();
+                        }
                     }
                     catch (Exception exception) {
                         sendFacilitatorMessage("Unhandled exception " + exception.getMessage() + " - continuing.", exception);
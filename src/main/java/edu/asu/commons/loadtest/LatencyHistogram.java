@@ -0,0 +1,98 @@
+package edu.asu.commons.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * $Id$
+ *
+ * Lock free histogram of latencies in microseconds that any number of bots can record into
+ * concurrently. Latencies below 32 microseconds are recorded exactly; larger ones fall into one of 16
+ * buckets per power of two, so a reported percentile is at most 1/16th (about 6%) above the
+ * latencies it stands for.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class LatencyHistogram {
+
+    private final static int EXACT_BUCKETS = 32;
+    private final static int SUB_BUCKET_BITS = 4;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // exponents 5 through 62, i.e., every positive long above the exact buckets.
+    private final static int BUCKETS = EXACT_BUCKETS + (63 - 5) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        buckets.incrementAndGet(bucketOf(micros));
+        count.increment();
+        total.add(micros);
+        long current;
+        while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+        }
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long n = count.sum();
+        return (n == 0) ? 0.0d : (double) total.sum() / n;
+    }
+
+    /**
+     * Returns the smallest bucket bound at or below which the given percentage of the recorded
+     * latencies lie, or 0 if nothing was recorded.
+     */
+    long getPercentile(double percentage) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * Math.min(100.0d, percentage) / 100.0d));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < EXACT_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_BUCKETS + (exponent - 5) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest latency that falls into the given bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < EXACT_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT_BUCKETS) / SUB_BUCKETS + 5;
+        int subBucket = (bucket - EXACT_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+    }
+
+}
@@ -0,0 +1,130 @@
+package edu.asu.commons.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.asu.commons.client.BaseClient;
+import edu.asu.commons.conf.ExperimentConfiguration;
+import edu.asu.commons.conf.ExperimentRoundParameters;
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.ClientReadyEvent;
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.ClientDispatcher;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionRequest;
+
+/**
+ * $Id$
+ *
+ * A scripted client driven by a LoadGenerator. Every chat message it sends carries the time it was
+ * sent, so whichever bot receives the server's relay of it can tell how long the round trip took;
+ * bots share a JVM and therefore a clock.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class LoadBot<C extends ExperimentConfiguration<C, R>, R extends ExperimentRoundParameters<C, R>> extends BaseClient<C, R> {
+
+    final static String LATENCY_MARKER = "load-test ";
+
+    private final LoadGenerator<C, R> generator;
+    private final AtomicLong ticks = new AtomicLong();
+    private final String padding;
+
+    private volatile boolean connected;
+    private volatile boolean disconnecting;
+
+    LoadBot(C configuration, EventChannel channel, ClientDispatcher dispatcher, LoadGenerator<C, R> generator, int messageLength) {
+        super(configuration, channel, dispatcher);
+        this.generator = generator;
+        StringBuilder builder = new StringBuilder(messageLength);
+        for (int i = 0; i < messageLength; i++) {
+            builder.append((char) ('a' + (i % 26)));
+        }
+        this.padding = builder.toString();
+    }
+
+    @Override
+    protected void initializeEventProcessors() {
+        addEventProcessor(new EventTypeProcessor<DisconnectionRequest>(DisconnectionRequest.class) {
+            public void handle(DisconnectionRequest request) {
+                if (connected && !disconnecting) {
+                    connected = false;
+                    generator.connectionDropped(LoadBot.this);
+                }
+            }
+        });
+        addEventProcessor(new EventTypeProcessor<Event>(Event.class, true) {
+            public void handle(Event event) {
+                if (event instanceof DisconnectionRequest || event instanceof ConnectionEvent) {
+                    return;
+                }
+                generator.eventReceived(event, getLatency(event));
+            }
+        });
+    }
+
+    @Override
+    protected void postConnect() {
+        connected = true;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    void sendChatBurst(int size) {
+        for (int i = 0; i < size && connected; i++) {
+            send(new ChatRequest(getId(), LATENCY_MARKER + System.nanoTime() + " " + padding));
+        }
+    }
+
+    void sendReady() {
+        send(new ClientReadyEvent(getId()));
+    }
+
+    void tick(TickAction action) {
+        Event event = action.createEvent(getId(), ticks.incrementAndGet());
+        if (event != null) {
+            send(event);
+        }
+    }
+
+    private void send(Event event) {
+        if (!connected) {
+            return;
+        }
+        transmit(event);
+        generator.eventSent();
+    }
+
+    @Override
+    public void disconnect() {
+        disconnecting = true;
+        if (connected) {
+            connected = false;
+            super.disconnect();
+        }
+        getDispatcher().shutdown();
+    }
+
+    /**
+     * Returns the microseconds since the chat message echoed by the given Event was sent, or -1 if
+     * the Event isn't such an echo.
+     */
+    static long getLatency(Event event) {
+        String message = event.toString();
+        if (message == null || !message.startsWith(LATENCY_MARKER)) {
+            return -1;
+        }
+        int end = message.indexOf(' ', LATENCY_MARKER.length());
+        try {
+            long sent = Long.parseLong(message.substring(LATENCY_MARKER.length(), (end == -1) ? message.length() : end));
+            return (System.nanoTime() - sent) / 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
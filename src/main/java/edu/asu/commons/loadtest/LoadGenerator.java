@@ -0,0 +1,247 @@
+package edu.asu.commons.loadtest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import edu.asu.commons.conf.ExperimentConfiguration;
+import edu.asu.commons.conf.ExperimentRoundParameters;
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.event.EventChannelFactory;
+import edu.asu.commons.net.ClientDispatcher;
+import edu.asu.commons.net.DispatcherConfiguration;
+import edu.asu.commons.net.DispatcherFactory;
+import edu.asu.commons.net.ServerDispatcher;
+
+/**
+ * $Id$
+ *
+ * Drives a running experiment with scripted bots to find out how many participants a server can
+ * take before it breaks. The bots connect to the experiment's server address with client dispatchers
+ * of the experiment's ServerDispatcher.Type; a LOCAL experiment must run in the same JVM. Each bot
+ * sends a burst of chat messages every chat burst interval, a ClientReadyEvent whenever a round
+ * begins and, if a TickAction is set, an experiment specific Event every tick, e.g.,
+ *
+ * <pre>
+ * LoadGenerator&lt;ServerConfiguration, RoundConfiguration&gt; generator = new LoadGenerator&lt;ServerConfiguration, RoundConfiguration&gt;(configuration);
+ * generator.setTickAction(new TickAction() {
+ *     public Event createEvent(Identifier id, long tick) {
+ *         return new ClientMovementRequest(id, Direction.random());
+ *     }
+ * });
+ * for (RoundReport report : generator.run()) { ... }
+ * </pre>
+ *
+ * Traffic is measured separately for each round of the load test (see LoadTestConfiguration),
+ * starting once every bot has connected. Load tests only ever run against localhost.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class LoadGenerator<C extends ExperimentConfiguration<C, R>, R extends ExperimentRoundParameters<C, R>> {
+
+    // how often the server's heap is sampled within a round, in ms.
+    private final static long SAMPLE_INTERVAL = 1000;
+
+    private final static Logger logger = Logger.getLogger(LoadGenerator.class.getName());
+
+    private final C configuration;
+    private final LoadTestConfiguration loadTestConfiguration;
+    private final List<LoadBot<C, R>> bots = new CopyOnWriteArrayList<LoadBot<C, R>>();
+    private final ScheduledExecutorService scheduler;
+
+    private volatile TickAction tickAction;
+    private volatile RoundStatistics statistics = new RoundStatistics();
+    private int failedConnections;
+
+    public LoadGenerator(C configuration) {
+        this(configuration, LoadTestConfiguration.create(configuration));
+    }
+
+    public LoadGenerator(C configuration, LoadTestConfiguration loadTestConfiguration) {
+        if (configuration == null) {
+            throw new NullPointerException("Null experiment configuration disallowed");
+        }
+        this.configuration = configuration;
+        this.loadTestConfiguration = loadTestConfiguration;
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LoadGenerator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void setTickAction(TickAction tickAction) {
+        this.tickAction = tickAction;
+    }
+
+    /**
+     * Connects the bots, measures every round and disconnects the bots again, returning the report of
+     * each round.
+     */
+    public List<RoundReport> run() throws IOException {
+        InetSocketAddress address = configuration.getServerAddress();
+        if (address.isUnresolved()) {
+            throw new IOException("unable to resolve server address " + address);
+        }
+        ServerMonitor.checkLocal(address.getHostString());
+        ServerMonitor monitor = ServerMonitor.create(loadTestConfiguration.getServerJmxUrl());
+        try {
+            connect();
+            List<RoundReport> reports = new ArrayList<RoundReport>();
+            for (int roundNumber = 1; roundNumber <= loadTestConfiguration.getRounds(); roundNumber++) {
+                RoundReport report = runRound(roundNumber, monitor);
+                logger.info(report.toString());
+                reports.add(report);
+            }
+            return reports;
+        } finally {
+            shutdown();
+            monitor.close();
+        }
+    }
+
+    private void connect() {
+        int clients = loadTestConfiguration.getClients();
+        ServerDispatcher.Type type = configuration.getServerDispatcherType();
+        DispatcherConfiguration dispatcherConfiguration = DispatcherConfiguration.create(configuration);
+        logger.info(String.format("connecting %d bots to %s (%s)", clients, configuration.getServerAddress(), type));
+        for (int i = 0; i < clients; i++) {
+            EventChannel channel = EventChannelFactory.create();
+            ClientDispatcher dispatcher = DispatcherFactory.getInstance().createClientDispatcher(channel, type, dispatcherConfiguration);
+            LoadBot<C, R> bot = new LoadBot<C, R>(configuration, channel, dispatcher, this, loadTestConfiguration.getChatMessageLength());
+            try {
+                bot.connect();
+                bots.add(bot);
+                schedule(bot);
+            } catch (RuntimeException e) {
+                failedConnections++;
+                logger.warning("bot " + i + " failed to connect: " + e.getMessage());
+                dispatcher.shutdown();
+            }
+            pause(loadTestConfiguration.getConnectInterval());
+        }
+        logger.info(String.format("%d of %d bots connected", bots.size(), clients));
+    }
+
+    private void schedule(final LoadBot<C, R> bot) {
+        final int burstSize = loadTestConfiguration.getChatBurstSize();
+        long chatBurstInterval = loadTestConfiguration.getChatBurstInterval();
+        if (burstSize > 0 && chatBurstInterval > 0) {
+            // random offsets keep the bots from sending in lockstep.
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    bot.sendChatBurst(burstSize);
+                }
+            }, ThreadLocalRandom.current().nextLong(chatBurstInterval), chatBurstInterval, TimeUnit.MILLISECONDS);
+        }
+        long tickInterval = loadTestConfiguration.getTickInterval();
+        if (tickInterval > 0) {
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    TickAction action = tickAction;
+                    if (action != null && bot.isConnected()) {
+                        bot.tick(action);
+                    }
+                }
+            }, ThreadLocalRandom.current().nextLong(tickInterval), tickInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private RoundReport runRound(int roundNumber, ServerMonitor monitor) {
+        RoundStatistics round = new RoundStatistics();
+        statistics = round;
+        monitor.reset();
+        long start = System.currentTimeMillis();
+        if (loadTestConfiguration.isReadyEventsEnabled()) {
+            for (LoadBot<C, R> bot : bots) {
+                bot.sendReady();
+            }
+        }
+        long end = start + loadTestConfiguration.getRoundDuration();
+        long now;
+        while ((now = System.currentTimeMillis()) < end && !Thread.currentThread().isInterrupted()) {
+            pause(Math.min(SAMPLE_INTERVAL, end - now));
+            monitor.sample();
+        }
+        double cpuLoad = monitor.getCpuLoad();
+        return new RoundReport(roundNumber, System.currentTimeMillis() - start, getConnectedClients(), round.sent.sum(), round.received.sum(),
+                round.dropped.sum(), round.latencies, cpuLoad, monitor.getHeapUsed(), monitor.getPeakHeapUsed());
+    }
+
+    private void shutdown() {
+        scheduler.shutdownNow();
+        for (LoadBot<C, R> bot : bots) {
+            bot.disconnect();
+        }
+        bots.clear();
+    }
+
+    /**
+     * Returns the number of bots currently connected.
+     */
+    public int getConnectedClients() {
+        int connected = 0;
+        for (LoadBot<C, R> bot : bots) {
+            if (bot.isConnected()) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * Returns the number of bots that couldn't connect at all.
+     */
+    public int getFailedConnections() {
+        return failedConnections;
+    }
+
+    void eventSent() {
+        statistics.sent.increment();
+    }
+
+    void eventReceived(Event event, long latency) {
+        RoundStatistics round = statistics;
+        round.received.increment();
+        if (latency >= 0) {
+            round.latencies.record(latency);
+        }
+    }
+
+    void connectionDropped(LoadBot<C, R> bot) {
+        logger.warning("lost connection to the server: " + bot.getId());
+        statistics.dropped.increment();
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RoundStatistics {
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder received = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LatencyHistogram latencies = new LatencyHistogram();
+    }
+
+}
@@ -0,0 +1,136 @@
+package edu.asu.commons.loadtest;
+
+import java.util.Properties;
+
+import edu.asu.commons.conf.ExperimentConfiguration;
+import edu.asu.commons.conf.PropertiesConfiguration;
+
+/**
+ * $Id$
+ *
+ * Parameters for a LoadGenerator run, read from the same Properties as the experiment's server
+ * configuration so a load test can be tuned alongside the experiment it drives, e.g.,
+ *
+ * <pre>
+ * &lt;entry key="load-test-clients"&gt;500&lt;/entry&gt;
+ * &lt;entry key="load-test-rounds"&gt;3&lt;/entry&gt;
+ * &lt;entry key="load-test-round-duration"&gt;60000&lt;/entry&gt;
+ * &lt;entry key="load-test-connect-interval"&gt;5&lt;/entry&gt;
+ * &lt;entry key="load-test-chat-burst-size"&gt;5&lt;/entry&gt;
+ * &lt;entry key="load-test-chat-burst-interval"&gt;10000&lt;/entry&gt;
+ * &lt;entry key="load-test-chat-message-length"&gt;40&lt;/entry&gt;
+ * &lt;entry key="load-test-ready-events"&gt;true&lt;/entry&gt;
+ * &lt;entry key="load-test-tick-interval"&gt;100&lt;/entry&gt;
+ * &lt;entry key="load-test-server-jmx-url"&gt;service:jmx:rmi:///jndi/rmi://localhost:9010/jmxrmi&lt;/entry&gt;
+ * </pre>
+ *
+ * Every parameter has a default, all durations are in milliseconds and an interval of 0 turns the
+ * corresponding events off.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class LoadTestConfiguration extends PropertiesConfiguration {
+
+    private static final long serialVersionUID = 2207469415640338716L;
+
+    public final static int DEFAULT_CLIENTS = 100;
+
+    public final static int DEFAULT_ROUNDS = 3;
+
+    public final static int DEFAULT_ROUND_DURATION = 60000;
+
+    public final static int DEFAULT_CHAT_BURST_SIZE = 5;
+
+    public final static int DEFAULT_CHAT_BURST_INTERVAL = 10000;
+
+    public final static int DEFAULT_CHAT_MESSAGE_LENGTH = 40;
+
+    public LoadTestConfiguration() {
+        super();
+    }
+
+    public LoadTestConfiguration(Properties properties) {
+        super(properties);
+    }
+
+    public static LoadTestConfiguration create(ExperimentConfiguration<?, ?> configuration) {
+        if (configuration == null) {
+            return new LoadTestConfiguration();
+        }
+        return new LoadTestConfiguration(configuration.getProperties());
+    }
+
+    /**
+     * Returns the number of bots to connect.
+     */
+    public int getClients() {
+        return Math.max(1, getIntProperty("load-test-clients", DEFAULT_CLIENTS));
+    }
+
+    /**
+     * Returns the number of rounds to measure. Each round is reported separately.
+     */
+    public int getRounds() {
+        return Math.max(1, getIntProperty("load-test-rounds", DEFAULT_ROUNDS));
+    }
+
+    /**
+     * Returns the length of each measured round.
+     */
+    public long getRoundDuration() {
+        return Math.max(1, getIntProperty("load-test-round-duration", DEFAULT_ROUND_DURATION));
+    }
+
+    /**
+     * Returns the pause between two bot connections, so that the server isn't hit by all of them at
+     * once unless that is what's being tested.
+     */
+    public long getConnectInterval() {
+        return Math.max(0, getIntProperty("load-test-connect-interval", 0));
+    }
+
+    /**
+     * Returns the number of ChatRequests each bot sends back to back.
+     */
+    public int getChatBurstSize() {
+        return Math.max(0, getIntProperty("load-test-chat-burst-size", DEFAULT_CHAT_BURST_SIZE));
+    }
+
+    /**
+     * Returns the time between two chat bursts of the same bot.
+     */
+    public long getChatBurstInterval() {
+        return Math.max(0, getIntProperty("load-test-chat-burst-interval", DEFAULT_CHAT_BURST_INTERVAL));
+    }
+
+    /**
+     * Returns the minimum number of characters in a chat message.
+     */
+    public int getChatMessageLength() {
+        return Math.max(0, getIntProperty("load-test-chat-message-length", DEFAULT_CHAT_MESSAGE_LENGTH));
+    }
+
+    /**
+     * Returns true if every bot should send a ClientReadyEvent when a round begins.
+     */
+    public boolean isReadyEventsEnabled() {
+        return getBooleanProperty("load-test-ready-events", true);
+    }
+
+    /**
+     * Returns the time between two per-tick actions of the same bot.
+     */
+    public long getTickInterval() {
+        return Math.max(0, getIntProperty("load-test-tick-interval", 0));
+    }
+
+    /**
+     * Returns the JMX service URL of the server's JVM, or null if the server runs in the same JVM as
+     * the bots.
+     */
+    public String getServerJmxUrl() {
+        return getStringProperty("load-test-server-jmx-url", null);
+    }
+
+}
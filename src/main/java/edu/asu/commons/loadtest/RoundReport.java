@@ -0,0 +1,157 @@
+package edu.asu.commons.loadtest;
+
+import java.io.Serializable;
+
+/**
+ * $Id$
+ *
+ * What a LoadGenerator measured during a single round. Latencies are in microseconds and measured
+ * end to end, from the moment a bot transmits a chat message until a bot receives the server's
+ * relay of it, so they are only available for experiments that echo chat messages back to clients.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class RoundReport implements Serializable {
+
+    private static final long serialVersionUID = -6049873185574208893L;
+
+    private final int roundNumber;
+    private final long duration;
+    private final int connectedClients;
+    private final long sent;
+    private final long received;
+    private final long dropped;
+    private final long latencySamples;
+    private final double meanLatency;
+    private final long medianLatency;
+    private final long p90Latency;
+    private final long p99Latency;
+    private final long p999Latency;
+    private final long maxLatency;
+    private final double serverCpuLoad;
+    private final long serverHeapUsed;
+    private final long serverPeakHeapUsed;
+
+    RoundReport(int roundNumber, long duration, int connectedClients, long sent, long received, long dropped, LatencyHistogram latencies,
+            double serverCpuLoad, long serverHeapUsed, long serverPeakHeapUsed) {
+        this.roundNumber = roundNumber;
+        this.duration = duration;
+        this.connectedClients = connectedClients;
+        this.sent = sent;
+        this.received = received;
+        this.dropped = dropped;
+        this.latencySamples = latencies.getCount();
+        this.meanLatency = latencies.getMean();
+        this.medianLatency = latencies.getPercentile(50);
+        this.p90Latency = latencies.getPercentile(90);
+        this.p99Latency = latencies.getPercentile(99);
+        this.p999Latency = latencies.getPercentile(99.9);
+        this.maxLatency = latencies.getMax();
+        this.serverCpuLoad = serverCpuLoad;
+        this.serverHeapUsed = serverHeapUsed;
+        this.serverPeakHeapUsed = serverPeakHeapUsed;
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    /**
+     * Returns the length of the round in milliseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the number of bots still connected at the end of the round.
+     */
+    public int getConnectedClients() {
+        return connectedClients;
+    }
+
+    public long getSent() {
+        return sent;
+    }
+
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * Returns the number of bots that lost their connection during the round without asking to
+     * disconnect.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    public double getSendThroughput() {
+        return perSecond(sent);
+    }
+
+    public double getReceiveThroughput() {
+        return perSecond(received);
+    }
+
+    public long getLatencySamples() {
+        return latencySamples;
+    }
+
+    public double getMeanLatency() {
+        return meanLatency;
+    }
+
+    public long getMedianLatency() {
+        return medianLatency;
+    }
+
+    public long getP90Latency() {
+        return p90Latency;
+    }
+
+    public long getP99Latency() {
+        return p99Latency;
+    }
+
+    public long getP999Latency() {
+        return p999Latency;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Returns the share of the server's processors used during the round, from 0 to 1, or -1 if
+     * unavailable.
+     */
+    public double getServerCpuLoad() {
+        return serverCpuLoad;
+    }
+
+    public long getServerHeapUsed() {
+        return serverHeapUsed;
+    }
+
+    public long getServerPeakHeapUsed() {
+        return serverPeakHeapUsed;
+    }
+
+    private double perSecond(long count) {
+        return (duration <= 0) ? 0.0d : count * 1000.0d / duration;
+    }
+
+    @Override
+    public String toString() {
+        String latency = (latencySamples == 0) ? "latency n/a (no chat echoes)"
+                : String.format("latency us p50 %d p90 %d p99 %d p99.9 %d max %d mean %.1f (%d samples)",
+                        medianLatency, p90Latency, p99Latency, p999Latency, maxLatency, meanLatency, latencySamples);
+        String cpu = (serverCpuLoad < 0) ? "n/a" : String.format("%.1f%%", serverCpuLoad * 100);
+        return String.format("round %d: %d clients, %d dropped | sent %d (%.1f/s) received %d (%.1f/s) | %s | server cpu %s heap %d MB (peak %d MB)",
+                roundNumber, connectedClients, dropped, sent, getSendThroughput(), received, getReceiveThroughput(), latency,
+                cpu, serverHeapUsed >> 20, serverPeakHeapUsed >> 20);
+    }
+
+}
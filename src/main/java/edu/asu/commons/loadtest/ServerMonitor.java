@@ -0,0 +1,154 @@
+package edu.asu.commons.loadtest;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * $Id$
+ *
+ * Samples the CPU time and heap of the server's JVM through its platform MXBeans, either directly
+ * when the experiment runs in the same JVM as the bots (in which case the bots' own load is included)
+ * or over a JMX connection to a server started with -Dcom.sun.management.jmxremote.port on the same
+ * host.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class ServerMonitor {
+
+    private final static Logger logger = Logger.getLogger(ServerMonitor.class.getName());
+
+    private final static Pattern JNDI_HOST = Pattern.compile("//([^:/]*)");
+
+    private final MBeanServerConnection connection;
+    private final JMXConnector connector;
+    private final ObjectName operatingSystem;
+    private final ObjectName memory;
+    private final int processors;
+
+    private long lastCpuTime;
+    private long lastSampleTime;
+    private long peakHeapUsed;
+    private long heapUsed;
+
+    private ServerMonitor(MBeanServerConnection connection, JMXConnector connector) throws IOException {
+        this.connection = connection;
+        this.connector = connector;
+        try {
+            this.operatingSystem = new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME);
+            this.memory = new ObjectName(ManagementFactory.MEMORY_MXBEAN_NAME);
+            this.processors = ((Number) connection.getAttribute(operatingSystem, "AvailableProcessors")).intValue();
+        } catch (JMException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns a monitor for the JVM at the given JMX service URL, or for this JVM if the URL is null.
+     */
+    static ServerMonitor create(String serviceUrl) throws IOException {
+        if (serviceUrl == null || serviceUrl.trim().isEmpty()) {
+            return new ServerMonitor(ManagementFactory.getPlatformMBeanServer(), null);
+        }
+        JMXServiceURL url = new JMXServiceURL(serviceUrl.trim());
+        checkLocal(url.getHost());
+        Matcher matcher = JNDI_HOST.matcher(url.getURLPath());
+        if (matcher.find()) {
+            checkLocal(matcher.group(1));
+        }
+        JMXConnector connector = JMXConnectorFactory.connect(url);
+        return new ServerMonitor(connector.getMBeanServerConnection(), connector);
+    }
+
+    static void checkLocal(String host) throws UnknownHostException {
+        if (host == null || host.isEmpty()) {
+            return;
+        }
+        InetAddress address = InetAddress.getByName(host);
+        if (!address.isLoopbackAddress() && !address.isAnyLocalAddress()) {
+            throw new IllegalArgumentException("load tests only run against localhost, not " + host);
+        }
+    }
+
+    /**
+     * Starts a new measurement interval.
+     */
+    synchronized void reset() {
+        lastCpuTime = getProcessCpuTime();
+        lastSampleTime = System.nanoTime();
+        peakHeapUsed = 0;
+        sample();
+    }
+
+    /**
+     * Records the current heap use, keeping track of the peak within the interval.
+     */
+    synchronized void sample() {
+        try {
+            CompositeData usage = (CompositeData) connection.getAttribute(memory, "HeapMemoryUsage");
+            heapUsed = MemoryUsage.from(usage).getUsed();
+            peakHeapUsed = Math.max(peakHeapUsed, heapUsed);
+        } catch (JMException e) {
+            logger.warning("unable to sample server heap: " + e);
+        } catch (IOException e) {
+            logger.warning("unable to sample server heap: " + e);
+        }
+    }
+
+    /**
+     * Returns the share of the server's processors used since the last reset, from 0 to 1, or -1 if
+     * the JVM doesn't report its CPU time.
+     */
+    synchronized double getCpuLoad() {
+        long cpuTime = getProcessCpuTime();
+        long elapsed = System.nanoTime() - lastSampleTime;
+        if (cpuTime < 0 || lastCpuTime < 0 || elapsed <= 0) {
+            return -1;
+        }
+        return Math.min(1.0d, (double) (cpuTime - lastCpuTime) / ((double) elapsed * processors));
+    }
+
+    synchronized long getHeapUsed() {
+        return heapUsed;
+    }
+
+    synchronized long getPeakHeapUsed() {
+        return peakHeapUsed;
+    }
+
+    private long getProcessCpuTime() {
+        try {
+            // only exposed by the com.sun.management extension of the MXBean.
+            return ((Number) connection.getAttribute(operatingSystem, "ProcessCpuTime")).longValue();
+        } catch (JMException e) {
+            return -1;
+        } catch (IOException e) {
+            logger.warning("unable to sample server cpu time: " + e);
+            return -1;
+        }
+    }
+
+    void close() {
+        if (connector != null) {
+            try {
+                connector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package edu.asu.commons.loadtest;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Experiment specific action a LoadGenerator bot takes on every tick, e.g., a movement or harvest
+ * request.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public interface TickAction {
+
+    /**
+     * Returns the Event the bot with the given Identifier should transmit on the given tick, or null
+     * to skip it. Invoked concurrently for different bots.
+     */
+    public Event createEvent(Identifier id, long tick);
+
+}
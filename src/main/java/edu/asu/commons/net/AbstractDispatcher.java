@@ -1,9 +1,16 @@
 package edu.asu.commons.net;
 
+import java.util.logging.Logger;
+
 import edu.asu.commons.event.Event;
 import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.event.EventConstraintChannel;
 import edu.asu.commons.event.EventHandler;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.net.codec.CompressionStatistics;
+import edu.asu.commons.net.codec.EventCodec;
 import edu.asu.commons.net.event.DisconnectionRequest;
+import edu.asu.commons.util.Threads;
 
 /**
  * $Id$
@@ -18,6 +25,10 @@ public abstract class AbstractDispatcher implements Dispatcher {
 
     private final EventChannel channel;
 
+    private final CompressionStatistics compressionStatistics = new CompressionStatistics();
+
+    private final NetworkMetrics metrics = new NetworkMetrics();
+
     public AbstractDispatcher(EventChannel channel) {
         if (channel == null) {
             throw new IllegalArgumentException(
@@ -34,6 +45,54 @@ public abstract class AbstractDispatcher implements Dispatcher {
         return channel;
     }
 
+    /**
+     * Returns the compression ratio and CPU cost of the frames compressed and inflated by this
+     * Dispatcher.
+     */
+    public CompressionStatistics getCompressionStatistics() {
+        return compressionStatistics;
+    }
+
+    /**
+     * Returns the per-connection and per-event-type traffic of this Dispatcher.
+     */
+    public NetworkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns a new EventCodec for frames shared by many connections, recording into the
+     * compression statistics and metrics of this Dispatcher.
+     */
+    protected EventCodec createSharedCodec(DispatcherConfiguration configuration) {
+        return metrics.meter(configuration.createSharedCodec(compressionStatistics));
+    }
+
+    /**
+     * Returns a new EventCodec for a single connection, recording into the compression statistics
+     * and metrics of this Dispatcher.
+     */
+    protected EventCodec createConnectionCodec(DispatcherConfiguration configuration) {
+        return metrics.meter(configuration.createConnectionCodec(compressionStatistics));
+    }
+
+    /**
+     * Runs the asynchronous event handlers of this Dispatcher's channel on virtual threads. Only
+     * this channel is affected, other channels keep using platform threads.
+     */
+    protected void useVirtualHandlerThreads() {
+        if (!Threads.isVirtualThreadSupported()) {
+            Logger.getLogger(getClass().getName()).warning("virtual threads require Java 21 or later, using platform threads instead");
+            return;
+        }
+        if (channel instanceof EventTypeChannel) {
+            ((EventTypeChannel) channel).setVirtualThreads(true);
+        }
+        else if (channel instanceof EventConstraintChannel) {
+            ((EventConstraintChannel) channel).setVirtualThreads(true);
+        }
+    }
+
     protected void requestDisconnection(Identifier id, Throwable cause) {
         getLocalEventHandler().handle(new DisconnectionRequest(id, cause));
     }
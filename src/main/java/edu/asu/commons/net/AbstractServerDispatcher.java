@@ -1,9 +1,16 @@
 package edu.asu.commons.net;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import edu.asu.commons.event.EventChannel;
@@ -31,8 +38,48 @@ public abstract class AbstractServerDispatcher extends AbstractDispatcher
 
     private boolean listening;
 
+    // broadcasts that were serialized once and shared across all recipients.
+    private final AtomicLong broadcastCount = new AtomicLong();
+    private final AtomicLong broadcastBytesSaved = new AtomicLong();
+
+    // outbound batching, 0 if disabled.
+    private final long batchMaxDelay;
+    private final ThreadLocal<BatchDepth> batchDepth = new ThreadLocal<BatchDepth>() {
+        @Override
+        protected BatchDepth initialValue() {
+            return new BatchDepth();
+        }
+    };
+    private final AtomicLong batchCount = new AtomicLong();
+    private boolean batchFlusherStarted;
+
+    // time between heartbeats and before an idle connection is disconnected
+    // in ms, 0 if disabled.
+    private final long heartbeatInterval;
+    private final long idleTimeout;
+    private boolean heartbeatStarted;
+    private final AtomicLong expiredConnectionCount = new AtomicLong();
+
+    private final StationResolver stations;
+
+    // true if the metrics should be registered with the MBeanServer while listening.
+    private final boolean jmxMetrics;
+
+    // shared by every periodic task of this dispatcher (batch flushes and
+    // heartbeats), created with the first task.
+    private ScheduledExecutorService timer;
+
     public AbstractServerDispatcher(EventChannel channel) {
+        this(channel, new DispatcherConfiguration());
+    }
+
+    public AbstractServerDispatcher(EventChannel channel, DispatcherConfiguration configuration) {
         super(channel);
+        batchMaxDelay = (configuration.isOutboundBatchingEnabled()) ? configuration.getOutboundBatchMaxDelay() : 0;
+        heartbeatInterval = configuration.getHeartbeatInterval();
+        idleTimeout = configuration.getIdleTimeout();
+        stations = StationResolver.create(configuration);
+        jmxMetrics = configuration.isJmxMetricsEnabled();
         channel.add(this, new EventTypeProcessor<DisconnectionRequest>(DisconnectionRequest.class) {
             public void handle(DisconnectionRequest request) {
                 logger.warning("disconnecting: " + request.getId() + request.getException());
@@ -54,6 +101,40 @@ public abstract class AbstractServerDispatcher extends AbstractDispatcher
 
     protected abstract void cleanup();
 
+    /**
+     * Flushes every connection holding frames written during a batch. May be invoked by any thread.
+     */
+    protected abstract void flushHeldFrames();
+
+    /**
+     * Invoked by the dispatcher thread for every connection whose disconnection has been requested,
+     * e.g., after an IOException or an idle timeout. Disconnects it unless overridden, e.g., to give
+     * the client a chance to resume its session.
+     */
+    protected void connectionLost(Identifier id) {
+        disconnect(id);
+    }
+
+    /**
+     * Invoked by the dispatcher's timer every heartbeat interval once the dispatcher is listening.
+     * Subclasses should send a PING to each of their connections and disconnect the ones that
+     * isExpired() reports as dead.
+     */
+    protected void heartbeat() {
+    }
+
+    /**
+     * Creates the Identifier of a newly accepted connection from its numeric addresses and assigns it
+     * a station number without any blocking DNS lookups.
+     */
+    protected SocketIdentifier createIdentifier(Socket socket) {
+        return stations.resolve(new SocketIdentifier(socket));
+    }
+
+    protected SocketIdentifier createIdentifier(InetSocketAddress localAddress, InetSocketAddress remoteAddress) {
+        return stations.resolve(new SocketIdentifier(localAddress, remoteAddress));
+    }
+
     protected Logger getLogger() {
         return logger;
     }
@@ -89,6 +170,13 @@ public abstract class AbstractServerDispatcher extends AbstractDispatcher
         // clear all data structures.
         disconnectedClients.clear();
         getLocalEventChannel().remove(this);
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+        batchFlusherStarted = false;
+        heartbeatStarted = false;
+        getMetrics().unregister();
         // and finally perform custom subclass cleanup.
         cleanup();
     }
@@ -112,7 +200,11 @@ public abstract class AbstractServerDispatcher extends AbstractDispatcher
                     shutdown();
                     return;
                 }
+                if (jmxMetrics) {
+                    getMetrics().register(AbstractServerDispatcher.this.getClass().getSimpleName() + "-" + port);
+                }
                 listening = true;
+                startHeartbeat();
                 while (listening) {
                     try {
                         processIncomingConnections();
@@ -132,12 +224,168 @@ public abstract class AbstractServerDispatcher extends AbstractDispatcher
         return listening;
     }
 
+    /**
+     * Records a frame of the given size that was encoded once and written to the given number of
+     * recipients.
+     */
+    protected void recordBroadcast(int recipients, int frameSize) {
+        broadcastCount.incrementAndGet();
+        if (recipients > 1) {
+            broadcastBytesSaved.addAndGet((long) (recipients - 1) * frameSize);
+        }
+    }
+
+    /**
+     * Returns the number of broadcast and multicast Events that were encoded once and shared across
+     * their recipients.
+     */
+    public long getBroadcastCount() {
+        return broadcastCount.get();
+    }
+
+    /**
+     * Returns the number of bytes that did not have to be serialized thanks to shared broadcast frames.
+     */
+    public long getBroadcastBytesSaved() {
+        return broadcastBytesSaved.get();
+    }
+
+    public void beginBatch() {
+        if (batchMaxDelay == 0) {
+            return;
+        }
+        if (batchDepth.get().depth++ == 0) {
+            batchCount.incrementAndGet();
+            startBatchFlusher();
+        }
+    }
+
+    public void endBatch() {
+        if (batchMaxDelay == 0) {
+            return;
+        }
+        BatchDepth current = batchDepth.get();
+        if (current.depth > 0 && --current.depth == 0) {
+            flushHeldFrames();
+        }
+    }
+
+    /**
+     * Returns true if frames written by the calling thread should be held until its batch ends.
+     */
+    protected boolean isBatching() {
+        return batchMaxDelay > 0 && batchDepth.get().depth > 0;
+    }
+
+    /**
+     * Returns the number of batches that have been started.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    private synchronized void startBatchFlusher() {
+        if (batchFlusherStarted) {
+            return;
+        }
+        batchFlusherStarted = true;
+        getTimer().scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flushHeldFrames();
+                } catch (RuntimeException e) {
+                    logger.severe("Unable to flush batched frames: " + e);
+                }
+            }
+        }, batchMaxDelay, batchMaxDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts sending heartbeats unless they are disabled or have already been started. Invoked once
+     * the dispatcher is listening, dispatchers that also make outbound connections may invoke it
+     * earlier.
+     */
+    protected synchronized void startHeartbeat() {
+        if (heartbeatInterval == 0 || heartbeatStarted) {
+            return;
+        }
+        heartbeatStarted = true;
+        getTimer().scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    heartbeat();
+                } catch (RuntimeException e) {
+                    logger.severe("Unable to send heartbeats: " + e);
+                }
+            }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    // must be invoked while holding this dispatcher's lock.
+    private ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DispatcherTimer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * Returns true if the connection with the given Heartbeat hasn't been heard from within the idle
+     * timeout, requesting its disconnection the first time it is found to be dead.
+     */
+    boolean isExpired(Identifier id, Heartbeat heartbeat, long now) {
+        if (heartbeat.isExpired()) {
+            return true;
+        }
+        if (!heartbeat.isIdle(idleTimeout, now)) {
+            return false;
+        }
+        if (heartbeat.expire()) {
+            expiredConnectionCount.incrementAndGet();
+            requestDisconnection(id, new IOException(String.format("nothing read from %s in the last %d ms", id, idleTimeout)));
+        }
+        return true;
+    }
+
+    /**
+     * Returns the time in milliseconds between heartbeats, 0 if they are disabled.
+     */
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Returns the time in milliseconds after which an idle connection is disconnected, 0 if idle
+     * connections are never disconnected.
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Returns the number of connections that were disconnected because they had been idle for longer
+     * than the idle timeout.
+     */
+    public long getExpiredConnectionCount() {
+        return expiredConnectionCount.get();
+    }
+
+    private static class BatchDepth {
+        private int depth;
+    }
+
     private void performConnectionMaintenance() {
         synchronized (disconnectedClients) {
             for (Iterator<Identifier> iter = disconnectedClients.iterator(); iter.hasNext();) {
                 Identifier id = iter.next();
                 logger.info("Disconnecting client: " + id);
-                disconnect(id);
+                connectionLost(id);
                 iter.remove();
             }
         }
@@ -0,0 +1,136 @@
+package edu.asu.commons.net;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * $Id$
+ *
+ * Size-classed pool of direct ByteBuffers used to frame outbound Events without allocating a new
+ * buffer per transmission. Requests are rounded up to the next power of two between
+ * MIN_BUFFER_SIZE and MAX_BUFFER_SIZE; larger requests are allocated on the heap and never pooled.
+ * Each size class retains at most a fixed amount of memory so a burst of large frames doesn't pin
+ * direct memory forever.
+ * <p>
+ * Safe for concurrent use, acquire() is typically invoked by the experiment thread and release() by
+ * the selector threads once a frame has been written.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class ByteBufferPool {
+
+    final static int MIN_BUFFER_SIZE = 16;
+    final static int MAX_BUFFER_SIZE = 1 << 20;
+
+    // upper bound on the memory retained by each size class.
+    private final static int RETAINED_BYTES_PER_SIZE_CLASS = 1 << 20;
+    private final static int MAX_RETAINED_BUFFERS_PER_SIZE_CLASS = 1024;
+
+    private final static int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private final static int NUMBER_OF_SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SHIFT + 1;
+
+    private final boolean enabled;
+    private final Queue<ByteBuffer>[] pools;
+    private final AtomicInteger[] pooledCounts;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    ByteBufferPool(boolean enabled) {
+        this.enabled = enabled;
+        pools = (Queue<ByteBuffer>[]) new Queue<?>[NUMBER_OF_SIZE_CLASSES];
+        pooledCounts = new AtomicInteger[NUMBER_OF_SIZE_CLASSES];
+        for (int i = 0; i < NUMBER_OF_SIZE_CLASSES; i++) {
+            pools[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            pooledCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Returns a cleared ByteBuffer whose limit is set to the requested capacity.
+     */
+    ByteBuffer acquire(int capacity) {
+        int sizeClass = getSizeClass(capacity);
+        if (!enabled || sizeClass < 0) {
+            misses.incrementAndGet();
+            return ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer buffer = pools[sizeClass].poll();
+        if (buffer == null) {
+            misses.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(getSize(sizeClass));
+        }
+        else {
+            pooledCounts[sizeClass].decrementAndGet();
+            hits.incrementAndGet();
+        }
+        buffer.clear();
+        buffer.limit(capacity);
+        return buffer;
+    }
+
+    /**
+     * Returns the given buffer to the pool. Buffers that weren't handed out by this pool, or that
+     * would exceed the size class's retention limit, are left to the garbage collector.
+     */
+    void release(ByteBuffer buffer) {
+        if (!enabled || buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass < 0 || getSize(sizeClass) != capacity) {
+            return;
+        }
+        if (pooledCounts[sizeClass].incrementAndGet() > getMaxRetained(sizeClass)) {
+            pooledCounts[sizeClass].decrementAndGet();
+            return;
+        }
+        pools[sizeClass].offer(buffer);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the index of the smallest size class that can hold the given capacity, or -1 if
+     * the capacity exceeds MAX_BUFFER_SIZE.
+     */
+    static int getSizeClass(int capacity) {
+        if (capacity > MAX_BUFFER_SIZE) {
+            return -1;
+        }
+        if (capacity <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+        // ceil(log2(capacity)) - log2(MIN_BUFFER_SIZE)
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+
+    static int getSize(int sizeClass) {
+        return MIN_BUFFER_SIZE << sizeClass;
+    }
+
+    private static int getMaxRetained(int sizeClass) {
+        return Math.max(2, Math.min(MAX_RETAINED_BUFFERS_PER_SIZE_CLASS, RETAINED_BYTES_PER_SIZE_CLASS / getSize(sizeClass)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("buffer pool [enabled: %s, hits: %d, misses: %d]", enabled, getHits(), getMisses());
+    }
+}
@@ -0,0 +1,234 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Promise;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionEvent;
+import edu.asu.commons.net.event.DisconnectionRequest;
+
+/**
+ * $Id$
+ *
+ * Client dispatcher built on Netty, wire compatible with the NettyDispatcher, NioDispatcher and
+ * ServerSocketDispatcher. A single event loop thread performs all reads and writes for the
+ * connection, answers the server's PINGs and, once the server has shown that it sends heartbeats,
+ * closes the connection if the server goes silent for longer than the idle timeout.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class ClientNettyDispatcher extends AbstractDispatcher implements ClientDispatcher {
+
+    private final static Logger logger = Logger.getLogger(ClientNettyDispatcher.class.getName());
+
+    private final DispatcherConfiguration configuration;
+
+    private EventLoopGroup group;
+    private volatile NettyConnection connection;
+
+    public ClientNettyDispatcher(EventChannel channel) {
+        this(channel, new DispatcherConfiguration());
+    }
+
+    public ClientNettyDispatcher(EventChannel channel, DispatcherConfiguration configuration) {
+        super(channel);
+        this.configuration = configuration;
+        channel.add(this, new EventTypeProcessor<DisconnectionRequest>(DisconnectionRequest.class) {
+            public void handle(DisconnectionRequest event) {
+                disconnect(event.getId());
+            }
+        });
+    }
+
+    /**
+     * Connects to the given address and blocks until the server has assigned this client its
+     * Identifier.
+     */
+    public Identifier connect(InetSocketAddress address) {
+        group = new NioEventLoopGroup(1);
+        final ClientHandler handler = new ClientHandler(createConnectionCodec(configuration),
+                group.next().<Identifier> newPromise());
+        final int maxFrameSize = configuration.getMaxFrameSize();
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.TCP_NODELAY, Boolean.TRUE)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        NettyConnection.initPipeline(channel, maxFrameSize, handler);
+                    }
+                });
+        ChannelFuture future = bootstrap.connect(address).awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            logger.log(Level.SEVERE, "connection refused: " + future.cause(), future.cause());
+            shutdown();
+            return null;
+        }
+        try {
+            // block while we wait for the server to assign an Identifier to us.
+            return handler.handshake.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Could not read connection event: " + e.getCause(), e.getCause());
+        }
+        shutdown();
+        return null;
+    }
+
+    public void disconnect(Identifier id) {
+        NettyConnection current = connection;
+        if (current != null && current.getId().equals(id)) {
+            current.close();
+        }
+    }
+
+    public void transmit(Event event) {
+        NettyConnection current = connection;
+        if (current == null) {
+            throw new IllegalStateException("Not connected, unable to transmit " + event);
+        }
+        EventCodec codec = current.getCodec();
+        // frames continuing the codec's object stream must be written in the
+        // order they were encoded.
+        synchronized (codec) {
+            try {
+                current.write(current.encode(event), true);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Unable to serialize event " + event, e);
+                requestDisconnection(current.getId(), e);
+            }
+        }
+    }
+
+    public void shutdown() {
+        NettyConnection current = connection;
+        if (current != null) {
+            current.close();
+        }
+        if (group != null) {
+            group.shutdownGracefully();
+            group = null;
+        }
+    }
+
+    private class ClientHandler extends ChannelInboundHandlerAdapter {
+
+        private final EventCodec codec;
+        // completed with our Identifier once the server's ConnectionEvent arrives.
+        private final Promise<Identifier> handshake;
+
+        ClientHandler(EventCodec codec, Promise<Identifier> handshake) {
+            this.codec = codec;
+            this.handshake = handshake;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext context, Object message) {
+            ByteBuf frame = (ByteBuf) message;
+            try {
+                NettyConnection current = connection;
+                if (current != null) {
+                    current.getHeartbeat().touch();
+                    current.recordReceived(frame);
+                }
+                if (NettyConnection.isControlFrame(frame)) {
+                    // PINGs may precede the ConnectionEvent, there's no one to answer to yet.
+                    if (current != null) {
+                        current.receiveControlFrame(frame);
+                    }
+                    return;
+                }
+                if (current == null) {
+                    // the first frame is always the ConnectionEvent carrying our Identifier.
+                    ConnectionEvent event = (ConnectionEvent) NettyConnection.decode(codec, frame, null);
+                    connection = new NettyConnection(event.getId(), context.channel(), codec);
+                    getMetrics().connected(event.getId(), connection.getMetrics());
+                    scheduleIdleCheck(connection);
+                    // dispatched before anything else is read off the channel.
+                    getLocalEventHandler().handle(event);
+                    handshake.trySuccess(event.getId());
+                    return;
+                }
+                getLocalEventHandler().handle(current.decode(frame, current.getId()));
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Unable to read frame from the server", e);
+                if (!handshake.tryFailure(e)) {
+                    requestDisconnection(connection.getId(), e);
+                }
+            } finally {
+                ReferenceCountUtil.release(frame);
+            }
+        }
+
+        /**
+         * Closes the connection from its own event loop once the server, having sent at least one
+         * PING, hasn't been heard from within the idle timeout.
+         */
+        private void scheduleIdleCheck(final NettyConnection current) {
+            final long idleTimeout = configuration.getIdleTimeout();
+            if (idleTimeout == 0) {
+                return;
+            }
+            current.getChannel().eventLoop().scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    Heartbeat heartbeat = current.getHeartbeat();
+                    if (heartbeat.isPinged() && heartbeat.isIdle(idleTimeout, System.nanoTime()) && heartbeat.expire()) {
+                        logger.warning("nothing read from the server in the last " + idleTimeout + " ms, disconnecting");
+                        current.close();
+                    }
+                }
+            }, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext context) {
+            NettyConnection current = connection;
+            if (current == null) {
+                handshake.tryFailure(new IOException("connection closed before the server assigned an Identifier"));
+                return;
+            }
+            getMetrics().disconnected(current.getId());
+            getLocalEventHandler().handle(new DisconnectionEvent(current.getId()));
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+            if (cause instanceof TooLongFrameException) {
+                // the decoder has skipped a frame that doesn't continue the object
+                // stream, so the connection can be kept.
+                logger.warning("skipped frame larger than the max frame size: " + cause);
+                return;
+            }
+            logger.log(Level.SEVERE, "error on connection to the server, closing it", cause);
+            context.close();
+        }
+    }
+}
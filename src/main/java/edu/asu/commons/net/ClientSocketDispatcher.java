@@ -15,19 +15,59 @@ import edu.asu.commons.net.event.DisconnectionRequest;
  * 
  * The client dispatcher only implements the connecting part of the network business.
  * 
+ * If a session-grace-period has been configured the client opens a resumable session, and when its
+ * connection is lost it keeps reconnecting until the grace period has passed, resuming the session
+ * with the same Identifier and receiving the Events it missed in the meantime. Events transmitted by
+ * the client while it is reconnecting are lost.
+ * 
  * 
  * @author Allen Lee
  * @version $Revision$
  */
 public class ClientSocketDispatcher extends AbstractDispatcher implements ClientDispatcher {
 
+    // time in ms between attempts to reconnect while resuming a session.
+    private final static long RESUME_RETRY_INTERVAL = 500;
+
     private SocketDispatcherWorker worker;
 
+    private final DispatcherConfiguration configuration;
+
+    private final boolean virtualThread;
+
+    // time in ms to keep trying to resume a lost session, 0 if sessions are disabled.
+    private final long sessionGracePeriod;
+    private InetSocketAddress address;
+    // serializes session resumption attempts.
+    private final Object resumeLock = new Object();
+    // set once the client has been disconnected or shut down on purpose.
+    private volatile boolean closed;
+
     public ClientSocketDispatcher(EventChannel channel) {
+        this(channel, new DispatcherConfiguration());
+    }
+
+    public ClientSocketDispatcher(EventChannel channel, DispatcherConfiguration configuration) {
+        this(channel, configuration, false);
+    }
+
+    /**
+     * Creates a client dispatcher whose reader loop and channel event handlers run on virtual threads
+     * if virtualThread is true and the JVM supports them.
+     */
+    public ClientSocketDispatcher(EventChannel channel, DispatcherConfiguration configuration, boolean virtualThread) {
         super(channel);
+        this.configuration = configuration;
+        this.virtualThread = virtualThread;
+        if (virtualThread) {
+            useVirtualHandlerThreads();
+        }
+        this.sessionGracePeriod = configuration.getSessionGracePeriod();
         channel.add(this, new EventTypeProcessor<DisconnectionRequest>(DisconnectionRequest.class) {
             public void handle(DisconnectionRequest event) {
-                disconnect(event.getId());
+                if (!resume(event.getId())) {
+                    disconnect(event.getId());
+                }
             }
         });
     }
@@ -45,13 +85,21 @@ public class ClientSocketDispatcher extends AbstractDispatcher implements Client
         try {
             Socket socket = new Socket();
             socket.connect(inetSocketAddress);
+            address = inetSocketAddress;
             // block while we wait for the ServerSocketDispatcher to assign an
-            // Identifier to us. The construction of an ObjectInputStream blocks.
-            worker = new SocketDispatcherWorker(this, socket);
-            ConnectionEvent event = (ConnectionEvent) worker.readEvent();
+            // Identifier to us, readHandshake() blocks until the ConnectionEvent arrives.
+            worker = new SocketDispatcherWorker(this, socket, createConnectionCodec(configuration),
+                    configuration.getMaxFrameSize(), virtualThread);
+            if (sessionGracePeriod > 0) {
+                // ask for a new session.
+                worker.write(EventFrame.control(Session.SESSION_TYPE_ID, 0L, 0L));
+            }
+            ConnectionEvent event = (ConnectionEvent) worker.readHandshake();
             assert event instanceof ConnectionEvent;
             Identifier id = event.getId();
             worker.setId(id);
+            worker.setIdleTimeout(configuration.getIdleTimeout());
+            getMetrics().connected(id, worker.getMetrics());
             worker.start();
             getLocalEventHandler().handle(event);
             return id;
@@ -65,9 +113,82 @@ public class ClientSocketDispatcher extends AbstractDispatcher implements Client
         return null;
     }
 
+    /**
+     * Reconnects and resumes the session of the lost connection with the given Identifier, returning
+     * false if there is no session to resume or the server refused to resume it.
+     */
+    private boolean resume(Identifier id) {
+        synchronized (resumeLock) {
+            SocketDispatcherWorker lost = worker;
+            if (sessionGracePeriod == 0 || closed || lost == null || lost.getSessionToken() == 0 || !lost.id().equals(id)) {
+                return false;
+            }
+            if (lost.isRunning()) {
+                // a stale request from a connection that has already been resumed.
+                return true;
+            }
+            info("connection to " + address + " lost, resuming session " + id);
+            long deadline = System.currentTimeMillis() + sessionGracePeriod;
+            while (!closed && !Thread.currentThread().isInterrupted() && System.currentTimeMillis() < deadline) {
+                Socket socket = new Socket();
+                try {
+                    socket.connect(address, (int) Math.max(1, deadline - System.currentTimeMillis()));
+                } catch (IOException e) {
+                    closeQuietly(socket);
+                    sleep(RESUME_RETRY_INTERVAL);
+                    continue;
+                }
+                try {
+                    SocketDispatcherWorker resumed = new SocketDispatcherWorker(this, socket, id,
+                            createConnectionCodec(configuration), configuration.getMaxFrameSize(), virtualThread);
+                    resumed.write(EventFrame.control(Session.SESSION_TYPE_ID, lost.getSessionToken(), lost.getReceivedFrames()));
+                    // the server closes the connection if it won't resume the session.
+                    Event event = resumed.readHandshake();
+                    if (!(event instanceof ConnectionEvent) || !id.equals(event.getId())) {
+                        resumed.stop();
+                        break;
+                    }
+                    resumed.setReceivedFrames(lost.getReceivedFrames());
+                    resumed.setIdleTimeout(configuration.getIdleTimeout());
+                    worker = resumed;
+                    getMetrics().connected(id, resumed.getMetrics());
+                    resumed.start();
+                    info("resumed session " + id);
+                    return true;
+                } catch (IOException e) {
+                    closeQuietly(socket);
+                    error("unable to resume session " + id + ": " + e);
+                    break;
+                } catch (ClassNotFoundException e) {
+                    closeQuietly(socket);
+                    error("Unable to find Event class: " + e);
+                    break;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public void disconnect(Identifier id) {
         if (worker.id().equals(id)) {
+            closed = true;
             worker.stop();
+            getMetrics().disconnected(id);
         }
     }
 
@@ -76,6 +197,8 @@ public class ClientSocketDispatcher extends AbstractDispatcher implements Client
     }
 
     public void shutdown() {
+        closed = true;
         worker.stop();
+        getMetrics().disconnected(worker.id());
     }
 }
@@ -0,0 +1,85 @@
+package edu.asu.commons.net;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * $Id$
+ *
+ * Traffic counters of a single connection, owned by the connection itself and attached to the
+ * NetworkMetrics of its Dispatcher once the connection has been assigned its Identifier. Every frame
+ * is counted, including heartbeat control frames, with its length header: outbound frames when they
+ * are queued on (or written to) the connection, inbound frames as they are read.
+ * <p>
+ * The counters are LongAdders so the dispatcher threads recording into them never contend with
+ * each other; the outbound queue depth is read from the connection whenever it is asked for.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public final class ConnectionMetrics implements ConnectionMetricsMBean {
+
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final IntSupplier queueDepth;
+
+    private volatile Identifier id;
+
+    ConnectionMetrics(IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    void setId(Identifier id) {
+        this.id = id;
+    }
+
+    void recordSent(int bytes) {
+        messagesSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    void recordReceived(int bytes) {
+        messagesReceived.increment();
+        bytesReceived.add(bytes);
+    }
+
+    public Identifier getIdentifier() {
+        return id;
+    }
+
+    public String getId() {
+        return String.valueOf(id);
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Returns the number of frames waiting to be written to the connection.
+     */
+    public int getOutboundQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [sent %d messages / %d bytes, received %d messages / %d bytes, queued frames: %d]",
+                id, getMessagesSent(), getBytesSent(), getMessagesReceived(), getBytesReceived(), getOutboundQueueDepth());
+    }
+
+}
@@ -0,0 +1,26 @@
+package edu.asu.commons.net;
+
+/**
+ * $Id$
+ *
+ * Management interface of the ConnectionMetrics of a single connection, registered below the
+ * NetworkMetrics of its Dispatcher with a connection key holding its Identifier.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public interface ConnectionMetricsMBean {
+
+    public String getId();
+
+    public long getMessagesSent();
+
+    public long getMessagesReceived();
+
+    public long getBytesSent();
+
+    public long getBytesReceived();
+
+    public int getOutboundQueueDepth();
+
+}
@@ -0,0 +1,122 @@
+package edu.asu.commons.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * $Id$
+ *
+ * Thread-safe registry of the connections of a server dispatcher, keyed by Identifier.
+ * <p>
+ * Connections are registered by accept threads, removed by the disconnect path and looked up or
+ * iterated by any thread transmitting Events. Lookups by Identifier go through a ConcurrentHashMap
+ * and never block.
+ * <p>
+ * snapshot() returns an immutable list of the connections registered at that point in time, in the
+ * order they were registered. It is copied whenever a connection is registered or removed, so
+ * broadcasts iterate a consistent set of connections without copying or locking and are never
+ * affected by concurrent connection churn.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class ConnectionRegistry<C> {
+
+    private final Map<Identifier, C> connections = new ConcurrentHashMap<Identifier, C>();
+
+    // guards all mutations, reads only ever touch the map and the volatile snapshot.
+    private final Object lock = new Object();
+
+    // copy-on-write, replaced wholesale while holding the lock.
+    private volatile List<C> snapshot = Collections.emptyList();
+
+    /**
+     * Registers the connection for the given Identifier, replacing any connection already registered
+     * for it in place.
+     */
+    void register(Identifier id, C connection) {
+        synchronized (lock) {
+            C existing = connections.put(id, connection);
+            List<C> updated = new ArrayList<C>(snapshot);
+            int index = (existing == null) ? -1 : indexOf(updated, existing);
+            if (index < 0) {
+                updated.add(connection);
+            }
+            else {
+                updated.set(index, connection);
+            }
+            snapshot = Collections.unmodifiableList(updated);
+        }
+    }
+
+    /**
+     * Removes the connection registered for the given Identifier, returning it or null if there was
+     * none.
+     */
+    C remove(Identifier id) {
+        if (id == null) {
+            return null;
+        }
+        synchronized (lock) {
+            C connection = connections.remove(id);
+            if (connection == null) {
+                return null;
+            }
+            List<C> updated = new ArrayList<C>(snapshot);
+            updated.remove(indexOf(updated, connection));
+            snapshot = Collections.unmodifiableList(updated);
+            return connection;
+        }
+    }
+
+    /**
+     * Removes and returns every registered connection.
+     */
+    List<C> clear() {
+        synchronized (lock) {
+            List<C> removed = snapshot;
+            connections.clear();
+            snapshot = Collections.emptyList();
+            return removed;
+        }
+    }
+
+    C get(Identifier id) {
+        if (id == null) {
+            return null;
+        }
+        return connections.get(id);
+    }
+
+    boolean contains(Identifier id) {
+        return id != null && connections.containsKey(id);
+    }
+
+    /**
+     * Returns an immutable list of the connections registered at the time of invocation.
+     */
+    List<C> snapshot() {
+        return snapshot;
+    }
+
+    int size() {
+        return snapshot.size();
+    }
+
+    boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    // connections are compared by identity, whatever their equals() does.
+    private static <C> int indexOf(List<C> connections, C connection) {
+        for (int i = 0; i < connections.size(); i++) {
+            if (connections.get(i) == connection) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,269 @@
+package edu.asu.commons.net;
+
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+import edu.asu.commons.conf.ExperimentConfiguration;
+import edu.asu.commons.conf.PropertiesConfiguration;
+import edu.asu.commons.net.codec.CompressingCodec;
+import edu.asu.commons.net.codec.CompressionStatistics;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+import edu.asu.commons.net.codec.ObjectStreamCodec;
+
+/**
+ * $Id$
+ *
+ * Network tuning parameters for the Dispatchers. These are read from the same Properties as the
+ * experiment's server configuration (i.e., server.xml) so they can be adjusted per experiment, e.g.,
+ *
+ * <pre>
+ * &lt;entry key="outbound-queue-high-water-mark"&gt;2048&lt;/entry&gt;
+ * &lt;entry key="outbound-overflow-policy"&gt;DROP_NEWEST&lt;/entry&gt;
+ * &lt;entry key="max-frame-size"&gt;4194304&lt;/entry&gt;
+ * &lt;entry key="wire-codec"&gt;binary&lt;/entry&gt;
+ * &lt;entry key="compression-threshold"&gt;16384&lt;/entry&gt;
+ * &lt;entry key="outbound-batching"&gt;true&lt;/entry&gt;
+ * &lt;entry key="heartbeat-interval"&gt;2000&lt;/entry&gt;
+ * &lt;entry key="idle-timeout"&gt;6000&lt;/entry&gt;
+ * &lt;entry key="session-grace-period"&gt;30000&lt;/entry&gt;
+ * &lt;entry key="station-map"&gt;conf/stations.txt&lt;/entry&gt;
+ * &lt;entry key="local-network-dispatcher-type"&gt;SOCKET&lt;/entry&gt;
+ * &lt;entry key="jmx-metrics"&gt;false&lt;/entry&gt;
+ * </pre>
+ *
+ * Every parameter has a sensible default so an empty DispatcherConfiguration is always valid.
+ * Heartbeats and idle timeouts are off by default; enable them by setting heartbeat-interval and
+ * idle-timeout to a few seconds, with the idle timeout a few heartbeat intervals long, as above.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class DispatcherConfiguration extends PropertiesConfiguration {
+
+    private static final long serialVersionUID = -3514727163409374557L;
+
+    public final static int DEFAULT_OUTBOUND_QUEUE_HIGH_WATER_MARK = 8192;
+
+    public final static int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    public final static int DEFAULT_OBJECT_STREAM_RESET_INTERVAL = 1;
+
+    public final static int DEFAULT_COMPRESSION_THRESHOLD = 32 * 1024;
+
+    public final static long DEFAULT_OUTBOUND_BATCH_MAX_DELAY = 10;
+
+    // heartbeats and idle timeouts are disabled unless configured.
+    public final static long DEFAULT_HEARTBEAT_INTERVAL = 0;
+
+    public final static long DEFAULT_IDLE_TIMEOUT = 0;
+
+    public final static int DEFAULT_SESSION_REPLAY_BUFFER_SIZE = 1024;
+
+    public DispatcherConfiguration() {
+        super();
+    }
+
+    public DispatcherConfiguration(Properties properties) {
+        super(properties);
+    }
+
+    public static DispatcherConfiguration create(ExperimentConfiguration<?, ?> configuration) {
+        if (configuration == null) {
+            return new DispatcherConfiguration();
+        }
+        return new DispatcherConfiguration(configuration.getProperties());
+    }
+
+    /**
+     * Returns the maximum number of frames that may be queued for a single connection before the
+     * outbound overflow policy kicks in.
+     */
+    public int getOutboundQueueHighWaterMark() {
+        return Math.max(1, getIntProperty("outbound-queue-high-water-mark", DEFAULT_OUTBOUND_QUEUE_HIGH_WATER_MARK));
+    }
+
+    /**
+     * Returns the policy applied to a connection whose outbound queue has reached the high water mark.
+     */
+    public OverflowPolicy getOutboundOverflowPolicy() {
+        return OverflowPolicy.fromString(getStringProperty("outbound-overflow-policy", OverflowPolicy.DISCONNECT.name()));
+    }
+
+    /**
+     * Returns true if outbound frames should be built from pooled direct ByteBuffers instead of
+     * allocating a new buffer per transmission.
+     */
+    public boolean isBufferPoolEnabled() {
+        return getBooleanProperty("buffer-pool-enabled", true);
+    }
+
+    /**
+     * Returns the size in bytes of the largest inbound frame a Dispatcher will accept. Larger frames
+     * are skipped instead of being buffered, except for frames continuing a connection's object
+     * stream, which can't be skipped and close the connection instead.
+     */
+    public int getMaxFrameSize() {
+        return Math.max(1, getIntProperty("max-frame-size", DEFAULT_MAX_FRAME_SIZE));
+    }
+
+    /**
+     * Returns how new connections are spread across a server's reactor (selector) threads.
+     */
+    public ReactorGroup.Assignment getReactorAssignment() {
+        return ReactorGroup.Assignment.fromString(getStringProperty("reactor-assignment", ReactorGroup.Assignment.LEAST_LOADED.name()));
+    }
+
+    /**
+     * Returns the EventCodec used to encode outbound Events: "java" (the default) for Java
+     * serialization, "binary" for the registered binary TypeCodecs, or the fully qualified name of an
+     * EventCodec implementation.
+     */
+    public EventCodec getWireCodec() {
+        return EventCodecRegistry.getCodec(getStringProperty("wire-codec", "java"));
+    }
+
+    /**
+     * Returns the number of Events written to a connection's persistent object stream between
+     * resets, or 0 if each serialized Event should get a stream of its own. See ObjectStreamCodec
+     * before raising this above 1.
+     */
+    public int getObjectStreamResetInterval() {
+        return Math.max(0, getIntProperty("object-stream-reset-interval", DEFAULT_OBJECT_STREAM_RESET_INTERVAL));
+    }
+
+    /**
+     * Returns the size in bytes above which outbound frames are compressed, or 0 if compression is
+     * disabled.
+     */
+    public int getCompressionThreshold() {
+        return Math.max(0, getIntProperty("compression-threshold", DEFAULT_COMPRESSION_THRESHOLD));
+    }
+
+    /**
+     * Returns the Deflater compression level, from 1 (fastest) to 9 (smallest).
+     */
+    public int getCompressionLevel() {
+        return Math.min(Deflater.BEST_COMPRESSION, Math.max(Deflater.BEST_SPEED, getIntProperty("compression-level", Deflater.BEST_SPEED)));
+    }
+
+    /**
+     * Returns true if server dispatchers should hold back the Events transmitted during a
+     * ServerDispatcher.beginBatch() / endBatch() pass and flush each connection once at the end.
+     */
+    public boolean isOutboundBatchingEnabled() {
+        return getBooleanProperty("outbound-batching", false);
+    }
+
+    /**
+     * Returns the longest time in milliseconds a batched frame may be held back before it is flushed
+     * even though its batch hasn't ended yet.
+     */
+    public long getOutboundBatchMaxDelay() {
+        return Math.max(1, getIntProperty("outbound-batch-max-delay", (int) DEFAULT_OUTBOUND_BATCH_MAX_DELAY));
+    }
+
+    /**
+     * Returns the time in milliseconds between the PINGs a server dispatcher sends to each of its
+     * connections, or 0 (the default) if heartbeats are disabled. Idle connections are only
+     * detected once both this and the idle timeout are set.
+     */
+    public long getHeartbeatInterval() {
+        return Math.max(0, getIntProperty("heartbeat-interval", (int) DEFAULT_HEARTBEAT_INTERVAL));
+    }
+
+    /**
+     * Returns the time in milliseconds after which a connection that nothing has been read from is
+     * considered dead and disconnected, or 0 (the default) to wait for the socket itself to report an
+     * error. Should be a few heartbeat intervals so that a single late PONG doesn't disconnect anyone.
+     */
+    public long getIdleTimeout() {
+        return Math.max(0, getIntProperty("idle-timeout", (int) DEFAULT_IDLE_TIMEOUT));
+    }
+
+    /**
+     * Returns the time in milliseconds a client that lost its connection has to reconnect and resume
+     * its session, or 0 (the default) if sessions can't be resumed. The server only reports the client
+     * as disconnected once the grace period has passed. Clients read the same setting, so it must be
+     * enabled on both sides.
+     */
+    public long getSessionGracePeriod() {
+        return Math.max(0, getIntProperty("session-grace-period", 0));
+    }
+
+    /**
+     * Returns the number of recent frames kept per session for replay to a resuming client. A client
+     * that missed more frames than this can't resume its session.
+     */
+    public int getSessionReplayBufferSize() {
+        return Math.max(1, getIntProperty("session-replay-buffer-size", DEFAULT_SESSION_REPLAY_BUFFER_SIZE));
+    }
+
+    /**
+     * Returns the path of the file mapping numeric client addresses to station numbers, or null (the
+     * default) if there is none. See StationResolver for its format.
+     */
+    public String getStationMapFile() {
+        return getStringProperty("station-map", null);
+    }
+
+    /**
+     * Returns true (the default) if clients missing from the station map should have their station
+     * number taken from their host name, looked up in the background.
+     */
+    public boolean isStationHostNameLookupEnabled() {
+        return getBooleanProperty("station-host-name-lookup", true);
+    }
+
+    /**
+     * Returns true if the LOCAL dispatchers should pass Events to their recipients by reference
+     * instead of serializing a copy for each of them. Senders and recipients then share the same
+     * Event (and Identifier) instances, so Events must not be modified after they have been
+     * transmitted. Multicasts are always serialized so each recipient can see its own Identifier.
+     */
+    public boolean isLocalPassByReference() {
+        return getBooleanProperty("local-pass-by-reference", false);
+    }
+
+    /**
+     * Returns the type of the dispatcher a LOCAL server dispatcher also listens with so that remote
+     * clients can join the in-process ones, or null (the default) if it only accepts in-process
+     * clients. Remote clients reading the same configuration connect with this type as well.
+     */
+    public ServerDispatcher.Type getLocalNetworkDispatcherType() {
+        String type = getStringProperty("local-network-dispatcher-type", null);
+        if (type == null || type.trim().isEmpty()) {
+            return null;
+        }
+        ServerDispatcher.Type networkType = ServerDispatcher.Type.fromString(type.trim());
+        return (networkType == ServerDispatcher.Type.LOCAL) ? null : networkType;
+    }
+
+    /**
+     * Returns true (the default) if server dispatchers should register their NetworkMetrics with the
+     * platform MBeanServer while they are listening. The metrics are recorded either way.
+     */
+    public boolean isJmxMetricsEnabled() {
+        return getBooleanProperty("jmx-metrics", true);
+    }
+
+    /**
+     * Returns a new EventCodec for frames that are encoded once and shared by many connections, i.e.,
+     * broadcasts and multicasts.
+     */
+    public EventCodec createSharedCodec(CompressionStatistics statistics) {
+        return compress(getWireCodec(), statistics);
+    }
+
+    /**
+     * Returns a new EventCodec for the frames sent and received on a single connection.
+     */
+    public EventCodec createConnectionCodec(CompressionStatistics statistics) {
+        return compress(new ObjectStreamCodec(getWireCodec(), getObjectStreamResetInterval()), statistics);
+    }
+
+    private EventCodec compress(EventCodec codec, CompressionStatistics statistics) {
+        return new CompressingCodec(codec, getCompressionThreshold(), getCompressionLevel(), getMaxFrameSize(), statistics);
+    }
+
+}
@@ -15,7 +15,7 @@ import edu.asu.commons.event.EventChannel;
 public class DispatcherFactory {
 
     public final static DispatcherFactory INSTANCE = new DispatcherFactory();
-    public final static int DEFAULT_WORKER_POOL_SIZE = 3;
+    public final static int DEFAULT_WORKER_POOL_SIZE = ReactorGroup.DEFAULT_SIZE;
 
     private DispatcherFactory() {
     }
@@ -26,38 +26,69 @@ public class DispatcherFactory {
 
     public <C extends ExperimentConfiguration<C, R>, R extends ExperimentRoundParameters<C, R>> ClientDispatcher createClientDispatcher(EventChannel channel,
             C serverConfiguration) {
-        switch (serverConfiguration.getServerDispatcherType()) {
+        return createClientDispatcher(channel, serverConfiguration.getServerDispatcherType(), DispatcherConfiguration.create(serverConfiguration));
+    }
+
+    public ClientDispatcher createClientDispatcher(EventChannel channel, ServerDispatcher.Type serverDispatcherType, DispatcherConfiguration configuration) {
+        switch (serverDispatcherType) {
             case NIO:
-                return new NioDispatcher(channel, 1);
-//            case NETTY_NIO:
-//                return new ClientNettyDispatcher(channel);
+                return new NioDispatcher(channel, 1, configuration);
+            case NETTY_NIO:
+                return new ClientNettyDispatcher(channel, configuration);
+            case SOCKET_VIRTUAL:
+                return new ClientSocketDispatcher(channel, configuration, true);
+            case LOCAL:
+                // remote clients of a LOCAL server that also listens on the network.
+                ServerDispatcher.Type networkType = configuration.getLocalNetworkDispatcherType();
+                if (networkType != null) {
+                    return createClientDispatcher(channel, networkType, configuration);
+                }
+                return new LocalClientDispatcher(channel, configuration);
             case SOCKET:
             default:
-                return new ClientSocketDispatcher(channel);
+                return new ClientSocketDispatcher(channel, configuration);
         }
     }
 
+    /**
+     * Creates a client dispatcher that connects to a LOCAL server dispatcher running in the same JVM,
+     * e.g., for bots joining an experiment.
+     */
+    public <C extends ExperimentConfiguration<C, R>, R extends ExperimentRoundParameters<C, R>> ClientDispatcher createLocalClientDispatcher(
+            EventChannel channel, C serverConfiguration) {
+        return new LocalClientDispatcher(channel, DispatcherConfiguration.create(serverConfiguration));
+    }
+
     public ServerDispatcher createServerDispatcher(EventChannel channel) {
         return createServerDispatcher(channel, DEFAULT_WORKER_POOL_SIZE, ServerDispatcher.Type.SOCKET);
     }
 
     public <C extends ExperimentConfiguration<C, R>, R extends ExperimentRoundParameters<C, R>> ServerDispatcher createServerDispatcher(EventChannel channel,
             C serverConfiguration) {
-        return createServerDispatcher(channel, serverConfiguration.getWorkerPoolSize(), serverConfiguration.getServerDispatcherType());
+        return createServerDispatcher(channel, serverConfiguration.getWorkerPoolSize(), serverConfiguration.getServerDispatcherType(),
+                DispatcherConfiguration.create(serverConfiguration));
     }
 
     public ServerDispatcher createServerDispatcher(EventChannel channel, int workerPoolSize, ServerDispatcher.Type serverDispatcherType) {
+        return createServerDispatcher(channel, workerPoolSize, serverDispatcherType, new DispatcherConfiguration());
+    }
+
+    public ServerDispatcher createServerDispatcher(EventChannel channel, int workerPoolSize, ServerDispatcher.Type serverDispatcherType,
+            DispatcherConfiguration configuration) {
         switch (serverDispatcherType) {
             case NIO:
-                return new NioDispatcher(channel, workerPoolSize);
-//            case NETTY_NIO:
-//                return new NettyDispatcher(channel);
-//                
+                return new NioDispatcher(channel, workerPoolSize, configuration);
+            case NETTY_NIO:
+                return new NettyDispatcher(channel, workerPoolSize, configuration);
+            case SOCKET_VIRTUAL:
+                return new ServerSocketDispatcher(channel, workerPoolSize, configuration, true);
+            case LOCAL:
+                return new LocalServerDispatcher(channel, workerPoolSize, configuration);
 
             case SOCKET:
             	// default fall through is a socket dispatcher (safer)
             default:
-                return new ServerSocketDispatcher(channel, workerPoolSize);
+                return new ServerSocketDispatcher(channel, workerPoolSize, configuration);
 
         }
     }
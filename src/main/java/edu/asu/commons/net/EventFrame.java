@@ -0,0 +1,164 @@
+package edu.asu.commons.net;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.event.ConnectionEvent;
+
+/**
+ * $Id$
+ *
+ * An Event that has been serialized into an immutable length-prefixed frame, the unit of
+ * transmission shared by the socket and NIO dispatchers. A frame is encoded once and can then be
+ * written to any number of connections: socket connections write the backing array directly and
+ * NIO connections each get their own read-only duplicate, so broadcasting an Event to N clients
+ * serializes it once instead of N times.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class EventFrame {
+
+    final static int BYTES_PER_INT = 4;
+
+    // type id byte followed by a long.
+    final static int CONTROL_FRAME_LENGTH = 1 + 8;
+
+    // int length header followed by the encoded Event.
+    private final byte[] frame;
+
+    private EventFrame(byte[] frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * Encodes the given Event into a new frame.
+     */
+    static EventFrame encode(EventCodec codec, Event event) throws IOException {
+        return encodeFrame(codec, event, null);
+    }
+
+    /**
+     * Encodes the given Event into a new frame for the connection identified by connectionId, see
+     * getConnectionReference().
+     */
+    static EventFrame encode(EventCodec codec, Event event, Identifier connectionId) throws IOException {
+        return encodeFrame(codec, event, getConnectionReference(event, connectionId));
+    }
+
+    /**
+     * Returns the Identifier a connection's codec should write as a reference to the recipient's own
+     * Identifier: the connection's Identifier, which the peer then resolves to its canonical instance
+     * instead of deserializing a copy of it with every Event, or null for the ConnectionEvent, which
+     * is what hands the peer its Identifier in the first place.
+     */
+    static Identifier getConnectionReference(Event event, Identifier connectionId) {
+        return (event instanceof ConnectionEvent) ? null : connectionId;
+    }
+
+    /**
+     * Encodes the given Event into a new frame that can be sent to multiple recipients, each of
+     * which decodes the event with its own Identifier in place of the event's Identifier.
+     */
+    static EventFrame encodeMulticast(EventCodec codec, Event event) throws IOException {
+        return encodeFrame(codec, event, event.getId());
+    }
+
+    private static EventFrame encodeFrame(EventCodec codec, Event event, Identifier multicastId) throws IOException {
+        FrameOutputStream stream = FrameOutputStream.get();
+        try {
+            // reserve space for the length header.
+            stream.write(new byte[BYTES_PER_INT]);
+            codec.encode(event, multicastId, stream);
+            stream.putInt(0, stream.size() - BYTES_PER_INT);
+            return new EventFrame(Arrays.copyOf(stream.getBuffer(), stream.size()));
+        } finally {
+            stream.recycle();
+        }
+    }
+
+    /**
+     * Returns a new control frame carrying the given long values, see Heartbeat and Session.
+     */
+    static EventFrame control(int typeId, long... values) {
+        int length = 1 + values.length * 8;
+        ByteBuffer buffer = ByteBuffer.allocate(BYTES_PER_INT + length);
+        buffer.putInt(length).put((byte) typeId);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+        return new EventFrame(buffer.array());
+    }
+
+    /**
+     * Returns the index-th long value of the control frame body starting at offset, or 0 if the frame
+     * doesn't have that many values.
+     */
+    static long getControlValue(byte[] data, int offset, int length, int index) {
+        int start = offset + 1 + index * 8;
+        if (start + 8 > offset + length) {
+            return 0L;
+        }
+        long value = 0L;
+        for (int i = start; i < start + 8; i++) {
+            value = (value << 8) | (data[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Reads the next Event frame from a blocking stream and decodes its Event for the connection
+     * identified by recipient, skipping any control frames that precede it.
+     */
+    static Event read(EventCodec codec, DataInputStream in, int maxFrameSize, Identifier recipient) throws IOException, ClassNotFoundException {
+        byte[] data;
+        do {
+            data = readBody(in, maxFrameSize);
+        } while (Heartbeat.isControlFrame(data, 0, data.length));
+        return codec.decode(data, 0, data.length, recipient);
+    }
+
+    /**
+     * Reads the body of the next frame from a blocking stream without decoding it.
+     */
+    static byte[] readBody(DataInputStream in, int maxFrameSize) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxFrameSize) {
+            throw new StreamCorruptedException("Invalid frame length: " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+
+    /**
+     * Returns a new read-only view of the entire frame, positioned at its start.
+     */
+    ByteBuffer buffer() {
+        return ByteBuffer.wrap(frame).asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes the Event of this frame for the connection identified by recipient.
+     */
+    Event decode(EventCodec codec, Identifier recipient) throws IOException, ClassNotFoundException {
+        return codec.decode(frame, BYTES_PER_INT, frame.length - BYTES_PER_INT, recipient);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(frame);
+    }
+
+    /**
+     * Returns the size of the frame in bytes, including the length header.
+     */
+    int size() {
+        return frame.length;
+    }
+}
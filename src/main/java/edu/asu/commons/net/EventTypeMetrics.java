@@ -0,0 +1,117 @@
+package edu.asu.commons.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * $Id$
+ *
+ * Counters of the Events of a single class encoded and decoded by a Dispatcher, with the size of
+ * their encoded bodies (excluding frame length headers) and the time spent encoding and decoding
+ * them. A broadcast or multicast Event is encoded once, however many connections it is sent to.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public final class EventTypeMetrics implements EventTypeMetricsMBean {
+
+    private final Class<?> type;
+
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+
+    EventTypeMetrics(Class<?> type) {
+        this.type = type;
+    }
+
+    void recordEncode(long bytes, long nanos) {
+        messagesSent.increment();
+        bytesSent.add(bytes);
+        encodeNanos.add(nanos);
+    }
+
+    void recordDecode(long bytes, long nanos) {
+        messagesReceived.increment();
+        bytesReceived.add(bytes);
+        decodeNanos.add(nanos);
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public String getEventType() {
+        return type.getName();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Returns the total time in milliseconds spent encoding Events of this type.
+     */
+    public double getEncodeTime() {
+        return toMillis(encodeNanos.sum());
+    }
+
+    /**
+     * Returns the total time in milliseconds spent decoding Events of this type.
+     */
+    public double getDecodeTime() {
+        return toMillis(decodeNanos.sum());
+    }
+
+    /**
+     * Returns the mean time in microseconds it took to encode a single Event of this type.
+     */
+    public double getMeanEncodeTime() {
+        return toMicros(encodeNanos.sum(), messagesSent.sum());
+    }
+
+    /**
+     * Returns the mean time in microseconds it took to decode a single Event of this type.
+     */
+    public double getMeanDecodeTime() {
+        return toMicros(decodeNanos.sum(), messagesReceived.sum());
+    }
+
+    long getEncodeNanos() {
+        return encodeNanos.sum();
+    }
+
+    long getDecodeNanos() {
+        return decodeNanos.sum();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static double toMicros(long nanos, long count) {
+        return (count == 0) ? 0.0d : nanos / (double) TimeUnit.MICROSECONDS.toNanos(1) / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [sent %d / %d bytes in %.3f ms, received %d / %d bytes in %.3f ms]",
+                type.getSimpleName(), getMessagesSent(), getBytesSent(), getEncodeTime(), getMessagesReceived(), getBytesReceived(), getDecodeTime());
+    }
+
+}
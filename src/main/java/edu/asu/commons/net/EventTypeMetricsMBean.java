@@ -0,0 +1,32 @@
+package edu.asu.commons.net;
+
+/**
+ * $Id$
+ *
+ * Management interface of the EventTypeMetrics of a single Event class, registered below the
+ * NetworkMetrics of its Dispatcher with an eventType key holding the class name.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public interface EventTypeMetricsMBean {
+
+    public String getEventType();
+
+    public long getMessagesSent();
+
+    public long getMessagesReceived();
+
+    public long getBytesSent();
+
+    public long getBytesReceived();
+
+    public double getEncodeTime();
+
+    public double getDecodeTime();
+
+    public double getMeanEncodeTime();
+
+    public double getMeanDecodeTime();
+
+}
@@ -0,0 +1,217 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import edu.asu.commons.net.codec.ObjectStreamCodec;
+
+/**
+ * $Id$
+ *
+ * Incremental decoder for the length-prefixed frames written by the NioDispatcher. Each connection
+ * owns its own FrameDecoder, so decoding state is never shared across connections and no locking is
+ * required as long as a single selector thread drives it.
+ * <p>
+ * The decoder reads straight from the channel into its own receive buffer, which doubles as the
+ * decode scratch space: complete frames are handed out in place and only the trailing partial frame
+ * is compacted to the front of the buffer. The buffer grows when reads keep filling it or when a
+ * frame doesn't fit and shrinks back after a run of small reads, so an occasional large
+ * SetConfigurationEvent doesn't pin memory on every connection. Frames larger than the max frame
+ * size are skipped without ever being buffered, unless they continue the connection's object stream:
+ * the frames after them would refer to class descriptors the receiver never saw, so the decoder
+ * fails instead and the connection has to be closed. Reads may end anywhere in the stream: in the middle
+ * of the int length header, in the middle of a payload, or after several complete frames:
+ *
+ * <pre>
+ * decoder.read(channel);
+ * while (decoder.decode()) {
+ *     handle(decoder.getFrame(), decoder.getFrameOffset(), decoder.getFrameLength());
+ * }
+ * </pre>
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class FrameDecoder {
+
+    private final static int BYTES_PER_INT = 4;
+
+    final static int INITIAL_BUFFER_SIZE = 2048;
+    // reads stop growing the buffer past this size, only frames that need more
+    // space than this grow it further.
+    final static int MAX_READ_BUFFER_SIZE = 64 * 1024;
+    // number of consecutive reads using less than a quarter of the buffer
+    // before it is shrunk.
+    private final static int SHRINK_THRESHOLD = 16;
+
+    private final int maxFrameSize;
+
+    // holds unconsumed bytes at [0, position) between calls, flipped while
+    // decoding.
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private boolean decoding;
+
+    // number of bytes of an oversized frame that still need to be skipped.
+    private int discarding;
+    private long rejectedFrames;
+
+    private int underusedReads;
+
+    private int frameOffset;
+    private int frameLength;
+
+    FrameDecoder(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Reads whatever the channel has available into the receive buffer.
+     *
+     * @return the number of bytes read, or -1 at end of stream
+     */
+    int read(ReadableByteChannel channel) throws IOException {
+        finishDecoding();
+        int available = buffer.remaining();
+        int bytesRead = channel.read(buffer);
+        if (bytesRead == available && buffer.capacity() < MAX_READ_BUFFER_SIZE) {
+            // filled the entire buffer, more is probably waiting.
+            buffer.flip();
+            resize(Math.min(MAX_READ_BUFFER_SIZE, buffer.capacity() * 2));
+            underusedReads = 0;
+        }
+        else if (bytesRead >= 0 && buffer.position() < buffer.capacity() / 4) {
+            underusedReads++;
+        }
+        else {
+            underusedReads = 0;
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Decodes the next frame from the bytes read so far.
+     *
+     * @return true if a complete frame is available via getFrame(), getFrameOffset() and
+     *         getFrameLength(); the frame remains valid until the next call to decode() or read()
+     * @throws IOException if the stream contains an invalid frame length or an object stream frame
+     *         larger than the max frame size
+     */
+    boolean decode() throws IOException {
+        if (!decoding) {
+            buffer.flip();
+            decoding = true;
+        }
+        while (true) {
+            if (discarding > 0) {
+                int skipped = Math.min(discarding, buffer.remaining());
+                buffer.position(buffer.position() + skipped);
+                discarding -= skipped;
+                if (discarding > 0) {
+                    return false;
+                }
+            }
+            if (buffer.remaining() < BYTES_PER_INT) {
+                return false;
+            }
+            int position = buffer.position();
+            int length = buffer.getInt(position);
+            if (length < 0) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            if (length > maxFrameSize) {
+                if (buffer.remaining() < BYTES_PER_INT + 1) {
+                    // wait for the type id.
+                    return false;
+                }
+                if (ObjectStreamCodec.isStreamFrame(buffer.get(position + BYTES_PER_INT))) {
+                    throw new IOException(String.format("object stream frame of %d bytes exceeds the max frame size of %d bytes",
+                            length, maxFrameSize));
+                }
+                buffer.position(position + BYTES_PER_INT);
+                discarding = length;
+                rejectedFrames++;
+                continue;
+            }
+            if (buffer.remaining() < BYTES_PER_INT + length) {
+                return false;
+            }
+            frameOffset = buffer.arrayOffset() + position + BYTES_PER_INT;
+            frameLength = length;
+            buffer.position(position + BYTES_PER_INT + length);
+            return true;
+        }
+    }
+
+    /**
+     * Moves any partial frame to the front of the receive buffer, growing the buffer if the frame
+     * doesn't fit or shrinking it after a run of small reads.
+     */
+    private void finishDecoding() {
+        if (!decoding) {
+            return;
+        }
+        decoding = false;
+        int remaining = buffer.remaining();
+        int required = remaining;
+        if (discarding == 0 && remaining >= BYTES_PER_INT) {
+            int length = buffer.getInt(buffer.position());
+            if (length <= maxFrameSize) {
+                required = BYTES_PER_INT + length;
+            }
+        }
+        if (required > buffer.capacity()) {
+            resize(required);
+        }
+        else if (underusedReads >= SHRINK_THRESHOLD && buffer.capacity() > INITIAL_BUFFER_SIZE
+                && required <= buffer.capacity() / 2) {
+            resize(Math.max(INITIAL_BUFFER_SIZE, buffer.capacity() / 2));
+            underusedReads = 0;
+        }
+        else {
+            buffer.compact();
+        }
+    }
+
+    // expects the buffer to be flipped for reading, leaves it ready for the next read.
+    private void resize(int capacity) {
+        int newCapacity = Integer.highestOneBit(Math.max(capacity, buffer.remaining()) - 1) << 1;
+        if (newCapacity <= 0 || newCapacity > BYTES_PER_INT + maxFrameSize) {
+            newCapacity = Math.max(capacity, buffer.remaining());
+        }
+        ByteBuffer resized = ByteBuffer.allocate(newCapacity);
+        resized.put(buffer);
+        buffer = resized;
+    }
+
+    byte[] getFrame() {
+        return buffer.array();
+    }
+
+    int getFrameOffset() {
+        return frameOffset;
+    }
+
+    int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Returns the number of frames that were skipped for exceeding the max frame size.
+     */
+    long getRejectedFrames() {
+        return rejectedFrames;
+    }
+
+    int getBufferCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns true if this decoder is holding on to a partially received frame.
+     */
+    boolean isPending() {
+        int buffered = decoding ? buffer.remaining() : buffer.position();
+        return buffered > 0 || discarding > 0;
+    }
+}
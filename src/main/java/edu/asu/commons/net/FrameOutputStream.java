@@ -0,0 +1,70 @@
+package edu.asu.commons.net;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * $Id$
+ *
+ * Reusable ByteArrayOutputStream that Events are marshalled into before being framed. Exposes its
+ * contents without the defensive copy made by toByteArray() and gives back oversized backing arrays
+ * when it is recycled so one large event doesn't pin memory for the lifetime of the thread.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class FrameOutputStream extends ByteArrayOutputStream {
+
+    private final static int INITIAL_SIZE = 512;
+    private final static int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private final static ThreadLocal<FrameOutputStream> streams = new ThreadLocal<FrameOutputStream>() {
+        @Override
+        protected FrameOutputStream initialValue() {
+            return new FrameOutputStream();
+        }
+    };
+
+    FrameOutputStream() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * Returns the calling thread's stream, which must be recycled once the caller is done with it.
+     */
+    static FrameOutputStream get() {
+        return streams.get();
+    }
+
+    /**
+     * Overwrites the int at the given index, e.g., to fill in a frame's length header once the
+     * payload has been written.
+     */
+    void putInt(int index, int value) {
+        buf[index] = (byte) (value >>> 24);
+        buf[index + 1] = (byte) (value >>> 16);
+        buf[index + 2] = (byte) (value >>> 8);
+        buf[index + 3] = (byte) value;
+    }
+
+    /**
+     * Copies the marshalled bytes into the given buffer.
+     */
+    void copyTo(ByteBuffer buffer) {
+        buffer.put(buf, 0, count);
+    }
+
+    byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Resets this stream for reuse, shrinking the backing array if a large event grew it.
+     */
+    void recycle() {
+        if (buf.length > MAX_RETAINED_SIZE) {
+            buf = new byte[INITIAL_SIZE];
+        }
+        reset();
+    }
+}
@@ -0,0 +1,138 @@
+package edu.asu.commons.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.asu.commons.net.codec.EventCodec;
+
+/**
+ * $Id$
+ *
+ * Liveness state of a single connection. Server dispatchers send a PING control frame carrying
+ * System.nanoTime() to every connection each heartbeat interval and the peer echoes the value back in
+ * a PONG, which yields the connection's round trip time. Every frame read from a connection counts as
+ * a sign of life, so a connection that hasn't been heard from for longer than the idle timeout is
+ * considered dead and disconnected even if its socket never reported an error, e.g., because a
+ * laptop went to sleep or a cable was unplugged.
+ * <p>
+ * Control frames share the [int length][type id][body] layout of Event frames but use the type ids
+ * that EventCodec reserves for the dispatchers (below MIN_REGISTERED_TYPE_ID), so they are handled by
+ * the dispatchers themselves and never reach an EventCodec or the local EventChannel.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class Heartbeat {
+
+    final static int PING_TYPE_ID = 2;
+
+    final static int PONG_TYPE_ID = 3;
+
+    // weight of the latest sample in the smoothed round trip time, as in TCP's SRTT.
+    private final static double SMOOTHING_FACTOR = 0.125d;
+
+    private volatile long lastReadNanos = System.nanoTime();
+    // -1 until the first PONG arrives.
+    private volatile long roundTripNanos = -1;
+    private volatile double smoothedRoundTripNanos = -1;
+    // true once the peer has sent us a PING, i.e., it is running heartbeats of its own.
+    private volatile boolean pinged;
+    private final AtomicBoolean expired = new AtomicBoolean();
+
+    /**
+     * Returns true if the frame body starting at offset is a control frame rather than an Event.
+     */
+    static boolean isControlFrame(byte[] data, int offset, int length) {
+        return length > 0 && isControlType(data[offset]);
+    }
+
+    static boolean isControlType(int typeId) {
+        return typeId > EventCodec.STREAM_TYPE_ID && typeId < EventCodec.MIN_REGISTERED_TYPE_ID;
+    }
+
+    /**
+     * Returns the value carried by the control frame body starting at offset.
+     */
+    static long getValue(byte[] data, int offset, int length) {
+        return EventFrame.getControlValue(data, offset, length, 0);
+    }
+
+    static EventFrame ping() {
+        return EventFrame.control(PING_TYPE_ID, System.nanoTime());
+    }
+
+    /**
+     * Records that a frame has just been read from the connection.
+     */
+    void touch() {
+        lastReadNanos = System.nanoTime();
+    }
+
+    /**
+     * Handles a control frame read from the connection, returning the frame to send back in reply
+     * or null if there is nothing to reply. Unknown control frames are ignored so that new ones can
+     * be introduced without breaking older peers.
+     */
+    EventFrame receive(int typeId, long value) {
+        switch (typeId) {
+            case PING_TYPE_ID:
+                pinged = true;
+                return EventFrame.control(PONG_TYPE_ID, value);
+            case PONG_TYPE_ID:
+                long sample = System.nanoTime() - value;
+                if (sample >= 0) {
+                    roundTripNanos = sample;
+                    double smoothed = smoothedRoundTripNanos;
+                    smoothedRoundTripNanos = (smoothed < 0) ? sample : smoothed + SMOOTHING_FACTOR * (sample - smoothed);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns true if nothing has been read from the connection for longer than the given idle timeout
+     * in milliseconds, 0 disables the timeout.
+     */
+    boolean isIdle(long idleTimeout, long now) {
+        return idleTimeout > 0 && now - lastReadNanos > TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    }
+
+    /**
+     * Returns true the first time the connection is found to be dead so it is only disconnected once.
+     */
+    boolean expire() {
+        return expired.compareAndSet(false, true);
+    }
+
+    boolean isExpired() {
+        return expired.get();
+    }
+
+    boolean isPinged() {
+        return pinged;
+    }
+
+    /**
+     * Returns the round trip time in milliseconds measured by the latest PONG, or -1 if there hasn't
+     * been one yet.
+     */
+    double getRoundTripTime() {
+        long nanos = roundTripNanos;
+        return (nanos < 0) ? -1.0d : toMillis(nanos);
+    }
+
+    /**
+     * Returns the exponentially weighted moving average of the round trip time in milliseconds, or -1
+     * if no PONG has arrived yet.
+     */
+    double getSmoothedRoundTripTime() {
+        double nanos = smoothedRoundTripNanos;
+        return (nanos < 0) ? -1.0d : toMillis((long) nanos);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
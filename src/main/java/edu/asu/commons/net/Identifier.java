@@ -127,6 +127,9 @@ public interface Identifier extends Serializable {
         }
         
         public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
             if (other instanceof Identifier.Base) {
                 return uuid.equals(((Identifier) other).getUUID());
             }
@@ -0,0 +1,112 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.logging.Logger;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionRequest;
+
+/**
+ * $Id$
+ *
+ * Client dispatcher connecting to a LocalServerDispatcher in the same JVM. Only the port of the
+ * address passed to connect() is used to find the server. Connecting doesn't start any threads, so
+ * any number of local clients, e.g., BaseClient bots, can run alongside the server.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class LocalClientDispatcher extends AbstractDispatcher implements ClientDispatcher {
+
+    // time in ms to wait for a local server to start listening and accept the
+    // connection.
+    private final static long CONNECT_TIMEOUT = 5000;
+    private final static long CONNECT_RETRY_INTERVAL = 50;
+
+    private final static Logger logger = Logger.getLogger(LocalClientDispatcher.class.getName());
+
+    private volatile LocalConnection connection;
+
+    public LocalClientDispatcher(EventChannel channel) {
+        this(channel, new DispatcherConfiguration());
+    }
+
+    public LocalClientDispatcher(EventChannel channel, DispatcherConfiguration configuration) {
+        super(channel);
+        channel.add(this, new EventTypeProcessor<DisconnectionRequest>(DisconnectionRequest.class) {
+            public void handle(DisconnectionRequest event) {
+                disconnect(event.getId());
+            }
+        });
+    }
+
+    public Identifier connect(InetSocketAddress address) {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        try {
+            LocalServerDispatcher server;
+            // the server binds its port asynchronously once it has been told to listen.
+            while ((server = LocalServerDispatcher.getListening(address.getPort())) == null) {
+                if (System.currentTimeMillis() > deadline) {
+                    logger.severe("connection refused: no local server dispatcher listening on port " + address.getPort());
+                    return null;
+                }
+                Thread.sleep(CONNECT_RETRY_INTERVAL);
+            }
+            LocalConnection pending = server.createConnection(this);
+            server.connect(pending);
+            Identifier id = pending.awaitHandshake(Math.max(1, deadline - System.currentTimeMillis()));
+            if (id == null) {
+                logger.severe("local server dispatcher on port " + address.getPort() + " didn't accept the connection in time");
+                pending.close(false);
+                return null;
+            }
+            connection = pending;
+            getMetrics().connected(id, pending.getClientMetrics());
+            getLocalEventHandler().handle(new ConnectionEvent(id));
+            return id;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Invoked when the server has closed the connection.
+     */
+    void connectionClosed(LocalConnection closed) {
+        if (closed == connection) {
+            getMetrics().disconnected(closed.getClientId());
+            requestDisconnection(closed.getClientId(), new IOException(closed + " closed by the server"));
+        }
+    }
+
+    public void disconnect(Identifier id) {
+        LocalConnection current = connection;
+        if (current != null && id != null && id.equals(current.getClientId())) {
+            current.close(false);
+            getMetrics().disconnected(id);
+        }
+    }
+
+    public void transmit(Event event) {
+        LocalConnection current = connection;
+        if (current == null || current.isClosed()) {
+            logger.warning("not connected, dropping " + event);
+            return;
+        }
+        current.sendToServer(event);
+    }
+
+    public void shutdown() {
+        LocalConnection current = connection;
+        if (current != null) {
+            current.close(false);
+            getMetrics().disconnected(current.getClientId());
+        }
+    }
+
+}
@@ -0,0 +1,271 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.event.ConnectionEvent;
+
+/**
+ * $Id$
+ *
+ * An in-process connection between a LocalClientDispatcher and a LocalServerDispatcher. Each
+ * direction has a mailbox that delivers its Events in the order they were sent, one at a time, on a
+ * pool of threads shared by every local connection in the JVM, so a thousand local clients don't
+ * need a thousand threads. Event handlers of local clients should therefore not block for long.
+ * <p>
+ * Unless Events are passed by reference, each Event is encoded into an EventFrame by the sending
+ * thread and decoded by the mailbox for its recipient, exactly as it would be over a socket. Each end
+ * encodes and decodes with its own codec and records its traffic in its own ConnectionMetrics, so
+ * both dispatchers see the connection as they would a network connection. Events passed by
+ * reference are counted as messages without any bytes.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class LocalConnection {
+
+    private final static Logger logger = Logger.getLogger(LocalConnection.class.getName());
+
+    // maximum number of Events a mailbox delivers before yielding its thread
+    // to the other mailboxes.
+    private final static int MAX_DELIVERIES_PER_RUN = 64;
+
+    private final static ExecutorService deliveries = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+            new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "LocalDispatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final LocalServerDispatcher server;
+    private final LocalClientDispatcher client;
+    private final EventCodec serverCodec;
+    private final EventCodec clientCodec;
+    private final boolean byReference;
+
+    // the Identifier assigned by the server, and the client's copy of it.
+    private volatile Identifier serverId;
+    private volatile Identifier clientId;
+    private final CountDownLatch handshake = new CountDownLatch(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final Mailbox toServer;
+    private final Mailbox toClient;
+
+    private final ConnectionMetrics serverMetrics;
+    private final ConnectionMetrics clientMetrics;
+
+    LocalConnection(LocalServerDispatcher server, LocalClientDispatcher client, EventCodec serverCodec, EventCodec clientCodec, boolean byReference) {
+        this.server = server;
+        this.client = client;
+        this.serverCodec = serverCodec;
+        this.clientCodec = clientCodec;
+        this.byReference = byReference;
+        this.toServer = new Mailbox(true);
+        this.toClient = new Mailbox(false);
+        this.serverMetrics = new ConnectionMetrics(toClient);
+        this.clientMetrics = new ConnectionMetrics(toServer);
+    }
+
+    /**
+     * Assigns this connection the given server assigned Identifier and decodes the client's copy of
+     * it. The client keeps waiting until release() is invoked.
+     */
+    void accept(Identifier id) throws IOException, ClassNotFoundException {
+        serverId = id;
+        ConnectionEvent event = new ConnectionEvent(id);
+        clientId = (byReference) ? id : ((ConnectionEvent) EventFrame.encode(serverCodec, event).decode(clientCodec, null)).getId();
+    }
+
+    /**
+     * Completes the handshake, handing the client its Identifier.
+     */
+    void release() {
+        handshake.countDown();
+    }
+
+    /**
+     * Blocks until the server has accepted this connection, returning the client's Identifier or null
+     * if the server didn't accept it in time.
+     */
+    Identifier awaitHandshake(long timeout) throws InterruptedException {
+        return (handshake.await(timeout, TimeUnit.MILLISECONDS)) ? clientId : null;
+    }
+
+    Identifier getServerId() {
+        return serverId;
+    }
+
+    Identifier getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Returns the metrics of the server's end of this connection.
+     */
+    ConnectionMetrics getServerMetrics() {
+        return serverMetrics;
+    }
+
+    /**
+     * Returns the metrics of the client's end of this connection.
+     */
+    ConnectionMetrics getClientMetrics() {
+        return clientMetrics;
+    }
+
+    void sendToServer(Event event) {
+        toServer.post(encode(clientCodec, event, clientId));
+    }
+
+    void sendToClient(Event event) {
+        toClient.post(encode(serverCodec, event, serverId));
+    }
+
+    /**
+     * Sends a frame shared with other connections to the client, even if Events are otherwise passed
+     * by reference.
+     */
+    void sendToClient(EventFrame frame) {
+        toClient.post(frame);
+    }
+
+    private Object encode(EventCodec codec, Event event, Identifier connectionId) {
+        if (byReference) {
+            return event;
+        }
+        try {
+            return EventFrame.encode(codec, event, connectionId);
+        } catch (IOException e) {
+            logger.severe("Unable to serialize event " + event + ": " + e);
+            return null;
+        }
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Closes this connection, notifying the other end unless it was the one closing it. Events still
+     * in the mailboxes are discarded.
+     */
+    void close(boolean byServer) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        toServer.clear();
+        toClient.clear();
+        if (byServer) {
+            client.connectionClosed(this);
+        }
+        else {
+            server.connectionClosed(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "local connection " + serverId;
+    }
+
+    private static int sizeOf(Object message) {
+        return (message instanceof EventFrame) ? ((EventFrame) message).size() : 0;
+    }
+
+    /**
+     * Delivers the Events sent in one direction in order, at most one at a time. Its queue depth is
+     * the outbound queue depth of the sending end.
+     */
+    private class Mailbox implements Runnable, IntSupplier {
+        private final Queue<Object> messages = new ConcurrentLinkedQueue<Object>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final boolean toServer;
+
+        Mailbox(boolean toServer) {
+            this.toServer = toServer;
+        }
+
+        void post(Object message) {
+            if (message == null || closed.get()) {
+                return;
+            }
+            ((toServer) ? clientMetrics : serverMetrics).recordSent(sizeOf(message));
+            messages.add(message);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                deliveries.execute(this);
+            }
+        }
+
+        void clear() {
+            messages.clear();
+        }
+
+        /**
+         * Returns the number of undelivered Events, only meant for the occasional metrics read as it
+         * walks the entire queue.
+         */
+        public int getAsInt() {
+            return messages.size();
+        }
+
+        public void run() {
+            try {
+                Object message;
+                for (int delivered = 0; delivered < MAX_DELIVERIES_PER_RUN && (message = messages.poll()) != null; delivered++) {
+                    if (!closed.get()) {
+                        deliver(message);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            if (!messages.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void deliver(Object message) {
+            try {
+                ((toServer) ? serverMetrics : clientMetrics).recordReceived(sizeOf(message));
+                Event event;
+                if (message instanceof EventFrame) {
+                    EventFrame frame = (EventFrame) message;
+                    event = (toServer) ? frame.decode(serverCodec, serverId) : frame.decode(clientCodec, clientId);
+                }
+                else {
+                    event = (Event) message;
+                }
+                if (toServer) {
+                    server.getLocalEventHandler().handle(event);
+                }
+                else {
+                    client.getLocalEventHandler().handle(event);
+                }
+            } catch (IOException e) {
+                logger.severe("Unable to deserialize event on " + LocalConnection.this + ": " + e);
+            } catch (ClassNotFoundException e) {
+                logger.severe("Unable to find event class on " + LocalConnection.this + ": " + e);
+            } catch (RuntimeException e) {
+                logger.severe("Unable to handle event on " + LocalConnection.this + ": " + e);
+            }
+        }
+    }
+}
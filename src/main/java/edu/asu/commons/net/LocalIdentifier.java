@@ -0,0 +1,37 @@
+package edu.asu.commons.net;
+
+/**
+ * $Id$
+ *
+ * Identifies a client connected to a LOCAL server dispatcher from within the same JVM. Local clients
+ * are numbered in the order they connect, starting with station 1.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class LocalIdentifier extends Identifier.Base<LocalIdentifier> {
+
+    private static final long serialVersionUID = -3921605794166470731L;
+
+    private final int stationNumber;
+
+    public LocalIdentifier(int stationNumber) {
+        this.stationNumber = stationNumber;
+    }
+
+    @Override
+    public int getStationNumber() {
+        return stationNumber;
+    }
+
+    @Override
+    public String getStationId() {
+        return "Station " + stationNumber;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Station %d (local, uid: %d)", stationNumber, index());
+    }
+
+}
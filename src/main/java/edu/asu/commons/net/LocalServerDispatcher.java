@@ -0,0 +1,295 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionEvent;
+
+/**
+ * $Id$
+ *
+ * Server dispatcher for clients running in the same JVM, e.g., bots or simulated participants, or
+ * the clients of a unit test. LocalClientDispatchers connect to it by port number without any
+ * sockets, and Events are exchanged over in-process LocalConnections, either serialized just as they
+ * would be over the network or, with local-pass-by-reference, passed as is.
+ * <p>
+ * If a local-network-dispatcher-type is configured, a network dispatcher of that type listens on the
+ * same port so that remote clients, e.g., human participants, can join the local ones. Events are
+ * routed to whichever dispatcher their recipient is connected to and broadcasts go to both.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class LocalServerDispatcher extends AbstractServerDispatcher {
+
+    // time in ms the accept loop waits for a new connection before doing
+    // connection maintenance.
+    private final static long ACCEPT_TIMEOUT = 500;
+
+    // the LocalServerDispatchers of this JVM by port.
+    private final static Map<Integer, LocalServerDispatcher> listening = new ConcurrentHashMap<Integer, LocalServerDispatcher>();
+
+    private final ConnectionRegistry<LocalConnection> connections = new ConnectionRegistry<LocalConnection>();
+    private final BlockingQueue<LocalConnection> pendingConnections = new LinkedBlockingQueue<LocalConnection>();
+    private final AtomicInteger stationNumbers = new AtomicInteger();
+
+    private final EventCodec wireCodec;
+    // wireCodec metered by this dispatcher.
+    private final EventCodec codec;
+    private final boolean byReference;
+    // null unless remote clients may join.
+    private final ServerDispatcher network;
+    private int port = -1;
+
+    /**
+     * package private to enforce access via the DispatcherFactory.
+     */
+    LocalServerDispatcher(EventChannel channel, int workerPoolSize, DispatcherConfiguration configuration) {
+        super(channel, configuration);
+        // frames never leave the JVM, so they are never compressed.
+        this.wireCodec = configuration.getWireCodec();
+        this.codec = getMetrics().meter(wireCodec);
+        this.byReference = configuration.isLocalPassByReference();
+        ServerDispatcher.Type networkType = configuration.getLocalNetworkDispatcherType();
+        this.network = (networkType == null) ? null
+                : DispatcherFactory.getInstance().createServerDispatcher(channel, workerPoolSize, networkType, configuration);
+    }
+
+    /**
+     * Returns the LocalServerDispatcher listening on the given port, or null if there is none.
+     */
+    static LocalServerDispatcher getListening(int port) {
+        return listening.get(port);
+    }
+
+    @Override
+    public synchronized void listen(int port) {
+        super.listen(port);
+        if (network != null) {
+            network.listen(port);
+        }
+    }
+
+    @Override
+    protected void bind(int port) throws IOException {
+        if (listening.putIfAbsent(port, this) != null) {
+            throw new IOException("port " + port + " is already in use by another local dispatcher");
+        }
+        this.port = port;
+    }
+
+    /**
+     * Queues the given connection to be accepted by the dispatcher thread.
+     */
+    void connect(LocalConnection connection) {
+        pendingConnections.add(connection);
+    }
+
+    LocalConnection createConnection(LocalClientDispatcher client) {
+        return new LocalConnection(this, client, codec, client.getMetrics().meter(wireCodec), byReference);
+    }
+
+    @Override
+    protected void processIncomingConnections() throws IOException {
+        LocalConnection connection;
+        try {
+            connection = pendingConnections.poll(ACCEPT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return;
+        }
+        if (connection == null) {
+            return;
+        }
+        Identifier id = new LocalIdentifier(stationNumbers.incrementAndGet());
+        getLogger().info("incoming local connection: " + id);
+        getMetrics().connected(id, connection.getServerMetrics());
+        try {
+            connection.accept(id);
+        } catch (ClassNotFoundException e) {
+            getMetrics().disconnected(id);
+            throw new IOException(e);
+        }
+        connections.register(id, connection);
+        // only released once registered, so the client never holds an
+        // Identifier this dispatcher doesn't know about yet.
+        connection.release();
+        getLocalEventHandler().handle(new ConnectionEvent(id));
+    }
+
+    public boolean isConnected(Identifier id) {
+        LocalConnection connection = connections.get(id);
+        if (connection != null) {
+            return !connection.isClosed();
+        }
+        return network != null && network.isConnected(id);
+    }
+
+    /**
+     * Returns the number of connected local clients.
+     */
+    public int getLocalConnectionCount() {
+        return connections.size();
+    }
+
+    public void transmit(Event event) {
+        Identifier id = event.getId();
+        if (id == null || id == Identifier.NULL) {
+            broadcast(event);
+            if (network != null) {
+                network.transmit(event);
+            }
+            return;
+        }
+        LocalConnection connection = connections.get(id);
+        if (connection != null) {
+            connection.sendToClient(event);
+        }
+        else if (network != null) {
+            network.transmit(event);
+        }
+        else {
+            getLogger().warning("skipping transmission to nonexistent local connection: " + id);
+        }
+    }
+
+    public void transmit(Collection<Identifier> ids, Event event) {
+        List<LocalConnection> recipients = new ArrayList<LocalConnection>(ids.size());
+        List<Identifier> remoteIds = new ArrayList<Identifier>();
+        for (Identifier id : ids) {
+            LocalConnection connection = connections.get(id);
+            if (connection != null) {
+                recipients.add(connection);
+            }
+            else {
+                remoteIds.add(id);
+            }
+        }
+        if (network != null && !remoteIds.isEmpty()) {
+            network.transmit(remoteIds, event);
+        }
+        if (recipients.isEmpty()) {
+            return;
+        }
+        try {
+            // serialized even when passing by reference so each recipient
+            // sees its own Identifier.
+            EventFrame frame = EventFrame.encodeMulticast(codec, event);
+            for (LocalConnection connection : recipients) {
+                connection.sendToClient(frame);
+            }
+            recordBroadcast(recipients.size(), frame.size());
+        } catch (IOException e) {
+            getLogger().severe("Unable to serialize event " + event + ": " + e);
+        }
+    }
+
+    private void broadcast(Event event) {
+        List<LocalConnection> recipients = connections.snapshot();
+        if (recipients.isEmpty()) {
+            return;
+        }
+        if (byReference) {
+            for (LocalConnection connection : recipients) {
+                connection.sendToClient(event);
+            }
+            return;
+        }
+        try {
+            EventFrame frame = EventFrame.encode(codec, event);
+            for (LocalConnection connection : recipients) {
+                connection.sendToClient(frame);
+            }
+            recordBroadcast(recipients.size(), frame.size());
+        } catch (IOException e) {
+            getLogger().severe("Unable to serialize event " + event + ": " + e);
+        }
+    }
+
+    public void disconnect(Identifier id) {
+        LocalConnection connection = connections.remove(id);
+        if (connection == null) {
+            if (network != null) {
+                network.disconnect(id);
+            }
+            return;
+        }
+        getLogger().info("disconnecting: " + id);
+        connection.close(true);
+        getMetrics().disconnected(id);
+        getLocalEventHandler().handle(new DisconnectionEvent(id));
+    }
+
+    @Override
+    protected void connectionLost(Identifier id) {
+        // the network dispatcher handles its own connections.
+        if (connections.contains(id)) {
+            disconnect(id);
+        }
+    }
+
+    /**
+     * Invoked when a local client has closed its connection.
+     */
+    void connectionClosed(LocalConnection connection) {
+        Identifier id = connection.getServerId();
+        if (id != null) {
+            requestDisconnection(id, new IOException(connection + " closed by the client"));
+        }
+    }
+
+    @Override
+    public void beginBatch() {
+        super.beginBatch();
+        if (network != null) {
+            network.beginBatch();
+        }
+    }
+
+    @Override
+    public void endBatch() {
+        super.endBatch();
+        if (network != null) {
+            network.endBatch();
+        }
+    }
+
+    /**
+     * Local Events are delivered as soon as they are transmitted, nothing is ever held.
+     */
+    @Override
+    protected void flushHeldFrames() {
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        super.shutdown();
+        if (network != null) {
+            network.shutdown();
+        }
+    }
+
+    @Override
+    protected void cleanup() {
+        if (port != -1) {
+            listening.remove(port, this);
+            port = -1;
+        }
+        pendingConnections.clear();
+        for (LocalConnection connection : connections.clear()) {
+            connection.close(true);
+        }
+    }
+
+}
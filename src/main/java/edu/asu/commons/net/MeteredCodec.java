@@ -0,0 +1,90 @@
+package edu.asu.commons.net;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.codec.EventCodec;
+
+/**
+ * $Id$
+ *
+ * EventCodec that records the size of and the time spent on every Event its wrapped codec encodes
+ * or decodes in the EventTypeMetrics of a Dispatcher's NetworkMetrics. Wraps the outermost codec, so
+ * sizes are those of the bodies that go on the wire, after any compression.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class MeteredCodec implements EventCodec {
+
+    private final EventCodec codec;
+    private final NetworkMetrics metrics;
+
+    MeteredCodec(EventCodec codec, NetworkMetrics metrics) {
+        this.codec = codec;
+        this.metrics = metrics;
+    }
+
+    public String getName() {
+        return codec.getName();
+    }
+
+    public boolean isSerialized(Event event) {
+        return codec.isSerialized(event);
+    }
+
+    public void encode(Event event, Identifier multicastId, OutputStream out) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(out);
+        long startTime = System.nanoTime();
+        codec.encode(event, multicastId, counter);
+        metrics.recordEncode(event, counter.count, System.nanoTime() - startTime);
+    }
+
+    public Event decode(byte[] data, int offset, int length, Identifier recipient) throws IOException, ClassNotFoundException {
+        long startTime = System.nanoTime();
+        Event event = codec.decode(data, offset, length, recipient);
+        metrics.recordDecode(event, length, System.nanoTime() - startTime);
+        return event;
+    }
+
+    @Override
+    public String toString() {
+        return codec.toString();
+    }
+
+    /**
+     * Counts the bytes written through it, FilterOutputStream would write arrays a byte at a time.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            out.write(data, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() {
+            // the wrapped stream belongs to the caller.
+        }
+    }
+
+}
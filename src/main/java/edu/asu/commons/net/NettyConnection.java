@@ -0,0 +1,290 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.ObjectStreamCodec;
+
+/**
+ * $Id$
+ *
+ * Per-connection state for the Netty dispatchers, wrapping the connection's Channel.
+ * <p>
+ * Frames use the same [int length][encoded Event] layout as the NioDispatcher and the socket
+ * dispatchers, so Netty clients and servers can be mixed freely with the others. Outbound frames are
+ * encoded into pooled ByteBufs and handed to the channel's event loop, which writes them in the
+ * order they were submitted.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class NettyConnection {
+
+    private final Identifier id;
+    private final Channel channel;
+    // encoding is guarded by locking on the codec itself, decoding is only
+    // done by the channel's event loop.
+    private final EventCodec codec;
+
+    // frames handed to the channel that haven't been written yet.
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicBoolean overflowed = new AtomicBoolean();
+    // true while frames are being held back by an open batch.
+    private final AtomicBoolean held = new AtomicBoolean();
+    private final Heartbeat heartbeat = new Heartbeat();
+    private final ConnectionMetrics metrics = new ConnectionMetrics(new IntSupplier() {
+        public int getAsInt() {
+            return getQueueDepth();
+        }
+    });
+
+    private final ChannelFutureListener writeListener = new ChannelFutureListener() {
+        public void operationComplete(ChannelFuture future) {
+            queueDepth.decrementAndGet();
+        }
+    };
+
+    NettyConnection(Identifier id, Channel channel, EventCodec codec) {
+        this.id = id;
+        this.channel = channel;
+        this.codec = codec;
+    }
+
+    /**
+     * Installs the length-prefixed framing shared by every dispatcher followed by the given handler,
+     * which receives each frame's payload as a ByteBuf. Frames larger than maxFrameSize are skipped
+     * and reported to the handler with a TooLongFrameException, unless they continue the connection's
+     * object stream, which fails with a CorruptedFrameException instead.
+     */
+    static void initPipeline(Channel channel, int maxFrameSize, ChannelHandler handler) {
+        channel.pipeline().addLast(new Decoder(maxFrameSize), handler);
+    }
+
+    /**
+     * Wraps a shared frame without copying it, every recipient gets its own view.
+     */
+    static ByteBuf wrap(EventFrame frame) {
+        return Unpooled.wrappedBuffer(frame.buffer());
+    }
+
+    Identifier getId() {
+        return id;
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    EventCodec getCodec() {
+        return codec;
+    }
+
+    Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Counts a frame read from this connection, the given payload excludes the length header
+     * stripped by the frame decoder.
+     */
+    void recordReceived(ByteBuf frame) {
+        metrics.recordReceived(EventFrame.BYTES_PER_INT + frame.readableBytes());
+    }
+
+    /**
+     * Returns true if the frame payload is a control frame rather than an Event.
+     */
+    static boolean isControlFrame(ByteBuf frame) {
+        return frame.isReadable() && Heartbeat.isControlType(frame.getByte(frame.readerIndex()));
+    }
+
+    /**
+     * Handles a control frame read from this connection, answering PINGs with a PONG.
+     */
+    void receiveControlFrame(ByteBuf frame) {
+        int index = frame.readerIndex();
+        long value = (frame.readableBytes() < EventFrame.CONTROL_FRAME_LENGTH) ? 0L : frame.getLong(index + 1);
+        EventFrame reply = heartbeat.receive(frame.getByte(index), value);
+        if (reply != null) {
+            write(wrap(reply), true);
+        }
+    }
+
+    /**
+     * Encodes the given Event with this connection's codec into a new frame allocated from the
+     * channel's (pooled) allocator. Callers that need frames to be written in the order they were
+     * encoded must hold the codec's lock until the frame has been written.
+     */
+    ByteBuf encode(Event event) throws IOException {
+        ByteBuf buffer = channel.alloc().ioBuffer();
+        try {
+            // reserve space for the length header.
+            buffer.writeInt(0);
+            codec.encode(event, EventFrame.getConnectionReference(event, id), new ByteBufOutputStream(buffer));
+            buffer.setInt(0, buffer.writerIndex() - EventFrame.BYTES_PER_INT);
+            return buffer;
+        } catch (IOException e) {
+            buffer.release();
+            throw e;
+        } catch (RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes the payload of a frame read from this connection.
+     */
+    Event decode(ByteBuf frame, Identifier recipient) throws IOException, ClassNotFoundException {
+        return decode(codec, frame, recipient);
+    }
+
+    static Event decode(EventCodec codec, ByteBuf frame, Identifier recipient) throws IOException, ClassNotFoundException {
+        int length = frame.readableBytes();
+        if (frame.hasArray()) {
+            return codec.decode(frame.array(), frame.arrayOffset() + frame.readerIndex(), length, recipient);
+        }
+        byte[] data = new byte[length];
+        frame.getBytes(frame.readerIndex(), data);
+        return codec.decode(data, 0, length, recipient);
+    }
+
+    /**
+     * Hands the frame to the channel, leaving it in the channel's outbound buffer until the next
+     * flush() unless flush is true.
+     */
+    void write(ByteBuf frame, boolean flush) {
+        metrics.recordSent(frame.readableBytes());
+        queueDepth.incrementAndGet();
+        ChannelFuture future = (flush) ? channel.writeAndFlush(frame) : channel.write(frame);
+        future.addListener(writeListener);
+    }
+
+    void flush() {
+        channel.flush();
+    }
+
+    /**
+     * Returns true if this connection wasn't already holding frames for a batch.
+     */
+    boolean hold() {
+        return held.compareAndSet(false, true);
+    }
+
+    /**
+     * Flushes the frames held for a batch.
+     */
+    void releaseHeld() {
+        held.set(false);
+        flush();
+    }
+
+    int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Returns true the first time this connection's outbound queue overflows since it last drained.
+     */
+    boolean markOverflowed() {
+        return overflowed.compareAndSet(false, true);
+    }
+
+    /**
+     * Invoked once the outbound queue has drained after an overflow, so the next one is reported again.
+     */
+    void markDrained() {
+        if (overflowed.get()) {
+            overflowed.set(false);
+        }
+    }
+
+    boolean isActive() {
+        return channel.isActive();
+    }
+
+    void close() {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [queued frames: %d]", id, getQueueDepth());
+    }
+
+    /**
+     * Skips oversized frames itself rather than leaving it to LengthFieldBasedFrameDecoder, so that it
+     * can look at their type id first: skipping an object stream frame would leave the frames after it
+     * referring to class descriptors the receiver never saw.
+     */
+    static class Decoder extends LengthFieldBasedFrameDecoder {
+
+        private final int maxFrameSize;
+        // number of bytes of an oversized frame that still need to be skipped.
+        private int discarding;
+        // set once an oversized object stream frame has been seen, nothing after
+        // it can be decoded.
+        private boolean failed;
+
+        Decoder(int maxFrameSize) {
+            super(maxFrameSize + EventFrame.BYTES_PER_INT, 0, EventFrame.BYTES_PER_INT, 0, EventFrame.BYTES_PER_INT);
+            this.maxFrameSize = maxFrameSize;
+        }
+
+        @Override
+        protected Object decode(ChannelHandlerContext context, ByteBuf in) throws Exception {
+            if (failed) {
+                in.skipBytes(in.readableBytes());
+                return null;
+            }
+            if (discarding > 0) {
+                int skipped = Math.min(discarding, in.readableBytes());
+                in.skipBytes(skipped);
+                discarding -= skipped;
+                if (discarding > 0) {
+                    return null;
+                }
+            }
+            if (in.readableBytes() >= EventFrame.BYTES_PER_INT) {
+                int index = in.readerIndex();
+                int length = in.getInt(index);
+                if (length > maxFrameSize) {
+                    if (in.readableBytes() == EventFrame.BYTES_PER_INT) {
+                        // wait for the type id.
+                        return null;
+                    }
+                    if (ObjectStreamCodec.isStreamFrame(in.getByte(index + EventFrame.BYTES_PER_INT))) {
+                        failed = true;
+                        throw new CorruptedFrameException(String.format("object stream frame of %d bytes exceeds the max frame size of %d bytes",
+                                length, maxFrameSize));
+                    }
+                    in.skipBytes(EventFrame.BYTES_PER_INT);
+                    discarding = length;
+                    context.fireExceptionCaught(new TooLongFrameException(String.format("skipping frame of %d bytes", length)));
+                    return null;
+                }
+            }
+            return super.decode(context, in);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.ReferenceCountUtil;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionEvent;
+
+/**
+ * $Id$
+ *
+ * Server dispatcher built on Netty. A single boss event loop accepts connections and hands each one
+ * to one of workerPoolSize worker event loops, which perform all reads and writes for it. Frames are
+ * encoded into pooled ByteBufs using the same framing, codecs and Identifier / ConnectionEvent
+ * handshake as the NioDispatcher, so clients of either kind can connect.
+ * <p>
+ * Transmitting never blocks on the network, the frame is queued on the connection's event loop and
+ * the outbound queue high water mark and overflow policy are applied just as they are by the
+ * NioDispatcher.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class NettyDispatcher extends AbstractServerDispatcher {
+
+    // how long the dispatcher thread waits between rounds of connection
+    // maintenance, Netty accepts connections on its own.
+    private final static long MAINTENANCE_INTERVAL = 500;
+
+    private final int workerPoolSize;
+    private final int outboundQueueHighWaterMark;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxFrameSize;
+
+    // encodes broadcast and multicast Events, each connection has a codec of
+    // its own for everything else.
+    private final DispatcherConfiguration configuration;
+    private final EventCodec codec;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Channel serverChannel;
+
+    private final ConnectionRegistry<NettyConnection> connections = new ConnectionRegistry<NettyConnection>();
+
+    // connections holding frames written during a batch.
+    private final Queue<NettyConnection> heldConnections = new ConcurrentLinkedQueue<NettyConnection>();
+
+    private final ServerHandler handler = new ServerHandler();
+
+    /**
+     * package private to enforce access via the DispatcherFactory.
+     */
+    NettyDispatcher(EventChannel channel, int workerPoolSize, DispatcherConfiguration configuration) {
+        super(channel, configuration);
+        this.workerPoolSize = workerPoolSize;
+        outboundQueueHighWaterMark = configuration.getOutboundQueueHighWaterMark();
+        overflowPolicy = configuration.getOutboundOverflowPolicy();
+        maxFrameSize = configuration.getMaxFrameSize();
+        this.configuration = configuration;
+        codec = createSharedCodec(configuration);
+    }
+
+    public boolean isConnected(Identifier id) {
+        NettyConnection connection = getConnection(id);
+        return connection != null && connection.isActive() && !connection.getHeartbeat().isExpired();
+    }
+
+    /**
+     * Returns the smoothed round trip time to the given connection in milliseconds, or -1 if it is
+     * unknown.
+     */
+    public double getRoundTripTime(Identifier id) {
+        NettyConnection connection = getConnection(id);
+        return (connection == null) ? -1.0d : connection.getHeartbeat().getSmoothedRoundTripTime();
+    }
+
+    private NettyConnection getConnection(Identifier id) {
+        return connections.get(id);
+    }
+
+    /**
+     * Returns the number of frames waiting to be written to the given connection, or -1 if there is
+     * no such connection.
+     */
+    public int getOutboundQueueDepth(Identifier id) {
+        NettyConnection connection = getConnection(id);
+        return (connection == null) ? -1 : connection.getQueueDepth();
+    }
+
+    public void disconnect(Identifier id) {
+        NettyConnection connection = connections.remove(id);
+        if (connection == null) {
+            getLogger().warning("trying to disconnect nonexistent connection: " + id + " (ignoring)");
+            return;
+        }
+        getLogger().info("disconnecting: " + id);
+        connection.close();
+        getMetrics().disconnected(id);
+        // notify any interested subscribers that a disconnection event has occurred.
+        getLocalEventHandler().handle(new DisconnectionEvent(id));
+    }
+
+    public void transmit(Event event) {
+        Identifier id = event.getId();
+        if (id == null || id == Identifier.NULL) {
+            broadcast(event);
+        }
+        else {
+            write(id, event);
+        }
+    }
+
+    /**
+     * Serializes the event once and queues a view of the resulting frame on every connection.
+     */
+    private void broadcast(Event event) {
+        if (connections.isEmpty()) {
+            return;
+        }
+        EventFrame frame;
+        try {
+            frame = EventFrame.encode(codec, event);
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Unable to serialize broadcast event " + event, e);
+            return;
+        }
+        int recipients = 0;
+        for (NettyConnection connection : connections.snapshot()) {
+            enqueue(connection, frame);
+            recipients++;
+        }
+        recordBroadcast(recipients, frame.size());
+    }
+
+    public void transmit(Collection<Identifier> ids, Event event) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        EventFrame frame;
+        try {
+            frame = EventFrame.encodeMulticast(codec, event);
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Unable to serialize multicast event " + event, e);
+            return;
+        }
+        int recipients = 0;
+        for (Identifier id : ids) {
+            NettyConnection connection = getConnection(id);
+            if (connection == null) {
+                getLogger().warning("skipping multicast to nonexistent connection: " + id);
+                continue;
+            }
+            enqueue(connection, frame);
+            recipients++;
+        }
+        recordBroadcast(recipients, frame.size());
+    }
+
+    /**
+     * Encodes the given Event with the codec of the connection identified by this id and queues the
+     * resulting frame on it.
+     */
+    private void write(Identifier id, Event event) {
+        NettyConnection connection = getConnection(id);
+        if (connection == null) {
+            throw new IllegalArgumentException("Attempting to write with an Identifier that doesn't exist: " + id);
+        }
+        EventCodec connectionCodec = connection.getCodec();
+        // frames that continue the connection's object stream must be queued
+        // in the order they were encoded, and a dropped frame must never have
+        // been encoded in the first place.
+        synchronized (connectionCodec) {
+            if (isOverflowing(connection)) {
+                return;
+            }
+            try {
+                queue(connection, connection.encode(event));
+            } catch (IOException e) {
+                getLogger().log(Level.SEVERE, "Unable to serialize " + event + " for " + id + ", disconnecting", e);
+                requestDisconnection(id, e);
+            }
+        }
+    }
+
+    private void enqueue(NettyConnection connection, EventFrame frame) {
+        if (!isOverflowing(connection)) {
+            queue(connection, NettyConnection.wrap(frame));
+        }
+    }
+
+    private void queue(NettyConnection connection, ByteBuf frame) {
+        if (isBatching()) {
+            connection.write(frame, false);
+            if (connection.hold()) {
+                heldConnections.add(connection);
+            }
+        }
+        else {
+            connection.write(frame, true);
+        }
+    }
+
+    /**
+     * Pings every connection and requests the disconnection of those that have been idle for too long.
+     */
+    @Override
+    protected void heartbeat() {
+        if (connections.isEmpty()) {
+            return;
+        }
+        EventFrame ping = Heartbeat.ping();
+        long now = System.nanoTime();
+        for (NettyConnection connection : connections.snapshot()) {
+            if (!isExpired(connection.getId(), connection.getHeartbeat(), now)) {
+                connection.write(NettyConnection.wrap(ping), true);
+            }
+        }
+    }
+
+    @Override
+    protected void flushHeldFrames() {
+        NettyConnection connection;
+        while ((connection = heldConnections.poll()) != null) {
+            connection.releaseHeld();
+        }
+    }
+
+    /**
+     * Returns true if the connection's outbound queue has reached its high water mark, in which case
+     * the overflow policy decides whether the frame is dropped or the slow client is disconnected.
+     */
+    private boolean isOverflowing(NettyConnection connection) {
+        int queueDepth = connection.getQueueDepth();
+        if (queueDepth >= outboundQueueHighWaterMark) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    if (connection.markOverflowed()) {
+                        getLogger().warning(String.format("outbound queue for %s reached %d frames, dropping frames until it drains",
+                                connection.getId(), outboundQueueHighWaterMark));
+                    }
+                    return true;
+                case DISCONNECT:
+                default:
+                    if (connection.markOverflowed()) {
+                        requestDisconnection(connection.getId(), new IOException(String.format(
+                                "outbound queue for %s exceeded %d frames", connection.getId(), outboundQueueHighWaterMark)));
+                    }
+                    return true;
+            }
+        }
+        // as in NioDispatcher, dropping frames is reported again for every
+        // overflow once the queue has drained to half its high water mark.
+        if (overflowPolicy == OverflowPolicy.DROP_NEWEST && queueDepth <= outboundQueueHighWaterMark / 2) {
+            connection.markDrained();
+        }
+        return false;
+    }
+
+    @Override
+    protected void bind(int port) throws IOException {
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup(workerPoolSize);
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, Boolean.TRUE)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        NettyConnection.initPipeline(channel, maxFrameSize, handler);
+                    }
+                });
+        ChannelFuture future = bootstrap.bind(port).awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            shutdownEventLoops();
+            throw new IOException("Unable to bind to port " + port, future.cause());
+        }
+        serverChannel = future.channel();
+    }
+
+    /**
+     * Netty accepts connections on its own event loop, the dispatcher thread only needs to wake up
+     * periodically to perform connection maintenance.
+     */
+    @Override
+    protected void processIncomingConnections() throws IOException {
+        Channel channel = serverChannel;
+        try {
+            if (channel == null || channel.closeFuture().await(MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS)) {
+                // shut down while we were waiting.
+                Thread.sleep(MAINTENANCE_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected void cleanup() {
+        for (NettyConnection connection : connections.clear()) {
+            connection.close();
+        }
+        if (serverChannel != null) {
+            serverChannel.close();
+            serverChannel = null;
+        }
+        shutdownEventLoops();
+    }
+
+    private void shutdownEventLoops() {
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            bossGroup = null;
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+            workerGroup = null;
+        }
+    }
+
+    private NettyConnection accept(Channel channel) {
+        Identifier id = createIdentifier((InetSocketAddress) channel.localAddress(), (InetSocketAddress) channel.remoteAddress());
+        NettyConnection connection = new NettyConnection(id, channel, createConnectionCodec(configuration));
+        getLogger().info("incoming connection: " + id);
+        getMetrics().connected(id, connection.getMetrics());
+        connections.register(id, connection);
+        // send the newly generated Identifier to the client dispatcher, which
+        // should be blocked, waiting for it.
+        ConnectionEvent connectionEvent = new ConnectionEvent(id);
+        transmit(connectionEvent);
+        // notify any interested parties that a new connection has been made
+        // with the given Identifier.
+        getLocalEventHandler().handle(connectionEvent);
+        return connection;
+    }
+
+    /**
+     * Shared by every child channel, each callback looks up the NettyConnection of its channel.
+     */
+    @Sharable
+    private class ServerHandler extends ChannelInboundHandlerAdapter {
+
+        private final Map<Channel, NettyConnection> channels = new ConcurrentHashMap<Channel, NettyConnection>();
+
+        @Override
+        public void channelActive(ChannelHandlerContext context) {
+            channels.put(context.channel(), accept(context.channel()));
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext context) {
+            NettyConnection connection = channels.remove(context.channel());
+            if (connection != null && connections.contains(connection.getId())) {
+                getLogger().info("end of stream for id: " + connection.getId() + " - disconnecting");
+                disconnect(connection.getId());
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext context, Object message) {
+            ByteBuf frame = (ByteBuf) message;
+            try {
+                NettyConnection connection = channels.get(context.channel());
+                if (connection == null) {
+                    return;
+                }
+                connection.getHeartbeat().touch();
+                connection.recordReceived(frame);
+                if (NettyConnection.isControlFrame(frame)) {
+                    connection.receiveControlFrame(frame);
+                    return;
+                }
+                Identifier id = connection.getId();
+                Event event;
+                try {
+                    event = connection.decode(frame, id);
+                } catch (IOException e) {
+                    getLogger().log(Level.SEVERE, "Unable to decode frame from " + id + ", disconnecting", e);
+                    requestDisconnection(id, e);
+                    return;
+                } catch (ClassNotFoundException e) {
+                    getLogger().log(Level.SEVERE, "Unable to decode frame from " + id + ", disconnecting", e);
+                    requestDisconnection(id, e);
+                    return;
+                }
+                getLocalEventHandler().handle(event);
+            } finally {
+                ReferenceCountUtil.release(frame);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+            NettyConnection connection = channels.get(context.channel());
+            Identifier id = (connection == null) ? null : connection.getId();
+            if (cause instanceof TooLongFrameException) {
+                // the decoder has skipped a frame that doesn't continue the object
+                // stream, so the connection can be kept.
+                getLogger().warning(String.format("skipped frame from %s larger than the max frame size of %d bytes", id, maxFrameSize));
+                return;
+            }
+            getLogger().warning("error on connection " + id + ": " + cause);
+            if (id != null) {
+                requestDisconnection(id, cause);
+            }
+            else {
+                context.close();
+            }
+        }
+    }
+}
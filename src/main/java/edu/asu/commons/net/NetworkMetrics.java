@@ -0,0 +1,390 @@
+package edu.asu.commons.net;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.codec.EventCodec;
+
+/**
+ * $Id$
+ *
+ * Network metrics of a single Dispatcher: the ConnectionMetrics of each connected Identifier, the
+ * EventTypeMetrics of each Event class it has encoded or decoded, and the number of connects and
+ * disconnects. Every counter is a LongAdder, cheap enough to be left on during real sessions.
+ * <p>
+ * Server dispatchers register their metrics with the platform MBeanServer once they are listening,
+ * under edu.asu.commons.net:type=Dispatcher,name=&lt;dispatcher&gt;-&lt;port&gt;, with an MBean below
+ * it for each connection and Event class, so they can be watched with jconsole or any other JMX
+ * client. snapshot() renders the same metrics as text, e.g., for the server log.
+ * <p>
+ * The totals include the traffic of connections that have since disconnected.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public final class NetworkMetrics implements NetworkMetricsMBean {
+
+    public final static String DOMAIN = "edu.asu.commons.net";
+
+    private final static Logger logger = Logger.getLogger(NetworkMetrics.class.getName());
+
+    private final ConcurrentMap<Identifier, ConnectionMetrics> connections = new ConcurrentHashMap<Identifier, ConnectionMetrics>();
+    private final ConcurrentMap<Class<?>, EventTypeMetrics> eventTypes = new ConcurrentHashMap<Class<?>, EventTypeMetrics>();
+
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+
+    // traffic of the connections no longer in the connections map.
+    private final LongAdder retiredMessagesSent = new LongAdder();
+    private final LongAdder retiredMessagesReceived = new LongAdder();
+    private final LongAdder retiredBytesSent = new LongAdder();
+    private final LongAdder retiredBytesReceived = new LongAdder();
+
+    // null unless registered with the MBeanServer.
+    private volatile String name;
+    private volatile ObjectName objectName;
+
+    /**
+     * Attaches the metrics of a newly connected Identifier. A connection taking over from another one
+     * with the same Identifier, e.g., one resuming a session, replaces it without counting as a new
+     * connection.
+     */
+    void connected(Identifier id, ConnectionMetrics connection) {
+        connection.setId(id);
+        ConnectionMetrics previous = connections.put(id, connection);
+        if (previous == null) {
+            connects.increment();
+        }
+        else if (previous != connection) {
+            retire(previous);
+        }
+        ObjectName parent = objectName;
+        if (parent != null && previous != connection) {
+            ObjectName connectionName = createConnectionName(parent, id);
+            if (previous != null) {
+                unregisterMBean(connectionName);
+            }
+            registerMBean(connection, connectionName);
+        }
+    }
+
+    /**
+     * Detaches the metrics of the given Identifier, if it is still connected.
+     */
+    void disconnected(Identifier id) {
+        if (id == null) {
+            return;
+        }
+        ConnectionMetrics connection = connections.remove(id);
+        if (connection == null) {
+            return;
+        }
+        disconnects.increment();
+        retire(connection);
+        ObjectName parent = objectName;
+        if (parent != null) {
+            unregisterMBean(createConnectionName(parent, id));
+        }
+    }
+
+    private void retire(ConnectionMetrics connection) {
+        retiredMessagesSent.add(connection.getMessagesSent());
+        retiredMessagesReceived.add(connection.getMessagesReceived());
+        retiredBytesSent.add(connection.getBytesSent());
+        retiredBytesReceived.add(connection.getBytesReceived());
+    }
+
+    void recordEncode(Event event, long bytes, long nanos) {
+        getOrCreateEventTypeMetrics(event.getClass()).recordEncode(bytes, nanos);
+    }
+
+    void recordDecode(Event event, long bytes, long nanos) {
+        getOrCreateEventTypeMetrics(event.getClass()).recordDecode(bytes, nanos);
+    }
+
+    private EventTypeMetrics getOrCreateEventTypeMetrics(Class<?> type) {
+        EventTypeMetrics metrics = eventTypes.get(type);
+        if (metrics == null) {
+            EventTypeMetrics created = new EventTypeMetrics(type);
+            metrics = eventTypes.putIfAbsent(type, created);
+            if (metrics == null) {
+                metrics = created;
+                ObjectName parent = objectName;
+                if (parent != null) {
+                    registerMBean(created, createEventTypeName(parent, type));
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns an EventCodec that records the Events encoded and decoded by the given codec.
+     */
+    EventCodec meter(EventCodec codec) {
+        return new MeteredCodec(codec, this);
+    }
+
+    /**
+     * Registers these metrics and the metrics of every connection and Event class, now and in the
+     * future, with the platform MBeanServer under the given name, replacing any previous
+     * registration. Failures are logged but otherwise ignored.
+     */
+    public synchronized void register(String name) {
+        unregister();
+        ObjectName parent;
+        try {
+            parent = new ObjectName(DOMAIN + ":type=Dispatcher,name=" + name);
+        } catch (JMException e) {
+            try {
+                parent = new ObjectName(DOMAIN + ":type=Dispatcher,name=" + ObjectName.quote(name));
+            } catch (JMException quotedNameException) {
+                logger.warning("invalid metrics name " + name + ": " + quotedNameException);
+                return;
+            }
+        }
+        this.name = name;
+        objectName = parent;
+        registerMBean(this, parent);
+        for (ConnectionMetrics connection : connections.values()) {
+            registerMBean(connection, createConnectionName(parent, connection.getIdentifier()));
+        }
+        for (EventTypeMetrics eventType : eventTypes.values()) {
+            registerMBean(eventType, createEventTypeName(parent, eventType.getType()));
+        }
+    }
+
+    /**
+     * Unregisters these metrics and every MBean registered below them.
+     */
+    public synchronized void unregister() {
+        ObjectName parent = objectName;
+        if (parent == null) {
+            return;
+        }
+        objectName = null;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName registered : server.queryNames(new ObjectName(parent + ",*"), null)) {
+                unregisterMBean(registered);
+            }
+        } catch (JMException e) {
+            logger.warning("unable to unregister " + parent + ": " + e);
+        }
+    }
+
+    /**
+     * Returns the name these metrics are registered under, or null if they aren't registered.
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    private static ObjectName createConnectionName(ObjectName parent, Identifier id) {
+        try {
+            return new ObjectName(parent + ",connection=" + ObjectName.quote(String.valueOf(id)));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("invalid connection name: " + id, e);
+        }
+    }
+
+    private static ObjectName createEventTypeName(ObjectName parent, Class<?> type) {
+        try {
+            return new ObjectName(parent + ",eventType=" + type.getName());
+        } catch (JMException e) {
+            throw new IllegalArgumentException("invalid event type name: " + type, e);
+        }
+    }
+
+    private static void registerMBean(Object mbean, ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+        } catch (JMException e) {
+            logger.warning("unable to register " + name + ": " + e);
+        }
+    }
+
+    private static void unregisterMBean(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            // already gone.
+        }
+    }
+
+    /**
+     * Returns the metrics of the given connected Identifier, or null if it isn't connected.
+     */
+    public ConnectionMetrics getConnectionMetrics(Identifier id) {
+        return connections.get(id);
+    }
+
+    public Collection<ConnectionMetrics> getConnectionMetrics() {
+        return Collections.unmodifiableCollection(connections.values());
+    }
+
+    /**
+     * Returns the metrics of the given Event class, or null if no such Event has been encoded or
+     * decoded yet.
+     */
+    public EventTypeMetrics getEventTypeMetrics(Class<? extends Event> type) {
+        return eventTypes.get(type);
+    }
+
+    public Collection<EventTypeMetrics> getEventTypeMetrics() {
+        return Collections.unmodifiableCollection(eventTypes.values());
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public long getConnects() {
+        return connects.sum();
+    }
+
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+
+    public long getMessagesSent() {
+        long total = retiredMessagesSent.sum();
+        for (ConnectionMetrics connection : connections.values()) {
+            total += connection.getMessagesSent();
+        }
+        return total;
+    }
+
+    public long getMessagesReceived() {
+        long total = retiredMessagesReceived.sum();
+        for (ConnectionMetrics connection : connections.values()) {
+            total += connection.getMessagesReceived();
+        }
+        return total;
+    }
+
+    public long getBytesSent() {
+        long total = retiredBytesSent.sum();
+        for (ConnectionMetrics connection : connections.values()) {
+            total += connection.getBytesSent();
+        }
+        return total;
+    }
+
+    public long getBytesReceived() {
+        long total = retiredBytesReceived.sum();
+        for (ConnectionMetrics connection : connections.values()) {
+            total += connection.getBytesReceived();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of frames waiting to be written to all connections.
+     */
+    public int getOutboundQueueDepth() {
+        int total = 0;
+        for (ConnectionMetrics connection : connections.values()) {
+            total += connection.getOutboundQueueDepth();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of frames waiting to be written to the connection with the longest
+     * outbound queue.
+     */
+    public int getMaxOutboundQueueDepth() {
+        int max = 0;
+        for (ConnectionMetrics connection : connections.values()) {
+            max = Math.max(max, connection.getOutboundQueueDepth());
+        }
+        return max;
+    }
+
+    /**
+     * Returns the total time in milliseconds spent encoding Events.
+     */
+    public double getEncodeTime() {
+        long nanos = 0;
+        for (EventTypeMetrics eventType : eventTypes.values()) {
+            nanos += eventType.getEncodeNanos();
+        }
+        return toMillis(nanos);
+    }
+
+    /**
+     * Returns the total time in milliseconds spent decoding Events.
+     */
+    public double getDecodeTime() {
+        long nanos = 0;
+        for (EventTypeMetrics eventType : eventTypes.values()) {
+            nanos += eventType.getDecodeNanos();
+        }
+        return toMillis(nanos);
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns a multi-line text rendering of these metrics: the totals followed by a table of the
+     * connections and a table of the Event classes.
+     */
+    public String snapshot() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%s: %d connections (%d connects, %d disconnects), sent %d messages / %d bytes, received %d messages / %d bytes, %d queued frames%n",
+                (name == null) ? "dispatcher" : name, getConnectionCount(), getConnects(), getDisconnects(), getMessagesSent(), getBytesSent(),
+                getMessagesReceived(), getBytesReceived(), getOutboundQueueDepth()));
+        List<ConnectionMetrics> sortedConnections = new ArrayList<ConnectionMetrics>(connections.values());
+        Collections.sort(sortedConnections, new Comparator<ConnectionMetrics>() {
+            public int compare(ConnectionMetrics a, ConnectionMetrics b) {
+                return a.getId().compareTo(b.getId());
+            }
+        });
+        if (!sortedConnections.isEmpty()) {
+            builder.append(String.format("  %-40s %12s %14s %12s %14s %8s%n", "connection", "sent", "bytes sent", "received", "bytes received", "queued"));
+            for (ConnectionMetrics connection : sortedConnections) {
+                builder.append(String.format("  %-40s %12d %14d %12d %14d %8d%n", connection.getId(), connection.getMessagesSent(), connection.getBytesSent(),
+                        connection.getMessagesReceived(), connection.getBytesReceived(), connection.getOutboundQueueDepth()));
+            }
+        }
+        List<EventTypeMetrics> sortedEventTypes = new ArrayList<EventTypeMetrics>(eventTypes.values());
+        Collections.sort(sortedEventTypes, new Comparator<EventTypeMetrics>() {
+            public int compare(EventTypeMetrics a, EventTypeMetrics b) {
+                return a.getEventType().compareTo(b.getEventType());
+            }
+        });
+        if (!sortedEventTypes.isEmpty()) {
+            builder.append(String.format("  %-40s %12s %14s %10s %12s %14s %10s%n", "event type", "sent", "bytes sent", "encode us", "received",
+                    "bytes received", "decode us"));
+            for (EventTypeMetrics eventType : sortedEventTypes) {
+                builder.append(String.format("  %-40s %12d %14d %10.1f %12d %14d %10.1f%n", eventType.getType().getSimpleName(), eventType.getMessagesSent(),
+                        eventType.getBytesSent(), eventType.getMeanEncodeTime(), eventType.getMessagesReceived(), eventType.getBytesReceived(),
+                        eventType.getMeanDecodeTime()));
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot();
+    }
+
+}
@@ -0,0 +1,38 @@
+package edu.asu.commons.net;
+
+/**
+ * $Id$
+ *
+ * Management interface of the NetworkMetrics of a Dispatcher, registered with the platform
+ * MBeanServer as edu.asu.commons.net:type=Dispatcher,name=&lt;dispatcher&gt;-&lt;port&gt;.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public interface NetworkMetricsMBean {
+
+    public int getConnectionCount();
+
+    public long getConnects();
+
+    public long getDisconnects();
+
+    public long getMessagesSent();
+
+    public long getMessagesReceived();
+
+    public long getBytesSent();
+
+    public long getBytesReceived();
+
+    public int getOutboundQueueDepth();
+
+    public int getMaxOutboundQueueDepth();
+
+    public double getEncodeTime();
+
+    public double getDecodeTime();
+
+    public String snapshot();
+
+}
@@ -0,0 +1,273 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import edu.asu.commons.net.codec.EventCodec;
+
+/**
+ * $Id$
+ *
+ * Per-connection state for the NioDispatcher, attached to the connection's SelectionKey.
+ * <p>
+ * Inbound bytes are fed to this connection's own FrameDecoder by its selector thread, so reads on
+ * different connections never contend with each other.
+ * <p>
+ * Outbound frames are appended to a lock-free queue by whichever thread transmits and are only ever
+ * written to the SocketChannel by the selector thread that owns this connection, so partially
+ * written frames simply stay at the head of the queue until the channel becomes writable again.
+ * Queued frames are written back-to-back with gathering writes, so a burst of small frames costs a
+ * single system call.
+ * <p>
+ * Each connection has its own EventCodec since its object stream state is shared by every frame sent
+ * or received on the connection.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class NioConnection {
+
+    // most frames handed to a single gathering write.
+    private final static int MAX_GATHERED_FRAMES = 64;
+
+    private final Identifier id;
+    private final SocketChannel channel;
+
+    private final Queue<OutboundFrame> outbound = new ConcurrentLinkedQueue<OutboundFrame>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    // true while this connection is waiting in its selector thread's flush queue
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(true);
+    private final AtomicBoolean overflowed = new AtomicBoolean();
+    // true while frames are being held back by an open batch.
+    private final AtomicBoolean held = new AtomicBoolean();
+
+    // only ever touched by the owning selector thread.
+    private final FrameDecoder decoder;
+    // encoding is guarded by locking on the codec itself, decoding is only
+    // done by the owning selector thread.
+    private final EventCodec codec;
+    // System.nanoTime() when this connection was established.
+    private final long creationTime = System.nanoTime();
+    private final Heartbeat heartbeat = new Heartbeat();
+    private final ConnectionMetrics metrics = new ConnectionMetrics(new IntSupplier() {
+        public int getAsInt() {
+            return getQueueDepth();
+        }
+    });
+
+    // scratch space for gathering writes, only used by the owning selector thread.
+    private final OutboundFrame[] gatheredFrames = new OutboundFrame[MAX_GATHERED_FRAMES];
+    private ByteBuffer[] gatheredBuffers = new ByteBuffer[MAX_GATHERED_FRAMES * 2];
+    private int gatheredBufferCount;
+
+    private volatile SelectionKey key;
+    private volatile Queue<NioConnection> flushQueue;
+
+    NioConnection(Identifier id, SocketChannel channel, int maxFrameSize, EventCodec codec) {
+        this.id = id;
+        this.channel = channel;
+        this.decoder = new FrameDecoder(maxFrameSize);
+        this.codec = codec;
+    }
+
+    Identifier getId() {
+        return id;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    long getCreationTime() {
+        return creationTime;
+    }
+
+    FrameDecoder getDecoder() {
+        return decoder;
+    }
+
+    EventCodec getCodec() {
+        return codec;
+    }
+
+    Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Invoked by the owning selector thread once the channel has been registered. Any frames queued
+     * before registration are flushed by the caller afterwards.
+     */
+    void bind(SelectionKey key, Queue<NioConnection> flushQueue) {
+        this.key = key;
+        this.flushQueue = flushQueue;
+        flushScheduled.set(false);
+    }
+
+    int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    void enqueue(OutboundFrame frame) {
+        enqueue(frame, true);
+    }
+
+    /**
+     * Queues the frame, leaving it to a later scheduleFlush() to write it unless flush is true.
+     */
+    void enqueue(OutboundFrame frame, boolean flush) {
+        metrics.recordSent(frame.size());
+        outbound.add(frame);
+        queueDepth.incrementAndGet();
+        if (flush) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Returns true if this connection wasn't already holding frames for a batch.
+     */
+    boolean hold() {
+        return held.compareAndSet(false, true);
+    }
+
+    /**
+     * Schedules the frames held for a batch to be written.
+     */
+    void releaseHeld() {
+        held.set(false);
+        scheduleFlush();
+    }
+
+    /**
+     * Returns true the first time this connection overflows its outbound queue since it last drained,
+     * so each overflow is only reported once.
+     */
+    boolean markOverflowed() {
+        return overflowed.compareAndSet(false, true);
+    }
+
+    /**
+     * Invoked once the outbound queue has drained after an overflow, so the next one is reported again.
+     */
+    void markDrained() {
+        if (overflowed.get()) {
+            overflowed.set(false);
+        }
+    }
+
+    void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            Queue<NioConnection> queue = flushQueue;
+            SelectionKey selectionKey = key;
+            if (queue != null && selectionKey != null) {
+                queue.add(this);
+                selectionKey.selector().wakeup();
+            }
+        }
+    }
+
+    /**
+     * Invoked by the owning selector thread when it picks this connection off its flush queue.
+     */
+    boolean flushScheduled() throws IOException {
+        flushScheduled.set(false);
+        return flush();
+    }
+
+    /**
+     * Writes as many queued frames as the channel will accept without blocking. Must only be invoked
+     * by the owning selector thread.
+     *
+     * @return true if the outbound queue was completely drained.
+     */
+    boolean flush() throws IOException {
+        while (true) {
+            int frames = gather();
+            if (frames == 0) {
+                return true;
+            }
+            try {
+                if (frames == 1) {
+                    gatheredFrames[0].writeTo(channel);
+                }
+                else {
+                    channel.write(gatheredBuffers, 0, gatheredBufferCount);
+                }
+                for (int i = 0; i < frames; i++) {
+                    if (gatheredFrames[i].hasRemaining()) {
+                        // socket send buffer is full, wait for OP_WRITE.
+                        return false;
+                    }
+                    // only the thread that removes a frame from the queue releases
+                    // it. If clear() raced us here from a disconnecting thread the
+                    // written frame is already gone, and whatever is at the head
+                    // now was queued afterwards and hasn't been written yet.
+                    OutboundFrame written = gatheredFrames[i];
+                    if (!outbound.remove(written)) {
+                        return true;
+                    }
+                    queueDepth.decrementAndGet();
+                    written.release();
+                }
+            } finally {
+                Arrays.fill(gatheredFrames, 0, frames, null);
+                Arrays.fill(gatheredBuffers, 0, gatheredBufferCount, null);
+            }
+        }
+    }
+
+    /**
+     * Collects the frames at the head of the outbound queue for the next gathering write.
+     */
+    private int gather() {
+        int frames = 0;
+        int buffers = 0;
+        for (OutboundFrame frame : outbound) {
+            if (frames == MAX_GATHERED_FRAMES) {
+                break;
+            }
+            ByteBuffer[] frameBuffers = frame.buffers();
+            if (buffers + frameBuffers.length > gatheredBuffers.length) {
+                gatheredBuffers = Arrays.copyOf(gatheredBuffers, gatheredBuffers.length * 2);
+            }
+            System.arraycopy(frameBuffers, 0, gatheredBuffers, buffers, frameBuffers.length);
+            buffers += frameBuffers.length;
+            gatheredFrames[frames++] = frame;
+        }
+        gatheredBufferCount = buffers;
+        return frames;
+    }
+
+    /**
+     * Discards all queued frames.
+     */
+    void clear() {
+        OutboundFrame frame;
+        while ((frame = outbound.poll()) != null) {
+            queueDepth.decrementAndGet();
+            frame.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [queued frames: %d]", id, getQueueDepth());
+    }
+}
@@ -1,24 +1,25 @@
 package edu.asu.commons.net;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.asu.commons.event.Event;
 import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.net.codec.EventCodec;
 import edu.asu.commons.net.event.ConnectionEvent;
 import edu.asu.commons.net.event.DisconnectionEvent;
 
@@ -31,25 +32,51 @@ import edu.asu.commons.net.event.DisconnectionEvent;
  * The NioDispatcher is both a client and a server dispatcher, allowing p2p
  * connections.
  * 
- * 
- * FIXME: replace WorkerPool implementation with 1.5 concurrency constructs
- * instead from java.util.concurrent.
- * 
  * @author <a href='Allen.Lee@asu.edu'>Allen Lee</a>
  * @version $Revision$
  */
 public class NioDispatcher extends AbstractServerDispatcher implements ClientDispatcher {
 
-    // FIXME: this is a potential source of bugs
-    private final static int READ_BUFFER_SIZE = 32768;
-
     private final static int BYTES_PER_INT = 4;
 
+    // how long the acceptor waits for new connections before performing
+    // connection maintenance.
+    private final static long ACCEPT_SELECT_TIMEOUT = 500;
+
     private ServerSocketChannel server;
+    // dedicated to OP_ACCEPT on the server channel, only ever used by the
+    // dispatcher thread.
+    private Selector acceptor;
+
+    // either a single NioDispatcherWorker or a ReactorGroup of
+    // NioDispatcherWorkers.
+    private Worker<NioConnection> worker;
+
+    // maximum number of frames queued for a single connection before the
+    // overflow policy is applied.
+    private final int outboundQueueHighWaterMark;
+    private final OverflowPolicy overflowPolicy;
+
+    // largest inbound frame we are willing to buffer, larger frames are skipped
+    // unless they continue the object stream, which closes the connection.
+    private final int maxFrameSize;
+
+    // encodes broadcast and multicast Events, each connection has a codec of
+    // its own for everything else.
+    private final DispatcherConfiguration configuration;
+    private final EventCodec codec;
+
+    // time between accepting a connection and its channel being registered
+    // with a worker and its ConnectionEvent written.
+    private final AtomicLong connectionSetupCount = new AtomicLong();
+    private final AtomicLong totalConnectionSetupNanos = new AtomicLong();
+    private final AtomicLong maxConnectionSetupNanos = new AtomicLong();
+
+    private final AtomicInteger workerThreadCount = new AtomicInteger();
 
-    // either a single NioDispatcherWorker or an aggregate WorkerPool that
-    // constructs NioDispatcherWorkers.
-    private Worker<SocketChannel> worker;
+    // direct buffers that outbound frames are built from, returned to the
+    // pool once the frame has been completely written.
+    private final ByteBufferPool bufferPool;
 
     // we need to maintain a mapping between Identifiers -> SocketChannel as
     // well as SocketChannel -> Identifier due to the way nio inherently
@@ -58,46 +85,66 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
     // need for the reverse mapping to look up an Identifier based on a
     // SocketChannel.
 
-    // bidirectional map of Identifier <-> SocketChannel
-    private final Map<Identifier, SocketChannel> connections =
-            new HashMap<Identifier, SocketChannel>();
-    // maps Identifiers of clients that are in the process of
-    // sending an Object across the stream but only got there halfway
-    private Map<Identifier, PendingDataBuffer> pendingClients =
-            new HashMap<Identifier, PendingDataBuffer>();
+    // bidirectional map of Identifier <-> NioConnection, the reverse mapping is
+    // the NioConnection attached to each SelectionKey. Concurrent since every
+    // worker thread may look up or remove connections.
+    private final ConnectionRegistry<NioConnection> connections = new ConnectionRegistry<NioConnection>();
+
+    // connections holding frames written during a batch.
+    private final Queue<NioConnection> heldConnections = new ConcurrentLinkedQueue<NioConnection>();
 
     /**
      * package private to enforce access via the DispatcherFactory.
      */
     NioDispatcher(EventChannel channel, int workerPoolSize) {
-        super(channel);
-        initWorkerPool(workerPoolSize);
+        this(channel, workerPoolSize, new DispatcherConfiguration());
+    }
+
+    /**
+     * package private to enforce access via the DispatcherFactory.
+     */
+    NioDispatcher(EventChannel channel, int workerPoolSize, DispatcherConfiguration configuration) {
+        super(channel, configuration);
+        outboundQueueHighWaterMark = configuration.getOutboundQueueHighWaterMark();
+        overflowPolicy = configuration.getOutboundOverflowPolicy();
+        maxFrameSize = configuration.getMaxFrameSize();
+        this.configuration = configuration;
+        codec = createSharedCodec(configuration);
+        bufferPool = new ByteBufferPool(configuration.isBufferPoolEnabled());
+        initWorkerPool(workerPoolSize, configuration.getReactorAssignment());
     }
 
     /**
      * package private to enforce access via the DispatcherFactory.
      */
     NioDispatcher(EventChannel channel) {
-        this(channel, 10);
+        this(channel, ReactorGroup.DEFAULT_SIZE);
     }
 
-    private void initWorkerPool(int size) {
+    private void initWorkerPool(int size, ReactorGroup.Assignment assignment) {
         // XXX: special case worker pool of size 1 to just be a single Worker.
-        if (size > 1) {
-            WorkerFactory<SocketChannel> factory = new WorkerFactory<SocketChannel>() {
-                public Worker<SocketChannel> create() {
+        if (size != 1) {
+            WorkerFactory<NioConnection> factory = new WorkerFactory<NioConnection>() {
+                public Worker<NioConnection> create() {
                     return new NioDispatcherWorker();
                 }
             };
-            worker = new WorkerPool<SocketChannel>(size, factory);
+            worker = new ReactorGroup<NioConnection>(size, factory, assignment);
         }
         else {
             worker = new NioDispatcherWorker();
         }
     }
 
+    /**
+     * Returns true if the connection's channel is open and it has been heard from within the idle
+     * timeout.
+     */
     public boolean isConnected(Identifier id) {
-        return true;
+        NioConnection connection = getConnection(id);
+        return connection != null
+                && connection.getChannel().isOpen()
+                && !connection.getHeartbeat().isExpired();
     }
 
     public Identifier connect(String host, int port) {
@@ -109,12 +156,15 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
             SocketChannel connection = SocketChannel.open(address);
             connection.configureBlocking(true);
             // block until we've read the socket identifier from server.
-            Identifier id = readConnectionEvent(connection);
+            EventCodec connectionCodec = createConnectionCodec(configuration);
+            Identifier id = readConnectionEvent(connection, connectionCodec);
             connection.configureBlocking(false);
-            worker.process(connection);
+            NioConnection nioConnection = new NioConnection(id, connection, maxFrameSize, connectionCodec);
             // XXX: we return an Identifier that's .equals() with the
             // Identifiers used on the Server side.
-            addMapping(id, connection);
+            addMapping(id, nioConnection);
+            worker.process(nioConnection);
+            startHeartbeat();
             return id;
         } catch (IOException e) {
             e.printStackTrace();
@@ -123,69 +173,150 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
         }
     }
 
-    private Identifier readConnectionEvent(SocketChannel connection) throws IOException {
-        InputStream in = connection.socket().getInputStream();
-        // read past the int header
-        in.read();
-        in.read();
-        in.read();
-        in.read();
-        ObjectInputStream ois = new ObjectInputStream(in);
+    private Identifier readConnectionEvent(SocketChannel connection, EventCodec connectionCodec) throws IOException {
+        // XXX: unbuffered so nothing past the ConnectionEvent's frame is consumed.
+        DataInputStream in = new DataInputStream(connection.socket().getInputStream());
         try {
-            ConnectionEvent event = (ConnectionEvent) ois.readObject();
+            ConnectionEvent event = (ConnectionEvent) EventFrame.read(connectionCodec, in, maxFrameSize, null);
             return event.getId();
         } catch (Exception e) {
             throw new RuntimeException("Could not read connection event", e);
         }
     }
 
-    private void addMapping(Identifier id, SocketChannel channel) {
-        connections.put(id, channel);
+    private void addMapping(Identifier id, NioConnection connection) {
+        getMetrics().connected(id, connection.getMetrics());
+        connections.register(id, connection);
     }
 
-    private SocketChannel getConnection(Identifier id) {
+    private NioConnection getConnection(Identifier id) {
         return connections.get(id);
     }
 
+    /**
+     * Returns the number of frames waiting to be written to the given connection, or -1 if there is
+     * no such connection.
+     */
+    public int getOutboundQueueDepth(Identifier id) {
+        NioConnection connection = getConnection(id);
+        return (connection == null) ? -1 : connection.getQueueDepth();
+    }
+
+    /**
+     * Returns the smoothed round trip time to the given connection in milliseconds, or -1 if it is
+     * unknown.
+     */
+    public double getRoundTripTime(Identifier id) {
+        NioConnection connection = getConnection(id);
+        return (connection == null) ? -1.0d : connection.getHeartbeat().getSmoothedRoundTripTime();
+    }
+
+    /**
+     * Returns the number of outbound buffers that were served from the buffer pool.
+     */
+    public long getBufferPoolHits() {
+        return bufferPool.getHits();
+    }
+
+    /**
+     * Returns the number of outbound buffers that had to be freshly allocated.
+     */
+    public long getBufferPoolMisses() {
+        return bufferPool.getMisses();
+    }
+
+    /**
+     * Returns the number of connections that have completed setup, i.e., have been registered with a
+     * worker's selector.
+     */
+    public long getConnectionSetupCount() {
+        return connectionSetupCount.get();
+    }
+
+    /**
+     * Returns the mean time in milliseconds between accepting a connection and registering it with a
+     * worker's selector.
+     */
+    public double getMeanConnectionSetupLatency() {
+        long count = connectionSetupCount.get();
+        return (count == 0) ? 0.0d : toMillis(totalConnectionSetupNanos.get() / count);
+    }
+
+    /**
+     * Returns the longest time in milliseconds it took to set up a single connection.
+     */
+    public double getMaxConnectionSetupLatency() {
+        return toMillis(maxConnectionSetupNanos.get());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private void recordConnectionSetup(NioConnection connection) {
+        long latency = System.nanoTime() - connection.getCreationTime();
+        connectionSetupCount.incrementAndGet();
+        totalConnectionSetupNanos.addAndGet(latency);
+        long max;
+        while (latency > (max = maxConnectionSetupNanos.get())) {
+            if (maxConnectionSetupNanos.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+        getLogger().fine(String.format("set up connection %s in %.3f ms", connection.getId(), toMillis(latency)));
+    }
+
     public void disconnect(Identifier id) {
-        SocketChannel channel = getConnection(id);
-        disconnect(id, channel);
+        NioConnection connection = getConnection(id);
+        disconnect(id, connection);
     }
 
-    private void disconnect(Identifier id, SocketChannel channel) {
-        if (id == null || channel == null) {
-            getLogger().warning("trying to disconnect [id: " + id + "] [channel: " + channel + "] (ignoring)");
+    private void disconnect(Identifier id, NioConnection connection) {
+        if (id == null || connection == null) {
+            getLogger().warning("trying to disconnect [id: " + id + "] [connection: " + connection + "] (ignoring)");
+            return;
         }
         getLogger().info("disconnecting: " + id);
         connections.remove(id);
-        pendingClients.remove(id);
-        worker.remove(channel);
+        worker.remove(connection);
+        connection.clear();
+        getMetrics().disconnected(id);
         // notify any interested subscribers that a disconnection event has occurred.
         getLocalEventHandler().handle(new DisconnectionEvent(id));
     }
 
-    private byte[] marshal(Event event) {
+    /**
+     * Encodes the given Event into a length-prefixed frame built from pooled buffers.
+     */
+    private OutboundFrame marshal(NioConnection connection, Event event) {
+        FrameOutputStream stream = FrameOutputStream.get();
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(event);
-            oos.flush();
-            return baos.toByteArray();
+            connection.getCodec().encode(event, EventFrame.getConnectionReference(event, connection.getId()), stream);
+            final int objectSize = stream.size();
+            // int header specifying how big the object is is needed so that the
+            // other side can know how much data to expect to read.
+            ByteBuffer header = bufferPool.acquire(BYTES_PER_INT);
+            header.putInt(objectSize);
+            header.flip();
+            ByteBuffer payload = bufferPool.acquire(objectSize);
+            stream.copyTo(payload);
+            payload.flip();
+            return new OutboundFrame(bufferPool, header, payload);
         } catch (IOException e) {
             e.printStackTrace();
             requestDisconnection(event.getId(), e);
+        } finally {
+            stream.recycle();
         }
         // FIXME: improve exception handling.
         throw new RuntimeException("Unable to convert event into raw byte data: " + event);
     }
 
-    private Event unmarshal(Identifier id, byte[] data) {
+    private Event unmarshal(NioConnection connection, byte[] data, int offset, int length) {
+        Identifier id = connection.getId();
         try {
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            ObjectInputStream ois = new ObjectInputStream(bais);
-            Event event = (Event) ois.readObject();
             // should assert that id.equals(event.id())
-            return event;
+            return connection.getCodec().decode(data, offset, length, id);
         } catch (IOException e) {
             e.printStackTrace();
             requestDisconnection(id, e);
@@ -197,173 +328,249 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
         throw new RuntimeException("Unable to unmarshal raw byte data for the following Identifier: " + id);
     }
 
+    /**
+     * Queues the given Event for transmission. This never blocks on the network, the frame is written
+     * by the connection's selector thread as soon as its channel is writable.
+     */
     public void transmit(Event event) {
+        Identifier id = event.getId();
+        if (id == null || id == Identifier.NULL) {
+            broadcast(event);
+        }
+        else {
+            write(id, event);
+        }
+    }
+
+    /**
+     * Serializes the event once and queues a read-only duplicate of the
+     * resulting frame on every connection.
+     */
+    private void broadcast(Event event) {
+        if (connections.isEmpty()) {
+            return;
+        }
+        EventFrame frame;
         try {
-            byte[] data = marshal(event);
-            write(event.getId(), data);
+            frame = EventFrame.encode(codec, event);
         } catch (IOException e) {
             e.printStackTrace();
-            requestDisconnection(event.getId(), e);
+            getLogger().severe("Unable to serialize broadcast event " + event + ": " + e);
+            return;
+        }
+        int recipients = 0;
+        for (NioConnection connection : connections.snapshot()) {
+            enqueue(connection, new OutboundFrame(bufferPool, frame.buffer()));
+            recipients++;
         }
+        recordBroadcast(recipients, frame.size());
+    }
+
+    public void transmit(Collection<Identifier> ids, Event event) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        EventFrame frame;
+        try {
+            frame = EventFrame.encodeMulticast(codec, event);
+        } catch (IOException e) {
+            e.printStackTrace();
+            getLogger().severe("Unable to serialize multicast event " + event + ": " + e);
+            return;
+        }
+        int recipients = 0;
+        for (Identifier id : ids) {
+            NioConnection connection = getConnection(id);
+            if (connection == null) {
+                getLogger().warning("skipping multicast to nonexistent connection: " + id);
+                continue;
+            }
+            enqueue(connection, new OutboundFrame(bufferPool, frame.buffer()));
+            recipients++;
+        }
+        recordBroadcast(recipients, frame.size());
     }
 
-    // private Duration duration = Duration.create(1).start();
     /**
-     * Writes the given byte array to the SocketChannel identified by this id.
+     * Encodes the given Event with the codec of the NioConnection identified by this id and queues
+     * the resulting frame on it.
      */
-    private void write(Identifier id, byte[] data) throws IOException {
-        SocketChannel channel = getConnection(id);
-        if (channel == null) {
+    private void write(Identifier id, Event event) {
+        NioConnection connection = getConnection(id);
+        if (connection == null) {
             // FIXME: schedule a sink.dropConnection for later, so as to avoid
             // ConcurrentModificationExceptions in the ForagerServer. Also,
             // this really should be an IllegalArgumentException...?
             disconnect(id);
             throw new IllegalArgumentException("Attempting to write with an Identifier that doesn't exist: " + id);
         }
-        synchronized (channel) {
-            final int objectSize = data.length;
-            // if (duration.hasExpired()) {
-            // System.err.println("object size: " + objectSize);
-            // duration.restart();
-            // }
-            // FIXME: could be a performance bottle-neck in the future, allocation
-            // can be expensive.
-            // allocate enough space for the object and the int header.
-            // ints in Java are defined by the language spec to always
-            // be 32-bits (4 bytes)
-            ByteBuffer buffer = ByteBuffer.allocate(objectSize + BYTES_PER_INT);
-            // int header specifying how big the object is is needed so that the
-            // other side can know how much data to expect to read.
-            buffer.putInt(objectSize);
-            buffer.put(data);
-            buffer.flip();
-            channel.write(buffer);
+        EventCodec connectionCodec = connection.getCodec();
+        // frames that continue the connection's object stream must be queued
+        // in the order they were encoded, and a dropped frame must never have
+        // been encoded in the first place.
+        synchronized (connectionCodec) {
+            if (!isOverflowing(connection)) {
+                queue(connection, marshal(connection, event));
+            }
         }
     }
 
     /**
-     * Used by NioDispatcherWorker to send keys with ready ops to process
+     * Appends the frame to the connection's outbound queue unless the queue has
+     * reached its high water mark.
      */
-    protected synchronized void readData(SelectionKey key, ByteBuffer buffer) {
-        try {
-            // 1. read an int that tells us how big the object is
-            // 2. read that many bytes, if we don't have that many, wait to
-            // read it some more.
-            // 3. once we've read that many bytes, reset.
-            // FIXME: problems still exist with the hard-coded read buffer
-            // size allocation. For instance, what happens when we send
-            // something larger than the set READ_BUFFER_SIZE? We have to
-            // deal with chunking that up.
-            SocketChannel channel = (SocketChannel) key.channel();
-            Identifier id = getIdentifier(key);
-
-            // clear out the original buffer.
-            buffer.clear();
-            channel.read(buffer);
-            buffer.flip();
-
-            if (buffer.remaining() == 0) {
-                getLogger().warning("buffer of size 0 for id: " + id + " - disconnecting!");
-                disconnect(id, channel);
-                return;
-            }
-            // check to see if we're waiting for more stuff from this guy.
-            synchronized (pendingClients) {
-                if (pendingClients.containsKey(id)) {
-                    handlePendingRequest(id, buffer);
-                }
-                else {
-                    handleRequest(id, buffer);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            requestDisconnection(getIdentifier(key), e);
+    private void enqueue(NioConnection connection, OutboundFrame frame) {
+        if (isOverflowing(connection)) {
+            frame.release();
+            return;
         }
+        queue(connection, frame);
     }
 
-    private Identifier getIdentifier(SelectionKey key) {
-        return (Identifier) key.attachment();
-    }
-
-    // XXX: assumes that pendingClients has been locked
-    private void handleRequest(Identifier id, ByteBuffer buffer) {
-        // get the size of the Object so we know how much data we expect to
-        // receive.
-        // FIXME: assumes that the int itself won't get interrupted!
-        int expectedSize = buffer.getInt();
-        int actualSize = buffer.remaining();
-        // System.err.println("expected size: " + expectedSize);
-        byte[] data = new byte[expectedSize];
-
-        if (actualSize >= expectedSize) {
-            // grab as much data as we need to fill up our Object.
-            buffer.get(data, 0, expectedSize);
-            getLocalEventHandler().handle(unmarshal(id, data));
-            if (actualSize > expectedSize) {
-                // overflow! get the next object later.
-                // FIXME: can we really re-use the same old buffer?
-                handleRequest(id, buffer);
+    private void queue(NioConnection connection, OutboundFrame frame) {
+        if (isBatching()) {
+            connection.enqueue(frame, false);
+            if (connection.hold()) {
+                heldConnections.add(connection);
             }
         }
         else {
-            // underflow, read only the amount that was sent.
-            buffer.get(data, 0, actualSize);
-            // send this byte array into limbo until we have the entire
-            // Object.
-            // XXX: we are guaranteed that the pending clients doesn't
-            // contain the id already, otherwise handleRequest wouldn't have
-            // gotten called.
-            // System.err.println("creating new pending data buffer for " + id + " with actual size " + actualSize);
-            pendingClients.put(id, new PendingDataBuffer(actualSize, data));
-        }
-    }
-
-    // XXX: assumes that pendingClients has been locked
-    private void handlePendingRequest(Identifier id, ByteBuffer buffer) {
-        PendingDataBuffer pendingDataBuffer = pendingClients.get(id);
-        pendingDataBuffer.fillFrom(buffer);
-        if (pendingDataBuffer.isFinished()) {
-            pendingClients.remove(id);
-            getLocalEventHandler().handle(unmarshal(id, pendingDataBuffer.data));
-            if (buffer.remaining() > 0) {
-                getLogger().info("buffer for client: " + id + " still had crap in it: "
-                        + buffer.remaining());
-                handleRequest(id, buffer);
-            }
+            connection.enqueue(frame);
         }
     }
 
-    private static class PendingDataBuffer {
-        final byte[] data;
-        // amount of usable data that is actually in the byte array, in other
-        // words an index/offset into the free space of the data array.
-        int dataIndex;
+    /**
+     * Pings every connection and requests the disconnection of those that have been idle for too long.
+     * The PING is encoded once and shared by every connection.
+     */
+    @Override
+    protected void heartbeat() {
+        if (connections.isEmpty()) {
+            return;
+        }
+        EventFrame ping = Heartbeat.ping();
+        long now = System.nanoTime();
+        for (NioConnection connection : connections.snapshot()) {
+            if (!isExpired(connection.getId(), connection.getHeartbeat(), now)) {
+                enqueue(connection, new OutboundFrame(bufferPool, ping.buffer()));
+            }
+        }
+    }
 
-        PendingDataBuffer(int dataIndex, byte[] data) {
-            this.dataIndex = dataIndex;
-            this.data = data;
+    @Override
+    protected void flushHeldFrames() {
+        NioConnection connection;
+        while ((connection = heldConnections.poll()) != null) {
+            connection.releaseHeld();
         }
+    }
 
-        boolean isFinished() {
-            return data.length == dataIndex;
+    /**
+     * Returns true if the connection's outbound queue has reached its high water
+     * mark, in which case the overflow policy decides whether the frame is
+     * dropped or the slow client is disconnected.
+     */
+    private boolean isOverflowing(NioConnection connection) {
+        int queueDepth = connection.getQueueDepth();
+        if (queueDepth >= outboundQueueHighWaterMark) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    if (connection.markOverflowed()) {
+                        getLogger().warning(String.format("outbound queue for %s reached %d frames, dropping frames until it drains",
+                                connection.getId(), outboundQueueHighWaterMark));
+                    }
+                    return true;
+                case DISCONNECT:
+                default:
+                    if (connection.markOverflowed()) {
+                        requestDisconnection(connection.getId(), new IOException(String.format(
+                                "outbound queue for %s exceeded %d frames", connection.getId(), outboundQueueHighWaterMark)));
+                    }
+                    return true;
+            }
         }
+        // a disconnection is only ever requested once, but dropping frames is
+        // reported again for every overflow once the queue has drained to half
+        // its high water mark.
+        if (overflowPolicy == OverflowPolicy.DROP_NEWEST && queueDepth <= outboundQueueHighWaterMark / 2) {
+            connection.markDrained();
+        }
+        return false;
+    }
 
-        void fillFrom(ByteBuffer buffer) {
-            // clamp bufferSize
-            int readLength = getReadLength(buffer);
-            buffer.get(data, dataIndex, readLength);
-            dataIndex += readLength;
+    /**
+     * Used by NioDispatcherWorker to read from a channel with OP_READ ready and
+     * dispatch every frame that has been completed. Only the worker thread that
+     * owns the key invokes this, so decoding needs no locking.
+     */
+    private void readData(SelectionKey key) {
+        NioConnection connection = getConnection(key);
+        Identifier id = connection.getId();
+        FrameDecoder decoder = connection.getDecoder();
+        try {
+            int bytesRead = decoder.read(connection.getChannel());
+            if (bytesRead < 0) {
+                getLogger().info("end of stream for id: " + id + " - disconnecting");
+                disconnect(id, connection);
+                return;
+            }
+            if (bytesRead > 0) {
+                connection.getHeartbeat().touch();
+            }
+            long rejectedFrames = decoder.getRejectedFrames();
+            while (decoder.decode()) {
+                byte[] data = decoder.getFrame();
+                int offset = decoder.getFrameOffset();
+                int length = decoder.getFrameLength();
+                connection.getMetrics().recordReceived(BYTES_PER_INT + length);
+                if (Heartbeat.isControlFrame(data, offset, length)) {
+                    receiveControlFrame(connection, data, offset, length);
+                    continue;
+                }
+                getLocalEventHandler().handle(unmarshal(connection, data, offset, length));
+            }
+            if (decoder.getRejectedFrames() > rejectedFrames) {
+                getLogger().warning(String.format("skipped %d frame(s) from %s larger than the max frame size of %d bytes",
+                        decoder.getRejectedFrames() - rejectedFrames, id, maxFrameSize));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            key.cancel();
+            requestDisconnection(id, e);
         }
+    }
 
-        private int getReadLength(ByteBuffer buffer) {
-            return (buffer.remaining() > amountNeeded())
-                    ? amountNeeded()
-                    : buffer.remaining();
+    private void receiveControlFrame(NioConnection connection, byte[] data, int offset, int length) {
+        EventFrame reply = connection.getHeartbeat().receive(data[offset], Heartbeat.getValue(data, offset, length));
+        if (reply != null) {
+            enqueue(connection, new OutboundFrame(bufferPool, reply.buffer()));
         }
+    }
+
+    private NioConnection getConnection(SelectionKey key) {
+        return (NioConnection) key.attachment();
+    }
 
-        private int amountNeeded() {
-            return data.length - dataIndex;
+    /**
+     * Used by NioDispatcherWorker to drain the outbound queue of a connection
+     * whose channel has become writable or that has had new frames queued.
+     */
+    private void writeData(NioConnection connection, boolean scheduled) {
+        SelectionKey key = connection.getKey();
+        try {
+            boolean drained = (scheduled) ? connection.flushScheduled() : connection.flush();
+            if (key.isValid()) {
+                // only ask for OP_WRITE while there is something left to write,
+                // otherwise the selector would spin on an always writable channel.
+                int interestOps = key.interestOps();
+                key.interestOps(drained
+                        ? interestOps & ~SelectionKey.OP_WRITE
+                        : interestOps | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            key.cancel();
+            requestDisconnection(connection.getId(), e);
         }
     }
 
@@ -371,6 +578,9 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
     protected void cleanup() {
         worker.shutdown();
         try {
+            if (acceptor != null) {
+                acceptor.close();
+            }
             if (server != null) {
                 server.close();
                 server = null;
@@ -384,47 +594,66 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
     @Override
     protected void bind(int port) throws IOException {
         server = ServerSocketChannel.open();
-        server.configureBlocking(true);
+        server.configureBlocking(false);
         server.socket().bind(new InetSocketAddress(port));
+        acceptor = Selector.open();
+        server.register(acceptor, SelectionKey.OP_ACCEPT);
     }
 
+    /**
+     * Accepts every pending connection, hands each one off to a worker without
+     * blocking on its registration, and returns within ACCEPT_SELECT_TIMEOUT
+     * when no one is connecting so connection maintenance still gets done.
+     */
     @Override
     protected void processIncomingConnections() throws IOException {
-        final SocketChannel incoming = server.accept();
-        getLogger().info("incoming connection: " + incoming);
-        new Thread() {
-            @Override
-            public void run() {
-                Identifier id = worker.process(incoming);
-                getLogger().info("generated id" + id);
-                addMapping(id, incoming);
-                // send the newly generated Identifier to the client dispatcher,
-                // which should be blocked, waiting for it.
-                ConnectionEvent connectionEvent = new ConnectionEvent(id);
-                transmit(connectionEvent);
-                // notify any interested parties that a new connection has been
-                // made with the given Identifier.
-                getLocalEventHandler().handle(connectionEvent);
+        try {
+            if (acceptor.select(ACCEPT_SELECT_TIMEOUT) == 0) {
+                return;
             }
-        }.start();
+            acceptor.selectedKeys().clear();
+        } catch (ClosedSelectorException e) {
+            // shut down while we were waiting.
+            return;
+        }
+        SocketChannel incoming;
+        while ((incoming = server.accept()) != null) {
+            getLogger().info("incoming connection: " + incoming);
+            incoming.configureBlocking(false);
+            Identifier id = createIdentifier(incoming.socket());
+            NioConnection connection = new NioConnection(id, incoming, maxFrameSize, createConnectionCodec(configuration));
+            getLogger().info("generated id" + id);
+            addMapping(id, connection);
+            // send the newly generated Identifier to the client dispatcher,
+            // which should be blocked, waiting for it. The ConnectionEvent is
+            // the first frame queued and is written as soon as the worker
+            // registers the channel.
+            ConnectionEvent connectionEvent = new ConnectionEvent(id);
+            transmit(connectionEvent);
+            worker.process(connection);
+            // notify any interested parties that a new connection has been
+            // made with the given Identifier.
+            getLocalEventHandler().handle(connectionEvent);
+        }
     }
 
-    private class NioDispatcherWorker implements Worker<SocketChannel> {
+    private class NioDispatcherWorker implements Worker<NioConnection> {
         // private final static int SLEEP_TIME = 200;
         private boolean running;
         private final Selector selector;
-        // incoming socket channels.
-        private final LinkedList<SocketChannel> channels =
-                new LinkedList<SocketChannel>();
-
-        // Each Worker maintains a copy of its own ByteBuffer.
-        // FIXME: The read buffer should be dynamic to support variable size objects.
-        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        // incoming connections waiting to be registered with this worker's
+        // selector.
+        private final Queue<NioConnection> registrations =
+                new ConcurrentLinkedQueue<NioConnection>();
+        // connections with newly queued outbound frames, drained by this
+        // worker's thread.
+        private final Queue<NioConnection> flushQueue =
+                new ConcurrentLinkedQueue<NioConnection>();
 
         public NioDispatcherWorker() {
             try {
                 selector = Selector.open();
-                new Thread(this).start();
+                new Thread(this, "NioDispatcherWorker-" + workerThreadCount.incrementAndGet()).start();
             } catch (IOException e) {
                 e.printStackTrace();
                 throw new RuntimeException(e);
@@ -436,43 +665,30 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
         }
 
         /**
-         * Adds the incoming socket channel to the queue of channels to be registered
-         * and then blocks the currently executing thread. This call will block until
-         * the incoming SocketChannel has successfully registered with the Selector.
+         * Queues the incoming connection for registration with this worker's
+         * selector and returns immediately. Frames transmitted to the connection
+         * in the meantime are held in its outbound queue and written once the
+         * channel has been registered.
          */
-
-        public Identifier process(SocketChannel incoming) {
-            synchronized (channels) {
-                try {
-                    selector.selectNow();
-                } catch (IOException exception) {
-                    exception.printStackTrace();
-                }
-                channels.add(incoming);
-            }
-            synchronized (incoming) {
-                selector.wakeup();
-                try {
-                    incoming.wait();
-                } catch (InterruptedException e) {
-                }
-            }
-            Identifier id = new SocketIdentifier(incoming.socket());
-            incoming.keyFor(selector).attach(id);
-            return id;
+        public Identifier process(NioConnection incoming) {
+            registrations.add(incoming);
+            selector.wakeup();
+            return incoming.getId();
         }
 
-        public void remove(SocketChannel channel) {
-            if (channel == null) {
-                getLogger().warning("trying to remove a null channel");
+        public void remove(NioConnection connection) {
+            if (connection == null) {
+                getLogger().warning("trying to remove a null connection");
                 return;
             }
+            SocketChannel channel = connection.getChannel();
             SelectionKey k = channel.keyFor(selector);
             if (k == null) {
                 getLogger().warning("No selection key available for channel: " + channel);
-                return;
             }
-            k.cancel();
+            else {
+                k.cancel();
+            }
             try {
                 channel.socket().shutdownInput();
                 channel.socket().shutdownOutput();
@@ -485,16 +701,16 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
 
         public void report() {
             StringBuilder msg = new StringBuilder();
-            msg.append(this + " has " + selector.keys().size() + " channels\n");
-            for (SocketChannel channel : channels) {
+            msg.append(this + " has " + selector.keys().size() + " channels, " + bufferPool + "\n");
+            for (SelectionKey key : selector.keys()) {
                 msg.append("  ");
-                msg.append(channel.toString());
+                msg.append(key.attachment());
                 msg.append('\n');
             }
             getLogger().info(msg.toString());
         }
 
-        public int compareTo(Worker<SocketChannel> worker) {
+        public int compareTo(Worker<NioConnection> worker) {
             return numberOfJobs() - worker.numberOfJobs();
         }
 
@@ -502,15 +718,16 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
             // This loop is for all channels that are currently connected to
             // the Dispatcher and being actively I/O-ed.
             for (SelectionKey key : selector.keys()) {
-                remove((SocketChannel) key.channel());
+                remove((NioConnection) key.attachment());
             }
             // remove all channels that are pending (still waiting to be
             // connected).
-            for (Iterator<SocketChannel> iter = channels.iterator(); iter.hasNext();) {
-                remove(iter.next());
-                iter.remove();
+            NioConnection pending;
+            while ((pending = registrations.poll()) != null) {
+                remove(pending);
             }
             running = false;
+            selector.wakeup();
         }
 
         public void run() {
@@ -521,37 +738,48 @@ public class NioDispatcher extends AbstractServerDispatcher implements ClientDis
                 return;
             running = true;
             while (running) {
-                // check to see if we have any new incoming channels.
-                synchronized (channels) {
-                    for (Iterator<SocketChannel> iter = channels.iterator(); iter.hasNext();)
-                    {
-                        SocketChannel incoming = iter.next();
-                        iter.remove();
-                        if (incoming.isOpen()) {
-                            try {
-                                incoming.configureBlocking(false);
-                                incoming.register(selector, SelectionKey.OP_READ);
-                            } catch (IOException e) {
-                                // recoverable, incoming connection was broken,
-                                // just ignore it and move on.
-                                e.printStackTrace();
-                                continue;
-                            } finally {
-                                synchronized (incoming) {
-                                    incoming.notifyAll();
-                                }
-                            }
-                        }
+                // register any new incoming channels.
+                NioConnection incoming;
+                while ((incoming = registrations.poll()) != null) {
+                    SocketChannel channel = incoming.getChannel();
+                    if (!channel.isOpen()) {
+                        // disconnected before it was ever registered.
+                        continue;
+                    }
+                    try {
+                        channel.configureBlocking(false);
+                        SelectionKey key = channel.register(selector, SelectionKey.OP_READ, incoming);
+                        incoming.bind(key, flushQueue);
+                        // write out anything queued before the channel was registered.
+                        writeData(incoming, false);
+                        recordConnectionSetup(incoming);
+                    } catch (IOException e) {
+                        // recoverable, incoming connection was broken,
+                        // just ignore it and move on.
+                        e.printStackTrace();
+                        remove(incoming);
+                    }
+                }
+                // drain connections that have had frames queued since the last select.
+                NioConnection pending;
+                while ((pending = flushQueue.poll()) != null) {
+                    if (pending.getKey().isValid()) {
+                        writeData(pending, true);
                     }
                 }
-                // handle incoming data.
+                // handle incoming data and writable channels.
                 try {
                     if (selector.select() >= 0) {
                         for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext();)
                         {
                             SelectionKey key = iterator.next();
-                            NioDispatcher.this.readData(key, buffer);
                             iterator.remove();
+                            if (key.isValid() && key.isReadable()) {
+                                readData(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                writeData(getConnection(key), false);
+                            }
                         }
                     }
                     else {
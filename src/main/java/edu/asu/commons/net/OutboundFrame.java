@@ -0,0 +1,65 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * $Id$
+ *
+ * A length-prefixed frame waiting in a NioConnection's outbound queue. The int header and the
+ * payload live in separate (pooled) buffers and are written together with a single gathering write.
+ * Broadcast frames instead wrap a read-only duplicate of a shared EventFrame, which the pool ignores
+ * on release.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class OutboundFrame {
+
+    private final ByteBufferPool pool;
+    private final ByteBuffer[] buffers;
+
+    OutboundFrame(ByteBufferPool pool, ByteBuffer... buffers) {
+        this.pool = pool;
+        this.buffers = buffers;
+    }
+
+    /**
+     * Writes as much of this frame as the channel accepts without blocking.
+     *
+     * @return true once the entire frame has been written.
+     */
+    boolean writeTo(GatheringByteChannel channel) throws IOException {
+        channel.write(buffers);
+        return !hasRemaining();
+    }
+
+    ByteBuffer[] buffers() {
+        return buffers;
+    }
+
+    /**
+     * Returns the number of bytes of this frame that haven't been written yet.
+     */
+    int size() {
+        int size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        return size;
+    }
+
+    boolean hasRemaining() {
+        return buffers[buffers.length - 1].hasRemaining();
+    }
+
+    /**
+     * Returns this frame's buffers to the pool. The frame must not be used afterwards.
+     */
+    void release() {
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+    }
+}
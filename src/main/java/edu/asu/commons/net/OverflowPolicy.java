@@ -0,0 +1,39 @@
+package edu.asu.commons.net;
+
+/**
+ * $Id$
+ *
+ * Determines what a Dispatcher does with a slow client whose outbound queue has reached its
+ * high water mark. BLOCK and DROP_OLDEST are only supported by the ServerSocketDispatcher, the NIO
+ * and Netty dispatchers never block a transmitting thread or discard frames that have already been
+ * queued and treat them as DISCONNECT.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public enum OverflowPolicy {
+    /**
+     * Requests a disconnection of the slow client, discarding everything queued for it.
+     */
+    DISCONNECT,
+    /**
+     * Discards the frame being transmitted, leaving the frames already queued intact.
+     */
+    DROP_NEWEST,
+    /**
+     * Blocks the transmitting thread until the slow client's queue has room again.
+     */
+    BLOCK,
+    /**
+     * Discards the oldest queued frame to make room for the frame being transmitted.
+     */
+    DROP_OLDEST;
+
+    public static OverflowPolicy fromString(String name) {
+        try {
+            return OverflowPolicy.valueOf(name.trim().toUpperCase());
+        } catch (Exception exception) {
+            return DISCONNECT;
+        }
+    }
+}
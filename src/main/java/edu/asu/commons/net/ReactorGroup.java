@@ -0,0 +1,197 @@
+package edu.asu.commons.net;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * $Id$
+ *
+ * A fixed group of reactors (Workers that each run their own selector thread). Every job handed to
+ * the group is assigned to exactly one reactor and stays there until it is removed, so all I/O for a
+ * given connection happens on the same thread. Jobs are assigned either to the reactor with the
+ * fewest jobs or round robin.
+ * <p>
+ * The group itself is lock-free: per-reactor job counts are maintained by the group (reactors may
+ * not have registered a job yet when the next one arrives, e.g., during a burst of connections) and
+ * job -> reactor affinity is kept in a ConcurrentHashMap.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class ReactorGroup<T> implements Worker<T> {
+
+    /**
+     * One reactor per available core.
+     */
+    public final static int DEFAULT_SIZE = Runtime.getRuntime().availableProcessors();
+
+    public enum Assignment {
+        LEAST_LOADED, ROUND_ROBIN;
+
+        public static Assignment fromString(String name) {
+            try {
+                return Assignment.valueOf(name.trim().toUpperCase());
+            } catch (Exception exception) {
+                return LEAST_LOADED;
+            }
+        }
+    }
+
+    private final static Logger logger = Logger.getLogger(ReactorGroup.class.getName());
+
+    private final Worker<T>[] reactors;
+    private final Assignment assignment;
+
+    // number of jobs currently assigned to each reactor.
+    private final AtomicInteger[] loads;
+    // total number of jobs ever assigned to each reactor.
+    private final AtomicLongArray assignments;
+    private final AtomicInteger nextReactor = new AtomicInteger();
+
+    private final ConcurrentMap<T, Integer> affinity = new ConcurrentHashMap<T, Integer>();
+
+    public ReactorGroup(WorkerFactory<T> factory) {
+        this(DEFAULT_SIZE, factory, Assignment.LEAST_LOADED);
+    }
+
+    /**
+     * Creates a group of the given size using the factory, which is expected to return reactors that
+     * are already running. A size less than 1 creates DEFAULT_SIZE reactors.
+     */
+    @SuppressWarnings("unchecked")
+    public ReactorGroup(int size, WorkerFactory<T> factory, Assignment assignment) {
+        if (size < 1) {
+            size = DEFAULT_SIZE;
+        }
+        this.assignment = (assignment == null) ? Assignment.LEAST_LOADED : assignment;
+        reactors = (Worker<T>[]) new Worker<?>[size];
+        loads = new AtomicInteger[size];
+        assignments = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            reactors[i] = factory.create();
+            loads[i] = new AtomicInteger();
+        }
+    }
+
+    public Identifier process(T job) {
+        int index = nextIndex();
+        Integer previous = affinity.putIfAbsent(job, index);
+        if (previous != null) {
+            // already assigned, keep it where it was.
+            return reactors[previous].process(job);
+        }
+        loads[index].incrementAndGet();
+        assignments.incrementAndGet(index);
+        return reactors[index].process(job);
+    }
+
+    private int nextIndex() {
+        int start = (nextReactor.getAndIncrement() & Integer.MAX_VALUE) % reactors.length;
+        if (assignment == Assignment.ROUND_ROBIN) {
+            return start;
+        }
+        // least loaded, scanning from a rotating start so ties are spread out.
+        int index = start;
+        int minimum = loads[start].get();
+        for (int i = 1; i < reactors.length && minimum > 0; i++) {
+            int candidate = (start + i) % reactors.length;
+            int load = loads[candidate].get();
+            if (load < minimum) {
+                minimum = load;
+                index = candidate;
+            }
+        }
+        return index;
+    }
+
+    public void remove(T job) {
+        Integer index = affinity.remove(job);
+        if (index == null) {
+            return;
+        }
+        loads[index].decrementAndGet();
+        reactors[index].remove(job);
+    }
+
+    public int numberOfJobs() {
+        return affinity.size();
+    }
+
+    public int size() {
+        return reactors.length;
+    }
+
+    public Assignment getAssignment() {
+        return assignment;
+    }
+
+    /**
+     * Returns a snapshot of the number of jobs currently assigned to each reactor.
+     */
+    public int[] getLoads() {
+        int[] snapshot = new int[loads.length];
+        for (int i = 0; i < loads.length; i++) {
+            snapshot[i] = loads[i].get();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns a snapshot of the total number of jobs ever assigned to each reactor.
+     */
+    public long[] getAssignments() {
+        long[] snapshot = new long[reactors.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = assignments.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the difference between the most and least loaded reactors.
+     */
+    public int getImbalance() {
+        int max = Integer.MIN_VALUE;
+        int min = Integer.MAX_VALUE;
+        for (int load : getLoads()) {
+            max = Math.max(max, load);
+            min = Math.min(min, load);
+        }
+        return max - min;
+    }
+
+    public void report() {
+        logger.info(toString());
+        for (Worker<T> reactor : reactors) {
+            reactor.report();
+        }
+    }
+
+    public int compareTo(Worker<T> worker) {
+        return numberOfJobs() - worker.numberOfJobs();
+    }
+
+    public void shutdown() {
+        affinity.clear();
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i].shutdown();
+            loads[i].set(0);
+        }
+    }
+
+    /**
+     * Reactors are started by their factory, this is a no-op.
+     */
+    public void run() {
+    }
+
+    @Override
+    public String toString() {
+        return String.format("reactor group [%s, %d reactors, loads: %s, assigned: %s, imbalance: %d]",
+                assignment, reactors.length, Arrays.toString(getLoads()), Arrays.toString(getAssignments()), getImbalance());
+    }
+}
@@ -1,5 +1,9 @@
 package edu.asu.commons.net;
 
+import java.util.Collection;
+
+import edu.asu.commons.event.Event;
+
 /**
  * $Id$
  * 
@@ -12,7 +16,11 @@ package edu.asu.commons.net;
 public interface ServerDispatcher extends Dispatcher {
 
     enum Type {
-        NIO, SOCKET, NETTY_NIO;
+        // SOCKET_VIRTUAL is the blocking SOCKET dispatcher with its reader loops and the asynchronous
+        // event handlers of its own channel running on virtual threads (Java 21+, falls back to
+        // platform threads).
+        // LOCAL connects clients running in the same JVM, e.g., bots, without any sockets.
+        NIO, SOCKET, NETTY_NIO, SOCKET_VIRTUAL, LOCAL;
         public static Type fromString(String name) {
             try {
                 return Type.valueOf(name);
@@ -29,9 +37,32 @@ public interface ServerDispatcher extends Dispatcher {
      */
     public boolean isConnected(Identifier id);
 
+    /**
+     * Transmits the given event to every connected client in the given collection. The event is
+     * serialized once and each recipient receives it with its own Identifier substituted for the
+     * event's Identifier (wherever that same Identifier instance is referenced by the event), as if it
+     * had been cloned and transmitted to each recipient individually. Identifiers without a connection
+     * are skipped.
+     */
+    public void transmit(Collection<Identifier> ids, Event event);
+
     /**
      * Tells the Dispatcher to begin listening on the given port and spawns a
      * new (single) thread of execution to handle incoming requests.
      */
     public void listen(int port);
+
+    /**
+     * Starts holding back the Events transmitted by the calling thread, e.g., during a single
+     * StateMachine.execute() pass, so that each connection's frames are written together by a single
+     * flush when the matching endBatch() is invoked, or after the configured maximum delay, whichever
+     * comes first. Batches may be nested and are a no-op unless outbound batching is enabled.
+     */
+    public void beginBatch();
+
+    /**
+     * Ends the calling thread's current batch, flushing every connection it wrote to once the
+     * outermost batch has ended.
+     */
+    public void endBatch();
 }
@@ -3,19 +3,31 @@ package edu.asu.commons.net;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import edu.asu.commons.event.Event;
 import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.net.codec.EventCodec;
 import edu.asu.commons.net.event.ConnectionEvent;
 import edu.asu.commons.net.event.DisconnectionEvent;
+import edu.asu.commons.util.Threads;
 
 /**
  * $Id$
  * 
  * This class uses traditional blocking I/O via java.net.Socket-S to implement
- * the Dispatcher interface.
+ * the Dispatcher interface. Each connection has a SocketWriter of its own, so transmitting
+ * only encodes the Event and queues the frame, a slow client never holds up the transmitting
+ * thread unless the BLOCK overflow policy has been chosen.
+ * 
+ * If a session-grace-period has been configured, clients open a resumable Session when they connect.
+ * A client that loses its connection may reconnect within the grace period, gets its Identifier back
+ * and is sent the frames it missed; the rest of the server only learns about the disconnection once
+ * the grace period has passed without the client coming back.
  * 
  * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
  * @version $Revision$
@@ -23,19 +35,70 @@ import edu.asu.commons.net.event.DisconnectionEvent;
 
 public class ServerSocketDispatcher extends AbstractServerDispatcher {
 
+    // how long accept() waits for new connections before performing
+    // connection maintenance.
+    private final static int ACCEPT_TIMEOUT = 500;
+
+    // how long a new connection has to open or resume its session.
+    private final static int SESSION_HANDSHAKE_TIMEOUT = 10000;
+
     private ServerSocket serverSocket;
 
-    // Map<Identifier, SocketDispatcherWorker>
-    private Map<Identifier, SocketDispatcherWorker> workers = new HashMap<Identifier, SocketDispatcherWorker>();
+    // registered by the dispatcher thread, removed by the disconnect path and
+    // iterated by transmitting threads.
+    private final ConnectionRegistry<SocketDispatcherWorker> workers = new ConnectionRegistry<SocketDispatcherWorker>();
+
+    // workers holding frames written during a batch.
+    private final Queue<SocketDispatcherWorker> heldWorkers = new ConcurrentLinkedQueue<SocketDispatcherWorker>();
+
+    private final DispatcherConfiguration configuration;
+    // encodes broadcast and multicast Events, each worker has a codec of its
+    // own for everything else.
+    private final EventCodec codec;
+
+    // true if worker reader loops should run on virtual threads.
+    private final boolean virtualThreads;
+
+    private final int outboundQueueHighWaterMark;
+    private final OverflowPolicy overflowPolicy;
+
+    // null unless sessions can be resumed.
+    private final SessionManager sessions;
 
     // thread pooling currently unimplemented (should use 1.5 concurrent package anyways)
     ServerSocketDispatcher(EventChannel channel, int workerPoolSize) {
-        super(channel);
+        this(channel, workerPoolSize, new DispatcherConfiguration());
+    }
+
+    ServerSocketDispatcher(EventChannel channel, int workerPoolSize, DispatcherConfiguration configuration) {
+        this(channel, workerPoolSize, configuration, false);
+    }
+
+    ServerSocketDispatcher(EventChannel channel, int workerPoolSize, DispatcherConfiguration configuration, boolean virtualThreads) {
+        super(channel, configuration);
+        this.configuration = configuration;
+        this.virtualThreads = virtualThreads;
+        if (virtualThreads) {
+            useVirtualHandlerThreads();
+        }
+        codec = createSharedCodec(configuration);
+        outboundQueueHighWaterMark = configuration.getOutboundQueueHighWaterMark();
+        overflowPolicy = configuration.getOutboundOverflowPolicy();
+        long gracePeriod = configuration.getSessionGracePeriod();
+        if (gracePeriod > 0 && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            // frames discarded after being queued would be missing from the
+            // client's count of received frames.
+            getLogger().warning("sessions can't be resumed with the DROP_OLDEST overflow policy, ignoring the session grace period");
+            gracePeriod = 0;
+        }
+        sessions = (gracePeriod > 0) ? new SessionManager(configuration.getSessionReplayBufferSize(), gracePeriod) : null;
     }
 
     public boolean isConnected(Identifier id) {
-        Socket socket = getConnection(id);
+        SocketDispatcherWorker worker = getWorker(id);
+        Socket socket = (worker == null) ? null : worker.getSocket();
         return socket != null
+                && !worker.getHeartbeat().isExpired()
                 && socket.isBound()
                 && socket.isConnected()
                 && !socket.isClosed()
@@ -45,32 +108,274 @@ public class ServerSocketDispatcher extends AbstractServerDispatcher {
 
     public void disconnect(Identifier id) {
         getLogger().info(String.format("disconnecting id [%s]", id.toString()));
+        // a disconnected client can no longer resume its session.
+        Session session = (sessions == null) ? null : sessions.remove(id);
         SocketDispatcherWorker worker = workers.remove(id);
-        if (worker == null) {
+        if (worker == null && session == null) {
             getLogger().warning("Tried to disconnect a nonexistent worker with id: " + id);
             return;
         }
-        worker.stop();
+        if (worker != null) {
+            worker.stop();
+        }
+        getMetrics().disconnected(id);
         // notify anyone that the given Identifier has been disconnected.
         getLocalEventHandler().handle(new DisconnectionEvent(id));
     }
 
+    /**
+     * Suspends the session of a client whose connection has been lost instead of disconnecting it, so
+     * the client can resume it within the grace period.
+     */
+    @Override
+    protected void connectionLost(Identifier id) {
+        Session session = (sessions == null) ? null : sessions.get(id);
+        if (session == null) {
+            disconnect(id);
+            return;
+        }
+        session.lock();
+        try {
+            SocketDispatcherWorker worker = getWorker(id);
+            if (worker == null) {
+                // already suspended.
+                return;
+            }
+            if (!worker.isDisconnectionRequested() && !worker.getHeartbeat().isExpired()) {
+                // requested by a connection the session has since been resumed from.
+                return;
+            }
+            workers.remove(id);
+            worker.stop();
+            session.suspend();
+        } finally {
+            session.unlock();
+        }
+        getLogger().info("lost connection to " + id + ", waiting for it to resume its session");
+    }
+
+    /**
+     * Disconnects the clients that haven't resumed their sessions within the grace period.
+     */
+    private void expireSessions() {
+        for (Session session : sessions.expire()) {
+            getLogger().info(session.getId() + " did not resume its session, disconnecting");
+            getMetrics().disconnected(session.getId());
+            getLocalEventHandler().handle(new DisconnectionEvent(session.getId()));
+        }
+    }
+
     public void transmit(Event event) {
         Identifier id = event.getId();
         if (id == null || id == Identifier.NULL) {
             // transmit to all connected clients if the target identifier is
-            // not specified.
-            for (SocketDispatcherWorker worker : workers.values()) {
-                worker.write(event);
+            // not specified, serializing the event only once.
+            if (workers.isEmpty() && (sessions == null || sessions.size() == 0)) {
+                return;
+            }
+            EventFrame frame;
+            try {
+                frame = EventFrame.encode(codec, event);
+            } catch (IOException e) {
+                e.printStackTrace();
+                getLogger().severe("Unable to serialize broadcast event " + event + ": " + e);
+                return;
             }
+            int recipients = 0;
+            if (sessions == null) {
+                for (SocketDispatcherWorker worker : workers.snapshot()) {
+                    write(worker, frame);
+                    recipients++;
+                }
+            }
+            else {
+                // every client has a session, including those waiting to resume it.
+                for (Session session : sessions.getSessions()) {
+                    write(session, frame);
+                    recipients++;
+                }
+            }
+            recordBroadcast(recipients, frame.size());
         }
         else {
-            getWorker(id).write(event);
+            unicast(id, event);
         }
     }
 
-    private Socket getConnection(Identifier id) {
-        return getWorker(id).getSocket();
+    private void unicast(Identifier id, Event event) {
+        SocketDispatcherWorker worker = getWorker(id);
+        if (sessions != null || overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            // frames that may be replayed on another connection or discarded
+            // from the queue can't continue the worker's object stream and
+            // are encoded with the stateless codec.
+            try {
+                if (!write(id, EventFrame.encode(codec, event, id))) {
+                    getLogger().warning("skipping transmission to nonexistent worker: " + id);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                getLogger().severe("Unable to serialize event " + event + ": " + e);
+            }
+        }
+        else if (worker == null) {
+            // disconnected in the meantime.
+            getLogger().warning("skipping transmission to nonexistent worker: " + id);
+        }
+        else if (isBatching()) {
+            worker.write(event, false);
+            hold(worker);
+        }
+        else {
+            worker.write(event);
+        }
+    }
+
+    public void transmit(Collection<Identifier> ids, Event event) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        EventFrame frame;
+        try {
+            frame = EventFrame.encodeMulticast(codec, event);
+        } catch (IOException e) {
+            e.printStackTrace();
+            getLogger().severe("Unable to serialize multicast event " + event + ": " + e);
+            return;
+        }
+        int recipients = 0;
+        for (Identifier id : ids) {
+            if (!write(id, frame)) {
+                getLogger().warning("skipping multicast to nonexistent worker: " + id);
+                continue;
+            }
+            recipients++;
+        }
+        recordBroadcast(recipients, frame.size());
+    }
+
+    /**
+     * Writes the frame to the client with the given Identifier, or keeps it for replay if the client
+     * is about to resume its session. Returns false if there is no such client.
+     */
+    private boolean write(Identifier id, EventFrame frame) {
+        Session session = (sessions == null) ? null : sessions.get(id);
+        if (session != null) {
+            write(session, frame);
+            return true;
+        }
+        SocketDispatcherWorker worker = getWorker(id);
+        if (worker == null) {
+            return false;
+        }
+        write(worker, frame);
+        return true;
+    }
+
+    /**
+     * Writes the frame to the session's current worker and records it for replay. Frames are recorded
+     * even if the worker discards them once it has asked to be disconnected, the client will be
+     * missing them if it resumes the session.
+     */
+    private void write(Session session, EventFrame frame) {
+        session.lock();
+        try {
+            SocketDispatcherWorker worker = getWorker(session.getId());
+            if (worker == null || write(worker, frame) || worker.isDisconnectionRequested()) {
+                session.record(frame);
+            }
+        } finally {
+            session.unlock();
+        }
+    }
+
+    private boolean write(SocketDispatcherWorker worker, EventFrame frame) {
+        if (isBatching()) {
+            boolean written = worker.write(frame, false);
+            hold(worker);
+            return written;
+        }
+        return worker.write(frame, true);
+    }
+
+    private void hold(SocketDispatcherWorker worker) {
+        if (worker.hold()) {
+            heldWorkers.add(worker);
+        }
+    }
+
+    /**
+     * Pings every worker and requests the disconnection of those that have been idle for too long.
+     */
+    @Override
+    protected void heartbeat() {
+        if (workers.isEmpty()) {
+            return;
+        }
+        EventFrame ping = Heartbeat.ping();
+        long now = System.nanoTime();
+        for (SocketDispatcherWorker worker : workers.snapshot()) {
+            // never blocks on a full queue, so a stalled client can't keep
+            // the others from being pinged or itself from expiring.
+            if (!isExpired(worker.id(), worker.getHeartbeat(), now)) {
+                worker.writeControl(ping);
+            }
+        }
+    }
+
+    @Override
+    protected void flushHeldFrames() {
+        SocketDispatcherWorker worker;
+        while ((worker = heldWorkers.poll()) != null) {
+            worker.releaseHeld();
+        }
+    }
+
+    /**
+     * Returns the number of frames waiting to be written to the given connection, or -1 if there is
+     * no such connection.
+     */
+    public int getOutboundQueueDepth(Identifier id) {
+        SocketWriter writer = getWriter(id);
+        return (writer == null) ? -1 : writer.getQueueDepth();
+    }
+
+    /**
+     * Returns the mean time in milliseconds between a frame being queued for the given connection and
+     * written to its socket.
+     */
+    public double getMeanWriteLatency(Identifier id) {
+        SocketWriter writer = getWriter(id);
+        return (writer == null) ? 0.0d : writer.getMeanWriteLatency();
+    }
+
+    /**
+     * Returns the longest time in milliseconds a frame has waited to be written to the given connection.
+     */
+    public double getMaxWriteLatency(Identifier id) {
+        SocketWriter writer = getWriter(id);
+        return (writer == null) ? 0.0d : writer.getMaxWriteLatency();
+    }
+
+    /**
+     * Returns the number of frames the overflow policy discarded for the given connection.
+     */
+    public long getDroppedFrames(Identifier id) {
+        SocketWriter writer = getWriter(id);
+        return (writer == null) ? 0L : writer.getDroppedFrames();
+    }
+
+    /**
+     * Returns the smoothed round trip time to the given connection in milliseconds, or -1 if it is
+     * unknown.
+     */
+    public double getRoundTripTime(Identifier id) {
+        SocketDispatcherWorker worker = getWorker(id);
+        return (worker == null) ? -1.0d : worker.getHeartbeat().getSmoothedRoundTripTime();
+    }
+
+    private SocketWriter getWriter(Identifier id) {
+        SocketDispatcherWorker worker = (id == null) ? null : getWorker(id);
+        return (worker == null) ? null : worker.getWriter();
     }
 
     private SocketDispatcherWorker getWorker(Identifier id) {
@@ -80,25 +385,146 @@ public class ServerSocketDispatcher extends AbstractServerDispatcher {
     @Override
     protected void bind(int port) throws IOException {
         serverSocket = new ServerSocket(port);
+        serverSocket.setSoTimeout(ACCEPT_TIMEOUT);
     }
 
+    /**
+     * Accepts the next connection, returning within ACCEPT_TIMEOUT when no one is connecting so
+     * connection maintenance still gets done.
+     */
     @Override
     protected void processIncomingConnections() throws IOException {
-        Socket incoming = serverSocket.accept();
+        if (sessions != null) {
+            expireSessions();
+        }
+        Socket incoming;
+        try {
+            incoming = serverSocket.accept();
+        } catch (SocketTimeoutException e) {
+            return;
+        }
         getLogger().info("incoming connection: " + incoming);
         incoming.setTcpNoDelay(true);
-        Identifier id = new SocketIdentifier(incoming);
-        SocketDispatcherWorker worker = new SocketDispatcherWorker(this, incoming, id);
+        Identifier id = createIdentifier(incoming);
+        final SocketDispatcherWorker worker = new SocketDispatcherWorker(this, incoming, id, createConnectionCodec(configuration),
+                configuration.getMaxFrameSize(), virtualThreads);
+        worker.startAsyncWrites(outboundQueueHighWaterMark, overflowPolicy);
+        if (sessions == null) {
+            start(worker);
+            return;
+        }
+        // wait for the client to open or resume its session without holding
+        // up the accept loop.
+        Threads.newThread(new Runnable() {
+            public void run() {
+                openSession(worker);
+            }
+        }, "SessionHandshake-" + id, virtualThreads).start();
+    }
+
+    /**
+     * Sends the worker's ConnectionEvent and starts reading from it.
+     */
+    private void start(SocketDispatcherWorker worker) {
+        Identifier id = worker.id();
         // immediately write a ConnectionEvent to the incoming connection.
         ConnectionEvent event = new ConnectionEvent(id);
+        getMetrics().connected(id, worker.getMetrics());
         worker.write(event);
-        workers.put(id, worker);
+        workers.register(id, worker);
         worker.start();
         getLocalEventHandler().handle(event);
     }
 
+    /**
+     * Reads the session control frame a client sends first and either opens a new session for it or
+     * resumes the session it asks for.
+     */
+    private void openSession(SocketDispatcherWorker worker) {
+        try {
+            Socket socket = worker.getSocket();
+            socket.setSoTimeout(SESSION_HANDSHAKE_TIMEOUT);
+            byte[] data = worker.readFrameBody();
+            socket.setSoTimeout(0);
+            if (!Heartbeat.isControlFrame(data, 0, data.length) || data[0] != Session.SESSION_TYPE_ID) {
+                throw new IOException("expected a session control frame from " + worker.id());
+            }
+            long token = EventFrame.getControlValue(data, 0, data.length, 0);
+            long received = EventFrame.getControlValue(data, 0, data.length, 1);
+            if (token == 0) {
+                Session session = sessions.open(worker.id());
+                try {
+                    worker.write(EventFrame.control(Session.SESSION_TYPE_ID, session.getToken()), false);
+                    start(worker);
+                } finally {
+                    session.unlock();
+                }
+            }
+            else if (!resume(worker, token, received)) {
+                // the client must not silently get a new Identifier, it will
+                // see its connection closed instead.
+                getLogger().warning("unable to resume session for " + worker.id() + ", closing connection");
+                worker.stop();
+            }
+        } catch (IOException e) {
+            getLogger().warning("session handshake failed: " + e);
+            worker.stop();
+        }
+    }
+
+    /**
+     * Hands the session with the given resume token over to the worker, returns false if the session
+     * has expired or the frames the client missed are no longer available.
+     */
+    private boolean resume(SocketDispatcherWorker worker, long token, long received) {
+        Session session = sessions.find(token);
+        if (session == null) {
+            return false;
+        }
+        Identifier id = session.getId();
+        int missed;
+        session.lock();
+        try {
+            if (sessions.find(token) != session) {
+                // expired in the meantime.
+                return false;
+            }
+            List<EventFrame> frames = session.getFramesAfter(received);
+            if (frames == null) {
+                return false;
+            }
+            SocketDispatcherWorker previous = workers.get(id);
+            if (previous != null) {
+                // the client noticed its connection was gone before we did.
+                previous.replace();
+            }
+            worker.setId(id);
+            getMetrics().connected(id, worker.getMetrics());
+            worker.write(EventFrame.control(Session.SESSION_TYPE_ID, token), false);
+            worker.write(new ConnectionEvent(id), false);
+            for (EventFrame frame : frames) {
+                worker.write(frame, false);
+            }
+            worker.flush();
+            session.resume();
+            workers.register(id, worker);
+            worker.start();
+            missed = frames.size();
+        } finally {
+            session.unlock();
+        }
+        getLogger().info(String.format("%s resumed its session, replayed %d frame(s)", id, missed));
+        return true;
+    }
+
     @Override
     protected void cleanup() {
+        if (sessions != null) {
+            sessions.clear();
+        }
+        for (SocketDispatcherWorker worker : workers.clear()) {
+            worker.stop();
+        }
         try {
             if (serverSocket != null) {
                 serverSocket.close();
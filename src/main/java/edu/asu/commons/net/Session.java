@@ -0,0 +1,143 @@
+package edu.asu.commons.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * $Id$
+ *
+ * A resumable session, outliving the connections it is carried by. The server keeps the most recent
+ * frames sent to the session's Identifier in a bounded ring buffer where the n-th frame sent has
+ * sequence number n. A client that loses its connection reconnects with the session's resume token
+ * and the number of Event frames it has received, gets its original Identifier back and is sent
+ * only the frames it missed, provided they are still in the ring buffer.
+ * <p>
+ * Only self-contained frames, i.e., frames encoded by a stateless codec, may be recorded since the
+ * frames are replayed on a new connection whose decoder hasn't seen anything else.
+ * <p>
+ * Writers must hold the session's lock while writing a frame to the session's connection and
+ * recording it, so that the sequence numbers match the order the client receives the frames in and
+ * no frame slips past a connection being resumed.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class Session {
+
+    /**
+     * Type id of the control frame opening or resuming a session. The client sends it first,
+     * carrying the resume token (0 for a new session) and the number of Event frames it has received,
+     * the server answers with the session's resume token before the ConnectionEvent.
+     */
+    final static int SESSION_TYPE_ID = 4;
+
+    private final long token;
+    private final Identifier id;
+    private final Lock lock = new ReentrantLock();
+
+    // guarded by lock.
+    private final EventFrame[] frames;
+    private long sequence;
+    // System.nanoTime() when the session lost its connection, 0 while connected.
+    private long suspendedAt;
+
+    Session(long token, Identifier id, int capacity) {
+        this.token = token;
+        this.id = id;
+        this.frames = new EventFrame[Math.max(1, capacity)];
+    }
+
+    long getToken() {
+        return token;
+    }
+
+    Identifier getId() {
+        return id;
+    }
+
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * Records a frame sent to (or queued for) this session's Identifier. Must hold the lock.
+     */
+    void record(EventFrame frame) {
+        frames[(int) (sequence % frames.length)] = frame;
+        sequence++;
+    }
+
+    /**
+     * Returns the number of frames recorded so far, i.e., the sequence number of the latest frame.
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the frames following the first received ones in the order they were sent, or null if
+     * some of them have already been overwritten (or the client claims to have received frames that
+     * were never sent). Must hold the lock.
+     */
+    List<EventFrame> getFramesAfter(long received) {
+        long missed = sequence - received;
+        if (received < 0 || missed < 0 || missed > frames.length) {
+            return null;
+        }
+        List<EventFrame> replay = new ArrayList<EventFrame>((int) missed);
+        for (long next = received; next < sequence; next++) {
+            replay.add(frames[(int) (next % frames.length)]);
+        }
+        return replay;
+    }
+
+    /**
+     * Marks this session as having lost its connection. Must hold the lock.
+     */
+    void suspend() {
+        suspendedAt = System.nanoTime();
+        if (suspendedAt == 0) {
+            suspendedAt = 1;
+        }
+    }
+
+    /**
+     * Marks this session as carried by a connection again. Must hold the lock.
+     */
+    void resume() {
+        suspendedAt = 0;
+    }
+
+    boolean isSuspended() {
+        lock.lock();
+        try {
+            return suspendedAt != 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if this session has been without a connection for longer than the given number of
+     * nanoseconds.
+     */
+    boolean isExpired(long gracePeriodNanos, long now) {
+        lock.lock();
+        try {
+            return suspendedAt != 0 && now - suspendedAt > gracePeriodNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("session %s [sequence: %d]", id, sequence);
+    }
+}
@@ -0,0 +1,119 @@
+package edu.asu.commons.net;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * $Id$
+ *
+ * The resumable Sessions of a server dispatcher, looked up by resume token when a client reconnects
+ * and by Identifier when transmitting. Sessions without a connection are kept for the grace period
+ * and then expired, at which point the dispatcher reports the Identifier as disconnected.
+ * <p>
+ * Resume tokens are random 64-bit values from a SecureRandom, so they can't be guessed from the
+ * Identifier or from other clients' tokens.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class SessionManager {
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final Map<Long, Session> sessionsByToken = new ConcurrentHashMap<Long, Session>();
+    private final Map<Identifier, Session> sessionsById = new ConcurrentHashMap<Identifier, Session>();
+
+    private final int replayBufferSize;
+    private final long gracePeriodNanos;
+
+    SessionManager(int replayBufferSize, long gracePeriod) {
+        this.replayBufferSize = replayBufferSize;
+        this.gracePeriodNanos = TimeUnit.MILLISECONDS.toNanos(gracePeriod);
+    }
+
+    /**
+     * Opens a new session for the given Identifier. The session is returned locked so that nothing can
+     * be written to it before the caller has set up its connection, callers must unlock it.
+     */
+    Session open(Identifier id) {
+        long token;
+        Session session;
+        do {
+            // 0 is reserved for "no session".
+            token = random.nextLong();
+        } while (token == 0 || sessionsByToken.containsKey(token));
+        session = new Session(token, id, replayBufferSize);
+        session.lock();
+        sessionsByToken.put(token, session);
+        Session previous = sessionsById.put(id, session);
+        if (previous != null) {
+            sessionsByToken.remove(previous.getToken());
+        }
+        return session;
+    }
+
+    /**
+     * Returns the session with the given resume token, or null if it doesn't exist or has expired.
+     */
+    Session find(long token) {
+        return (token == 0) ? null : sessionsByToken.get(token);
+    }
+
+    Session get(Identifier id) {
+        return (id == null) ? null : sessionsById.get(id);
+    }
+
+    Session remove(Identifier id) {
+        Session session = (id == null) ? null : sessionsById.remove(id);
+        if (session != null) {
+            sessionsByToken.remove(session.getToken());
+        }
+        return session;
+    }
+
+    /**
+     * Returns every session, with or without a connection.
+     */
+    Collection<Session> getSessions() {
+        return sessionsById.values();
+    }
+
+    /**
+     * Removes and returns the sessions that have been without a connection for longer than the grace
+     * period.
+     */
+    List<Session> expire() {
+        List<Session> expired = new ArrayList<Session>();
+        long now = System.nanoTime();
+        for (Iterator<Session> iterator = sessionsById.values().iterator(); iterator.hasNext();) {
+            Session session = iterator.next();
+            // under the session's lock so that it can't be resumed while it is expiring.
+            session.lock();
+            try {
+                if (session.isExpired(gracePeriodNanos, now)) {
+                    iterator.remove();
+                    sessionsByToken.remove(session.getToken());
+                    expired.add(session);
+                }
+            } finally {
+                session.unlock();
+            }
+        }
+        return expired;
+    }
+
+    void clear() {
+        sessionsById.clear();
+        sessionsByToken.clear();
+    }
+
+    int size() {
+        return sessionsById.size();
+    }
+}
@@ -1,14 +1,23 @@
 package edu.asu.commons.net;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.StreamCorruptedException;
 import java.net.Socket;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
 
 import edu.asu.commons.event.Event;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
 import edu.asu.commons.net.event.DisconnectionRequest;
+import edu.asu.commons.util.Threads;
 
 /**
  * $Id$
@@ -17,37 +26,131 @@ import edu.asu.commons.net.event.DisconnectionRequest;
  * reading and writing of Events. Will read Events from the socket via blocking I/O after this Runnable
  * is start()-ed. Writes occur within caller's thread of execution.
  * 
+ * Events are exchanged as length-prefixed EventFrames, the same framing used by the NioDispatcher, so
+ * a frame encoded once can be written to any number of workers. Each worker encodes and decodes its
+ * own Events with a per-connection EventCodec, e.g., an ObjectStreamCodec.
+ * 
+ * Server side workers may write asynchronously, in which case frames are queued on a SocketWriter
+ * with a thread of its own and writes return immediately.
+ * 
+ * The reader loop may run on a virtual thread, so reads and writes are guarded by
+ * java.util.concurrent locks rather than monitors, which would pin the virtual thread to its carrier
+ * while it blocks on the socket.
+ * 
+ * PING control frames are answered with a PONG by the reader loop itself and never reach the local
+ * EventChannel. Client side workers given an idle timeout stop waiting on a server that has gone
+ * silent once the server has shown that it sends heartbeats.
+ * 
+ * Workers carrying a resumable Session count the Event frames they read so that a client can tell
+ * the server which frames it is missing when it resumes the session on a new connection.
+ * 
  * @author <a href='allen.lee@asu.edu'>Allen Lee</a>
  * @version $Revision$
  */
 class SocketDispatcherWorker implements Runnable {
 
+    private final static int OUTPUT_BUFFER_SIZE = 8192;
+
     private final Dispatcher dispatcher;
     private final Socket socket;
     private Identifier id;
     private Thread workerThread;
     private boolean running;
-    private ObjectOutputStream cachedOut;
-    private ObjectInputStream cachedIn;
+    private final OutputStream out;
+    private final DataInputStream in;
+    private final EventCodec codec;
+    private final int maxFrameSize;
+    private final boolean virtualThread;
+    // serializes writes (and the encoding of frames continuing the codec's
+    // object stream) and reads respectively.
+    private final Lock writeLock = new ReentrantLock();
+    private final Lock readLock = new ReentrantLock();
+    // null unless writes are asynchronous.
+    private SocketWriter writer;
+    // true while frames are being held back by an open batch.
+    private final AtomicBoolean held = new AtomicBoolean();
+    private final Heartbeat heartbeat = new Heartbeat();
+    // read timeout in ms applied once the first PING arrives, 0 if disabled.
+    private volatile int idleTimeout;
+    // number of Event frames read by the reader loop, only written by the reader thread.
+    private volatile long receivedFrames;
+    // resume token sent by the server, 0 if there is no session.
+    private volatile long sessionToken;
+    // set once this worker has asked to be disconnected, or has been replaced
+    // by a worker resuming its session and must no longer ask.
+    private final AtomicBoolean disconnectionRequested = new AtomicBoolean();
+    private final ConnectionMetrics metrics = new ConnectionMetrics(new IntSupplier() {
+        public int getAsInt() {
+            SocketWriter current = writer;
+            return (current == null) ? 0 : current.getQueueDepth();
+        }
+    });
+
+    protected SocketDispatcherWorker(Dispatcher dispatcher, Socket socket, EventCodec codec) throws IOException {
+        this(dispatcher, socket, codec, DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE, false);
+    }
 
-    protected SocketDispatcherWorker(Dispatcher dispatcher, Socket socket) throws IOException {
+    /**
+     * Creates a worker that rejects frames larger than maxFrameSize and whose reader loop runs on a
+     * virtual thread if virtualThread is true and the JVM supports them.
+     */
+    protected SocketDispatcherWorker(Dispatcher dispatcher, Socket socket, EventCodec codec, int maxFrameSize, boolean virtualThread) throws IOException {
         this.dispatcher = dispatcher;
         this.socket = socket;
-        cachedOut = new ObjectOutputStream(socket.getOutputStream());
-        cachedOut.flush();
-        cachedIn = new ObjectInputStream(socket.getInputStream());
+        this.codec = codec;
+        this.maxFrameSize = maxFrameSize;
+        this.virtualThread = virtualThread;
+        out = new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    protected SocketDispatcherWorker(Dispatcher dispatcher, Socket socket, Identifier id, EventCodec codec) throws IOException {
+        this(dispatcher, socket, id, codec, DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE, false);
     }
 
-    protected SocketDispatcherWorker(Dispatcher dispatcher, Socket socket, Identifier id) throws IOException {
-        this(dispatcher, socket);
+    protected SocketDispatcherWorker(Dispatcher dispatcher, Socket socket, Identifier id, EventCodec codec, int maxFrameSize,
+            boolean virtualThread) throws IOException {
+        this(dispatcher, socket, codec, maxFrameSize, virtualThread);
         this.id = id;
     }
 
+    /**
+     * Hands all subsequent writes to a SocketWriter bounded by the given high water mark, must be
+     * invoked before anything is written.
+     */
+    void startAsyncWrites(int highWaterMark, OverflowPolicy overflowPolicy) {
+        writer = new SocketWriter(this, out, highWaterMark, overflowPolicy);
+    }
+
+    SocketWriter getWriter() {
+        return writer;
+    }
+
+    Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    ConnectionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops this worker if nothing is read for longer than the given number of milliseconds once the
+     * peer has sent its first PING. Only needed by client side workers, server dispatchers detect idle
+     * connections with their own heartbeats.
+     */
+    void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = (int) Math.min(Integer.MAX_VALUE, idleTimeout);
+    }
+
     public synchronized void start() {
         if (workerThread == null) {
             running = true;
-            workerThread = new Thread(this);
+            workerThread = Threads.newThread(this, "SocketDispatcherWorker-" + id, virtualThread);
             workerThread.start();
+            if (writer != null) {
+                Threads.newThread(writer, "SocketWriter-" + id, virtualThread).start();
+            }
         }
     }
 
@@ -60,6 +163,9 @@ class SocketDispatcherWorker implements Runnable {
     public void stop() {
         running = false;
         workerThread = null;
+        if (writer != null) {
+            writer.stop();
+        }
         if (socket != null) {
             try {
                 socket.close();
@@ -70,20 +176,129 @@ class SocketDispatcherWorker implements Runnable {
     }
 
     public void write(Event event) {
+        write(event, true);
+    }
+
+    /**
+     * Encodes and writes the given Event, leaving it buffered until the next flush() unless flush is
+     * true.
+     */
+    public void write(Event event, boolean flush) {
         try {
-            synchronized (socket) {
-                cachedOut.reset();
-                cachedOut.writeObject(event);
-                cachedOut.flush();
+            // encode under the write lock so frames continuing the codec's
+            // object stream are written in the order they were encoded.
+            writeLock.lock();
+            try {
+                if (writer == null) {
+                    write(EventFrame.encode(codec, event, id), flush);
+                }
+                // a frame dropped by the overflow policy must never be encoded,
+                // it would leave a gap in the codec's object stream.
+                else if (writer.reserve()) {
+                    EventFrame frame = EventFrame.encode(codec, event, id);
+                    writer.add(frame, flush);
+                    metrics.recordSent(frame.size());
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            requestDisconnection(e);
+        }
+    }
+
+    /**
+     * Writes an already encoded frame, frames may be shared across workers.
+     */
+    public void write(EventFrame frame) {
+        write(frame, true);
+    }
+
+    /**
+     * Writes (or queues) an already encoded frame, returning false if it was discarded, e.g., by the
+     * overflow policy or because the socket failed.
+     */
+    public boolean write(EventFrame frame, boolean flush) {
+        try {
+            writeLock.lock();
+            try {
+                if (writer == null) {
+                    frame.writeTo(out);
+                    if (flush) {
+                        out.flush();
+                    }
+                    metrics.recordSent(frame.size());
+                    return true;
+                }
+                else if (writer.reserve()) {
+                    writer.add(frame, flush);
+                    metrics.recordSent(frame.size());
+                    return true;
+                }
+                return false;
+            } finally {
+                writeLock.unlock();
             }
             // XXX: don't close() the stream. It closes the wrapped Socket
             // OutputStream and all subsequent usage / reads will fail
+        } catch (IOException e) {
+            e.printStackTrace();
+            requestDisconnection(e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes a control frame. With asynchronous writes it is queued without taking the write lock or
+     * applying the overflow policy, so heartbeats never wait on a producer blocked on a full queue.
+     */
+    void writeControl(EventFrame frame) {
+        SocketWriter current = writer;
+        if (current == null) {
+            write(frame);
+            return;
+        }
+        current.addControl(frame);
+        metrics.recordSent(frame.size());
+    }
+
+    /**
+     * Writes any frames still buffered, e.g., at the end of a batch.
+     */
+    public void flush() {
+        if (writer != null) {
+            writer.requestFlush();
+            return;
+        }
+        try {
+            writeLock.lock();
+            try {
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
         } catch (IOException e) {
             e.printStackTrace();
             requestDisconnection(e);
         }
     }
 
+    /**
+     * Returns true if this worker wasn't already holding frames for a batch.
+     */
+    boolean hold() {
+        return held.compareAndSet(false, true);
+    }
+
+    /**
+     * Flushes the frames held for a batch.
+     */
+    void releaseHeld() {
+        held.set(false);
+        flush();
+    }
+
     /**
      * Provides a static way to read an Event from a socket. This method will
      * block if there's nothing coming down the stream.
@@ -94,13 +309,87 @@ class SocketDispatcherWorker implements Runnable {
      * @throws ClassNotFoundException
      */
     public static Event readEvent(Socket socket) throws IOException, ClassNotFoundException {
-        ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-        return (Event) in.readObject();
+        return readEvent(socket, DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Reads an Event from a socket, rejecting frames larger than maxFrameSize, e.g., the configured
+     * DispatcherConfiguration.getMaxFrameSize().
+     */
+    public static Event readEvent(Socket socket, int maxFrameSize) throws IOException, ClassNotFoundException {
+        return EventFrame.read(EventCodecRegistry.getCodec(null), new DataInputStream(socket.getInputStream()),
+                maxFrameSize, null);
+    }
+
+    public Event readEvent() throws IOException, ClassNotFoundException {
+        readLock.lock();
+        try {
+            return EventFrame.read(codec, in, maxFrameSize, id);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the frames preceding the server's ConnectionEvent, e.g., the resume token of a session,
+     * and returns the ConnectionEvent.
+     */
+    Event readHandshake() throws IOException, ClassNotFoundException {
+        Event event;
+        while ((event = readFrame()) == null) {
+            // control frames have been handled.
+        }
+        return event;
+    }
+
+    /**
+     * Reads the body of the next frame without decoding it, e.g., a control frame sent before the
+     * connection has been set up.
+     */
+    byte[] readFrameBody() throws IOException {
+        readLock.lock();
+        try {
+            return EventFrame.readBody(in, maxFrameSize);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the next frame, returning its Event or null if it was a control frame, which has already
+     * been handled.
+     */
+    private Event readFrame() throws IOException, ClassNotFoundException {
+        byte[] data;
+        readLock.lock();
+        try {
+            data = EventFrame.readBody(in, maxFrameSize);
+            heartbeat.touch();
+            metrics.recordReceived(EventFrame.BYTES_PER_INT + data.length);
+            if (!Heartbeat.isControlFrame(data, 0, data.length)) {
+                return codec.decode(data, 0, data.length, id);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        receiveControlFrame(data);
+        return null;
     }
 
-    public synchronized Event readEvent() throws IOException, ClassNotFoundException {
-        // return SocketDispatcherWorker.readEvent(socket);
-        return (Event) cachedIn.readObject();
+    private void receiveControlFrame(byte[] data) throws IOException {
+        int typeId = data[0];
+        if (typeId == Session.SESSION_TYPE_ID) {
+            sessionToken = EventFrame.getControlValue(data, 0, data.length, 0);
+            return;
+        }
+        EventFrame reply = heartbeat.receive(typeId, Heartbeat.getValue(data, 0, data.length));
+        if (typeId == Heartbeat.PING_TYPE_ID && idleTimeout > 0 && socket.getSoTimeout() != idleTimeout) {
+            // the peer sends heartbeats, so silence now means it is gone.
+            socket.setSoTimeout(idleTimeout);
+        }
+        if (reply != null) {
+            writeControl(reply);
+        }
     }
 
     public Socket getSocket() {
@@ -111,12 +400,44 @@ class SocketDispatcherWorker implements Runnable {
         return id;
     }
 
-    private boolean isRunning() {
+    boolean isRunning() {
         return running && !socket.isClosed();
     }
 
-    private void requestDisconnection(Exception exception) {
-        dispatcher.getLocalEventHandler().handleWithNewThread(new DisconnectionRequest(id, exception));
+    void requestDisconnection(Exception exception) {
+        if (disconnectionRequested.compareAndSet(false, true)) {
+            dispatcher.getLocalEventHandler().handleWithNewThread(new DisconnectionRequest(id, exception));
+        }
+    }
+
+    /**
+     * Returns true if this worker has asked to be disconnected.
+     */
+    boolean isDisconnectionRequested() {
+        return disconnectionRequested.get();
+    }
+
+    /**
+     * Stops this worker without asking to be disconnected, its session has been resumed by another.
+     */
+    void replace() {
+        disconnectionRequested.set(true);
+        stop();
+    }
+
+    long getReceivedFrames() {
+        return receivedFrames;
+    }
+
+    /**
+     * Continues counting received frames from where the worker this one resumes a session for left off.
+     */
+    void setReceivedFrames(long receivedFrames) {
+        this.receivedFrames = receivedFrames;
+    }
+
+    long getSessionToken() {
+        return sessionToken;
     }
 
     public void run() {
@@ -125,7 +446,12 @@ class SocketDispatcherWorker implements Runnable {
             while (isRunning()) {
                 // try to read Events from the socket
                 try {
-                    dispatcher.getLocalEventHandler().handle(readEvent());
+                    Event event = readFrame();
+                    if (event == null) {
+                        continue;
+                    }
+                    receivedFrames++;
+                    dispatcher.getLocalEventHandler().handle(event);
                     // wake up all threads waiting on the dispatcher..
                     synchronized (dispatcher) {
                         dispatcher.notifyAll();
@@ -137,17 +463,17 @@ class SocketDispatcherWorker implements Runnable {
                     break;
                 } catch (EOFException e) {
                     e.printStackTrace();
-                    requestDisconnection(e);
-                    // kills this thread.
+                    // kills this thread, before anyone handles the request.
                     stop();
+                    requestDisconnection(e);
                 } catch (IOException e) {
                     e.printStackTrace();
-                    requestDisconnection(e);
                     stop();
+                    requestDisconnection(e);
                 } catch (ClassNotFoundException e) {
                     e.printStackTrace();
-                    requestDisconnection(e);
                     stop();
+                    requestDisconnection(e);
                 }
             }
         } catch (Exception e) {
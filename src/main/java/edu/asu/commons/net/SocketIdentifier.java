@@ -1,16 +1,20 @@
 package edu.asu.commons.net;
 
+import java.net.Inet4Address;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.StringTokenizer;
 
 /**
- * Uniquely identifies a socket connection and provides translation methods to convert
- * IP addresses of a certain format to "station numbers". In order of preference:
+ * Uniquely identifies a socket connection and assigns it a "station number". SocketIdentifiers are
+ * built from numeric addresses only and never do DNS lookups on their own, so they are cheap to
+ * create on a server's accept path. In order of preference, the station number is
  * 
  * <ol>
- * <li>use the client hostname, e.g., ostrom-lab-12.dhcp.asu.edu will have a station number of 12 and emit a toString() of "Station 12"
- * <li>if the hostname doesn't have any trailing numbers, it will try to use the last digits of the IP address to define the station number
+ * <li>assigned by the server, from its station map or from the client's host name, e.g.,
+ * ostrom-lab-12.dhcp.asu.edu will have a station number of 12 and emit a toString() of "Station 12"
+ * (see StationResolver), or via setStationNumber()
+ * <li>the last octet of the client's IPv4 address
  * </ol>
  * A SocketIdentifier is semantically equal to another SocketIdentifier if
  * the localAddress and remoteAddresses are the same.
@@ -30,33 +34,41 @@ public class SocketIdentifier extends Identifier.Base<SocketIdentifier> {
     private final InetSocketAddress localSocketAddress;
     private final InetSocketAddress remoteSocketAddress;
 
-    // FIXME: refactor, is this necessary if we're also maintaining the station number? logic is convoluted.
-    private boolean stationed;
+    // the last octet of the remote IPv4 address, -1 if there is none.
+    private final int addressStationNumber;
 
-    private Integer stationNumber;
+    // assigned by the server or via setStationNumber(), takes precedence over
+    // the address station number.
+    private volatile Integer stationNumber;
 
     private static final long serialVersionUID = 2371746759512286392L;
 
     public SocketIdentifier(Socket socket) {
-        this(socket.getLocalAddress().getHostName(), socket.getLocalPort(),
-                getRemoteHostName(socket), socket.getPort());
+        this(new InetSocketAddress(socket.getLocalAddress(), socket.getLocalPort()), getRemoteAddress(socket));
     }
 
     public SocketIdentifier(InetSocketAddress localAddress, InetSocketAddress remoteAddress) {
         this.localSocketAddress = localAddress;
         this.remoteSocketAddress = remoteAddress;
-
+        this.addressStationNumber = getAddressStationNumber(remoteAddress.getAddress());
     }
 
     public SocketIdentifier(String localHost, int localPort, String remoteHost, int remotePort) {
         this(new InetSocketAddress(localHost, localPort), new InetSocketAddress(remoteHost, remotePort));
     }
 
-    private static String getRemoteHostName(Socket socket) {
+    private static InetSocketAddress getRemoteAddress(Socket socket) {
         if (socket.getInetAddress() == null) {
             throw new IllegalArgumentException("socket not bound to a remote address");
         }
-        return socket.getInetAddress().getHostName();
+        return new InetSocketAddress(socket.getInetAddress(), socket.getPort());
+    }
+
+    private static int getAddressStationNumber(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            return address.getAddress()[3] & 0xFF;
+        }
+        return -1;
     }
 
     public InetSocketAddress getLocalAddress() {
@@ -67,6 +79,9 @@ public class SocketIdentifier extends Identifier.Base<SocketIdentifier> {
         return localSocketAddress.getAddress().getHostAddress();
     }
 
+    /**
+     * Returns the local host name, which may require a blocking reverse DNS lookup.
+     */
     public String getLocalHostName() {
         return getLocalAddress().getHostName();
     }
@@ -75,6 +90,9 @@ public class SocketIdentifier extends Identifier.Base<SocketIdentifier> {
         return getLocalAddress().getPort();
     }
 
+    /**
+     * Returns the remote host name, which may require a blocking reverse DNS lookup.
+     */
     public String getRemoteHostName() {
         return getRemoteAddress().getHostName();
     }
@@ -106,78 +124,50 @@ public class SocketIdentifier extends Identifier.Base<SocketIdentifier> {
     }
 
     public String toString() {
-        int stationNumberInt = getStationNumber();
-        return (stationed) ? String.format("Station %d (uid: %d)", stationNumberInt, index()) : remoteSocketAddress.toString();
+        return (isStationed()) ? String.format("Station %d (uid: %d)", getStationNumber(), index()) : remoteSocketAddress.toString();
+    }
+
+    private boolean isStationed() {
+        return stationNumber != null || addressStationNumber >= 0;
     }
 
     /**
-     * FIXME: this method only works for hostnames whose last two characters are
-     * numbers. Furthermore, for clients originating from the same machine (or behind NAT) it
-     * will return the same client station number.
-     * 
-     * @return
+     * Returns the station number assigned to this identifier, the last octet of its remote IPv4
+     * address, or its index if it has neither.
      */
     public int getStationNumber() {
-        if (stationNumber != null) {
-            return stationNumber.intValue();
-        }
-        String remoteHostname = remoteSocketAddress.getHostName();
-        StringTokenizer tokenizer = new StringTokenizer(remoteHostname, ".");
-        String hostname = tokenizer.nextToken();
-
-        System.err.println("remote host name: " + getRemoteHostName());
-        System.err.println("remote socket address: " + remoteSocketAddress);
-        System.err.println("remote host address: " + getRemoteHostAddress());
-        System.err.println("local host name: " + getLocalHostName());
-        System.err.println("local host address: " + localSocketAddress);
-
-        int startIndex = hostname.lastIndexOf('-');
-        String station = hostname.substring(startIndex + 1, hostname.length());
-        try {
-            stationNumber = Math.abs(Integer.parseInt(station));
-            stationed = true;
-            return stationNumber;
-        } catch (NumberFormatException e) {
-            // try get station from ip
-            return getStationFromIP();
-        }
-    }
-
-    private int getStationFromIP() {
-        if (stationNumber != null) {
-            return stationNumber.intValue();
-        }
-        String remoteHost = remoteSocketAddress.toString();
-        System.err.println("remote host name: " + getRemoteHostName());
-        System.err.println("remote socket address: " + remoteSocketAddress);
-        System.err.println("local host name: " + getLocalHostName());
-        System.err.println("local host address: " + localSocketAddress);
-        String lastIPDigits = remoteHost.substring(remoteHost.lastIndexOf('.') + 1, remoteHost.lastIndexOf(':'));
-        try {
-            stationNumber = Math.abs(Integer.parseInt(lastIPDigits));
-            stationed = true;
-            return stationNumber;
-        } catch (NumberFormatException e) {
-            stationed = false;
-            return index();
+        Integer assigned = stationNumber;
+        if (assigned != null) {
+            return assigned.intValue();
         }
+        return (addressStationNumber >= 0) ? addressStationNumber : index();
     }
 
     public String getStationId() {
-        return "Station " + stationNumber;
+        return "Station " + getStationNumber();
     }
 
-    public void setStationNumber(Integer stationNumber) {
+    public synchronized void setStationNumber(Integer stationNumber) {
         if (stationNumber != null) {
             this.stationNumber = stationNumber;
-            stationed = true;
         }
     }
 
+    /**
+     * Assigns the station number resolved by the server unless one has already been assigned.
+     */
+    synchronized boolean resolveStationNumber(int stationNumber) {
+        if (this.stationNumber != null) {
+            return false;
+        }
+        this.stationNumber = stationNumber;
+        return true;
+    }
+
     public int compareTo(SocketIdentifier socketId) {
         int comparison = 0;
-        if (stationNumber != null && socketId.stationNumber != null) {
-            comparison = stationNumber.compareTo(socketId.stationNumber);
+        if (isStationed() && socketId.isStationed()) {
+            comparison = Integer.valueOf(getStationNumber()).compareTo(Integer.valueOf(socketId.getStationNumber()));
         }
         if (comparison == 0) {
             // if these two socket ids are .equals, comparison of 0 is fine. Otherwise go by the id.
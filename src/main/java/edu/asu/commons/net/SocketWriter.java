@@ -0,0 +1,266 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * $Id$
+ *
+ * Writes the frames queued for a single SocketDispatcherWorker on a thread of its own, so that
+ * transmitting to a slow or stalled client never blocks the transmitting thread (usually the
+ * experiment thread) on the network.
+ * <p>
+ * The queue is bounded by the outbound queue high water mark, once it is full the OverflowPolicy
+ * decides whether the producer blocks, the oldest queued frame is discarded, the new frame is
+ * discarded or the client is disconnected. Frames are flushed once the queue has drained, so bursts
+ * of frames are coalesced into as few socket writes as possible.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class SocketWriter implements Runnable {
+
+    private final static Logger logger = Logger.getLogger(SocketWriter.class.getName());
+
+    private final SocketDispatcherWorker worker;
+    private final OutputStream out;
+    private final int highWaterMark;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ArrayDeque<QueuedFrame> queue = new ArrayDeque<QueuedFrame>();
+    private final Lock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // guarded by lock.
+    private boolean running = true;
+    private boolean flushRequested;
+    // true from the moment the queue overflows until it has drained to half
+    // the high water mark again, so each overflow is only reported once.
+    private boolean overflowed;
+    private boolean disconnectRequested;
+
+    private final AtomicLong writtenFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong totalWriteLatencyNanos = new AtomicLong();
+    private final AtomicLong maxWriteLatencyNanos = new AtomicLong();
+
+    SocketWriter(SocketDispatcherWorker worker, OutputStream out, int highWaterMark, OverflowPolicy overflowPolicy) {
+        this.worker = worker;
+        this.out = out;
+        this.highWaterMark = Math.max(1, highWaterMark);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Makes room for one more frame according to the overflow policy, returning false if the frame
+     * should not be queued (or even encoded) at all. Producers must hold the worker's write lock from
+     * reserve() through add() so that the room reserved isn't taken by someone else.
+     */
+    boolean reserve() {
+        lock.lock();
+        try {
+            if (queue.size() < highWaterMark) {
+                return running;
+            }
+            switch (overflowPolicy) {
+                case BLOCK:
+                    while (running && queue.size() >= highWaterMark) {
+                        notFull.awaitUninterruptibly();
+                    }
+                    return running;
+                case DROP_OLDEST:
+                    queue.pollFirst();
+                    dropped("dropping its oldest frames");
+                    return running;
+                case DROP_NEWEST:
+                    dropped("dropping frames until it drains");
+                    return false;
+                case DISCONNECT:
+                default:
+                    droppedFrames.incrementAndGet();
+                    if (!disconnectRequested) {
+                        disconnectRequested = true;
+                        worker.requestDisconnection(new IOException(String.format(
+                                "outbound queue for %s exceeded %d frames", worker.id(), highWaterMark)));
+                    }
+                    return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dropped(String action) {
+        droppedFrames.incrementAndGet();
+        if (!overflowed) {
+            overflowed = true;
+            logger.warning(String.format("outbound queue for %s reached %d frames, %s", worker.id(), highWaterMark, action));
+        }
+    }
+
+    /**
+     * Queues a frame that room has been reserve()-d for. If flush is false the frame may stay buffered
+     * until the next requestFlush().
+     */
+    void add(EventFrame frame, boolean flush) {
+        lock.lock();
+        try {
+            queue.addLast(new QueuedFrame(frame, flush));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a control frame (a PING or PONG) and flushes it without reserving room for it, so it is
+     * never discarded by the overflow policy and never blocks, even while a producer is waiting in
+     * reserve() for a full queue to drain. Control frames don't continue the codec's object stream and
+     * may be queued without holding the worker's write lock.
+     */
+    void addControl(EventFrame frame) {
+        lock.lock();
+        try {
+            if (running) {
+                queue.addLast(new QueuedFrame(frame, true));
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes everything written so far once the queue has drained.
+     */
+    void requestFlush() {
+        lock.lock();
+        try {
+            flushRequested = true;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void stop() {
+        lock.lock();
+        try {
+            running = false;
+            queue.clear();
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getWrittenFrames() {
+        return writtenFrames.get();
+    }
+
+    long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Returns the mean time in milliseconds between a frame being queued and written to the socket.
+     */
+    double getMeanWriteLatency() {
+        long count = writtenFrames.get();
+        return (count == 0) ? 0.0d : toMillis(totalWriteLatencyNanos.get() / count);
+    }
+
+    double getMaxWriteLatency() {
+        return toMillis(maxWriteLatencyNanos.get());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public void run() {
+        try {
+            while (true) {
+                QueuedFrame next;
+                boolean flush;
+                lock.lock();
+                try {
+                    while (running && queue.isEmpty() && !flushRequested) {
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    if (!running) {
+                        return;
+                    }
+                    next = queue.pollFirst();
+                    if (next != null) {
+                        notFull.signal();
+                    }
+                    if (overflowed && queue.size() <= highWaterMark / 2) {
+                        overflowed = false;
+                    }
+                    // only flush once everything queued so far has been written.
+                    flush = queue.isEmpty() && (flushRequested || (next != null && next.flush));
+                    if (flush) {
+                        flushRequested = false;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (next != null) {
+                    next.frame.writeTo(out);
+                }
+                if (flush) {
+                    out.flush();
+                }
+                if (next != null) {
+                    recordWrite(next);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            stop();
+            worker.requestDisconnection(e);
+        }
+    }
+
+    private void recordWrite(QueuedFrame frame) {
+        long latency = System.nanoTime() - frame.queuedAt;
+        writtenFrames.incrementAndGet();
+        totalWriteLatencyNanos.addAndGet(latency);
+        long max;
+        while (latency > (max = maxWriteLatencyNanos.get())) {
+            if (maxWriteLatencyNanos.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+    }
+
+    private static class QueuedFrame {
+        private final EventFrame frame;
+        private final boolean flush;
+        private final long queuedAt = System.nanoTime();
+
+        QueuedFrame(EventFrame frame, boolean flush) {
+            this.frame = frame;
+            this.flush = flush;
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+package edu.asu.commons.net;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * $Id$
+ *
+ * Assigns station numbers to the SocketIdentifiers of newly accepted connections without blocking
+ * the accept path.
+ * <p>
+ * Station numbers are first looked up in the station map, a file listing one numeric address and
+ * station number per line, e.g.,
+ *
+ * <pre>
+ * # lab workstations
+ * 10.0.1.21    1
+ * 10.0.1.22    2
+ * </pre>
+ *
+ * Addresses that aren't mapped can have their station number taken from the trailing number of their
+ * host name, e.g., ostrom-lab-12.dhcp.asu.edu is station 12. The reverse DNS lookup runs in the
+ * background and its result, cached per address, is assigned to the server's Identifier once it
+ * completes, so it may still carry its address station number when the ConnectionEvent is sent. The
+ * client's copy of the Identifier keeps the address station number, use a station map if both ends
+ * must agree.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class StationResolver {
+
+    private final static Logger logger = Logger.getLogger(StationResolver.class.getName());
+
+    // reverse DNS lookups are shared by every dispatcher, their threads time
+    // out when there's nothing to look up.
+    private final static ExecutorService lookups;
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "StationResolver");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        lookups = executor;
+    }
+
+    // numeric host address -> station number.
+    private final Map<String, Integer> stationMap;
+    private final boolean hostNameLookup;
+    // station numbers found in host names, -1 if the host name has none.
+    private final Map<InetAddress, Integer> hostNameStations = new ConcurrentHashMap<InetAddress, Integer>();
+
+    StationResolver(Map<String, Integer> stationMap, boolean hostNameLookup) {
+        this.stationMap = stationMap;
+        this.hostNameLookup = hostNameLookup;
+    }
+
+    static StationResolver create(DispatcherConfiguration configuration) {
+        Map<String, Integer> stationMap = Collections.emptyMap();
+        String file = configuration.getStationMapFile();
+        if (file != null) {
+            try {
+                stationMap = readStationMap(new FileReader(file));
+                logger.info(String.format("read %d station(s) from %s", stationMap.size(), file));
+            } catch (IOException e) {
+                logger.warning("unable to read the station map " + file + ": " + e);
+            }
+        }
+        return new StationResolver(stationMap, configuration.isStationHostNameLookupEnabled());
+    }
+
+    /**
+     * Reads a station map, one numeric address and station number separated by whitespace per line.
+     * Blank lines and lines starting with # are ignored.
+     */
+    static Map<String, Integer> readStationMap(Reader reader) throws IOException {
+        Map<String, Integer> stationMap = new HashMap<String, Integer>();
+        BufferedReader lines = new BufferedReader(reader);
+        try {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                try {
+                    if (fields.length != 2) {
+                        throw new NumberFormatException();
+                    }
+                    stationMap.put(fields[0], Integer.valueOf(fields[1]));
+                } catch (NumberFormatException e) {
+                    logger.warning("ignoring malformed station map entry: " + line);
+                }
+            }
+        } finally {
+            lines.close();
+        }
+        return stationMap;
+    }
+
+    /**
+     * Returns the trailing number of the first label of the given host name, e.g., 12 for
+     * ostrom-lab-12.dhcp.asu.edu, or -1 if it has none.
+     */
+    static int parseStationNumber(String hostName) {
+        int end = hostName.indexOf('.');
+        String label = (end < 0) ? hostName : hostName.substring(0, end);
+        String station = label.substring(label.lastIndexOf('-') + 1);
+        try {
+            return Math.abs(Integer.parseInt(station));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Assigns the given identifier its station number from the station map, or starts looking up its
+     * host name if enabled. Never blocks.
+     */
+    SocketIdentifier resolve(final SocketIdentifier id) {
+        final InetAddress address = id.getRemoteAddress().getAddress();
+        if (address == null) {
+            return id;
+        }
+        Integer mapped = stationMap.get(address.getHostAddress());
+        if (mapped != null) {
+            id.resolveStationNumber(mapped);
+            return id;
+        }
+        if (!hostNameLookup) {
+            return id;
+        }
+        Integer cached = hostNameStations.get(address);
+        if (cached != null) {
+            assign(id, cached);
+            return id;
+        }
+        lookups.execute(new Runnable() {
+            public void run() {
+                int stationNumber = lookupStationNumber(address);
+                hostNameStations.put(address, stationNumber);
+                assign(id, stationNumber);
+            }
+        });
+        return id;
+    }
+
+    private void assign(SocketIdentifier id, int stationNumber) {
+        if (stationNumber >= 0 && id.resolveStationNumber(stationNumber)) {
+            logger.info("resolved " + id + " from its host name");
+        }
+    }
+
+    private static int lookupStationNumber(InetAddress address) {
+        try {
+            // look up a copy so the identifier's own address isn't modified.
+            String hostName = InetAddress.getByAddress(address.getAddress()).getHostName();
+            return parseStationNumber(hostName);
+        } catch (UnknownHostException e) {
+            return -1;
+        }
+    }
+}
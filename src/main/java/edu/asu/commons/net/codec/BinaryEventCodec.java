@@ -0,0 +1,46 @@
+package edu.asu.commons.net.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * EventCodec that encodes Events with the TypeCodec registered for their exact class in the
+ * EventCodecRegistry, avoiding the class descriptors, reflection and garbage of Java serialization
+ * for high volume Events. Unregistered Event types fall back to Java serialization.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class BinaryEventCodec extends SerializationCodec {
+
+    public final static String NAME = "binary";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isSerialized(Event event) {
+        return EventCodecRegistry.getRegistration(event.getClass()) == null;
+    }
+
+    @Override
+    public void encode(Event event, Identifier multicastId, OutputStream out) throws IOException {
+        EventCodecRegistry.Registration registration = EventCodecRegistry.getRegistration(event.getClass());
+        if (registration == null) {
+            super.encode(event, multicastId, out);
+            return;
+        }
+        out.write(registration.getTypeId());
+        EventOutput eventOutput = new EventOutput(out, multicastId);
+        registration.write(event, eventOutput);
+        eventOutput.flush();
+    }
+
+}
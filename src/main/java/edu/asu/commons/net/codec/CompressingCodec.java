@@ -0,0 +1,211 @@
+package edu.asu.commons.net.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * EventCodec that deflates the frame bodies produced by its wrapped codec once they reach a size
+ * threshold, e.g., for SetConfigurationEvents carrying a whole configuration graph or large data
+ * model snapshots. A compressed body has COMPRESSED_FLAG set in its type id byte, followed by the int
+ * length of the original body (excluding its type id) and the deflated bytes. Bodies that don't get
+ * any smaller are sent as they are.
+ * <p>
+ * Inbound compressed frames are always inflated, whatever the local threshold, so peers can be
+ * configured independently.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class CompressingCodec implements EventCodec {
+
+    /**
+     * Set in the type id byte of frame bodies that have been compressed.
+     */
+    public final static int COMPRESSED_FLAG = 0x80;
+
+    private final static int HEADER_SIZE = 5;
+
+    private final static int MAX_RETAINED_SIZE = 64 * 1024;
+
+    // Deflaters and Inflaters hold on to native memory, share one per thread
+    // instead of one per connection.
+    private final static ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+
+    private final static ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final static ThreadLocal<BodyOutputStream> bodies = new ThreadLocal<BodyOutputStream>() {
+        @Override
+        protected BodyOutputStream initialValue() {
+            return new BodyOutputStream();
+        }
+    };
+
+    private final EventCodec codec;
+    private final int threshold;
+    private final int level;
+    private final int maxInflatedSize;
+    private final CompressionStatistics statistics;
+
+    /**
+     * @param codec the codec whose frame bodies are compressed.
+     * @param threshold the smallest frame body that is compressed, 0 or less disables compression of
+     *        outbound frames.
+     * @param level the Deflater compression level, 0-9 or Deflater.DEFAULT_COMPRESSION.
+     * @param maxInflatedSize the largest body an inbound frame may inflate to.
+     */
+    public CompressingCodec(EventCodec codec, int threshold, int level, int maxInflatedSize, CompressionStatistics statistics) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        this.codec = codec;
+        this.threshold = threshold;
+        this.level = level;
+        this.maxInflatedSize = maxInflatedSize;
+        this.statistics = statistics;
+    }
+
+    public String getName() {
+        return codec.getName();
+    }
+
+    public boolean isSerialized(Event event) {
+        return codec.isSerialized(event);
+    }
+
+    public void encode(Event event, Identifier multicastId, OutputStream out) throws IOException {
+        if (threshold <= 0) {
+            codec.encode(event, multicastId, out);
+            return;
+        }
+        BodyOutputStream body = bodies.get();
+        try {
+            codec.encode(event, multicastId, body);
+            if (body.size() < threshold || !compress(body, out)) {
+                body.writeTo(out);
+            }
+        } finally {
+            body.recycle();
+        }
+    }
+
+    private boolean compress(BodyOutputStream body, OutputStream out) throws IOException {
+        byte[] data = body.getBuffer();
+        int length = body.size() - 1;
+        if (length <= HEADER_SIZE) {
+            return false;
+        }
+        long startTime = CompressionStatistics.now();
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(data, 1, length);
+        deflater.finish();
+        // only worth sending if it saves more than the header costs.
+        byte[] compressed = new byte[length - HEADER_SIZE];
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < compressed.length) {
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        if (!deflater.finished()) {
+            statistics.recordCompression(length, -1, startTime);
+            return false;
+        }
+        out.write(data[0] | COMPRESSED_FLAG);
+        writeInt(out, length);
+        out.write(compressed, 0, compressedLength);
+        statistics.recordCompression(length, compressedLength, startTime);
+        return true;
+    }
+
+    public Event decode(byte[] data, int offset, int length, Identifier recipient) throws IOException, ClassNotFoundException {
+        if (length < 1 || (data[offset] & COMPRESSED_FLAG) == 0) {
+            return codec.decode(data, offset, length, recipient);
+        }
+        if (length < HEADER_SIZE) {
+            throw new StreamCorruptedException("Truncated compressed frame");
+        }
+        long startTime = CompressionStatistics.now();
+        int inflatedLength = readInt(data, offset + 1);
+        if (inflatedLength < 0 || inflatedLength > maxInflatedSize) {
+            throw new StreamCorruptedException("Invalid inflated frame length: " + inflatedLength);
+        }
+        byte[] inflated = new byte[inflatedLength + 1];
+        inflated[0] = (byte) (data[offset] & ~COMPRESSED_FLAG);
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, offset + HEADER_SIZE, length - HEADER_SIZE);
+        try {
+            int inflatedBytes = 0;
+            while (inflatedBytes < inflatedLength) {
+                int count = inflater.inflate(inflated, inflatedBytes + 1, inflatedLength - inflatedBytes);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new StreamCorruptedException("Compressed frame inflated to " + inflatedBytes + " of " + inflatedLength + " bytes");
+                }
+                inflatedBytes += count;
+            }
+        } catch (DataFormatException e) {
+            StreamCorruptedException exception = new StreamCorruptedException("Invalid compressed frame: " + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+        statistics.recordInflation(startTime);
+        return codec.decode(inflated, 0, inflated.length, recipient);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    @Override
+    public String toString() {
+        return codec + " [compression threshold: " + threshold + ", level: " + level + "]";
+    }
+
+    /**
+     * Holds a frame body while deciding whether to compress it.
+     */
+    private static class BodyOutputStream extends ByteArrayOutputStream {
+        BodyOutputStream() {
+            super(512);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        void recycle() {
+            if (buf.length > MAX_RETAINED_SIZE) {
+                buf = new byte[512];
+            }
+            reset();
+        }
+    }
+
+}
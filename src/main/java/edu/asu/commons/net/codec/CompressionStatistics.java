@@ -0,0 +1,113 @@
+package edu.asu.commons.net.codec;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * $Id$
+ *
+ * Running totals kept by the CompressingCodecs of a Dispatcher: how many frames were compressed and
+ * inflated, how much smaller compression made them, and how much CPU time it cost. CPU time is
+ * measured with the ThreadMXBean when the JVM supports it and falls back to elapsed time otherwise.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public final class CompressionStatistics {
+
+    private final static ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final static boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+
+    private final AtomicLong compressedFrames = new AtomicLong();
+    private final AtomicLong incompressibleFrames = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+    private final AtomicLong inflatedFrames = new AtomicLong();
+    private final AtomicLong inflationNanos = new AtomicLong();
+
+    static long now() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    void recordCompression(int uncompressedSize, int compressedSize, long startTime) {
+        compressionNanos.addAndGet(now() - startTime);
+        if (compressedSize < 0) {
+            incompressibleFrames.incrementAndGet();
+            return;
+        }
+        compressedFrames.incrementAndGet();
+        uncompressedBytes.addAndGet(uncompressedSize);
+        compressedBytes.addAndGet(compressedSize);
+    }
+
+    void recordInflation(long startTime) {
+        inflationNanos.addAndGet(now() - startTime);
+        inflatedFrames.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of frames sent compressed.
+     */
+    public long getCompressedFrames() {
+        return compressedFrames.get();
+    }
+
+    /**
+     * Returns the number of frames above the threshold that were sent uncompressed because
+     * compressing them didn't make them any smaller.
+     */
+    public long getIncompressibleFrames() {
+        return incompressibleFrames.get();
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * Returns the compressed size of the compressed frames as a fraction of their original size, or
+     * 1 if nothing has been compressed yet.
+     */
+    public double getCompressionRatio() {
+        long uncompressed = uncompressedBytes.get();
+        return (uncompressed == 0) ? 1.0d : compressedBytes.get() / (double) uncompressed;
+    }
+
+    /**
+     * Returns the CPU time in milliseconds spent compressing frames, including the incompressible ones.
+     */
+    public double getCompressionTime() {
+        return toMillis(compressionNanos.get());
+    }
+
+    public long getInflatedFrames() {
+        return inflatedFrames.get();
+    }
+
+    /**
+     * Returns the CPU time in milliseconds spent inflating received frames.
+     */
+    public double getInflationTime() {
+        return toMillis(inflationNanos.get());
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("compressed %d frames (%d incompressible) to %.1f%% of %d bytes in %.3f ms, inflated %d frames in %.3f ms",
+                getCompressedFrames(), getIncompressibleFrames(), getCompressionRatio() * 100, getUncompressedBytes(),
+                getCompressionTime(), getInflatedFrames(), getInflationTime());
+    }
+
+}
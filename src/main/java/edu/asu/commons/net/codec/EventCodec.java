@@ -0,0 +1,66 @@
+package edu.asu.commons.net.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Converts Events to and from the body of a network frame. A frame body always starts with a type id
+ * byte that tells the receiver how the rest of the body was encoded: SERIALIZED_TYPE_ID for plain Java
+ * serialization, or the id of a TypeCodec registered with the EventCodecRegistry.
+ * <p>
+ * The codec used to encode outbound Events is selected with the wire-codec property; every codec must
+ * be able to decode frames produced by the built-in codecs so peers configured with different codecs
+ * can still talk to each other.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public interface EventCodec {
+
+    /**
+     * Type id of frame bodies containing a Java serialized Event.
+     */
+    public final static int SERIALIZED_TYPE_ID = 0;
+
+    /**
+     * Type id of frame bodies containing the next Event written to a connection's persistent object
+     * stream, see ObjectStreamCodec.
+     */
+    public final static int STREAM_TYPE_ID = 1;
+
+    /**
+     * Type ids below this value are reserved for the dispatchers' own use.
+     */
+    public final static int MIN_REGISTERED_TYPE_ID = 32;
+
+    /**
+     * The high bit of the type id byte is reserved for frame flags.
+     */
+    public final static int MAX_TYPE_ID = 127;
+
+    public String getName();
+
+    /**
+     * Writes the type id and encoded form of the given Event. If multicastId is not null, every
+     * reference to that Identifier must be encoded so that it decodes to the recipient's own Identifier.
+     * Dispatchers pass the Identifier of the connection an Event is written to, or the Identifier of a
+     * multicast Event encoded once for many connections.
+     */
+    public void encode(Event event, Identifier multicastId, OutputStream out) throws IOException;
+
+    /**
+     * Returns true if this codec encodes the given Event with Java serialization.
+     */
+    public boolean isSerialized(Event event);
+
+    /**
+     * Decodes the Event from the given frame body, substituting the recipient for multicast Identifiers.
+     */
+    public Event decode(byte[] data, int offset, int length, Identifier recipient) throws IOException, ClassNotFoundException;
+
+}
@@ -0,0 +1,118 @@
+package edu.asu.commons.net.codec;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventTypeCodecs;
+
+/**
+ * $Id$
+ *
+ * Registry of the TypeCodecs used by the BinaryEventCodec and of the named EventCodecs that can be
+ * selected with the wire-codec dispatcher property. Each TypeCodec is bound to a type id that is
+ * written as the first byte of every frame it encodes, so type ids must be registered identically on
+ * the server and on every client.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public final class EventCodecRegistry {
+
+    private final static Logger logger = Logger.getLogger(EventCodecRegistry.class.getName());
+
+    private final static Registration[] registrationsById = new Registration[EventCodec.MAX_TYPE_ID + 1];
+
+    private final static Map<Class<?>, Registration> registrationsByClass = new ConcurrentHashMap<Class<?>, Registration>();
+
+    private final static SerializationCodec serializationCodec = new SerializationCodec();
+
+    private final static BinaryEventCodec binaryCodec = new BinaryEventCodec();
+
+    static {
+        EventTypeCodecs.registerAll();
+    }
+
+    private EventCodecRegistry() {
+    }
+
+    /**
+     * Registers a TypeCodec for Events of exactly the given class. Subclasses are not covered and
+     * fall back to Java serialization unless registered themselves.
+     *
+     * @throws IllegalArgumentException if the type id is out of range or either the type id or the
+     *         class has already been registered.
+     */
+    public static synchronized <E extends Event> void register(int typeId, Class<E> type, TypeCodec<E> codec) {
+        if (typeId < EventCodec.MIN_REGISTERED_TYPE_ID || typeId > EventCodec.MAX_TYPE_ID) {
+            throw new IllegalArgumentException("Type id " + typeId + " for " + type + " must be between "
+                    + EventCodec.MIN_REGISTERED_TYPE_ID + " and " + EventCodec.MAX_TYPE_ID);
+        }
+        if (registrationsById[typeId] != null) {
+            throw new IllegalArgumentException("Type id " + typeId + " is already registered to " + registrationsById[typeId].type);
+        }
+        if (registrationsByClass.containsKey(type)) {
+            throw new IllegalArgumentException(type + " is already registered");
+        }
+        Registration registration = new Registration(typeId, type, codec);
+        registrationsById[typeId] = registration;
+        registrationsByClass.put(type, registration);
+    }
+
+    static Registration getRegistration(Class<?> type) {
+        return registrationsByClass.get(type);
+    }
+
+    static TypeCodec<?> getTypeCodec(int typeId) {
+        if (typeId < 0 || typeId >= registrationsById.length) {
+            return null;
+        }
+        // registrations happen before any dispatcher starts, reads don't need to synchronize.
+        Registration registration = registrationsById[typeId];
+        return (registration == null) ? null : registration.codec;
+    }
+
+    /**
+     * Returns the EventCodec with the given name, "java" or "binary", or a new instance of the named
+     * EventCodec class. Falls back to Java serialization for null, empty or unknown names.
+     */
+    public static EventCodec getCodec(String name) {
+        if (name == null || name.trim().isEmpty() || SerializationCodec.NAME.equalsIgnoreCase(name.trim())) {
+            return serializationCodec;
+        }
+        name = name.trim();
+        if (BinaryEventCodec.NAME.equalsIgnoreCase(name)) {
+            return binaryCodec;
+        }
+        try {
+            return Class.forName(name).asSubclass(EventCodec.class).newInstance();
+        } catch (Exception e) {
+            logger.warning("Couldn't create wire codec " + name + ", using Java serialization instead: " + e);
+            return serializationCodec;
+        }
+    }
+
+    static final class Registration {
+        private final int typeId;
+        private final Class<?> type;
+        private final TypeCodec<?> codec;
+
+        private Registration(int typeId, Class<?> type, TypeCodec<?> codec) {
+            this.typeId = typeId;
+            this.type = type;
+            this.codec = codec;
+        }
+
+        int getTypeId() {
+            return typeId;
+        }
+
+        @SuppressWarnings("unchecked")
+        void write(Event event, EventOutput out) throws IOException {
+            ((TypeCodec<Event>) codec).write(event, out);
+        }
+    }
+
+}
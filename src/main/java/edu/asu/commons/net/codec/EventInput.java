@@ -0,0 +1,69 @@
+package edu.asu.commons.net.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * DataInputStream used by TypeCodecs, reads the values written by an EventOutput. Always wraps an
+ * in-memory frame body, so available() is exact and used to reject corrupt lengths before allocating.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class EventInput extends DataInputStream {
+
+    private final Identifier recipient;
+
+    public EventInput(InputStream in, Identifier recipient) {
+        super(in);
+        this.recipient = recipient;
+    }
+
+    public Identifier readIdentifier() throws IOException, ClassNotFoundException {
+        int tag = readUnsignedByte();
+        switch (tag) {
+            case EventOutput.NULL_TAG:
+                return null;
+            case EventOutput.NULL_IDENTIFIER_TAG:
+                return Identifier.NULL;
+            case EventOutput.ALL_IDENTIFIER_TAG:
+                return Identifier.ALL;
+            case EventOutput.RECIPIENT_IDENTIFIER_TAG:
+                return recipient;
+            case EventOutput.SERIALIZED_IDENTIFIER_TAG:
+                byte[] bytes = new byte[checkLength(readInt())];
+                readFully(bytes);
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                return (Identifier) ois.readObject();
+            default:
+                throw new StreamCorruptedException("Unknown identifier tag: " + tag);
+        }
+    }
+
+    public String readString() throws IOException {
+        int length = readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[checkLength(length)];
+        readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int checkLength(int length) throws IOException {
+        if (length < 0 || length > available()) {
+            throw new StreamCorruptedException("Invalid length: " + length);
+        }
+        return length;
+    }
+
+}
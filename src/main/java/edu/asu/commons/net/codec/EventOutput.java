@@ -0,0 +1,74 @@
+package edu.asu.commons.net.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * DataOutputStream used by TypeCodecs, adding compact encodings for the values Events are usually
+ * made of: nullable Strings and Identifiers. Well-known Identifiers are written as a single tag byte,
+ * any other Identifier is Java serialized.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class EventOutput extends DataOutputStream {
+
+    final static int NULL_TAG = 0;
+    final static int NULL_IDENTIFIER_TAG = 1;
+    final static int ALL_IDENTIFIER_TAG = 2;
+    final static int RECIPIENT_IDENTIFIER_TAG = 3;
+    final static int SERIALIZED_IDENTIFIER_TAG = 4;
+
+    private final Identifier multicastId;
+
+    public EventOutput(OutputStream out, Identifier multicastId) {
+        super(out);
+        this.multicastId = multicastId;
+    }
+
+    public void writeIdentifier(Identifier id) throws IOException {
+        if (id == null) {
+            writeByte(NULL_TAG);
+        }
+        else if (multicastId != null && id == multicastId) {
+            writeByte(RECIPIENT_IDENTIFIER_TAG);
+        }
+        else if (id == Identifier.NULL) {
+            writeByte(NULL_IDENTIFIER_TAG);
+        }
+        else if (id == Identifier.ALL) {
+            writeByte(ALL_IDENTIFIER_TAG);
+        }
+        else {
+            writeByte(SERIALIZED_IDENTIFIER_TAG);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(id);
+            oos.flush();
+            writeInt(bytes.size());
+            bytes.writeTo(this);
+        }
+    }
+
+    /**
+     * Writes a String of any length as UTF-8, null is preserved.
+     */
+    public void writeString(String string) throws IOException {
+        if (string == null) {
+            writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeInt(bytes.length);
+        write(bytes);
+    }
+
+}
@@ -0,0 +1,282 @@
+package edu.asu.commons.net.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Per-connection EventCodec that writes the Events its wrapped codec would serialize to a single
+ * long-lived ObjectOutputStream instead of a new stream per Event, so the stream header and the full
+ * class descriptors of each Event type are only sent once per connection. Each frame holds exactly
+ * one Event and its body starts with STREAM_TYPE_ID; every other frame is passed through to the
+ * wrapped codec untouched.
+ * <p>
+ * Dispatchers pass the connection's own Identifier as the multicastId, so that it is written as a
+ * reference the receiver resolves to its canonical instance of the Identifier instead of a full
+ * serialized copy per Event. Since every stream frame depends on the frames before it, none of them
+ * may be shared with other connections.
+ * <p>
+ * Class descriptors are kept in a table of their own that survives ObjectOutputStream.reset(), and
+ * the stream is reset every resetInterval Events to release the object handle table. With the
+ * default interval of 1 no object handles are shared between Events, so Events and the objects they
+ * reference may be mutated and transmitted again just as with a new stream per Event. Larger
+ * intervals additionally share repeated objects between Events but are only safe if nothing is
+ * modified after it has been transmitted.
+ * <p>
+ * Encoding and decoding are stateful: callers must encode a connection's Events one at a time and
+ * send the frames in the order they were encoded, and must decode frames in the order they arrive.
+ * If encoding fails the stream is discarded and the next Event starts a new one, which the receiver
+ * recognizes by its stream header.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class ObjectStreamCodec implements EventCodec {
+
+    private final static byte STREAM_MAGIC_HIGH_BYTE = (byte) (ObjectStreamConstants.STREAM_MAGIC >>> 8);
+
+    private final EventCodec codec;
+    private final int resetInterval;
+
+    // encoding state
+    private final RedirectingOutputStream target = new RedirectingOutputStream();
+    private DescriptorOutputStream output;
+    private int eventsSinceReset;
+
+    // decoding state
+    private final FrameInputStream source = new FrameInputStream();
+    private DescriptorInputStream input;
+
+    /**
+     * @param codec the codec used for frames that don't go through the object stream.
+     * @param resetInterval the number of Events written between resets of the object stream, 0 or
+     *        less disables the object stream for outbound Events.
+     */
+    public ObjectStreamCodec(EventCodec codec, int resetInterval) {
+        this.codec = codec;
+        this.resetInterval = resetInterval;
+    }
+
+    public String getName() {
+        return codec.getName();
+    }
+
+    public boolean isSerialized(Event event) {
+        return codec.isSerialized(event);
+    }
+
+    public void encode(Event event, Identifier multicastId, OutputStream out) throws IOException {
+        if (resetInterval <= 0 || !codec.isSerialized(event)) {
+            codec.encode(event, multicastId, out);
+            return;
+        }
+        out.write(STREAM_TYPE_ID);
+        target.out = out;
+        try {
+            if (output == null) {
+                output = new DescriptorOutputStream(target);
+                eventsSinceReset = 0;
+            }
+            else if (eventsSinceReset >= resetInterval) {
+                // written ahead of the Event so the reader consumes it as part of this frame.
+                output.reset();
+                eventsSinceReset = 0;
+            }
+            output.multicastId = multicastId;
+            output.writeObject(event);
+            output.flush();
+            eventsSinceReset++;
+        } catch (IOException e) {
+            // the receiver will never see this frame, start over with a new stream.
+            output = null;
+            throw e;
+        } catch (RuntimeException e) {
+            output = null;
+            throw e;
+        } finally {
+            target.out = null;
+            if (output != null) {
+                output.multicastId = null;
+            }
+        }
+    }
+
+    /**
+     * Returns true if a frame body starting with the given type id byte continues a connection's object
+     * stream, whether it has been compressed or not. Such a frame defines class descriptors that later
+     * frames refer to, so it can never be skipped without corrupting the rest of the stream.
+     */
+    public static boolean isStreamFrame(byte typeId) {
+        return (typeId & 0xFF & ~CompressingCodec.COMPRESSED_FLAG) == STREAM_TYPE_ID;
+    }
+
+    public Event decode(byte[] data, int offset, int length, Identifier recipient) throws IOException, ClassNotFoundException {
+        if (length < 1 || data[offset] != STREAM_TYPE_ID) {
+            return codec.decode(data, offset, length, recipient);
+        }
+        source.set(data, offset + 1, length - 1);
+        if (length > 1 && data[offset + 1] == STREAM_MAGIC_HIGH_BYTE) {
+            input = new DescriptorInputStream(source);
+        }
+        else if (input == null) {
+            throw new StreamCorruptedException("Object stream frame received before the stream header");
+        }
+        input.recipient = recipient;
+        Event event = (Event) input.readObject();
+        if (source.available() > 0) {
+            throw new StreamCorruptedException(source.available() + " unread bytes left in object stream frame");
+        }
+        return event;
+    }
+
+    @Override
+    public String toString() {
+        return getName() + " [object stream reset interval: " + resetInterval + "]";
+    }
+
+    /**
+     * ObjectOutputStream that only writes the full descriptor the first time it sees a class and its
+     * index in the descriptor table afterwards, even across resets.
+     */
+    private static class DescriptorOutputStream extends ObjectOutputStream {
+        private final Map<Class<?>, Integer> descriptors = new HashMap<Class<?>, Integer>();
+        // the Identifier written as a reference to the recipient while encoding an Event.
+        private Identifier multicastId;
+
+        DescriptorOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object object) {
+            return (multicastId != null && object == multicastId) ? RecipientIdentifier.INSTANCE : object;
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass descriptor) throws IOException {
+            Integer index = descriptors.get(descriptor.forClass());
+            if (index != null) {
+                writeIndex(index + 1);
+                return;
+            }
+            descriptors.put(descriptor.forClass(), descriptors.size());
+            writeIndex(0);
+            super.writeClassDescriptor(descriptor);
+        }
+
+        private void writeIndex(int index) throws IOException {
+            while ((index & ~0x7F) != 0) {
+                writeByte((index & 0x7F) | 0x80);
+                index >>>= 7;
+            }
+            writeByte(index);
+        }
+    }
+
+    private static class DescriptorInputStream extends ObjectInputStream {
+        private final List<ObjectStreamClass> descriptors = new ArrayList<ObjectStreamClass>();
+        private final Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
+        private Identifier recipient;
+
+        DescriptorInputStream(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object object) {
+            return (object instanceof RecipientIdentifier && recipient != null) ? recipient : object;
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            int index = readIndex();
+            if (index == 0) {
+                ObjectStreamClass descriptor = super.readClassDescriptor();
+                descriptors.add(descriptor);
+                return descriptor;
+            }
+            if (index > descriptors.size()) {
+                throw new StreamCorruptedException("Unknown class descriptor index: " + index);
+            }
+            return descriptors.get(index - 1);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+            Class<?> type = classes.get(descriptor.getName());
+            if (type == null) {
+                type = super.resolveClass(descriptor);
+                classes.put(descriptor.getName(), type);
+            }
+            return type;
+        }
+
+        private int readIndex() throws IOException {
+            int index = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readUnsignedByte();
+                index |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return index;
+                }
+            }
+            throw new StreamCorruptedException("Malformed class descriptor index");
+        }
+    }
+
+    /**
+     * Forwards to the stream of the frame currently being encoded.
+     */
+    private static class RedirectingOutputStream extends OutputStream {
+        private OutputStream out;
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) throws IOException {
+            out.write(b, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads from the body of the frame currently being decoded.
+     */
+    private static class FrameInputStream extends ByteArrayInputStream {
+        FrameInputStream() {
+            super(new byte[0]);
+        }
+
+        void set(byte[] data, int offset, int length) {
+            buf = data;
+            pos = offset;
+            mark = offset;
+            count = offset + length;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package edu.asu.commons.net.codec;
+
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Placeholder written in place of the Identifier of a multicast Event. Each receiving Dispatcher
+ * resolves it to the Identifier of the connection the Event arrived on, so a single encoded frame
+ * can be delivered to many clients that each see their own Identifier.
+ * <p>
+ * Frames sent over a single connection use it for the connection's own Identifier as well, so the
+ * Identifier assigned by the ConnectionEvent isn't serialized again with every Event and each end
+ * always sees its canonical instance of it.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+final class RecipientIdentifier extends Identifier.SystemIdentifier {
+
+    private static final long serialVersionUID = -6182540390257462201L;
+
+    final static RecipientIdentifier INSTANCE = new RecipientIdentifier();
+
+    private RecipientIdentifier() {
+    }
+
+    @Override
+    public String toString() {
+        return "recipient";
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,91 @@
+package edu.asu.commons.net.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * The default EventCodec, encodes every Event with Java serialization. Decodes frames produced by any
+ * of the built-in codecs.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class SerializationCodec implements EventCodec {
+
+    public final static String NAME = "java";
+
+    public String getName() {
+        return NAME;
+    }
+
+    public void encode(Event event, Identifier multicastId, OutputStream out) throws IOException {
+        out.write(SERIALIZED_TYPE_ID);
+        writeSerialized(event, multicastId, out);
+    }
+
+    public boolean isSerialized(Event event) {
+        return true;
+    }
+
+    protected void writeSerialized(Event event, final Identifier multicastId, OutputStream out) throws IOException {
+        ObjectOutputStream oos;
+        if (multicastId == null) {
+            oos = new ObjectOutputStream(out);
+        }
+        else {
+            oos = new ObjectOutputStream(out) {
+                {
+                    enableReplaceObject(true);
+                }
+
+                @Override
+                protected Object replaceObject(Object object) {
+                    return (object == multicastId) ? RecipientIdentifier.INSTANCE : object;
+                }
+            };
+        }
+        oos.writeObject(event);
+        oos.flush();
+    }
+
+    public Event decode(byte[] data, int offset, int length, final Identifier recipient) throws IOException, ClassNotFoundException {
+        if (length < 1) {
+            throw new StreamCorruptedException("Empty frame");
+        }
+        int typeId = data[offset] & 0xFF;
+        ByteArrayInputStream body = new ByteArrayInputStream(data, offset + 1, length - 1);
+        if (typeId == SERIALIZED_TYPE_ID) {
+            ObjectInputStream ois = new ObjectInputStream(body) {
+                {
+                    enableResolveObject(true);
+                }
+
+                @Override
+                protected Object resolveObject(Object object) {
+                    return (object instanceof RecipientIdentifier && recipient != null) ? recipient : object;
+                }
+            };
+            return (Event) ois.readObject();
+        }
+        TypeCodec<?> codec = EventCodecRegistry.getTypeCodec(typeId);
+        if (codec == null) {
+            throw new StreamCorruptedException("Unknown event type id: " + typeId);
+        }
+        return codec.read(new EventInput(body, recipient));
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+}
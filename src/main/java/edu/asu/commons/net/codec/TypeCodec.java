@@ -0,0 +1,22 @@
+package edu.asu.commons.net.codec;
+
+import java.io.IOException;
+
+import edu.asu.commons.event.Event;
+
+/**
+ * $Id$
+ *
+ * Hand-written binary encoding for a single Event type, registered with the EventCodecRegistry under
+ * a type id. Implementations must read back exactly what they write.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public interface TypeCodec<E extends Event> {
+
+    public void write(E event, EventOutput out) throws IOException;
+
+    public E read(EventInput in) throws IOException, ClassNotFoundException;
+
+}
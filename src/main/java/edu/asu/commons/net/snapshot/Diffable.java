@@ -0,0 +1,32 @@
+package edu.asu.commons.net.snapshot;
+
+import java.io.Serializable;
+
+/**
+ * $Id$
+ *
+ * State that can be sent through a SnapshotChannel as a series of deltas, e.g., a DataModel or the
+ * part of it a group of clients sees. S is the state type itself and D the type of the changes
+ * between two states.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public interface Diffable<S extends Diffable<S, D>, D extends Serializable> extends Serializable {
+
+    /**
+     * Returns a copy of this state that is unaffected by any later changes to this state.
+     */
+    public S copy();
+
+    /**
+     * Returns the changes that turn the given earlier state into this state, or null if there are none.
+     */
+    public D diff(S base);
+
+    /**
+     * Applies changes returned by diff() to this state.
+     */
+    public void apply(D delta);
+
+}
@@ -0,0 +1,46 @@
+package edu.asu.commons.net.snapshot;
+
+import edu.asu.commons.event.AbstractEvent;
+import edu.asu.commons.event.ClientRequest;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Sent by a SnapshotReceiver to acknowledge a snapshot, so the SnapshotChannel can send later deltas
+ * from it, or to ask for a keyframe when it can't apply a delta.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class SnapshotAckEvent extends AbstractEvent implements ClientRequest {
+
+    private static final long serialVersionUID = -2166829958203530187L;
+
+    /**
+     * Sequence number of acknowledgements asking for a keyframe.
+     */
+    public final static long KEYFRAME_REQUEST = -1;
+
+    private final String channel;
+    private final long sequence;
+
+    SnapshotAckEvent(Identifier id, String channel, long sequence) {
+        super(id);
+        this.channel = channel;
+        this.sequence = sequence;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isKeyframeRequest() {
+        return sequence == KEYFRAME_REQUEST;
+    }
+
+}
@@ -0,0 +1,243 @@
+package edu.asu.commons.net.snapshot;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.Identifier;
+import edu.asu.commons.net.ServerDispatcher;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionEvent;
+
+/**
+ * $Id$
+ *
+ * Server side of a named stream of state snapshots, e.g., the state of a group pushed to its clients
+ * every tick. Instead of transmitting the entire state each time, each client is sent the delta from
+ * the last snapshot it acknowledged. Keyframes containing the entire state are sent to new and
+ * reconnected clients, every keyframeInterval snapshots, and whenever a client asks for one.
+ * <p>
+ * Clients with the same acknowledged snapshot receive the same delta, which is computed and
+ * serialized only once and multicast to all of them, so in the common case where every client has
+ * kept up a tick costs a single diff no matter how many clients there are.
+ * <p>
+ * transmit() should be called from a single thread, e.g., the experiment's state machine;
+ * acknowledgements may arrive on any thread.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class SnapshotChannel<S extends Diffable<S, D>, D extends Serializable> {
+
+    public final static int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+    private final static Logger logger = Logger.getLogger(SnapshotChannel.class.getName());
+
+    private final ServerDispatcher dispatcher;
+    private final EventChannel channel;
+    private final String name;
+    private final int keyframeInterval;
+
+    private final Map<Identifier, Subscriber> subscribers = new ConcurrentHashMap<Identifier, Subscriber>();
+
+    // copies of the snapshots that may still be the base of a delta, only
+    // touched by the transmitting thread.
+    private final NavigableMap<Long, S> history = new TreeMap<Long, S>();
+    private long sequence;
+
+    private final AtomicLong keyframes = new AtomicLong();
+    private final AtomicLong deltas = new AtomicLong();
+
+    public SnapshotChannel(ServerDispatcher dispatcher, EventChannel channel, String name) {
+        this(dispatcher, channel, name, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    public SnapshotChannel(ServerDispatcher dispatcher, EventChannel channel, String name, int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframe interval must be positive: " + keyframeInterval);
+        }
+        this.dispatcher = dispatcher;
+        this.channel = channel;
+        this.name = name;
+        this.keyframeInterval = keyframeInterval;
+        channel.add(this, new EventTypeProcessor<SnapshotAckEvent>(SnapshotAckEvent.class) {
+            public void handle(SnapshotAckEvent event) {
+                if (SnapshotChannel.this.name.equals(event.getChannel())) {
+                    acknowledge(event.getId(), event.getSequence());
+                }
+            }
+        });
+        // a reconnecting client starts over with a keyframe.
+        channel.add(this, new EventTypeProcessor<ConnectionEvent>(ConnectionEvent.class) {
+            public void handle(ConnectionEvent event) {
+                subscribers.remove(event.getId());
+            }
+        });
+        channel.add(this, new EventTypeProcessor<DisconnectionEvent>(DisconnectionEvent.class) {
+            public void handle(DisconnectionEvent event) {
+                subscribers.remove(event.getId());
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sends the given state to a single client.
+     */
+    public void transmit(Identifier id, S state) {
+        transmit(Collections.singletonList(id), state);
+    }
+
+    /**
+     * Takes a snapshot of the given state and sends each of the given clients either a keyframe or
+     * the delta from the last snapshot it acknowledged.
+     */
+    public synchronized void transmit(Collection<Identifier> ids, S state) {
+        long current = ++sequence;
+        S snapshot = state.copy();
+        history.put(current, snapshot);
+        // clients sharing a base get the same delta.
+        Map<Long, List<Identifier>> recipientsByBase = new HashMap<Long, List<Identifier>>();
+        for (Identifier id : ids) {
+            long base = getSubscriber(id).nextBase();
+            List<Identifier> recipients = recipientsByBase.get(base);
+            if (recipients == null) {
+                recipients = new ArrayList<Identifier>();
+                recipientsByBase.put(base, recipients);
+            }
+            recipients.add(id);
+        }
+        for (Map.Entry<Long, List<Identifier>> entry : recipientsByBase.entrySet()) {
+            long base = entry.getKey();
+            List<Identifier> recipients = entry.getValue();
+            Serializable data;
+            if (base == SnapshotEvent.KEYFRAME) {
+                data = snapshot;
+                keyframes.addAndGet(recipients.size());
+            }
+            else {
+                data = snapshot.diff(history.get(base));
+                deltas.addAndGet(recipients.size());
+            }
+            send(recipients, new SnapshotEvent(recipients.get(0), name, current, base, data));
+        }
+        prune(current);
+    }
+
+    private void send(List<Identifier> recipients, SnapshotEvent event) {
+        if (recipients.size() == 1) {
+            dispatcher.transmit(event);
+        }
+        else {
+            // the event's Identifier is replaced by each recipient's own.
+            dispatcher.transmit(recipients, event);
+        }
+    }
+
+    private Subscriber getSubscriber(Identifier id) {
+        Subscriber subscriber = subscribers.get(id);
+        if (subscriber == null) {
+            subscriber = new Subscriber();
+            subscribers.put(id, subscriber);
+        }
+        return subscriber;
+    }
+
+    /**
+     * Drops snapshots no client can use as a base anymore, either because every client has
+     * acknowledged a later one or because they are older than a keyframe interval.
+     */
+    private void prune(long current) {
+        long oldest = current;
+        for (Subscriber subscriber : subscribers.values()) {
+            long acknowledged = subscriber.acknowledged;
+            if (acknowledged > 0 && acknowledged < oldest) {
+                oldest = acknowledged;
+            }
+        }
+        oldest = Math.max(oldest, current - keyframeInterval);
+        history.headMap(oldest, false).clear();
+    }
+
+    void acknowledge(Identifier id, long acknowledged) {
+        Subscriber subscriber = subscribers.get(id);
+        if (subscriber == null) {
+            logger.fine("ignoring snapshot acknowledgement from unknown client " + id);
+            return;
+        }
+        if (acknowledged == SnapshotAckEvent.KEYFRAME_REQUEST) {
+            subscriber.keyframeRequested = true;
+        }
+        else if (acknowledged > subscriber.acknowledged) {
+            subscriber.acknowledged = acknowledged;
+        }
+    }
+
+    /**
+     * Forces the next snapshot sent to the given client to be a keyframe.
+     */
+    public void reset(Identifier id) {
+        subscribers.remove(id);
+    }
+
+    /**
+     * Stops listening for acknowledgements and forgets every client.
+     */
+    public synchronized void close() {
+        channel.remove(this);
+        subscribers.clear();
+        history.clear();
+    }
+
+    /**
+     * Returns the number of keyframes sent, counting each recipient.
+     */
+    public long getKeyframeCount() {
+        return keyframes.get();
+    }
+
+    /**
+     * Returns the number of deltas sent, counting each recipient.
+     */
+    public long getDeltaCount() {
+        return deltas.get();
+    }
+
+    private class Subscriber {
+        // sequence number of the latest snapshot the client acknowledged.
+        private volatile long acknowledged;
+        private volatile boolean keyframeRequested;
+        // only touched by the transmitting thread.
+        private int sinceKeyframe;
+
+        /**
+         * Returns the sequence number of the snapshot the next delta should be computed from, or
+         * KEYFRAME.
+         */
+        long nextBase() {
+            long base = acknowledged;
+            if (base == 0 || keyframeRequested || sinceKeyframe >= keyframeInterval - 1 || !history.containsKey(base)) {
+                keyframeRequested = false;
+                sinceKeyframe = 0;
+                return SnapshotEvent.KEYFRAME;
+            }
+            sinceKeyframe++;
+            return base;
+        }
+    }
+
+}
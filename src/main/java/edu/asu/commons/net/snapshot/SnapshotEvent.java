@@ -0,0 +1,70 @@
+package edu.asu.commons.net.snapshot;
+
+import java.io.Serializable;
+
+import edu.asu.commons.event.AbstractEvent;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * $Id$
+ *
+ * Carries a snapshot from a SnapshotChannel to a client's SnapshotReceiver, either as a keyframe
+ * containing the entire state or as the delta from an earlier snapshot the client acknowledged.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class SnapshotEvent extends AbstractEvent {
+
+    private static final long serialVersionUID = 3395409611962711863L;
+
+    /**
+     * Base sequence number of keyframes.
+     */
+    public final static long KEYFRAME = -1;
+
+    private final String channel;
+    private final long sequence;
+    private final long baseSequence;
+    private final Serializable data;
+
+    SnapshotEvent(Identifier id, String channel, long sequence, long baseSequence, Serializable data) {
+        super(id);
+        this.channel = channel;
+        this.sequence = sequence;
+        this.baseSequence = baseSequence;
+        this.data = data;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the sequence number of the snapshot this delta applies to, or KEYFRAME.
+     */
+    public long getBaseSequence() {
+        return baseSequence;
+    }
+
+    public boolean isKeyframe() {
+        return baseSequence == KEYFRAME;
+    }
+
+    /**
+     * Returns the entire state for keyframes, the delta otherwise.
+     */
+    public Serializable getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s snapshot %d of %s for %s", (isKeyframe() ? "keyframe" : "delta from " + baseSequence), sequence, channel, id);
+    }
+
+}
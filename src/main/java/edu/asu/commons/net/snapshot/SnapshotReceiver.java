@@ -0,0 +1,106 @@
+package edu.asu.commons.net.snapshot;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.Dispatcher;
+
+/**
+ * $Id$
+ *
+ * Client side of a SnapshotChannel. Rebuilds each snapshot from its keyframe or delta, acknowledges
+ * it and hands a copy of the resulting state to handle(). The most recent snapshots are kept around
+ * since the server computes deltas from the last one it has seen acknowledged, which may be a few
+ * snapshots behind; if a delta's base is no longer available a keyframe is requested instead.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public abstract class SnapshotReceiver<S extends Diffable<S, D>, D extends Serializable> {
+
+    public final static int DEFAULT_HISTORY_SIZE = 64;
+
+    private final static Logger logger = Logger.getLogger(SnapshotReceiver.class.getName());
+
+    private final Dispatcher dispatcher;
+    private final EventChannel channel;
+    private final String name;
+
+    private final Map<Long, S> history;
+    private long latest;
+
+    public SnapshotReceiver(Dispatcher dispatcher, EventChannel channel, String name) {
+        this(dispatcher, channel, name, DEFAULT_HISTORY_SIZE);
+    }
+
+    public SnapshotReceiver(Dispatcher dispatcher, EventChannel channel, String name, final int historySize) {
+        this.dispatcher = dispatcher;
+        this.channel = channel;
+        this.name = name;
+        this.history = new LinkedHashMap<Long, S>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, S> eldest) {
+                return size() > historySize;
+            }
+        };
+        channel.add(this, new EventTypeProcessor<SnapshotEvent>(SnapshotEvent.class) {
+            public void handle(SnapshotEvent event) {
+                if (SnapshotReceiver.this.name.equals(event.getChannel())) {
+                    receive(event);
+                }
+            }
+        });
+    }
+
+    /**
+     * Invoked with each new snapshot, which the receiver may keep and modify.
+     */
+    public abstract void handle(S state);
+
+    @SuppressWarnings("unchecked")
+    synchronized void receive(SnapshotEvent event) {
+        long sequence = event.getSequence();
+        S state;
+        if (event.isKeyframe()) {
+            if (sequence <= latest) {
+                // the server side channel has started over.
+                history.clear();
+            }
+            state = (S) event.getData();
+        }
+        else if (sequence <= latest) {
+            logger.warning(String.format("ignoring stale snapshot %d of %s, already at %d", sequence, name, latest));
+            return;
+        }
+        else {
+            S base = history.get(event.getBaseSequence());
+            if (base == null) {
+                logger.warning(String.format("missing base %d for snapshot %d of %s, requesting a keyframe", event.getBaseSequence(), sequence, name));
+                dispatcher.transmit(new SnapshotAckEvent(event.getId(), name, SnapshotAckEvent.KEYFRAME_REQUEST));
+                return;
+            }
+            state = base.copy();
+            if (event.getData() != null) {
+                state.apply((D) event.getData());
+            }
+        }
+        history.put(sequence, state);
+        latest = sequence;
+        dispatcher.transmit(new SnapshotAckEvent(event.getId(), name, sequence));
+        handle(state.copy());
+    }
+
+    /**
+     * Stops receiving snapshots.
+     */
+    public void close() {
+        channel.remove(this);
+    }
+
+}
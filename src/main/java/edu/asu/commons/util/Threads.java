@@ -0,0 +1,92 @@
+package edu.asu.commons.util;
+
+import java.lang.reflect.Method;
+import java.util.logging.Logger;
+
+/**
+ * $Id$
+ *
+ * Creates the threads used for blocking socket I/O and asynchronous event handling, which can be
+ * virtual threads when running on a JVM that supports them (Java 21+). Virtual threads are looked up
+ * reflectively so the code base still targets Java 8, and platform threads are used whenever they
+ * are unavailable.
+ * <p>
+ * Each caller decides whether its threads are virtual, e.g., EventTypeChannel.setVirtualThreads()
+ * makes the asynchronous event handlers of a single channel run on virtual threads.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public final class Threads {
+
+    private final static Logger logger = Logger.getLogger(Threads.class.getName());
+
+    // Thread.ofVirtual() and Thread.Builder.unstarted(Runnable), null if unsupported.
+    private final static Method OF_VIRTUAL;
+    private final static Method UNSTARTED;
+
+    static {
+        Method ofVirtual = null;
+        Method unstarted = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            // preview builds throw when virtual threads haven't been enabled.
+            unstarted.invoke(ofVirtual.invoke(null), new Runnable() {
+                public void run() {
+                }
+            });
+        } catch (Exception e) {
+            ofVirtual = null;
+            unstarted = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        UNSTARTED = unstarted;
+    }
+
+    // prevent instantiation
+    private Threads() {
+    }
+
+    /**
+     * Returns true if this JVM can create virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a new, unstarted thread with the given name, a virtual thread if requested and supported.
+     */
+    public static Thread newThread(Runnable runnable, String name, boolean virtual) {
+        if (virtual && isVirtualThreadSupported()) {
+            try {
+                Thread thread = (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), runnable);
+                if (name != null) {
+                    thread.setName(name);
+                }
+                return thread;
+            } catch (Exception e) {
+                logger.warning("unable to create virtual thread, using a platform thread instead: " + e);
+            }
+        }
+        return (name == null) ? new Thread(runnable) : new Thread(runnable, name);
+    }
+
+    /**
+     * Starts a new platform thread running the given asynchronous event handling task.
+     */
+    public static Thread startHandlerThread(Runnable runnable) {
+        return startHandlerThread(runnable, false);
+    }
+
+    /**
+     * Starts a new thread running the given asynchronous event handling task, a virtual thread if
+     * requested and supported.
+     */
+    public static Thread startHandlerThread(Runnable runnable, boolean virtual) {
+        Thread thread = newThread(runnable, null, virtual);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,60 @@
+package edu.asu.commons.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0.0d, histogram.getMean(), 0.0d);
+    }
+
+    @Test
+    public void testSmallLatenciesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 20; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(20, histogram.getCount());
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(20, histogram.getPercentile(100));
+        assertEquals(10.5d, histogram.getMean(), 0.001d);
+    }
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 100000; micros++) {
+            histogram.record(micros);
+        }
+        assertWithin(50000, histogram.getPercentile(50));
+        assertWithin(90000, histogram.getPercentile(90));
+        assertWithin(99000, histogram.getPercentile(99));
+        assertEquals(100000, histogram.getMax());
+        assertEquals(100000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testBuckets() {
+        long[] values = { 0, 31, 32, 33, 47, 48, 1000, 123456789, Long.MAX_VALUE };
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.upperBoundOf(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " below its bucket", value > LatencyHistogram.upperBoundOf(bucket - 1));
+            }
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " < " + expected, actual >= expected);
+        assertTrue(actual + " more than 1/16th above " + expected, actual <= expected + expected / 16);
+    }
+
+}
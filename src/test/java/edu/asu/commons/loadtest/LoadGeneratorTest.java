@@ -0,0 +1,144 @@
+package edu.asu.commons.loadtest;
+
+import static edu.asu.commons.net.TestSockets.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.asu.commons.conf.ConfigurationTest.MockRoundConfiguration;
+import edu.asu.commons.conf.ConfigurationTest.MockServerConfiguration;
+import edu.asu.commons.event.ChatEvent;
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.ClientReadyEvent;
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.experiment.AbstractExperiment;
+import edu.asu.commons.experiment.IPersister;
+import edu.asu.commons.experiment.StateMachine;
+import edu.asu.commons.net.Dispatcher;
+import edu.asu.commons.net.Identifier;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void testLocal() throws Exception {
+        assertLoad("LOCAL");
+    }
+
+    @Test
+    public void testSocket() throws Exception {
+        assertLoad("SOCKET");
+    }
+
+    @Test
+    public void testRemoteServersAreRejected() throws Exception {
+        ServerMonitor.checkLocal("127.0.0.1");
+        ServerMonitor.checkLocal("localhost");
+        try {
+            ServerMonitor.checkLocal("192.0.2.1");
+            fail("load tests must only run against localhost");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void assertLoad(String dispatcherType) throws Exception {
+        int clients = 4;
+        MockServerConfiguration configuration = new MockServerConfiguration();
+        configuration.setServerName("localhost");
+        configuration.setServerPort(getFreePort());
+        configuration.setProperty("server-dispatcher-type", dispatcherType);
+        configuration.setProperty("log", File.createTempFile("load-generator-test", ".log").getPath());
+        configuration.setProperty("load-test-clients", String.valueOf(clients));
+        configuration.setProperty("load-test-rounds", "2");
+        configuration.setProperty("load-test-round-duration", "1000");
+        configuration.setProperty("load-test-chat-burst-size", "2");
+        configuration.setProperty("load-test-chat-burst-interval", "100");
+        configuration.setProperty("load-test-tick-interval", "50");
+        EchoExperiment experiment = new EchoExperiment(configuration);
+        experiment.start();
+        try {
+            if (!"LOCAL".equals(dispatcherType)) {
+                awaitListening(configuration.getServerPort());
+            }
+            LoadGenerator<MockServerConfiguration, MockRoundConfiguration> generator = new LoadGenerator<MockServerConfiguration, MockRoundConfiguration>(
+                    configuration);
+            generator.setTickAction(new TickAction() {
+                public Event createEvent(Identifier id, long tick) {
+                    return new ClientReadyEvent(id, "tick " + tick);
+                }
+            });
+            List<RoundReport> reports = generator.run();
+            assertEquals(2, reports.size());
+            assertEquals(0, generator.getFailedConnections());
+            for (RoundReport report : reports) {
+                assertEquals(clients, report.getConnectedClients());
+                assertEquals(0, report.getDropped());
+                assertTrue(report.toString(), report.getSent() > clients * 2);
+                // every chat message is relayed to every bot.
+                assertTrue(report.toString(), report.getReceived() > report.getSent());
+                assertTrue(report.toString(), report.getLatencySamples() > 0);
+                assertTrue(report.toString(), report.getMedianLatency() <= report.getMaxLatency());
+                assertTrue(report.toString(), report.getServerPeakHeapUsed() > 0);
+            }
+        } finally {
+            experiment.stop();
+        }
+    }
+
+    private static void awaitListening(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * Relays every chat message to every connected client.
+     */
+    static class EchoExperiment extends AbstractExperiment<MockServerConfiguration, MockRoundConfiguration> {
+
+        private final StateMachine stateMachine = new StateMachine() {
+            public void initialize() {
+            }
+
+            public void execute(Dispatcher dispatcher) {
+                sleep(10);
+            }
+        };
+
+        EchoExperiment(MockServerConfiguration configuration) {
+            super(configuration);
+            getEventChannel().add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+                public void handle(ChatRequest request) {
+                    transmit(new ChatEvent(Identifier.NULL, request.toString(), request.getId(), true));
+                }
+            });
+        }
+
+        @Override
+        protected StateMachine getStateMachine() {
+            return stateMachine;
+        }
+
+        public IPersister<MockServerConfiguration, MockRoundConfiguration> getPersister() {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,140 @@
+package edu.asu.commons.net;
+
+import static edu.asu.commons.net.TestSockets.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+
+public class BatchingTest {
+
+    private final static int FRAMES = 5;
+
+    @Test
+    public void testSocketDispatcherFlushesAtEndOfBatch() throws Exception {
+        assertFlushedAtEndOfBatch(ServerDispatcher.Type.SOCKET);
+    }
+
+    @Test
+    public void testNioDispatcherFlushesAtEndOfBatch() throws Exception {
+        assertFlushedAtEndOfBatch(ServerDispatcher.Type.NIO);
+    }
+
+    @Test
+    public void testSocketDispatcherFlushesAfterMaxDelay() throws Exception {
+        assertFlushedAfterMaxDelay(ServerDispatcher.Type.SOCKET);
+    }
+
+    @Test
+    public void testNioDispatcherFlushesAfterMaxDelay() throws Exception {
+        assertFlushedAfterMaxDelay(ServerDispatcher.Type.NIO);
+    }
+
+    /**
+     * Frames transmitted during a batch are held back until the batch ends and then arrive in the
+     * order they were transmitted in.
+     */
+    private void assertFlushedAtEndOfBatch(ServerDispatcher.Type type) throws Exception {
+        // long enough that only endBatch() can flush the frames.
+        Loopback loopback = new Loopback(type, 60000);
+        try {
+            AbstractServerDispatcher server = loopback.server;
+            server.beginBatch();
+            // nested batches are only flushed once the outermost one ends.
+            server.beginBatch();
+            loopback.transmit();
+            server.endBatch();
+            Thread.sleep(300);
+            assertTrue(loopback.received.isEmpty());
+            server.endBatch();
+            loopback.assertReceived();
+            assertEquals(1, server.getBatchCount());
+        } finally {
+            loopback.shutdown();
+        }
+    }
+
+    /**
+     * Frames transmitted during a batch that never ends are flushed once the maximum delay has
+     * passed.
+     */
+    private void assertFlushedAfterMaxDelay(ServerDispatcher.Type type) throws Exception {
+        Loopback loopback = new Loopback(type, 100);
+        try {
+            loopback.server.beginBatch();
+            loopback.transmit();
+            loopback.assertReceived();
+        } finally {
+            loopback.shutdown();
+        }
+    }
+
+    /**
+     * A server with outbound batching enabled and a single client connected to it.
+     */
+    private static class Loopback {
+        private final AbstractServerDispatcher server;
+        private final ClientSocketDispatcher client;
+        private final Identifier id;
+        private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch latch = new CountDownLatch(FRAMES);
+
+        Loopback(ServerDispatcher.Type type, long maxDelay) throws Exception {
+            Properties properties = new Properties();
+            properties.setProperty("outbound-batching", "true");
+            properties.setProperty("outbound-batch-max-delay", String.valueOf(maxDelay));
+            // PINGs are flushed immediately and would take the held frames along.
+            properties.setProperty("heartbeat-interval", "0");
+            properties.setProperty("jmx-metrics", "false");
+            DispatcherConfiguration configuration = new DispatcherConfiguration(properties);
+            server = (AbstractServerDispatcher) DispatcherFactory.getInstance().createServerDispatcher(new EventTypeChannel(), 1, type, configuration);
+            int port = getFreePort();
+            server.listen(port);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!server.isListening() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            EventTypeChannel channel = new EventTypeChannel();
+            channel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+                public void handle(ChatRequest request) {
+                    received.add(request.getMessage());
+                    latch.countDown();
+                }
+            });
+            client = new ClientSocketDispatcher(channel, configuration);
+            id = client.connect(new InetSocketAddress("localhost", port));
+            assertNotNull(id);
+        }
+
+        void transmit() {
+            for (int i = 0; i < FRAMES; i++) {
+                server.transmit(new ChatRequest(id, "frame #" + i));
+            }
+        }
+
+        void assertReceived() throws InterruptedException {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < FRAMES; i++) {
+                assertEquals("frame #" + i, received.get(i));
+            }
+        }
+
+        void shutdown() {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+}
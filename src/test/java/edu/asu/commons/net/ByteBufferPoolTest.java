@@ -0,0 +1,60 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        assertEquals(0, ByteBufferPool.getSizeClass(1));
+        assertEquals(0, ByteBufferPool.getSizeClass(ByteBufferPool.MIN_BUFFER_SIZE));
+        assertEquals(1, ByteBufferPool.getSizeClass(ByteBufferPool.MIN_BUFFER_SIZE + 1));
+        assertEquals(ByteBufferPool.MAX_BUFFER_SIZE,
+                ByteBufferPool.getSize(ByteBufferPool.getSizeClass(ByteBufferPool.MAX_BUFFER_SIZE)));
+        assertEquals(-1, ByteBufferPool.getSizeClass(ByteBufferPool.MAX_BUFFER_SIZE + 1));
+    }
+
+    @Test
+    public void testReleasedBuffersAreReused() {
+        ByteBufferPool pool = new ByteBufferPool(true);
+        ByteBuffer buffer = pool.acquire(100);
+        assertTrue(buffer.isDirect());
+        assertEquals(100, buffer.limit());
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire(120);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(120, reused.limit());
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    public void testOversizedAndDisabled() {
+        ByteBufferPool pool = new ByteBufferPool(true);
+        ByteBuffer oversized = pool.acquire(ByteBufferPool.MAX_BUFFER_SIZE + 1);
+        assertFalse(oversized.isDirect());
+        pool.release(oversized);
+        assertFalse(pool.acquire(ByteBufferPool.MAX_BUFFER_SIZE + 1) == oversized);
+        assertEquals(0, pool.getHits());
+
+        ByteBufferPool disabled = new ByteBufferPool(false);
+        ByteBuffer buffer = disabled.acquire(64);
+        assertFalse(buffer.isDirect());
+        disabled.release(buffer);
+        disabled.acquire(64);
+        assertEquals(0, disabled.getHits());
+        assertEquals(2, disabled.getMisses());
+    }
+
+}
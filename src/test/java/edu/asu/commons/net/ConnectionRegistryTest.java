@@ -0,0 +1,96 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConnectionRegistryTest {
+
+    private final ConnectionRegistry<String> registry = new ConnectionRegistry<String>();
+
+    @Test
+    public void testRegister() {
+        Identifier first = new Identifier.Mock();
+        Identifier second = new Identifier.Mock();
+        Identifier third = new Identifier.Mock();
+        registry.register(first, "first");
+        registry.register(second, "second");
+        assertSame("second", registry.get(second));
+        assertEquals(Arrays.asList("first", "second"), registry.snapshot());
+        assertEquals("first", registry.remove(first));
+        assertNull(registry.get(first));
+        assertFalse(registry.contains(first));
+        registry.register(third, "third");
+        assertSame("third", registry.get(third));
+        // re-registering replaces the connection in place.
+        registry.register(second, "second again");
+        assertSame("second again", registry.get(second));
+        assertEquals(Arrays.asList("second again", "third"), registry.snapshot());
+        assertEquals(2, registry.size());
+        assertNull(registry.remove(first));
+        assertNull(registry.get(null));
+    }
+
+    @Test
+    public void testClear() {
+        List<Identifier> ids = new ArrayList<Identifier>();
+        for (int i = 0; i < 100; i++) {
+            Identifier id = new Identifier.Mock();
+            ids.add(id);
+            registry.register(id, "connection " + i);
+        }
+        assertEquals("connection 99", registry.get(ids.get(99)));
+        assertEquals(100, registry.snapshot().size());
+        assertEquals(100, registry.clear().size());
+        assertTrue(registry.isEmpty());
+        assertFalse(registry.contains(ids.get(0)));
+    }
+
+    @Test
+    public void testSnapshotIsUnaffectedByChurn() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            registry.register(new Identifier.Mock(), "connection " + i);
+        }
+        final List<String> snapshot = registry.snapshot();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread churn = new Thread() {
+            public void run() {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        Identifier id = new Identifier.Mock();
+                        registry.register(id, "churn " + i);
+                        registry.remove(id);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        churn.start();
+        while (done.getCount() > 0) {
+            int count = 0;
+            for (String connection : registry.snapshot()) {
+                assertTrue(connection != null);
+                count++;
+            }
+            assertTrue(count >= 10);
+        }
+        assertNull(failure.get());
+        assertEquals(10, snapshot.size());
+        assertEquals(10, registry.size());
+    }
+
+}
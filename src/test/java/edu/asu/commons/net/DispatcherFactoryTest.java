@@ -0,0 +1,67 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.ServerDispatcher.Type;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.util.Threads;
+
+/**
+ * $Id$
+ *
+ * Exercises the dispatcher types created by the DispatcherFactory.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class DispatcherFactoryTest {
+
+    @Test
+    public void testVirtualThreadsAreLimitedToTheDispatcherChannel() throws Exception {
+        EventTypeChannel virtualChannel = new EventTypeChannel(true);
+        EventTypeChannel clientChannel = new EventTypeChannel(true);
+        EventTypeChannel otherChannel = new EventTypeChannel(true);
+        DispatcherFactory factory = DispatcherFactory.getInstance();
+        // neither dispatcher opens a socket until it listens or connects.
+        factory.createServerDispatcher(virtualChannel, 1, Type.SOCKET_VIRTUAL, new DispatcherConfiguration());
+        factory.createClientDispatcher(clientChannel, Type.SOCKET_VIRTUAL, new DispatcherConfiguration());
+        assertEquals(Threads.isVirtualThreadSupported(), virtualChannel.isVirtualThreads());
+        assertEquals(Threads.isVirtualThreadSupported(), clientChannel.isVirtualThreads());
+        assertFalse(otherChannel.isVirtualThreads());
+        assertFalse(isVirtualHandlerThread(otherChannel));
+        assertEquals(Threads.isVirtualThreadSupported(), isVirtualHandlerThread(virtualChannel));
+    }
+
+    /**
+     * Returns true if the given threaded channel handled an event on a virtual thread.
+     */
+    private static boolean isVirtualHandlerThread(EventTypeChannel channel) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicBoolean virtual = new AtomicBoolean();
+        Object owner = new Object();
+        channel.add(owner, new EventTypeProcessor<ConnectionEvent>(ConnectionEvent.class) {
+            public void handle(ConnectionEvent event) {
+                try {
+                    virtual.set((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+                } catch (Exception e) {
+                    // no virtual threads before Java 21.
+                }
+                latch.countDown();
+            }
+        });
+        channel.handle(new ConnectionEvent(Identifier.NULL));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        channel.remove(owner);
+        return virtual.get();
+    }
+}
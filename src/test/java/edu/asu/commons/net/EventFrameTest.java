@@ -0,0 +1,79 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+import edu.asu.commons.net.event.ConnectionEvent;
+
+public class EventFrameTest {
+
+    private final EventCodec codec = EventCodecRegistry.getCodec("java");
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Identifier source = new Identifier.Mock();
+        Identifier target = new Identifier.Mock();
+        ChatRequest request = (ChatRequest) read(EventFrame.encode(codec, new ChatRequest(source, "hello", target)), new Identifier.Mock());
+        assertEquals(source, request.getSource());
+        assertEquals(target, request.getTarget());
+        assertEquals("hello", request.getMessage());
+    }
+
+    @Test
+    public void testConnectionIdentifierResolvesToRecipient() throws Exception {
+        Identifier connectionId = new Identifier.Mock();
+        Identifier canonical = new Identifier.Mock();
+        ChatRequest request = (ChatRequest) read(EventFrame.encode(codec, new ChatRequest(connectionId, "hello"), connectionId), canonical);
+        assertSame(canonical, request.getId());
+        // the ConnectionEvent carries the Identifier itself.
+        ConnectionEvent event = (ConnectionEvent) read(EventFrame.encode(codec, new ConnectionEvent(connectionId), connectionId), null);
+        assertEquals(connectionId, event.getId());
+    }
+
+    @Test
+    public void testMulticastResolvesRecipient() throws Exception {
+        Identifier source = new Identifier.Mock();
+        Identifier target = new Identifier.Mock();
+        EventFrame frame = EventFrame.encodeMulticast(codec, new ChatRequest(source, "hello", target));
+        Identifier first = new Identifier.Mock();
+        Identifier second = new Identifier.Mock();
+        ChatRequest firstRequest = (ChatRequest) read(frame, first);
+        ChatRequest secondRequest = (ChatRequest) read(frame, second);
+        assertSame(first, firstRequest.getId());
+        assertSame(second, secondRequest.getId());
+        // other identifiers referenced by the event are left alone.
+        assertEquals(target, firstRequest.getTarget());
+        assertFalse(target.equals(secondRequest.getId()));
+    }
+
+    @Test
+    public void testSharedBuffersAreIndependent() throws IOException {
+        EventFrame frame = EventFrame.encode(codec, new ChatRequest(new Identifier.Mock(), "hello"));
+        ByteBuffer first = frame.buffer();
+        ByteBuffer second = frame.buffer();
+        first.position(first.limit());
+        assertEquals(0, second.position());
+        assertEquals(frame.size(), second.remaining());
+        assertEquals(frame.size() - EventFrame.BYTES_PER_INT, second.getInt());
+    }
+
+    private Object read(EventFrame frame, Identifier recipient) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frame.writeTo(out);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        return EventFrame.read(codec, in, DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE, recipient);
+    }
+
+}
@@ -0,0 +1,195 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.net.codec.CompressingCodec;
+import edu.asu.commons.net.codec.CompressionStatistics;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+import edu.asu.commons.net.codec.ObjectStreamCodec;
+
+public class FrameDecoderTest {
+
+    private final static int MAX_FRAME_SIZE = 1024 * 1024;
+
+    @Test
+    public void testMultipleFramesPerRead() throws IOException {
+        byte[][] payloads = { bytes(10, 1), bytes(0, 0), bytes(300, 2) };
+        List<byte[]> decoded = feed(new FrameDecoder(MAX_FRAME_SIZE), frame(payloads));
+        assertEquals(payloads.length, decoded.size());
+        for (int i = 0; i < payloads.length; i++) {
+            assertArrayEquals(payloads[i], decoded.get(i));
+        }
+    }
+
+    @Test
+    public void testHeaderSplitAcrossReads() throws IOException {
+        byte[] payload = bytes(50, 3);
+        ByteBuffer stream = frame(payload);
+        FrameDecoder decoder = new FrameDecoder(MAX_FRAME_SIZE);
+        // every possible split point, including inside the int header.
+        for (int split = 1; split < stream.limit(); split++) {
+            assertTrue(feed(decoder, slice(stream, 0, split)).isEmpty());
+            assertTrue(decoder.isPending());
+            List<byte[]> decoded = feed(decoder, slice(stream, split, stream.limit()));
+            assertEquals(1, decoded.size());
+            assertArrayEquals(payload, decoded.get(0));
+            assertFalse(decoder.isPending());
+        }
+    }
+
+    @Test
+    public void testLargeFramesGrowAndShrinkBuffer() throws IOException {
+        byte[] large = bytes(100000, 4);
+        byte[] small = bytes(7, 5);
+        ByteBuffer stream = frame(large, small);
+        FrameDecoder decoder = new FrameDecoder(MAX_FRAME_SIZE);
+        List<byte[]> decoded = new ArrayList<byte[]>();
+        // feed the stream in odd sized chunks.
+        for (int offset = 0; offset < stream.limit(); offset += 997) {
+            decoded.addAll(feed(decoder, slice(stream, offset, Math.min(stream.limit(), offset + 997))));
+        }
+        assertEquals(2, decoded.size());
+        assertArrayEquals(large, decoded.get(0));
+        assertArrayEquals(small, decoded.get(1));
+        assertTrue(decoder.getBufferCapacity() > large.length);
+
+        // a long run of small frames gives the memory back.
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1, feed(decoder, frame(small)).size());
+        }
+        assertEquals(FrameDecoder.INITIAL_BUFFER_SIZE, decoder.getBufferCapacity());
+    }
+
+    @Test
+    public void testOversizedFrameIsSkipped() throws IOException {
+        FrameDecoder decoder = new FrameDecoder(100);
+        byte[] oversized = bytes(5000, 6);
+        byte[] next = bytes(100, 7);
+        ByteBuffer stream = frame(oversized, next);
+        List<byte[]> decoded = new ArrayList<byte[]>();
+        for (int offset = 0; offset < stream.limit(); offset += 512) {
+            decoded.addAll(feed(decoder, slice(stream, offset, Math.min(stream.limit(), offset + 512))));
+        }
+        assertEquals(1, decoder.getRejectedFrames());
+        assertEquals(1, decoded.size());
+        assertArrayEquals(next, decoded.get(0));
+        assertTrue(decoder.getBufferCapacity() <= FrameDecoder.INITIAL_BUFFER_SIZE);
+    }
+
+    @Test
+    public void testOversizedObjectStreamFrameFails() throws Exception {
+        assertOversizedObjectStreamFrameFails(new ObjectStreamCodec(EventCodecRegistry.getCodec("java"), 1));
+        // compressed object stream frames continue the stream just the same.
+        assertOversizedObjectStreamFrameFails(new CompressingCodec(new ObjectStreamCodec(EventCodecRegistry.getCodec("java"), 1),
+                1, Deflater.BEST_SPEED, MAX_FRAME_SIZE, new CompressionStatistics()));
+    }
+
+    /**
+     * The first frame of an object stream carries the class descriptors the next one refers to, so
+     * skipping it would leave the next frame undecodable.
+     */
+    private void assertOversizedObjectStreamFrameFails(EventCodec codec) throws Exception {
+        Identifier id = new Identifier.Mock();
+        // random enough not to compress well.
+        Random random = new Random(1);
+        char[] message = new char[5000];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (char) ('a' + random.nextInt(26));
+        }
+        ByteBuffer oversized = EventFrame.encode(codec, new ChatRequest(id, new String(message))).buffer();
+        ByteBuffer next = EventFrame.encode(codec, new ChatRequest(id, "next")).buffer();
+        FrameDecoder decoder = new FrameDecoder(oversized.remaining() - 5);
+        assertTrue(next.remaining() < oversized.remaining() - 5);
+        ByteBuffer stream = ByteBuffer.allocate(oversized.remaining() + next.remaining());
+        stream.put(oversized).put(next).flip();
+        try {
+            feed(decoder, stream);
+            fail("skipped an object stream frame");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNegativeLength() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putInt(-1).putInt(0).flip();
+        feed(new FrameDecoder(MAX_FRAME_SIZE), buffer);
+    }
+
+    /**
+     * Reads the entire chunk through the decoder, returning every frame it completed.
+     */
+    private List<byte[]> feed(FrameDecoder decoder, final ByteBuffer chunk) throws IOException {
+        ReadableByteChannel channel = new ReadableByteChannel() {
+            public int read(ByteBuffer destination) {
+                int length = Math.min(destination.remaining(), chunk.remaining());
+                ByteBuffer source = chunk.duplicate();
+                source.limit(source.position() + length);
+                destination.put(source);
+                chunk.position(chunk.position() + length);
+                return length;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        };
+        List<byte[]> frames = new ArrayList<byte[]>();
+        while (chunk.hasRemaining()) {
+            decoder.read(channel);
+            while (decoder.decode()) {
+                int offset = decoder.getFrameOffset();
+                frames.add(Arrays.copyOfRange(decoder.getFrame(), offset, offset + decoder.getFrameLength()));
+            }
+        }
+        return frames;
+    }
+
+    private ByteBuffer frame(byte[]... payloads) {
+        int size = 0;
+        for (byte[] payload : payloads) {
+            size += payload.length + 4;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (byte[] payload : payloads) {
+            buffer.putInt(payload.length).put(payload);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(from).limit(to);
+        return slice;
+    }
+
+    private byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,251 @@
+package edu.asu.commons.net;
+
+import static edu.asu.commons.net.TestSockets.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionEvent;
+
+public class HeartbeatTest {
+
+    private final EventCodec codec = EventCodecRegistry.getCodec("java");
+
+    @Test
+    public void testPingPong() throws Exception {
+        Heartbeat server = new Heartbeat();
+        Heartbeat client = new Heartbeat();
+        assertEquals(-1.0d, server.getRoundTripTime(), 0.0d);
+        byte[] ping = body(Heartbeat.ping());
+        assertTrue(Heartbeat.isControlFrame(ping, 0, ping.length));
+        assertFalse(client.isPinged());
+        byte[] pong = body(client.receive(ping[0], Heartbeat.getValue(ping, 0, ping.length)));
+        assertTrue(client.isPinged());
+        assertEquals(Heartbeat.PONG_TYPE_ID, pong[0]);
+        assertEquals(Heartbeat.getValue(ping, 0, ping.length), Heartbeat.getValue(pong, 0, pong.length));
+        assertNull(server.receive(pong[0], Heartbeat.getValue(pong, 0, pong.length)));
+        assertTrue(server.getRoundTripTime() >= 0.0d);
+        assertEquals(server.getRoundTripTime(), server.getSmoothedRoundTripTime(), 0.001d);
+        // unknown control frames are ignored.
+        assertNull(server.receive(31, 0L));
+    }
+
+    @Test
+    public void testIdle() throws Exception {
+        Heartbeat heartbeat = new Heartbeat();
+        long now = System.nanoTime();
+        assertFalse(heartbeat.isIdle(1000, now));
+        assertTrue(heartbeat.isIdle(1000, now + TimeUnit.SECONDS.toNanos(2)));
+        // an idle timeout of 0 disables it.
+        assertFalse(heartbeat.isIdle(0, now + TimeUnit.SECONDS.toNanos(2)));
+        assertTrue(heartbeat.expire());
+        assertFalse(heartbeat.expire());
+        assertTrue(heartbeat.isExpired());
+    }
+
+    @Test
+    public void testEventFramesAreNotControlFrames() throws Exception {
+        byte[] event = body(EventFrame.encode(codec, new ChatRequest(new Identifier.Mock(), "hello")));
+        assertFalse(Heartbeat.isControlFrame(event, 0, event.length));
+        assertFalse(Heartbeat.isControlFrame(event, 0, 0));
+    }
+
+    @Test
+    public void testReadSkipsControlFrames() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Heartbeat.ping().writeTo(out);
+        EventFrame.encode(codec, new ChatRequest(new Identifier.Mock(), "hello")).writeTo(out);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        ChatRequest request = (ChatRequest) EventFrame.read(codec, in, DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE, null);
+        assertEquals("hello", request.getMessage());
+    }
+
+    @Test
+    public void testSocketDispatcherDisconnectsSilentClient() throws Exception {
+        assertSilentClientDisconnected(ServerDispatcher.Type.SOCKET);
+    }
+
+    @Test
+    public void testNioDispatcherDisconnectsSilentClient() throws Exception {
+        assertSilentClientDisconnected(ServerDispatcher.Type.NIO);
+    }
+
+    /**
+     * A client that never answers PINGs is disconnected within the idle timeout while a well-behaved
+     * client stays connected and has its round trip time measured.
+     */
+    private void assertSilentClientDisconnected(ServerDispatcher.Type type) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("heartbeat-interval", "100");
+        properties.setProperty("idle-timeout", "500");
+        DispatcherConfiguration configuration = new DispatcherConfiguration(properties);
+        EventTypeChannel channel = new EventTypeChannel();
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        channel.add(this, new EventTypeProcessor<DisconnectionEvent>(DisconnectionEvent.class) {
+            public void handle(DisconnectionEvent event) {
+                disconnected.countDown();
+            }
+        });
+        ServerDispatcher server = DispatcherFactory.getInstance().createServerDispatcher(channel, 1, type, configuration);
+        int port = getFreePort();
+        server.listen(port);
+        Socket silent = null;
+        ClientSocketDispatcher client = null;
+        try {
+            silent = connect(port);
+            client = new ClientSocketDispatcher(new EventTypeChannel(), configuration);
+            Identifier clientId = client.connect(new InetSocketAddress("localhost", port));
+            assertNotNull(clientId);
+            assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+            assertTrue(server.isConnected(clientId));
+            assertTrue(((AbstractServerDispatcher) server).getExpiredConnectionCount() == 1);
+            assertTrue(roundTripTime(server, clientId) >= 0.0d);
+        } finally {
+            if (client != null) {
+                client.shutdown();
+            }
+            if (silent != null) {
+                silent.close();
+            }
+            server.shutdown();
+        }
+    }
+
+    /**
+     * With the BLOCK overflow policy a client that never reads leaves a producer blocked on its full
+     * outbound queue. Heartbeats must neither wait for that producer nor for room in the queue, so the
+     * stalled client still expires (unblocking the producer) and the other clients keep being pinged.
+     */
+    @Test
+    public void testStalledClientExpiresWithBlockingOverflowPolicy() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("heartbeat-interval", "100");
+        properties.setProperty("idle-timeout", "500");
+        properties.setProperty("outbound-overflow-policy", "BLOCK");
+        properties.setProperty("outbound-queue-high-water-mark", "4");
+        properties.setProperty("jmx-metrics", "false");
+        DispatcherConfiguration configuration = new DispatcherConfiguration(properties);
+        EventTypeChannel channel = new EventTypeChannel();
+        final Identifier[] stalledId = new Identifier[1];
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        channel.add(this, new EventTypeProcessor<ConnectionEvent>(ConnectionEvent.class) {
+            public void handle(ConnectionEvent event) {
+                if (stalledId[0] == null) {
+                    stalledId[0] = event.getId();
+                    connected.countDown();
+                }
+            }
+        });
+        channel.add(this, new EventTypeProcessor<DisconnectionEvent>(DisconnectionEvent.class) {
+            public void handle(DisconnectionEvent event) {
+                if (event.getId().equals(stalledId[0])) {
+                    disconnected.countDown();
+                }
+            }
+        });
+        final ServerSocketDispatcher server = (ServerSocketDispatcher) DispatcherFactory.getInstance().createServerDispatcher(channel, 1,
+                ServerDispatcher.Type.SOCKET, configuration);
+        int port = getFreePort();
+        server.listen(port);
+        Socket stalled = null;
+        ClientSocketDispatcher client = null;
+        Thread producer = null;
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!server.isListening() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            stalled = new Socket();
+            stalled.setReceiveBufferSize(4096);
+            stalled.connect(new InetSocketAddress("localhost", port));
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+            client = new ClientSocketDispatcher(new EventTypeChannel(), configuration);
+            Identifier clientId = client.connect(new InetSocketAddress("localhost", port));
+            assertNotNull(clientId);
+            char[] padding = new char[16 * 1024];
+            Arrays.fill(padding, 'x');
+            final String message = new String(padding);
+            producer = new Thread() {
+                public void run() {
+                    // fills the socket buffers and then the queue, and blocks.
+                    while (disconnected.getCount() > 0) {
+                        server.transmit(new ChatRequest(stalledId[0], message));
+                    }
+                }
+            };
+            producer.start();
+            deadline = System.currentTimeMillis() + 5000;
+            while (server.getOutboundQueueDepth(stalledId[0]) < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(4, server.getOutboundQueueDepth(stalledId[0]));
+            assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+            producer.join(5000);
+            assertFalse(producer.isAlive());
+            assertFalse(server.isConnected(stalledId[0]));
+            assertTrue(server.isConnected(clientId));
+            assertEquals(1, server.getExpiredConnectionCount());
+            assertTrue(server.getRoundTripTime(clientId) >= 0.0d);
+        } finally {
+            if (producer != null) {
+                producer.interrupt();
+            }
+            if (client != null) {
+                client.shutdown();
+            }
+            if (stalled != null) {
+                stalled.close();
+            }
+            server.shutdown();
+        }
+    }
+
+    private double roundTripTime(ServerDispatcher server, Identifier id) {
+        if (server instanceof NioDispatcher) {
+            return ((NioDispatcher) server).getRoundTripTime(id);
+        }
+        return ((ServerSocketDispatcher) server).getRoundTripTime(id);
+    }
+
+    private Socket connect(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                return new Socket("localhost", port);
+            } catch (java.net.ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static byte[] body(EventFrame frame) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        frame.writeTo(out);
+        return EventFrame.readBody(new DataInputStream(new ByteArrayInputStream(out.toByteArray())), DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE);
+    }
+}
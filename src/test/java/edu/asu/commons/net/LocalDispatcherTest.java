@@ -0,0 +1,176 @@
+package edu.asu.commons.net;
+
+import static edu.asu.commons.net.TestSockets.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.event.DisconnectionEvent;
+
+public class LocalDispatcherTest {
+
+    @Test
+    public void testSerialized() throws Exception {
+        assertRoundTrip(false);
+    }
+
+    @Test
+    public void testPassByReference() throws Exception {
+        assertRoundTrip(true);
+    }
+
+    /**
+     * Connects a few local clients, has each of them send a request to the server and the server
+     * answer with a unicast, a broadcast and a multicast.
+     */
+    private void assertRoundTrip(boolean byReference) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("local-pass-by-reference", String.valueOf(byReference));
+        DispatcherConfiguration configuration = new DispatcherConfiguration(properties);
+        EventTypeChannel serverChannel = new EventTypeChannel();
+        final List<ChatRequest> serverReceived = new CopyOnWriteArrayList<ChatRequest>();
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        serverChannel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+            public void handle(ChatRequest request) {
+                serverReceived.add(request);
+            }
+        });
+        serverChannel.add(this, new EventTypeProcessor<DisconnectionEvent>(DisconnectionEvent.class) {
+            public void handle(DisconnectionEvent event) {
+                disconnected.countDown();
+            }
+        });
+        ServerDispatcher server = DispatcherFactory.getInstance().createServerDispatcher(serverChannel, 1, ServerDispatcher.Type.LOCAL, configuration);
+        int port = getFreePort();
+        server.listen(port);
+
+        int clientCount = 3;
+        List<LocalClientDispatcher> clients = new ArrayList<LocalClientDispatcher>();
+        List<List<ChatRequest>> clientReceived = new ArrayList<List<ChatRequest>>();
+        List<Identifier> ids = new ArrayList<Identifier>();
+        try {
+            for (int i = 0; i < clientCount; i++) {
+                EventTypeChannel clientChannel = new EventTypeChannel();
+                final List<ChatRequest> received = new CopyOnWriteArrayList<ChatRequest>();
+                clientChannel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+                    public void handle(ChatRequest request) {
+                        received.add(request);
+                    }
+                });
+                LocalClientDispatcher client = new LocalClientDispatcher(clientChannel, configuration);
+                Identifier id = client.connect(new InetSocketAddress("localhost", port));
+                assertNotNull(id);
+                assertEquals(i + 1, id.getStationNumber());
+                clients.add(client);
+                clientReceived.add(received);
+                ids.add(id);
+                client.transmit(new ChatRequest(id, "hello from " + i));
+            }
+            await(serverReceived, clientCount);
+            List<Identifier> serverIds = new ArrayList<Identifier>();
+            for (ChatRequest request : serverReceived) {
+                assertTrue(server.isConnected(request.getId()));
+                serverIds.add(request.getId());
+            }
+            Identifier first = serverIds.get(0);
+            server.transmit(new ChatRequest(first, "unicast"));
+            server.transmit(new ChatRequest(Identifier.NULL, "broadcast"));
+            server.transmit(serverIds, new ChatRequest(first, "multicast"));
+            int firstClient = ids.indexOf(first);
+            for (int i = 0; i < clientCount; i++) {
+                List<ChatRequest> received = clientReceived.get(i);
+                await(received, (i == firstClient) ? 3 : 2);
+                // each recipient of the multicast sees its own Identifier.
+                assertEquals(ids.get(i), received.get(received.size() - 1).getId());
+            }
+            if (byReference) {
+                // the client and server share the same Identifier.
+                assertSame(ids.get(firstClient), first);
+            }
+            else {
+                assertNotSame(ids.get(firstClient), first);
+                assertEquals(ids.get(firstClient), first);
+            }
+            clients.get(0).shutdown();
+            assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+            assertFalse(server.isConnected(ids.get(0)));
+        } finally {
+            for (LocalClientDispatcher client : clients) {
+                client.shutdown();
+            }
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testRemoteClientsJoinLocalOnes() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("local-network-dispatcher-type", "SOCKET");
+        DispatcherConfiguration configuration = new DispatcherConfiguration(properties);
+        ServerDispatcher server = DispatcherFactory.getInstance().createServerDispatcher(new EventTypeChannel(), 1, ServerDispatcher.Type.LOCAL, configuration);
+        int port = getFreePort();
+        server.listen(port);
+        EventTypeChannel localChannel = new EventTypeChannel();
+        EventTypeChannel remoteChannel = new EventTypeChannel();
+        final List<ChatRequest> received = new CopyOnWriteArrayList<ChatRequest>();
+        EventTypeProcessor<ChatRequest> processor = new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+            public void handle(ChatRequest request) {
+                received.add(request);
+            }
+        };
+        localChannel.add(this, processor);
+        remoteChannel.add(this, processor);
+        LocalClientDispatcher local = new LocalClientDispatcher(localChannel, configuration);
+        ClientDispatcher remote = DispatcherFactory.getInstance().createClientDispatcher(remoteChannel, ServerDispatcher.Type.LOCAL, configuration);
+        assertTrue(remote instanceof ClientSocketDispatcher);
+        try {
+            Identifier localId = local.connect(new InetSocketAddress("localhost", port));
+            Identifier remoteId = connect(remote, port);
+            assertTrue(server.isConnected(localId));
+            assertTrue(server.isConnected(remoteId));
+            server.transmit(new ChatRequest(Identifier.NULL, "broadcast"));
+            await(received, 2);
+            server.transmit(Arrays.asList(localId, remoteId), new ChatRequest(localId, "multicast"));
+            await(received, 4);
+        } finally {
+            local.shutdown();
+            remote.shutdown();
+            server.shutdown();
+        }
+    }
+
+    private static Identifier connect(ClientDispatcher client, int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        Identifier id;
+        while ((id = client.connect(new InetSocketAddress("localhost", port))) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertNotNull(id);
+        return id;
+    }
+
+    private static void await(List<ChatRequest> received, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, received.size());
+    }
+}
@@ -0,0 +1,72 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+import edu.asu.commons.net.codec.ObjectStreamCodec;
+
+public class NettyConnectionTest {
+
+    private final EventCodec java = EventCodecRegistry.getCodec("java");
+
+    @Test
+    public void testOversizedFrameIsSkipped() throws Exception {
+        Identifier id = new Identifier.Mock();
+        EventFrame oversized = EventFrame.encode(java, new ChatRequest(id, message(5000)));
+        EventFrame next = EventFrame.encode(java, new ChatRequest(id, "next"));
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyConnection.Decoder(oversized.size() - 5));
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(oversized.buffer(), next.buffer()));
+            fail("the oversized frame was not reported");
+        } catch (TooLongFrameException expected) {
+        }
+        ByteBuf frame = (ByteBuf) channel.readInbound();
+        assertEquals("next", ((ChatRequest) NettyConnection.decode(java, frame, id)).getMessage());
+        frame.release();
+        channel.finish();
+    }
+
+    /**
+     * The first frame of an object stream carries the class descriptors the next one refers to, so
+     * the decoder must fail rather than skip it.
+     */
+    @Test
+    public void testOversizedObjectStreamFrameFails() throws Exception {
+        Identifier id = new Identifier.Mock();
+        ObjectStreamCodec codec = new ObjectStreamCodec(java, 1);
+        EventFrame oversized = EventFrame.encode(codec, new ChatRequest(id, message(5000)));
+        EventFrame next = EventFrame.encode(codec, new ChatRequest(id, "next"));
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyConnection.Decoder(oversized.size() - 5));
+        try {
+            channel.writeInbound(Unpooled.wrappedBuffer(oversized.buffer(), next.buffer()));
+            fail("skipped an object stream frame");
+        } catch (CorruptedFrameException expected) {
+        }
+        assertNull(channel.readInbound());
+        channel.finish();
+    }
+
+    // random enough not to compress well.
+    private String message(int length) {
+        Random random = new Random(1);
+        char[] message = new char[length];
+        for (int i = 0; i < length; i++) {
+            message[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(message);
+    }
+}
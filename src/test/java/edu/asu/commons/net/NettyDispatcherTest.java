@@ -0,0 +1,159 @@
+package edu.asu.commons.net;
+
+import static edu.asu.commons.net.TestSockets.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.ServerDispatcher.Type;
+import edu.asu.commons.net.event.ConnectionEvent;
+
+public class NettyDispatcherTest {
+
+    private DispatcherConfiguration configuration;
+
+    @Before
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty("heartbeat-interval", "0");
+        properties.setProperty("jmx-metrics", "false");
+        configuration = new DispatcherConfiguration(properties);
+    }
+
+    @Test
+    public void testNettyClients() throws Exception {
+        assertExchange(Type.NETTY_NIO, Type.NETTY_NIO, Type.NETTY_NIO, Type.NETTY_NIO);
+    }
+
+    @Test
+    public void testNioAndSocketClientsOfNettyServer() throws Exception {
+        assertExchange(Type.NETTY_NIO, Type.NIO, Type.SOCKET, Type.NETTY_NIO);
+    }
+
+    @Test
+    public void testNettyClientsOfNioServer() throws Exception {
+        assertExchange(Type.NIO, Type.NETTY_NIO, Type.SOCKET);
+    }
+
+    @Test
+    public void testNettyClientsOfSocketServer() throws Exception {
+        assertExchange(Type.SOCKET, Type.NETTY_NIO, Type.NIO);
+    }
+
+    /**
+     * Connects a client of each of the given types to a server of the given type and checks the
+     * handshake, a request from every client and a unicast, broadcast and multicast from the server.
+     * Every client but the last one receives the multicast.
+     */
+    private void assertExchange(Type serverType, Type... clientTypes) throws Exception {
+        EventTypeChannel serverChannel = new EventTypeChannel();
+        final Set<Identifier> connected = ConcurrentHashMap.<Identifier>newKeySet();
+        final List<ChatRequest> requests = new CopyOnWriteArrayList<ChatRequest>();
+        serverChannel.add(this, new EventTypeProcessor<ConnectionEvent>(ConnectionEvent.class) {
+            public void handle(ConnectionEvent event) {
+                connected.add(event.getId());
+            }
+        });
+        serverChannel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+            public void handle(ChatRequest request) {
+                requests.add(request);
+            }
+        });
+        AbstractServerDispatcher server = (AbstractServerDispatcher) DispatcherFactory.getInstance().createServerDispatcher(serverChannel, 2,
+                serverType, configuration);
+        int port = getFreePort();
+        server.listen(port);
+        List<ClientDispatcher> clients = new ArrayList<ClientDispatcher>();
+        List<List<ChatRequest>> clientReceived = new ArrayList<List<ChatRequest>>();
+        List<Identifier> ids = new ArrayList<Identifier>();
+        try {
+            awaitListening(server);
+            for (int i = 0; i < clientTypes.length; i++) {
+                EventTypeChannel clientChannel = new EventTypeChannel();
+                final List<ChatRequest> received = new CopyOnWriteArrayList<ChatRequest>();
+                clientChannel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+                    public void handle(ChatRequest request) {
+                        received.add(request);
+                    }
+                });
+                ClientDispatcher client = DispatcherFactory.getInstance().createClientDispatcher(clientChannel, clientTypes[i], configuration);
+                clients.add(client);
+                clientReceived.add(received);
+                Identifier id = client.connect(new InetSocketAddress("localhost", port));
+                assertNotNull(clientTypes[i] + " client failed to connect to " + serverType + " server", id);
+                ids.add(id);
+                client.transmit(new ChatRequest(id, "hello from " + i));
+            }
+            await(requests, clientTypes.length);
+            assertEquals(new HashSet<Identifier>(ids), connected);
+            Set<Identifier> requestIds = new HashSet<Identifier>();
+            for (ChatRequest request : requests) {
+                assertTrue(server.isConnected(request.getId()));
+                requestIds.add(request.getId());
+            }
+            assertEquals(connected, requestIds);
+
+            int last = clientTypes.length - 1;
+            server.transmit(new ChatRequest(ids.get(0), "unicast"));
+            server.transmit(new ChatRequest(Identifier.NULL, "broadcast"));
+            server.transmit(ids.subList(0, last), new ChatRequest(ids.get(0), "multicast"));
+            for (int i = 0; i < last; i++) {
+                List<ChatRequest> received = clientReceived.get(i);
+                List<String> expected = (i == 0) ? Arrays.asList("unicast", "broadcast", "multicast") : Arrays.asList("broadcast", "multicast");
+                await(received, expected.size());
+                assertEquals(expected, messages(received));
+                // each recipient of the multicast sees its own Identifier.
+                assertEquals(ids.get(i), received.get(received.size() - 1).getId());
+            }
+            List<ChatRequest> received = clientReceived.get(last);
+            await(received, 1);
+            Thread.sleep(200);
+            assertEquals(Arrays.asList("broadcast"), messages(received));
+        } finally {
+            for (ClientDispatcher client : clients) {
+                client.shutdown();
+            }
+            server.shutdown();
+        }
+    }
+
+    private static void awaitListening(AbstractServerDispatcher server) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!server.isListening() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(server.isListening());
+    }
+
+    private static void await(List<ChatRequest> received, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, received.size());
+    }
+
+    private static List<String> messages(List<ChatRequest> received) {
+        List<String> messages = new ArrayList<String>();
+        for (ChatRequest request : received) {
+            messages.add(request.getMessage());
+        }
+        return messages;
+    }
+}
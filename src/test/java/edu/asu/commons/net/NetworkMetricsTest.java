@@ -0,0 +1,152 @@
+package edu.asu.commons.net;
+
+import static edu.asu.commons.net.TestSockets.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionEvent;
+
+public class NetworkMetricsTest {
+
+    private final static int REQUESTS = 10;
+
+    @Test
+    public void testSocketDispatcher() throws Exception {
+        assertMetrics(ServerDispatcher.Type.SOCKET, new Properties());
+    }
+
+    @Test
+    public void testLocalDispatcher() throws Exception {
+        assertMetrics(ServerDispatcher.Type.LOCAL, new Properties());
+    }
+
+    @Test
+    public void testLocalPassByReference() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("local-pass-by-reference", "true");
+        assertMetrics(ServerDispatcher.Type.LOCAL, properties);
+    }
+
+    /**
+     * Has a client send a few requests to the server and checks both ends' metrics, the MBeans of the
+     * server and the metrics left behind once the server has disconnected the client.
+     */
+    private void assertMetrics(ServerDispatcher.Type type, Properties properties) throws Exception {
+        DispatcherConfiguration configuration = new DispatcherConfiguration(properties);
+        boolean encoded = !configuration.isLocalPassByReference() || type != ServerDispatcher.Type.LOCAL;
+        EventTypeChannel serverChannel = new EventTypeChannel();
+        final CountDownLatch received = new CountDownLatch(REQUESTS);
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        serverChannel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+            public void handle(ChatRequest request) {
+                received.countDown();
+            }
+        });
+        serverChannel.add(this, new EventTypeProcessor<DisconnectionEvent>(DisconnectionEvent.class) {
+            public void handle(DisconnectionEvent event) {
+                disconnected.countDown();
+            }
+        });
+        AbstractServerDispatcher server = (AbstractServerDispatcher) DispatcherFactory.getInstance().createServerDispatcher(serverChannel, 1, type,
+                configuration);
+        int port = getFreePort();
+        server.listen(port);
+        AbstractDispatcher client = (AbstractDispatcher) DispatcherFactory.getInstance().createClientDispatcher(new EventTypeChannel(), type, configuration);
+        try {
+            awaitListening(server);
+            Identifier id = ((ClientDispatcher) client).connect(new InetSocketAddress("localhost", port));
+            assertNotNull(id);
+            for (int i = 0; i < REQUESTS; i++) {
+                client.transmit(new ChatRequest(id, "request #" + i));
+            }
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+
+            NetworkMetrics serverMetrics = server.getMetrics();
+            NetworkMetrics clientMetrics = client.getMetrics();
+            assertEquals(1, serverMetrics.getConnectionCount());
+            assertEquals(1, serverMetrics.getConnects());
+            assertEquals(1, clientMetrics.getConnectionCount());
+            ConnectionMetrics serverConnection = serverMetrics.getConnectionMetrics(id);
+            assertNotNull(serverConnection);
+            assertEquals(id.toString(), serverConnection.getId());
+            ConnectionMetrics clientConnection = clientMetrics.getConnectionMetrics(id);
+            assertNotNull(clientConnection);
+            assertTrue(serverConnection.getMessagesReceived() >= REQUESTS);
+            assertTrue(clientConnection.getMessagesSent() >= REQUESTS);
+            if (encoded) {
+                assertTrue(serverConnection.getBytesReceived() > REQUESTS * EventFrame.BYTES_PER_INT);
+                EventTypeMetrics serverRequests = serverMetrics.getEventTypeMetrics(ChatRequest.class);
+                assertNotNull(serverRequests);
+                assertEquals(REQUESTS, serverRequests.getMessagesReceived());
+                assertEquals(0, serverRequests.getMessagesSent());
+                assertTrue(serverRequests.getBytesReceived() > 0);
+                EventTypeMetrics clientRequests = clientMetrics.getEventTypeMetrics(ChatRequest.class);
+                assertEquals(REQUESTS, clientRequests.getMessagesSent());
+                assertEquals(serverRequests.getBytesReceived(), clientRequests.getBytesSent());
+                assertNotNull(serverMetrics.getEventTypeMetrics(ConnectionEvent.class));
+            }
+            else {
+                assertEquals(0, serverConnection.getBytesReceived());
+                assertNull(serverMetrics.getEventTypeMetrics(ChatRequest.class));
+            }
+            String snapshot = serverMetrics.snapshot();
+            assertTrue(snapshot, snapshot.contains(id.toString()));
+
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = serverMetrics.getObjectName();
+            assertNotNull(name);
+            assertEquals(server.getClass().getSimpleName() + "-" + port, name.getKeyProperty("name"));
+            assertEquals(1, mbeans.getAttribute(name, "ConnectionCount"));
+            ObjectName connectionName = new ObjectName(name + ",connection=" + ObjectName.quote(id.toString()));
+            assertEquals(serverConnection.getMessagesReceived(), mbeans.getAttribute(connectionName, "MessagesReceived"));
+            assertEquals(0, mbeans.getAttribute(connectionName, "OutboundQueueDepth"));
+            if (encoded) {
+                ObjectName eventTypeName = new ObjectName(name + ",eventType=" + ChatRequest.class.getName());
+                assertEquals((long) REQUESTS, mbeans.getAttribute(eventTypeName, "MessagesReceived"));
+            }
+
+            long bytesReceived = serverMetrics.getBytesReceived();
+            server.disconnect(id);
+            assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+            assertEquals(0, serverMetrics.getConnectionCount());
+            assertEquals(1, serverMetrics.getDisconnects());
+            assertTrue(serverMetrics.getBytesReceived() >= bytesReceived);
+            assertTrue(serverMetrics.getMessagesReceived() >= REQUESTS);
+            assertFalse(mbeans.isRegistered(connectionName));
+
+            server.shutdown();
+            assertNull(serverMetrics.getObjectName());
+            assertFalse(mbeans.isRegistered(name));
+        } finally {
+            client.shutdown();
+            server.shutdown();
+        }
+    }
+
+    private static void awaitListening(AbstractServerDispatcher server) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!server.isListening() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(server.isListening());
+    }
+
+}
@@ -0,0 +1,204 @@
+package edu.asu.commons.net;
+
+import static edu.asu.commons.net.TestSockets.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.event.ConnectionEvent;
+
+public class NioDispatcherTest {
+
+    private final static int CLIENTS = 16;
+
+    private DispatcherConfiguration configuration;
+    private EventTypeChannel channel;
+    private NioDispatcher server;
+    private int port;
+
+    @Before
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("heartbeat-interval", "0");
+        properties.setProperty("jmx-metrics", "false");
+        configuration = new DispatcherConfiguration(properties);
+        channel = new EventTypeChannel();
+        server = (NioDispatcher) DispatcherFactory.getInstance().createServerDispatcher(channel, 2, ServerDispatcher.Type.NIO, configuration);
+        port = getFreePort();
+        server.listen(port);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    /**
+     * A client that stops reading fills up its socket buffers so the frames transmitted to it are
+     * only partially written and have to wait for OP_WRITE, yet all of them arrive intact and in
+     * order once it resumes reading.
+     */
+    @Test
+    public void testSlowReaderReceivesEveryFrameInOrder() throws Exception {
+        Socket socket = connect(4096);
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            EventCodec codec = configuration.createConnectionCodec(server.getCompressionStatistics());
+            Identifier id = ((ConnectionEvent) EventFrame.read(codec, in, configuration.getMaxFrameSize(), null)).getId();
+            char[] padding = new char[4096];
+            Arrays.fill(padding, 'x');
+            String suffix = new String(padding);
+            int frames = 1000;
+            for (int i = 0; i < frames; i++) {
+                server.transmit(new ChatRequest(id, i + suffix));
+            }
+            // the socket buffers only hold a fraction of the 4 MB transmitted.
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getOutboundQueueDepth(id) <= 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            assertTrue(server.getOutboundQueueDepth(id) > 0);
+            for (int i = 0; i < frames; i++) {
+                ChatRequest request = (ChatRequest) EventFrame.read(codec, in, configuration.getMaxFrameSize(), id);
+                assertEquals(i + suffix, request.getMessage());
+            }
+            // the last frame is dequeued just after it has been written.
+            deadline = System.currentTimeMillis() + 5000;
+            while (server.getOutboundQueueDepth(id) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, server.getOutboundQueueDepth(id));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Clients connecting all at once are each accepted, announced with a ConnectionEvent and able to
+     * exchange Events with the server.
+     */
+    @Test
+    public void testConcurrentConnections() throws Exception {
+        final Set<Identifier> connected = ConcurrentHashMap.<Identifier>newKeySet();
+        final Set<Identifier> requests = ConcurrentHashMap.<Identifier>newKeySet();
+        final CountDownLatch connections = new CountDownLatch(CLIENTS);
+        final CountDownLatch received = new CountDownLatch(CLIENTS);
+        channel.add(this, new EventTypeProcessor<ConnectionEvent>(ConnectionEvent.class) {
+            public void handle(ConnectionEvent event) {
+                connected.add(event.getId());
+                connections.countDown();
+            }
+        });
+        channel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+            public void handle(ChatRequest request) {
+                requests.add(request.getId());
+                received.countDown();
+                server.transmit(new ChatRequest(request.getId(), "reply"));
+            }
+        });
+        awaitListening();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch replies = new CountDownLatch(CLIENTS);
+        final List<ClientSocketDispatcher> clients = new ArrayList<ClientSocketDispatcher>();
+        final Identifier[] ids = new Identifier[CLIENTS];
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < CLIENTS; i++) {
+            EventTypeChannel clientChannel = new EventTypeChannel();
+            clientChannel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+                public void handle(ChatRequest reply) {
+                    replies.countDown();
+                }
+            });
+            final ClientSocketDispatcher client = new ClientSocketDispatcher(clientChannel, configuration);
+            clients.add(client);
+            final int index = i;
+            Thread thread = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        ids[index] = client.connect(new InetSocketAddress("localhost", port));
+                        client.transmit(new ChatRequest(ids[index], "request"));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join(5000);
+            }
+            Set<Identifier> clientIds = new HashSet<Identifier>();
+            for (Identifier id : ids) {
+                assertNotNull(id);
+                clientIds.add(id);
+            }
+            assertEquals(CLIENTS, clientIds.size());
+            assertTrue(connections.await(5, TimeUnit.SECONDS));
+            assertEquals(clientIds, connected);
+            assertTrue(received.await(5, TimeUnit.SECONDS));
+            assertEquals(clientIds, requests);
+            assertTrue(replies.await(5, TimeUnit.SECONDS));
+            for (Identifier id : clientIds) {
+                assertTrue(server.isConnected(id));
+            }
+        } finally {
+            for (ClientSocketDispatcher client : clients) {
+                client.shutdown();
+            }
+        }
+    }
+
+    private void awaitListening() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!server.isListening() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(server.isListening());
+    }
+
+    private Socket connect(int receiveBufferSize) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            Socket socket = new Socket();
+            socket.setReceiveBufferSize(receiveBufferSize);
+            try {
+                socket.connect(new InetSocketAddress("localhost", port));
+                return socket;
+            } catch (ConnectException e) {
+                socket.close();
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ReactorGroupTest {
+
+    private final List<StubReactor> reactors = new ArrayList<StubReactor>();
+
+    private final WorkerFactory<String> factory = new WorkerFactory<String>() {
+        public Worker<String> create() {
+            StubReactor reactor = new StubReactor();
+            reactors.add(reactor);
+            return reactor;
+        }
+    };
+
+    @Test
+    public void testLeastLoaded() {
+        ReactorGroup<String> group = new ReactorGroup<String>(3, factory, ReactorGroup.Assignment.LEAST_LOADED);
+        for (int i = 0; i < 6; i++) {
+            group.process("job" + i);
+        }
+        assertArrayEquals(new int[] { 2, 2, 2 }, group.getLoads());
+        // empty out one reactor, the next jobs should all land on it.
+        StubReactor drained = reactors.get(0);
+        for (String job : new ArrayList<String>(drained.jobs)) {
+            group.remove(job);
+        }
+        group.process("a");
+        group.process("b");
+        assertEquals(2, drained.jobs.size());
+        assertEquals(0, group.getImbalance());
+        assertEquals(6, group.numberOfJobs());
+    }
+
+    @Test
+    public void testRoundRobin() {
+        ReactorGroup<String> group = new ReactorGroup<String>(4, factory, ReactorGroup.Assignment.ROUND_ROBIN);
+        for (int i = 0; i < 8; i++) {
+            group.process("job" + i);
+        }
+        assertArrayEquals(new long[] { 2, 2, 2, 2 }, group.getAssignments());
+    }
+
+    @Test
+    public void testAffinity() {
+        ReactorGroup<String> group = new ReactorGroup<String>(4, factory, ReactorGroup.Assignment.ROUND_ROBIN);
+        group.process("job");
+        StubReactor owner = reactors.get(0);
+        // processing the same job again keeps it on its reactor.
+        group.process("job");
+        assertEquals(1, group.numberOfJobs());
+        assertEquals(1, group.getLoads()[0]);
+        group.remove("job");
+        assertSame(owner, lastRemovedFrom);
+        assertEquals(0, group.numberOfJobs());
+    }
+
+    private StubReactor lastRemovedFrom;
+
+    private class StubReactor implements Worker<String> {
+        private final Set<String> jobs = new HashSet<String>();
+
+        public Identifier process(String job) {
+            jobs.add(job);
+            return null;
+        }
+
+        public int numberOfJobs() {
+            return jobs.size();
+        }
+
+        public void remove(String job) {
+            jobs.remove(job);
+            lastRemovedFrom = this;
+        }
+
+        public void report() {
+        }
+
+        public void shutdown() {
+        }
+
+        public void run() {
+        }
+
+        public int compareTo(Worker<String> worker) {
+            return numberOfJobs() - worker.numberOfJobs();
+        }
+    }
+
+}
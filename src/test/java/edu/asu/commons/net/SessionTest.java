@@ -0,0 +1,265 @@
+package edu.asu.commons.net;
+
+import static edu.asu.commons.net.TestSockets.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.event.EventTypeProcessor;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+import edu.asu.commons.net.event.ConnectionEvent;
+import edu.asu.commons.net.event.DisconnectionEvent;
+
+public class SessionTest {
+
+    private final EventCodec codec = EventCodecRegistry.getCodec("java");
+
+    @Test
+    public void testReplay() throws Exception {
+        Session session = new Session(42L, new Identifier.Mock(), 3);
+        List<EventFrame> frames = new ArrayList<EventFrame>();
+        session.lock();
+        try {
+            for (int i = 0; i < 5; i++) {
+                EventFrame frame = EventFrame.encode(codec, new ChatRequest(session.getId(), "message " + i));
+                frames.add(frame);
+                session.record(frame);
+            }
+            assertEquals(5, session.getSequence());
+            assertEquals(Collections.emptyList(), session.getFramesAfter(5));
+            assertEquals(frames.subList(3, 5), session.getFramesAfter(3));
+            assertEquals(frames.subList(2, 5), session.getFramesAfter(2));
+            // overwritten by later frames.
+            assertNull(session.getFramesAfter(1));
+            // never sent.
+            assertNull(session.getFramesAfter(6));
+        } finally {
+            session.unlock();
+        }
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        SessionManager sessions = new SessionManager(8, 0);
+        Identifier id = new Identifier.Mock();
+        Session session = sessions.open(id);
+        session.unlock();
+        assertSame(session, sessions.find(session.getToken()));
+        assertSame(session, sessions.get(id));
+        assertNull(sessions.find(0L));
+        assertTrue(sessions.expire().isEmpty());
+        session.lock();
+        session.suspend();
+        session.unlock();
+        Thread.sleep(5);
+        assertEquals(Collections.singletonList(session), sessions.expire());
+        assertNull(sessions.find(session.getToken()));
+        assertNull(sessions.get(id));
+    }
+
+    /**
+     * Cuts the connection between a client and the server in the middle of a stream of Events, the
+     * client must resume its session and receive every Event exactly once and in order without the
+     * server ever reporting a disconnection.
+     */
+    @Test
+    public void testResume() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("session-grace-period", "10000");
+        DispatcherConfiguration configuration = new DispatcherConfiguration(properties);
+
+        EventTypeChannel serverChannel = new EventTypeChannel();
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger disconnections = new AtomicInteger();
+        serverChannel.add(this, new EventTypeProcessor<ConnectionEvent>(ConnectionEvent.class) {
+            public void handle(ConnectionEvent event) {
+                connections.incrementAndGet();
+            }
+        });
+        serverChannel.add(this, new EventTypeProcessor<DisconnectionEvent>(DisconnectionEvent.class) {
+            public void handle(DisconnectionEvent event) {
+                disconnections.incrementAndGet();
+            }
+        });
+        ServerDispatcher server = DispatcherFactory.getInstance().createServerDispatcher(serverChannel, 1, ServerDispatcher.Type.SOCKET, configuration);
+        int port = getFreePort();
+        server.listen(port);
+        // wait for the server to start listening.
+        connect(port).close();
+        Proxy proxy = new Proxy(port);
+
+        EventTypeChannel clientChannel = new EventTypeChannel();
+        final List<String> received = new CopyOnWriteArrayList<String>();
+        clientChannel.add(this, new EventTypeProcessor<ChatRequest>(ChatRequest.class) {
+            public void handle(ChatRequest request) {
+                received.add(request.getMessage());
+            }
+        });
+        ClientSocketDispatcher client = new ClientSocketDispatcher(clientChannel, configuration);
+        try {
+            Identifier id = client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), proxy.getPort()));
+            assertNotNull(id);
+            for (int i = 0; i < 5; i++) {
+                server.transmit(new ChatRequest(id, "message " + i));
+            }
+            await(received, 5);
+            proxy.cut();
+            for (int i = 5; i < 10; i++) {
+                server.transmit(new ChatRequest(id, "message " + i));
+            }
+            await(received, 10);
+            List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < 10; i++) {
+                expected.add("message " + i);
+            }
+            assertEquals(expected, received);
+            assertTrue(server.isConnected(id));
+            assertEquals(1, connections.get());
+            assertEquals(0, disconnections.get());
+        } finally {
+            client.shutdown();
+            server.shutdown();
+            proxy.close();
+        }
+    }
+
+    @Test
+    public void testResumeWithUnknownTokenIsRefused() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("session-grace-period", "10000");
+        ServerDispatcher server = DispatcherFactory.getInstance().createServerDispatcher(new EventTypeChannel(), 1, ServerDispatcher.Type.SOCKET,
+                new DispatcherConfiguration(properties));
+        int port = getFreePort();
+        server.listen(port);
+        Socket socket = connect(port);
+        try {
+            EventFrame.control(Session.SESSION_TYPE_ID, 42L, 0L).writeTo(socket.getOutputStream());
+            // closed without a ConnectionEvent.
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+            server.shutdown();
+        }
+    }
+
+    private static void await(List<String> received, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, received.size());
+    }
+
+    private static Socket connect(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                return new Socket(InetAddress.getLoopbackAddress(), port);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * Forwards connections to the server until cut() drops every open connection, as a network
+     * outage would.
+     */
+    private static class Proxy implements Runnable {
+        private final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final int targetPort;
+        private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+        Proxy(int targetPort) throws IOException {
+            this.targetPort = targetPort;
+            Thread thread = new Thread(this, "Proxy");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Socket client = serverSocket.accept();
+                    Socket server = new Socket(InetAddress.getLoopbackAddress(), targetPort);
+                    sockets.add(client);
+                    sockets.add(server);
+                    pipe(client, server);
+                    pipe(server, client);
+                }
+            } catch (IOException e) {
+                // closed.
+            }
+        }
+
+        private void pipe(final Socket from, final Socket to) {
+            Thread thread = new Thread() {
+                public void run() {
+                    byte[] buffer = new byte[8192];
+                    try {
+                        InputStream in = from.getInputStream();
+                        OutputStream out = to.getOutputStream();
+                        int read;
+                        while ((read = in.read(buffer)) > 0) {
+                            out.write(buffer, 0, read);
+                        }
+                    } catch (IOException e) {
+                        // cut.
+                    } finally {
+                        closeQuietly(from);
+                        closeQuietly(to);
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void cut() {
+            for (Socket socket : sockets) {
+                closeQuietly(socket);
+            }
+            sockets.clear();
+        }
+
+        void close() {
+            cut();
+            closeQuietly(serverSocket);
+        }
+
+        private static void closeQuietly(java.io.Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+
+public class SocketDispatcherWorkerTest {
+
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Socket server;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        server = serverSocket.accept();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testFramesLargerThanTheDefaultMaxFrameSize() throws Exception {
+        int length = DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE + 1;
+        SocketDispatcherWorker worker = createWorker(length);
+        Thread writer = writeFrame(length);
+        assertEquals(length, worker.readFrameBody().length);
+        writer.join(5000);
+    }
+
+    @Test
+    public void testFramesLargerThanTheMaxFrameSize() throws Exception {
+        SocketDispatcherWorker worker = createWorker(1024);
+        writeFrame(1025);
+        try {
+            worker.readFrameBody();
+            fail("read a frame larger than the max frame size");
+        } catch (StreamCorruptedException expected) {
+        }
+    }
+
+    private SocketDispatcherWorker createWorker(int maxFrameSize) throws IOException {
+        return new SocketDispatcherWorker(new ClientSocketDispatcher(new EventTypeChannel()), server, new Identifier.Mock(),
+                EventCodecRegistry.getCodec("java"), maxFrameSize, false);
+    }
+
+    /**
+     * Writes a frame with a body of the given length from a separate thread, since the frame may be
+     * larger than the socket buffers.
+     */
+    private Thread writeFrame(final int length) {
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+                    out.writeInt(length);
+                    out.write(new byte[length]);
+                    out.flush();
+                } catch (IOException e) {
+                    // the reader closed the connection.
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+}
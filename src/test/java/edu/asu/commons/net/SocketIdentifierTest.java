@@ -2,6 +2,13 @@ package edu.asu.commons.net;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -18,6 +25,52 @@ public class SocketIdentifierTest {
         assertFalse(firstId.equals(secondId));
     }
 
+    @Test
+    public void testAddressStationNumber() throws Exception {
+        SocketIdentifier id = createSocketIdentifier(new byte[] { 10, 0, 1, (byte) 212 });
+        assertEquals(212, id.getStationNumber());
+        assertEquals("Station 212", id.getStationId());
+        assertEquals(String.format("Station 212 (uid: %d)", id.index()), id.toString());
+        // assigned station numbers take precedence.
+        id.setStationNumber(7);
+        assertEquals(7, id.getStationNumber());
+        assertFalse(id.resolveStationNumber(8));
+        assertEquals(7, id.getStationNumber());
+    }
+
+    @Test
+    public void testStationMap() throws Exception {
+        Map<String, Integer> stationMap = StationResolver.readStationMap(new StringReader("# lab\n\n10.0.1.21  1\n10.0.1.22\t2\nbogus\n"));
+        assertEquals(2, stationMap.size());
+        StationResolver resolver = new StationResolver(stationMap, false);
+        assertEquals(1, resolver.resolve(createSocketIdentifier(new byte[] { 10, 0, 1, 21 })).getStationNumber());
+        assertEquals(2, resolver.resolve(createSocketIdentifier(new byte[] { 10, 0, 1, 22 })).getStationNumber());
+        // not mapped, falls back to the address.
+        assertEquals(23, resolver.resolve(createSocketIdentifier(new byte[] { 10, 0, 1, 23 })).getStationNumber());
+        assertEquals(Collections.emptyMap(), StationResolver.readStationMap(new StringReader("")));
+    }
+
+    @Test
+    public void testParseStationNumber() {
+        assertEquals(12, StationResolver.parseStationNumber("ostrom-lab-12.dhcp.asu.edu"));
+        assertEquals(3, StationResolver.parseStationNumber("station-3"));
+        assertEquals(-1, StationResolver.parseStationNumber("localhost"));
+        assertEquals(-1, StationResolver.parseStationNumber("lab-x.asu.edu"));
+    }
+
+    @Test
+    public void testCompareByStationNumber() throws Exception {
+        SocketIdentifier first = createSocketIdentifier(new byte[] { 10, 0, 1, 2 });
+        SocketIdentifier second = createSocketIdentifier(new byte[] { 10, 0, 1, 1 });
+        assertTrue(first.compareTo(second) > 0);
+        assertTrue(second.compareTo(first) < 0);
+    }
+
+    private SocketIdentifier createSocketIdentifier(byte[] remoteAddress) throws Exception {
+        return new SocketIdentifier(new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 0, 1, 1 }), 16001),
+                new InetSocketAddress(InetAddress.getByAddress(remoteAddress), 40000));
+    }
+
     private SocketIdentifier createSocketIdentifier(String localHostname, int port) {
         return new SocketIdentifier(localHostname, port, "example.com", port + 1000);
     }
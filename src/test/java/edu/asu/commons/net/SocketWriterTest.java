@@ -0,0 +1,229 @@
+package edu.asu.commons.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+
+public class SocketWriterTest {
+
+    private final EventCodec codec = EventCodecRegistry.getCodec("java");
+
+    private ServerSocket serverSocket;
+    private Socket client;
+    private Socket server;
+    private SocketDispatcherWorker worker;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        server = serverSocket.accept();
+        worker = new SocketDispatcherWorker(new ClientSocketDispatcher(new EventTypeChannel()), server, new Identifier.Mock(), codec);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SocketWriter writer = new SocketWriter(worker, out, 2, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(writer.reserve());
+            writer.add(frame("message " + i), true);
+        }
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(3, writer.getDroppedFrames());
+        drain(writer, 2);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("message 3", read(in).getMessage());
+        assertEquals("message 4", read(in).getMessage());
+        assertEquals(0, writer.getQueueDepth());
+        assertTrue(writer.getMaxWriteLatency() >= writer.getMeanWriteLatency());
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SocketWriter writer = new SocketWriter(worker, out, 2, OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 5; i++) {
+            if (writer.reserve()) {
+                writer.add(frame("message " + i), true);
+            }
+        }
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(3, writer.getDroppedFrames());
+        drain(writer, 2);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("message 0", read(in).getMessage());
+        assertEquals("message 1", read(in).getMessage());
+    }
+
+    @Test
+    public void testEveryOverflowIsReported() throws Exception {
+        // the writer stalls on each frame until it is allowed to write it.
+        final Semaphore writes = new Semaphore(0);
+        OutputStream out = new OutputStream() {
+            public void write(int b) {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write(byte[] bytes, int offset, int length) {
+                writes.acquireUninterruptibly();
+            }
+        };
+        final List<LogRecord> warnings = Collections.synchronizedList(new ArrayList<LogRecord>());
+        Handler handler = new Handler() {
+            public void publish(LogRecord record) {
+                if (record.getLevel() == Level.WARNING) {
+                    warnings.add(record);
+                }
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(SocketWriter.class.getName());
+        logger.addHandler(handler);
+        SocketWriter writer = new SocketWriter(worker, out, 2, OverflowPolicy.DROP_NEWEST);
+        new Thread(writer).start();
+        try {
+            overflow(writer);
+            assertEquals(1, warnings.size());
+            // let the writer drain the queue before it overflows again.
+            writes.release(3);
+            awaitWrites(writer, 3);
+            overflow(writer);
+            assertEquals(2, warnings.size());
+            assertEquals(4, writer.getDroppedFrames());
+        } finally {
+            writer.stop();
+            writes.release(3);
+            logger.removeHandler(handler);
+        }
+    }
+
+    /**
+     * Queues a frame the stalled writer picks up, fills the queue behind it and drops two more frames.
+     */
+    private void overflow(SocketWriter writer) throws InterruptedException {
+        assertTrue(writer.reserve());
+        writer.add(frame("stalled"), true);
+        awaitQueueDepth(writer, 0);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(writer.reserve());
+            writer.add(frame("queued"), true);
+        }
+        assertFalse(writer.reserve());
+        assertFalse(writer.reserve());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SocketWriter writer = new SocketWriter(worker, out, 1, OverflowPolicy.BLOCK);
+        assertTrue(writer.reserve());
+        writer.add(frame("first"), true);
+        Thread producer = new Thread() {
+            public void run() {
+                if (writer.reserve()) {
+                    writer.add(frame("second"), true);
+                }
+            }
+        };
+        producer.start();
+        producer.join(200);
+        // the producer is stuck until the writer makes room.
+        assertTrue(producer.isAlive());
+        Thread thread = new Thread(writer);
+        thread.start();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        awaitWrites(writer, 2);
+        assertEquals(0, writer.getDroppedFrames());
+        writer.stop();
+    }
+
+    @Test
+    public void testControlFramesBypassBlock() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SocketWriter writer = new SocketWriter(worker, out, 1, OverflowPolicy.BLOCK);
+        assertTrue(writer.reserve());
+        writer.add(frame("first"), true);
+        // the queue is full, but a PING is queued without waiting for room.
+        writer.addControl(Heartbeat.ping());
+        assertEquals(2, writer.getQueueDepth());
+        drain(writer, 2);
+        assertEquals(0, writer.getDroppedFrames());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("first", read(in).getMessage());
+        byte[] ping = EventFrame.readBody(in, DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE);
+        assertTrue(Heartbeat.isControlFrame(ping, 0, ping.length));
+    }
+
+    private void drain(SocketWriter writer, int frames) throws InterruptedException {
+        new Thread(writer).start();
+        awaitWrites(writer, frames);
+        writer.stop();
+    }
+
+    private void awaitQueueDepth(SocketWriter writer, int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getQueueDepth() != depth && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(depth, writer.getQueueDepth());
+    }
+
+    private void awaitWrites(SocketWriter writer, int frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getWrittenFrames() < frames && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(frames, writer.getWrittenFrames());
+    }
+
+    private EventFrame frame(String message) {
+        try {
+            return EventFrame.encode(codec, new ChatRequest(new Identifier.Mock(), message));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ChatRequest read(DataInputStream in) throws Exception {
+        return (ChatRequest) EventFrame.read(codec, in, DispatcherConfiguration.DEFAULT_MAX_FRAME_SIZE, null);
+    }
+}
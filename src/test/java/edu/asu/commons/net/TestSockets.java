@@ -0,0 +1,26 @@
+package edu.asu.commons.net;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Socket helpers shared by the tests that run dispatchers over loopback connections. Public since
+ * the load generator tests live in a package of their own.
+ */
+public final class TestSockets {
+
+    private TestSockets() {
+    }
+
+    /**
+     * Returns a port nothing is listening on right now.
+     */
+    public static int getFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package edu.asu.commons.net.codec;
+
+import static edu.asu.commons.net.codec.TestCodecs.encode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StreamCorruptedException;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.BeginRoundRequest;
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.ClientMessageEvent;
+import edu.asu.commons.event.ClientReadyEvent;
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventTypeCodecs;
+import edu.asu.commons.event.RoundStartedMarkerEvent;
+import edu.asu.commons.net.Identifier;
+
+public class BinaryEventCodecTest {
+
+    private final EventCodec binary = EventCodecRegistry.getCodec("binary");
+    private final EventCodec java = EventCodecRegistry.getCodec("java");
+
+    @Test
+    public void testChatRequestRoundTrip() throws Exception {
+        Identifier source = new Identifier.Mock();
+        Identifier target = new Identifier.Mock();
+        ChatRequest request = new ChatRequest(source, "hello", target);
+        byte[] encoded = encode(binary, request, null);
+        assertEquals(EventTypeCodecs.CHAT_REQUEST, encoded[0]);
+        ChatRequest decoded = (ChatRequest) decode(binary, encoded, null);
+        assertEquals(source, decoded.getSource());
+        assertEquals(target, decoded.getTarget());
+        assertEquals("hello", decoded.getMessage());
+        assertEquals(request.getCreationTime(), decoded.getCreationTime());
+        // broadcast chat messages use the ALL singleton.
+        assertSame(Identifier.ALL, ((ChatRequest) decode(binary, encode(binary, new ChatRequest(source, "hi"), null), null)).getTarget());
+    }
+
+    @Test
+    public void testHotTypesAreSmallerThanSerialized() throws Exception {
+        Identifier id = new Identifier.Mock();
+        Event[] events = { new ClientReadyEvent(id), new RoundStartedMarkerEvent(), new BeginRoundRequest(id) };
+        for (Event event : events) {
+            byte[] encoded = encode(binary, event, null);
+            assertTrue(encoded.length < encode(java, event, null).length);
+            Event decoded = decode(binary, encoded, null);
+            assertSame(event.getClass(), decoded.getClass());
+            assertEquals(event.getId(), decoded.getId());
+            assertEquals(event.getCreationTime(), decoded.getCreationTime());
+        }
+    }
+
+    @Test
+    public void testUnregisteredTypesFallBackToSerialization() throws Exception {
+        Identifier id = new Identifier.Mock();
+        byte[] encoded = encode(binary, new ClientMessageEvent(id, "message"), null);
+        assertEquals(EventCodec.SERIALIZED_TYPE_ID, encoded[0]);
+        ClientMessageEvent decoded = (ClientMessageEvent) decode(java, encoded, null);
+        assertEquals("message", decoded.getMessage());
+    }
+
+    @Test
+    public void testMulticastResolvesRecipient() throws Exception {
+        Identifier source = new Identifier.Mock();
+        Identifier recipient = new Identifier.Mock();
+        byte[] encoded = encode(binary, new ClientReadyEvent(source, "ready"), source);
+        assertSame(recipient, decode(binary, encoded, recipient).getId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservedTypeIdsAreRejected() {
+        EventCodecRegistry.register(EventCodec.MIN_REGISTERED_TYPE_ID - 1, ClientMessageEvent.class, null);
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testUnknownTypeId() throws Exception {
+        decode(binary, new byte[] { EventCodec.MAX_TYPE_ID }, null);
+    }
+
+    private Event decode(EventCodec codec, byte[] data, Identifier recipient) throws Exception {
+        return codec.decode(data, 0, data.length, recipient);
+    }
+
+}
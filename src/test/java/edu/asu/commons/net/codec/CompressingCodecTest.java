@@ -0,0 +1,93 @@
+package edu.asu.commons.net.codec;
+
+import static edu.asu.commons.net.codec.TestCodecs.encode;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.AbstractEvent;
+import edu.asu.commons.event.ClientMessageEvent;
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+public class CompressingCodecTest {
+
+    private final EventCodec java = EventCodecRegistry.getCodec("java");
+
+    private final CompressionStatistics statistics = new CompressionStatistics();
+
+    private final CompressingCodec codec = new CompressingCodec(java, 1024, Deflater.BEST_SPEED, 1024 * 1024, statistics);
+
+    @Test
+    public void testLargeFramesAreCompressed() throws Exception {
+        String message = repeat('x', 100000);
+        byte[] encoded = encode(codec, new ClientMessageEvent(new Identifier.Mock(), message), null);
+        assertEquals(EventCodec.SERIALIZED_TYPE_ID | CompressingCodec.COMPRESSED_FLAG, encoded[0] & 0xFF);
+        assertTrue(encoded.length < 10000);
+        assertEquals(message, ((AbstractEvent) codec.decode(encoded, 0, encoded.length, null)).getMessage());
+        assertEquals(1, statistics.getCompressedFrames());
+        assertEquals(1, statistics.getInflatedFrames());
+        assertTrue(statistics.getCompressionRatio() < 0.1d);
+    }
+
+    @Test
+    public void testSmallFramesAreNotCompressed() throws Exception {
+        Event event = new ClientMessageEvent(new Identifier.Mock(), "hello");
+        assertArrayEquals(encode(java, event, null), encode(codec, event, null));
+        assertEquals(0, statistics.getCompressedFrames());
+    }
+
+    @Test
+    public void testIncompressibleFramesAreNeverLarger() throws Exception {
+        byte[] noise = new byte[8192];
+        new Random(42).nextBytes(noise);
+        Event event = new PayloadEvent(noise);
+        byte[] encoded = encode(codec, event, null);
+        assertTrue(encoded.length <= encode(java, event, null).length);
+        assertArrayEquals(noise, ((PayloadEvent) codec.decode(encoded, 0, encoded.length, null)).payload);
+        assertEquals(1, statistics.getCompressedFrames() + statistics.getIncompressibleFrames());
+    }
+
+    @Test
+    public void testMulticastAndDisabledReceiver() throws Exception {
+        Identifier source = new Identifier.Mock();
+        byte[] encoded = encode(codec, new ClientMessageEvent(source, repeat('y', 5000)), source);
+        assertTrue((encoded[0] & CompressingCodec.COMPRESSED_FLAG) != 0);
+        // receivers inflate whatever their own threshold is.
+        CompressingCodec disabled = new CompressingCodec(java, 0, Deflater.BEST_SPEED, 1024 * 1024, new CompressionStatistics());
+        Identifier recipient = new Identifier.Mock();
+        assertSame(recipient, disabled.decode(encoded, 0, encoded.length, recipient).getId());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testInflatedSizeIsBounded() throws Exception {
+        CompressingCodec sender = new CompressingCodec(java, 1024, Deflater.BEST_SPEED, Integer.MAX_VALUE, statistics);
+        byte[] encoded = encode(sender, new ClientMessageEvent(new Identifier.Mock(), repeat('z', 100000)), null);
+        new CompressingCodec(java, 1024, Deflater.BEST_SPEED, 50000, statistics).decode(encoded, 0, encoded.length, null);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static class PayloadEvent extends AbstractEvent {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] payload;
+
+        PayloadEvent(byte[] payload) {
+            this.payload = payload;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package edu.asu.commons.net.codec;
+
+import static edu.asu.commons.net.codec.TestCodecs.encode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.AbstractEvent;
+import edu.asu.commons.event.ChatRequest;
+import edu.asu.commons.event.ClientMessageEvent;
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+public class ObjectStreamCodecTest {
+
+    private final EventCodec java = EventCodecRegistry.getCodec("java");
+
+    @Test
+    public void testDescriptorsAreOnlySentOnce() throws Exception {
+        ObjectStreamCodec sender = new ObjectStreamCodec(java, 1);
+        ObjectStreamCodec receiver = new ObjectStreamCodec(java, 1);
+        Identifier id = new Identifier.Mock();
+        byte[] first = encode(sender, new ClientMessageEvent(id, "message 0"), null);
+        assertEquals(EventCodec.STREAM_TYPE_ID, first[0]);
+        assertEquals("message 0", decode(receiver, first).getMessage());
+        for (int i = 1; i < 10; i++) {
+            byte[] frame = encode(sender, new ClientMessageEvent(id, "message " + i), null);
+            // no stream header or class descriptors after the first frame.
+            assertTrue(frame.length < first.length / 2);
+            assertTrue(frame.length < encode(java, new ClientMessageEvent(id, "message " + i), null).length / 2);
+            assertEquals("message " + i, decode(receiver, frame).getMessage());
+        }
+    }
+
+    @Test
+    public void testMutatedObjectsAreResent() throws Exception {
+        ObjectStreamCodec sender = new ObjectStreamCodec(java, 1);
+        ObjectStreamCodec receiver = new ObjectStreamCodec(java, 1);
+        ArrayList<String> state = new ArrayList<String>();
+        state.add("first");
+        StateEvent event = new StateEvent(state);
+        StateEvent decoded = (StateEvent) decode(receiver, encode(sender, event, null));
+        state.add("second");
+        StateEvent redecoded = (StateEvent) decode(receiver, encode(sender, event, null));
+        assertNotSame(decoded, redecoded);
+        assertEquals(1, ((List<?>) decoded.state).size());
+        assertEquals(2, ((List<?>) redecoded.state).size());
+    }
+
+    @Test
+    public void testResetInterval() throws Exception {
+        ObjectStreamCodec sender = new ObjectStreamCodec(java, 4);
+        ObjectStreamCodec receiver = new ObjectStreamCodec(java, 4);
+        StateEvent event = new StateEvent(new ArrayList<String>());
+        List<Event> decoded = new ArrayList<Event>();
+        for (int i = 0; i < 8; i++) {
+            decoded.add(decode(receiver, encode(sender, event, null)));
+        }
+        // handles are shared until the stream is reset.
+        assertSame(decoded.get(0), decoded.get(3));
+        assertNotSame(decoded.get(3), decoded.get(4));
+        assertSame(decoded.get(4), decoded.get(7));
+    }
+
+    @Test
+    public void testConnectionIdentifierIsReferenced() throws Exception {
+        ObjectStreamCodec sender = new ObjectStreamCodec(java, 1);
+        ObjectStreamCodec receiver = new ObjectStreamCodec(java, 1);
+        Identifier id = new Identifier.Mock();
+        Identifier recipient = new Identifier.Mock();
+        decode(receiver, encode(sender, new ClientMessageEvent(id, "first"), id));
+        byte[] referenced = encode(sender, new ChatRequest(id, "hello"), id);
+        assertEquals(EventCodec.STREAM_TYPE_ID, referenced[0]);
+        assertSame(recipient, receiver.decode(referenced, 0, referenced.length, recipient).getId());
+        byte[] serialized = encode(sender, new ChatRequest(id, "hello"), null);
+        assertTrue(referenced.length < serialized.length);
+        assertEquals(id, receiver.decode(serialized, 0, serialized.length, recipient).getId());
+    }
+
+    @Test
+    public void testPassThrough() throws Exception {
+        Identifier id = new Identifier.Mock();
+        ObjectStreamCodec disabled = new ObjectStreamCodec(java, 0);
+        assertEquals(EventCodec.SERIALIZED_TYPE_ID, encode(disabled, new ChatRequest(id, "hello"), null)[0]);
+    }
+
+    @Test
+    public void testRecoversFromFailedEncode() throws Exception {
+        ObjectStreamCodec sender = new ObjectStreamCodec(java, 1);
+        ObjectStreamCodec receiver = new ObjectStreamCodec(java, 1);
+        Identifier id = new Identifier.Mock();
+        decode(receiver, encode(sender, new ClientMessageEvent(id, "before"), null));
+        try {
+            encode(sender, new StateEvent(new Object()), null);
+            fail("should not be able to serialize a plain Object");
+        } catch (NotSerializableException expected) {
+        }
+        // the failed frame is never sent, the next one starts a new stream.
+        assertEquals("after", decode(receiver, encode(sender, new ClientMessageEvent(id, "after"), null)).getMessage());
+    }
+
+    @Test
+    public void testIsStreamFrame() throws Exception {
+        Identifier id = new Identifier.Mock();
+        byte[] frame = encode(new ObjectStreamCodec(java, 1), new ClientMessageEvent(id, "message"), null);
+        assertTrue(ObjectStreamCodec.isStreamFrame(frame[0]));
+        assertTrue(ObjectStreamCodec.isStreamFrame((byte) (frame[0] | CompressingCodec.COMPRESSED_FLAG)));
+        assertFalse(ObjectStreamCodec.isStreamFrame(encode(java, new ClientMessageEvent(id, "message"), null)[0]));
+        assertFalse(ObjectStreamCodec.isStreamFrame((byte) (EventCodec.SERIALIZED_TYPE_ID | CompressingCodec.COMPRESSED_FLAG)));
+    }
+
+    private AbstractEvent decode(EventCodec codec, byte[] data) throws Exception {
+        return (AbstractEvent) codec.decode(data, 0, data.length, null);
+    }
+
+    private static class StateEvent extends AbstractEvent {
+        private static final long serialVersionUID = 1L;
+
+        private final Object state;
+
+        StateEvent(Object state) {
+            this.state = state;
+        }
+    }
+
+}
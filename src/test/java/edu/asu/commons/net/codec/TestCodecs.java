@@ -0,0 +1,24 @@
+package edu.asu.commons.net.codec;
+
+import java.io.ByteArrayOutputStream;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.net.Identifier;
+
+/**
+ * Helpers shared by the EventCodec tests.
+ */
+final class TestCodecs {
+
+    private TestCodecs() {
+    }
+
+    /**
+     * Returns the frame body the codec encodes the Event to.
+     */
+    static byte[] encode(EventCodec codec, Event event, Identifier multicastId) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(event, multicastId, out);
+        return out.toByteArray();
+    }
+}
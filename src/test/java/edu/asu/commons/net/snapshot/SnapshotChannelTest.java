@@ -0,0 +1,231 @@
+package edu.asu.commons.net.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.asu.commons.event.Event;
+import edu.asu.commons.event.EventChannel;
+import edu.asu.commons.event.EventHandler;
+import edu.asu.commons.event.EventTypeChannel;
+import edu.asu.commons.net.Dispatcher;
+import edu.asu.commons.net.Identifier;
+import edu.asu.commons.net.ServerDispatcher;
+import edu.asu.commons.net.codec.EventCodec;
+import edu.asu.commons.net.codec.EventCodecRegistry;
+import edu.asu.commons.net.event.ConnectionEvent;
+
+public class SnapshotChannelTest {
+
+    private final EventChannel serverChannel = new EventTypeChannel();
+    private final LoopbackServerDispatcher server = new LoopbackServerDispatcher();
+    private final SnapshotChannel<Grid, HashMap<Integer, Integer>> snapshots =
+            new SnapshotChannel<Grid, HashMap<Integer, Integer>>(server, serverChannel, "grid", 10);
+    private final Grid grid = new Grid(1000);
+
+    @Test
+    public void testDeltasAfterKeyframe() {
+        Client client = new Client();
+        List<Identifier> ids = Arrays.asList(client.id);
+        snapshots.transmit(ids, grid);
+        int keyframeSize = server.lastFrameSize;
+        for (int tick = 1; tick < 5; tick++) {
+            grid.cells[tick] = tick;
+            snapshots.transmit(ids, grid);
+            assertTrue(server.lastFrameSize < keyframeSize / 4);
+            assertArrayEquals(grid.cells, client.state.cells);
+        }
+        assertEquals(1, snapshots.getKeyframeCount());
+        assertEquals(4, snapshots.getDeltaCount());
+    }
+
+    @Test
+    public void testPeriodicKeyframes() {
+        Client client = new Client();
+        for (int tick = 0; tick < 30; tick++) {
+            grid.cells[tick % grid.cells.length]++;
+            snapshots.transmit(client.id, grid);
+        }
+        assertEquals(3, snapshots.getKeyframeCount());
+        assertEquals(27, snapshots.getDeltaCount());
+        assertArrayEquals(grid.cells, client.state.cells);
+    }
+
+    @Test
+    public void testSharedDeltaAndReconnect() {
+        List<Client> clients = Arrays.asList(new Client(), new Client(), new Client());
+        List<Identifier> ids = new ArrayList<Identifier>();
+        for (Client client : clients) {
+            ids.add(client.id);
+        }
+        snapshots.transmit(ids, grid);
+        grid.cells[7] = 7;
+        server.sends = 0;
+        snapshots.transmit(ids, grid);
+        // every client acknowledged the same keyframe, the delta is sent once.
+        assertEquals(1, server.sends);
+        for (Client client : clients) {
+            assertArrayEquals(grid.cells, client.state.cells);
+        }
+        // a reconnecting client gets a keyframe.
+        serverChannel.handle(new ConnectionEvent(clients.get(0).id));
+        long keyframes = snapshots.getKeyframeCount();
+        grid.cells[8] = 8;
+        snapshots.transmit(ids, grid);
+        assertEquals(keyframes + 1, snapshots.getKeyframeCount());
+        for (Client client : clients) {
+            assertArrayEquals(grid.cells, client.state.cells);
+        }
+    }
+
+    @Test
+    public void testMissingBaseRequestsKeyframe() {
+        Client client = new Client();
+        snapshots.transmit(client.id, grid);
+        // the client loses its history, e.g., it was restarted.
+        client.receiver.close();
+        client.receiver = client.newReceiver();
+        grid.cells[1] = 1;
+        snapshots.transmit(client.id, grid);
+        // the delta couldn't be applied.
+        assertEquals(0, client.state.cells[1]);
+        grid.cells[2] = 2;
+        snapshots.transmit(client.id, grid);
+        assertArrayEquals(grid.cells, client.state.cells);
+        assertEquals(2, snapshots.getKeyframeCount());
+    }
+
+    static class Grid implements Diffable<Grid, HashMap<Integer, Integer>> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] cells;
+
+        Grid(int size) {
+            cells = new int[size];
+        }
+
+        public Grid copy() {
+            Grid copy = new Grid(cells.length);
+            System.arraycopy(cells, 0, copy.cells, 0, cells.length);
+            return copy;
+        }
+
+        public HashMap<Integer, Integer> diff(Grid base) {
+            HashMap<Integer, Integer> changes = new HashMap<Integer, Integer>();
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] != base.cells[i]) {
+                    changes.put(i, cells[i]);
+                }
+            }
+            return changes;
+        }
+
+        public void apply(HashMap<Integer, Integer> delta) {
+            for (Map.Entry<Integer, Integer> change : delta.entrySet()) {
+                cells[change.getKey()] = change.getValue();
+            }
+        }
+    }
+
+    private class Client implements Dispatcher {
+        private final Identifier id = new Identifier.Mock();
+        private final EventChannel channel = new EventTypeChannel();
+        private SnapshotReceiver<Grid, HashMap<Integer, Integer>> receiver = newReceiver();
+        private Grid state;
+
+        Client() {
+            server.clients.put(id, this);
+            serverChannel.handle(new ConnectionEvent(id));
+        }
+
+        SnapshotReceiver<Grid, HashMap<Integer, Integer>> newReceiver() {
+            return new SnapshotReceiver<Grid, HashMap<Integer, Integer>>(this, channel, "grid") {
+                public void handle(Grid grid) {
+                    state = grid;
+                }
+            };
+        }
+
+        public void transmit(Event event) {
+            serverChannel.handle(event);
+        }
+
+        public void disconnect(Identifier id) {
+        }
+
+        public void shutdown() {
+        }
+
+        public EventHandler<Event> getLocalEventHandler() {
+            return channel;
+        }
+    }
+
+    /**
+     * Encodes every event like a real dispatcher would and delivers it to the addressed clients.
+     */
+    private static class LoopbackServerDispatcher implements ServerDispatcher {
+        private final EventCodec codec = EventCodecRegistry.getCodec("java");
+        private final Map<Identifier, Client> clients = new HashMap<Identifier, Client>();
+        private int lastFrameSize;
+        private int sends;
+
+        public void transmit(Event event) {
+            deliver(Arrays.asList(event.getId()), event, null);
+        }
+
+        public void transmit(Collection<Identifier> ids, Event event) {
+            deliver(ids, event, event.getId());
+        }
+
+        private void deliver(Collection<Identifier> ids, Event event, Identifier multicastId) {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                codec.encode(event, multicastId, out);
+                byte[] frame = out.toByteArray();
+                lastFrameSize = frame.length;
+                sends++;
+                for (Identifier id : ids) {
+                    Client client = clients.get(id);
+                    client.channel.handle(codec.decode(frame, 0, frame.length, client.id));
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public boolean isConnected(Identifier id) {
+            return clients.containsKey(id);
+        }
+
+        public void listen(int port) {
+        }
+
+        public void beginBatch() {
+        }
+
+        public void endBatch() {
+        }
+
+        public void disconnect(Identifier id) {
+        }
+
+        public void shutdown() {
+        }
+
+        public EventHandler<Event> getLocalEventHandler() {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package edu.asu.commons.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * $Id$
+ *
+ * Exercises Threads, on JVMs without virtual threads requesting one must fall back to a platform thread.
+ *
+ * @author <a href='mailto:Allen.Lee@asu.edu'>Allen Lee</a>
+ * @version $Revision$
+ */
+public class ThreadsTest {
+
+    @Test
+    public void testNewThread() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        Runnable runnable = new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        };
+        Thread virtual = Threads.newThread(runnable, "virtual-worker", true);
+        Thread platform = Threads.newThread(runnable, "platform-worker", false);
+        assertEquals("virtual-worker", virtual.getName());
+        assertEquals("platform-worker", platform.getName());
+        assertEquals(Threads.isVirtualThreadSupported(), isVirtual(virtual));
+        assertEquals(false, isVirtual(platform));
+        virtual.start();
+        platform.start();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHandlerThread() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        Runnable runnable = new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        };
+        assertEquals(false, isVirtual(Threads.startHandlerThread(runnable)));
+        assertEquals(false, isVirtual(Threads.startHandlerThread(runnable, false)));
+        assertEquals(Threads.isVirtualThreadSupported(), isVirtual(Threads.startHandlerThread(runnable, true)));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}